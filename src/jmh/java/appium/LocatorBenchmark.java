@@ -0,0 +1,53 @@
+package appium;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openqa.selenium.By;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of building a locator in appium.GenericSteps.getLocatorByType for the
+ * locator types used by the mobile features.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LocatorBenchmark {
+
+    @Param({ "id", "text", "accessibilityid", "attribute" })
+    public String locatorType;
+
+    private String locatorValue;
+
+    @Setup
+    public void selectValue() {
+        switch (locatorType) {
+            case "id":
+                locatorValue = "com.kpmoney.android:id/payment_layout";
+                break;
+            case "attribute":
+                locatorValue = "checked=false";
+                break;
+            default:
+                locatorValue = "Navigate up";
+        }
+    }
+
+    @Benchmark
+    public By getLocatorByType() {
+        return GenericSteps.getLocatorByType(locatorType, locatorValue);
+    }
+}
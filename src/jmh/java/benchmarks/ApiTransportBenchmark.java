@@ -0,0 +1,74 @@
+package benchmarks;
+
+import io.restassured.response.Response;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import utils.ApiUtils;
+import utils.MockServerUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round-trips against the local mock server, on each engine, with and without
+ * the pooled keep-alive transport. Throughput is reported in requests/sec,
+ * latency as a sampled distribution (including p0.99) in microseconds.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Threads(8)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+public class ApiTransportBenchmark {
+
+    @Param({ "true", "false" })
+    public boolean pooled;
+
+    @Param({ "mockserver", "jdk" })
+    public String engine;
+
+    @Setup
+    public void startMockServer() {
+        // Benchmark threads are not the setup thread, so pin the port instead of
+        // binding the base URL per thread
+        if (System.getProperty("API_BASE_URL") == null) {
+            System.setProperty("API_BASE_URL", "http://localhost:1080");
+            System.setProperty("MOCK_SERVER_PORT", "1080");
+        }
+        MockServerUtils.startMockServer(engine);
+    }
+
+    @TearDown
+    public void stopMockServer() {
+        MockServerUtils.stopMockServer();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public int requestsPerSecond() {
+        return roundTrip();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int latency() {
+        return roundTrip();
+    }
+
+    private int roundTrip() {
+        Response response = ApiUtils.request(pooled).get("/people/1");
+        return response.asByteArray().length;
+    }
+}
@@ -0,0 +1,108 @@
+package benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares a JMH JSON result file against a stored baseline and fails when any
+ * benchmark regressed by more than the allowed threshold.
+ *
+ * Usage: BaselineComparator <result.json> <baseline.json> <threshold-percent>
+ * <update-baseline>
+ *
+ * Throughput scores regress when they drop; all other modes (average, sample
+ * and single-shot time) regress when they grow. Benchmarks missing from the
+ * baseline are reported but never fail the run. With update-baseline set to
+ * true, or when no baseline exists yet, the result is stored as the new
+ * baseline.
+ */
+public class BaselineComparator {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 4) {
+            throw new IllegalArgumentException(
+                    "Usage: BaselineComparator <result.json> <baseline.json> <threshold-percent> <update-baseline>");
+        }
+        Path resultFile = Paths.get(args[0]);
+        Path baselineFile = Paths.get(args[1]);
+        double thresholdPercent = Double.parseDouble(args[2]);
+        boolean updateBaseline = Boolean.parseBoolean(args[3]);
+
+        if (!Files.exists(resultFile)) {
+            throw new IllegalStateException("No JMH results found at: " + resultFile);
+        }
+        if (updateBaseline || !Files.exists(baselineFile)) {
+            storeBaseline(resultFile, baselineFile);
+            return;
+        }
+
+        Map<String, JsonNode> baseline = readScores(baselineFile);
+        Map<String, JsonNode> current = readScores(resultFile);
+        int regressions = 0;
+
+        System.out.println("Benchmark comparison against " + baselineFile + " (threshold " + thresholdPercent + "%):");
+        for (Map.Entry<String, JsonNode> entry : current.entrySet()) {
+            JsonNode previous = baseline.get(entry.getKey());
+            double score = entry.getValue().path("primaryMetric").path("score").asDouble();
+            String unit = entry.getValue().path("primaryMetric").path("scoreUnit").asText();
+            if (previous == null) {
+                System.out.printf("  NEW        %-90s %12.3f %s%n", entry.getKey(), score, unit);
+                continue;
+            }
+            double baselineScore = previous.path("primaryMetric").path("score").asDouble();
+            boolean higherIsBetter = "thrpt".equals(entry.getValue().path("mode").asText());
+            double changePercent = baselineScore == 0 ? 0 : (score - baselineScore) / baselineScore * 100;
+            double regressionPercent = higherIsBetter ? -changePercent : changePercent;
+            boolean regressed = regressionPercent > thresholdPercent;
+            if (regressed) {
+                regressions++;
+            }
+            System.out.printf("  %-10s %-90s %12.3f -> %12.3f %s (%+.1f%%)%n", regressed ? "REGRESSED" : "OK",
+                    entry.getKey(), baselineScore, score, unit, changePercent);
+        }
+
+        if (regressions > 0) {
+            System.err.println(regressions + " benchmark(s) regressed by more than " + thresholdPercent + "%.");
+            System.exit(1);
+        }
+        System.out.println("No benchmark regressed by more than " + thresholdPercent + "%.");
+    }
+
+    private static void storeBaseline(Path resultFile, Path baselineFile) throws IOException {
+        if (baselineFile.getParent() != null) {
+            Files.createDirectories(baselineFile.getParent());
+        }
+        Files.copy(resultFile, baselineFile, StandardCopyOption.REPLACE_EXISTING);
+        System.out.println("Stored " + resultFile + " as the new benchmark baseline: " + baselineFile);
+    }
+
+    /**
+     * Index results by benchmark name, mode and sorted parameters.
+     */
+    private static Map<String, JsonNode> readScores(Path file) throws IOException {
+        Map<String, JsonNode> scores = new LinkedHashMap<>();
+        for (JsonNode result : objectMapper.readTree(file.toFile())) {
+            Map<String, String> params = new TreeMap<>();
+            Iterator<Map.Entry<String, JsonNode>> fields = result.path("params").fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                params.put(field.getKey(), field.getValue().asText());
+            }
+            String key = result.path("benchmark").asText() + " [" + result.path("mode").asText() + "]"
+                    + (params.isEmpty() ? "" : " " + params);
+            scores.put(key, result);
+        }
+        return scores;
+    }
+}
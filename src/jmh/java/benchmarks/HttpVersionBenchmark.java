@@ -0,0 +1,71 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import utils.ApiUtils;
+import utils.MockServerUtils;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pipelined batches of GET requests against the local MockServer stub over
+ * HTTP/1.1 (one connection per in-flight request) and HTTP/2 (streams
+ * multiplexed over a shared TLS connection). Throughput is reported in
+ * requests/sec.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+public class HttpVersionBenchmark {
+    private static final int BATCH_SIZE = 100;
+
+    @Param({ "HTTP_1_1", "HTTP_2" })
+    public HttpClient.Version httpVersion;
+
+    private List<ApiUtils.BatchRequest> batch;
+
+    @Setup
+    public void startMockServer() {
+        // Benchmark threads are not the setup thread, so pin the port instead of
+        // binding the base URL per thread
+        if (System.getProperty("API_BASE_URL") == null) {
+            System.setProperty("API_BASE_URL", "http://localhost:1080");
+            System.setProperty("MOCK_SERVER_PORT", "1080");
+        }
+        MockServerUtils.startMockServer();
+        batch = Collections.nCopies(BATCH_SIZE, ApiUtils.BatchRequest.get("/people/1"));
+    }
+
+    @TearDown
+    public void stopMockServer() {
+        MockServerUtils.stopMockServer();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(BATCH_SIZE)
+    public int requestsPerSecond() {
+        int bytes = 0;
+        for (HttpResponse<String> response : ApiUtils.sendBatch(batch, httpVersion)) {
+            bytes += response.body().length();
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,196 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import utils.ImageSync;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Wall-clock time to install a synthetic multi-GB system image into the SDK
+ * directory: the previous copy-everything walk against ImageSync on a first
+ * run (copying or hard-linking), on an unchanged image, and after one file
+ * changed.
+ *
+ * The image mimics a real one: three large partition images holding 95% of
+ * the bytes and a few hundred small files. Trees are written under target/,
+ * so source and SDK share a filesystem and hard links are possible.
+ */
+@Fork(1)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ImageSyncBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Image {
+        @Param({ "2048" })
+        public int totalMb;
+
+        Path root;
+        Path source;
+        Path target;
+
+        @Setup(Level.Trial)
+        public void createImage() throws IOException {
+            Files.createDirectories(Paths.get("target"));
+            root = Files.createTempDirectory(Paths.get("target"), "image-sync-bench-");
+            source = Files.createDirectories(root.resolve("image"));
+            target = root.resolve("sdk/system-images/android-35/google_apis_playstore/arm64-v8a");
+            long total = (long) totalMb << 20;
+            writeFile(source.resolve("system.img"), total * 60 / 100, 1);
+            writeFile(source.resolve("userdata.img"), total * 25 / 100, 2);
+            writeFile(source.resolve("vendor.img"), total * 10 / 100, 3);
+            long small = total * 5 / 100 / 300;
+            for (int i = 0; i < 300; i++) {
+                writeFile(source.resolve("data/app" + (i % 10) + "/file" + i + ".bin"), small, 10 + i);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void deleteImage() throws IOException {
+            delete(root);
+        }
+    }
+
+    /**
+     * An SDK directory emptied before every invocation
+     */
+    @State(Scope.Benchmark)
+    public static class EmptyTarget {
+        @Setup(Level.Invocation)
+        public void clear(Image image) throws IOException {
+            delete(image.target);
+        }
+    }
+
+    /**
+     * An SDK directory already in sync with the image
+     */
+    @State(Scope.Benchmark)
+    public static class SyncedTarget {
+        @Setup(Level.Trial)
+        public void sync(Image image) throws IOException {
+            delete(image.target);
+            new ImageSync(image.source, image.target, false, false, 4).sync();
+        }
+    }
+
+    /**
+     * An SDK directory in sync except for one rewritten small file
+     */
+    @State(Scope.Benchmark)
+    public static class OneChangedTarget {
+        private int round;
+
+        @Setup(Level.Trial)
+        public void sync(Image image) throws IOException {
+            delete(image.target);
+            new ImageSync(image.source, image.target, false, false, 4).sync();
+        }
+
+        @Setup(Level.Invocation)
+        public void change(Image image) throws IOException {
+            Path file = image.source.resolve("data/app0/file0.bin");
+            writeFile(file, Files.size(file), 1000 + ++round);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + round * 1000L));
+        }
+    }
+
+    @Benchmark
+    public long copyEverything(Image image, EmptyTarget empty) throws IOException {
+        // The walk and REPLACE_EXISTING copy linkSystemImage used to run every time
+        long files = 0;
+        try (Stream<Path> paths = Files.walk(image.source)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                Path destination = image.target.resolve(image.source.relativize(path));
+                if (Files.isDirectory(path)) {
+                    Files.createDirectories(destination);
+                } else {
+                    Files.copy(path, destination, StandardCopyOption.REPLACE_EXISTING);
+                    files++;
+                }
+            }
+        }
+        return files;
+    }
+
+    @Benchmark
+    public ImageSync.Result firstSyncCopy(Image image, EmptyTarget empty) throws IOException {
+        return new ImageSync(image.source, image.target, false, false, 4).sync();
+    }
+
+    @Benchmark
+    public ImageSync.Result firstSyncHardLinks(Image image, EmptyTarget empty) throws IOException {
+        return new ImageSync(image.source, image.target, false, true, 4).sync();
+    }
+
+    @Benchmark
+    public ImageSync.Result unchangedSync(Image image, SyncedTarget synced) throws IOException {
+        return new ImageSync(image.source, image.target, false, false, 4).sync();
+    }
+
+    @Benchmark
+    public ImageSync.Result oneFileChangedSync(Image image, OneChangedTarget changed) throws IOException {
+        return new ImageSync(image.source, image.target, false, false, 4).sync();
+    }
+
+    /**
+     * Write pseudo-random content, so neither compression nor deduplication
+     * in the filesystem can shortcut the copies
+     */
+    private static void writeFile(Path file, long size, long seed) throws IOException {
+        Files.createDirectories(file.getParent());
+        byte[] block = new byte[1 << 20];
+        new Random(seed).nextBytes(block);
+        ByteBuffer buffer = ByteBuffer.wrap(block);
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            long written = 0;
+            long counter = 0;
+            while (written < size) {
+                // Vary every block so no two are alike
+                buffer.clear().putLong(0, seed * 31 + counter++);
+                buffer.limit((int) Math.min(block.length, size - written));
+                while (buffer.hasRemaining()) {
+                    written += out.write(buffer);
+                }
+            }
+        }
+    }
+
+    private static void delete(Path root) throws IOException {
+        if (root == null || !Files.exists(root)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package benchmarks;
+
+import io.restassured.builder.ResponseBuilder;
+import io.restassured.response.Response;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import utils.JsonAssertionPlan;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ * Cost of checking a table of body assertions: one RestAssured
+ * `then().body(...)` per row versus a single compiled JsonAssertionPlan.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JsonAssertionBenchmark {
+
+    @Param({ "100", "10000" })
+    public int people;
+
+    @Param({ "3", "20" })
+    public int rows;
+
+    private Response response;
+    private byte[] body;
+    private Map<String, String> expectedValues;
+
+    @Setup
+    public void buildResponse() {
+        StringBuilder json = new StringBuilder("{\"count\": ").append(people).append(", \"results\": [");
+        for (int i = 0; i < people; i++) {
+            json.append(i == 0 ? "" : ",")
+                    .append("{\"name\": \"Person ").append(i)
+                    .append("\", \"gender\": \"").append(i % 2 == 0 ? "male" : "female")
+                    .append("\", \"birth_year\": \"").append(i % 100).append("BBY\"}");
+        }
+        json.append("]}");
+
+        body = json.toString().getBytes(StandardCharsets.UTF_8);
+        response = new ResponseBuilder()
+                .setStatusCode(200)
+                .setContentType("application/json")
+                .setBody(json.toString())
+                .build();
+
+        expectedValues = new LinkedHashMap<>();
+        for (int row = 0; row < rows; row++) {
+            int index = (int) ((long) row * (people - 1) / Math.max(1, rows - 1));
+            expectedValues.put("results[" + index + "].name", "Person " + index);
+        }
+    }
+
+    @Benchmark
+    public Response perRowThenBody() {
+        for (Map.Entry<String, String> entry : expectedValues.entrySet()) {
+            response.then().body(entry.getKey(), equalTo(entry.getValue()));
+        }
+        response.then().extract().path("count");
+        response.then().extract().path("results.size()");
+        return response;
+    }
+
+    @Benchmark
+    public JsonAssertionPlan compiledPlan() {
+        JsonAssertionPlan plan = new JsonAssertionPlan();
+        for (Map.Entry<String, String> entry : expectedValues.entrySet()) {
+            plan.expectValue(entry.getKey(), entry.getValue());
+        }
+        plan.expectNumber("count", people);
+        plan.expectSize("results.size()", people);
+        plan.verify(body);
+        return plan;
+    }
+}
@@ -0,0 +1,38 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import utils.MockServerUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wall-clock time to start the mock server with all stubs registered and stop
+ * it again, as paid by every API worker before its first scenario, for each
+ * mock server engine.
+ */
+@State(Scope.Benchmark)
+@Fork(3)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MockServerStartupBenchmark {
+
+    @Param({ "mockserver", "jdk" })
+    public String engine;
+
+    @Benchmark
+    public void startAndStop() {
+        MockServerUtils.startMockServer(engine);
+        MockServerUtils.stopMockServer();
+    }
+}
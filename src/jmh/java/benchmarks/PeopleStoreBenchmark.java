@@ -0,0 +1,75 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import utils.MockRequest;
+import utils.MockRouter;
+import utils.PeopleStore;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Requests/sec of the stateful `/people` backend behind the mock server
+ * router, at realistic dataset sizes and with concurrent readers and writers.
+ * Runs in-process, without HTTP, so it measures the store itself.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Threads(8)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PeopleStoreBenchmark {
+
+    @Param({ "1000000", "10000000" })
+    public long people;
+
+    private MockRouter router;
+
+    @Setup
+    public void createStore() {
+        PeopleStore store = new PeopleStore(people);
+        router = new MockRouter()
+                .add("GET", "/people", store::list)
+                .add("GET", "/people/{id}", store::get)
+                .add("PUT", "/people/{id}", store::update);
+    }
+
+    @Benchmark
+    public long getById() {
+        return route("GET", "/people/" + randomId(), null, null);
+    }
+
+    @Benchmark
+    public long listPage() {
+        long page = ThreadLocalRandom.current().nextLong(people / 100) + 1;
+        return route("GET", "/people", "page=" + page + "&limit=100", null);
+    }
+
+    @Benchmark
+    public long update() {
+        return route("PUT", "/people/" + randomId(), null,
+                "{\"name\": \"Updated\"}".getBytes(StandardCharsets.UTF_8));
+    }
+
+    private long randomId() {
+        return ThreadLocalRandom.current().nextLong(people) + 1;
+    }
+
+    private long route(String method, String path, String query, byte[] body) {
+        return router.route(new MockRequest(method, path, query, body)).getBodyLength();
+    }
+}
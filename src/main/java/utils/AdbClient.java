@@ -0,0 +1,374 @@
+package utils;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Client for the adb server's socket protocol, so device queries cost a
+ * socket round-trip instead of an adb process.
+ *
+ * Every request is a 4-digit hex length followed by the request text, and is
+ * answered with `OKAY` or `FAIL` plus a length-prefixed message. Host
+ * requests (`host:devices`, `host:track-devices`) are served by the server
+ * itself. Device services are reached by switching the connection to a
+ * device with `host:transport:<serial>` and then opening e.g.
+ * `shell:<command>`, whose output streams until the connection closes.
+ *
+ * {@link #trackDevices()} keeps one connection open on which the server
+ * pushes the device list whenever it changes. {@link #openShell(String)}
+ * keeps a device shell open and runs commands on it one after another,
+ * ending each with a marker that carries its exit code.
+ */
+public class AdbClient {
+    private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+    private static final AtomicLong markers = new AtomicLong();
+
+    private final String host;
+    private final int port;
+
+    public AdbClient(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * A client for ADB_SERVER_HOST (127.0.0.1) and ANDROID_ADB_SERVER_PORT
+     * (5037), the variable adb itself uses
+     */
+    public static AdbClient fromConfig() {
+        return new AdbClient(ConfigUtils.get("ADB_SERVER_HOST", "127.0.0.1"),
+                ConfigUtils.getInt("ANDROID_ADB_SERVER_PORT", 5037));
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Whether an adb server answers on the port
+     */
+    public boolean isServerRunning() {
+        try (Socket socket = connect(CONNECT_TIMEOUT_MILLIS)) {
+            request(socket, "host:version");
+            readLengthPrefixed(socket.getInputStream());
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Devices known to the server and their state (`device`, `offline`,
+     * `unauthorized`, ...)
+     */
+    public Map<String, String> devices() throws IOException {
+        try (Socket socket = connect(CONNECT_TIMEOUT_MILLIS)) {
+            request(socket, "host:devices");
+            return parseDevices(readLengthPrefixed(socket.getInputStream()));
+        }
+    }
+
+    /**
+     * Run a shell command on a device and return its output once it exits.
+     */
+    public String shell(String serial, String command, long timeoutMillis) throws IOException {
+        try (Socket socket = openTransport(serial, timeoutMillis)) {
+            request(socket, "shell:" + command);
+            return new String(socket.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Open a shell on a device that stays open for several commands
+     */
+    public Shell openShell(String serial) throws IOException {
+        Socket socket = openTransport(serial, CONNECT_TIMEOUT_MILLIS);
+        try {
+            request(socket, "shell:sh");
+            return new Shell(socket);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Start following the device list. The server sends it at once and again
+     * on every change.
+     */
+    public DeviceTracker trackDevices() throws IOException {
+        Socket socket = connect(CONNECT_TIMEOUT_MILLIS);
+        try {
+            request(socket, "host:track-devices");
+            // The server only writes when the device list changes, so reads wait indefinitely
+            socket.setSoTimeout(0);
+            return new DeviceTracker(socket);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Result of one command on a {@link Shell}
+     */
+    public static final class ShellResult {
+        private final String output;
+        private final int exitCode;
+
+        ShellResult(String output, int exitCode) {
+            this.output = output;
+            this.exitCode = exitCode;
+        }
+
+        /**
+         * Standard output and error, interleaved
+         */
+        public String getOutput() {
+            return output;
+        }
+
+        public int getExitCode() {
+            return exitCode;
+        }
+    }
+
+    /**
+     * A device shell kept open between commands. Commands run one at a time.
+     */
+    public static final class Shell implements Closeable {
+        private final Socket socket;
+        private final InputStream in;
+        private final OutputStream out;
+
+        Shell(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new BufferedInputStream(socket.getInputStream());
+            this.out = socket.getOutputStream();
+        }
+
+        /**
+         * Run a command and wait for it to finish.
+         *
+         * @throws IOException if the shell closed or the command did not
+         *                     finish within the timeout; the shell is closed
+         *                     then, as its state is unknown
+         */
+        public synchronized ShellResult run(String command, long timeoutMillis) throws IOException {
+            String marker = "__adb_client_done_" + markers.incrementAndGet() + "__";
+            try {
+                socket.setSoTimeout((int) Math.max(1, Math.min(timeoutMillis, Integer.MAX_VALUE)));
+                // The marker goes on a line of its own, after the command's output
+                out.write((command + "\n__adb_status=$?; echo; echo " + marker + "$__adb_status\n")
+                        .getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                return readUntil(marker);
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        private ShellResult readUntil(String marker) throws IOException {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int b;
+            while ((b = in.read()) != -1) {
+                if (b != '\n') {
+                    line.write(b);
+                    continue;
+                }
+                String text = line.toString(StandardCharsets.UTF_8).replace("\r", "");
+                line.reset();
+                if (text.startsWith(marker)) {
+                    String captured = output.toString(StandardCharsets.UTF_8);
+                    // Drop the newline echoed before the marker
+                    captured = captured.endsWith("\n") ? captured.substring(0, captured.length() - 1) : captured;
+                    return new ShellResult(captured, Integer.parseInt(text.substring(marker.length()).trim()));
+                }
+                output.writeBytes(text.getBytes(StandardCharsets.UTF_8));
+                output.write('\n');
+            }
+            throw new EOFException("Device shell closed before the command finished");
+        }
+
+        public boolean isOpen() {
+            return !socket.isClosed();
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    /**
+     * The device list as last pushed by the server
+     */
+    public static final class DeviceTracker implements Closeable {
+        private final Socket socket;
+        private final Object lock = new Object();
+        private Map<String, String> devices;
+        private boolean open = true;
+
+        DeviceTracker(Socket socket) {
+            this.socket = socket;
+            Thread reader = new Thread(this::readUpdates, "adb-track-devices");
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        private void readUpdates() {
+            try {
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                while (true) {
+                    Map<String, String> update = parseDevices(readLengthPrefixed(in));
+                    synchronized (lock) {
+                        devices = update;
+                        lock.notifyAll();
+                    }
+                }
+            } catch (IOException e) {
+                // The server went away or the tracker was closed
+            } finally {
+                synchronized (lock) {
+                    open = false;
+                    lock.notifyAll();
+                }
+            }
+        }
+
+        /**
+         * The current device list, waiting briefly for the first update
+         */
+        public Map<String, String> getDevices() throws InterruptedException {
+            synchronized (lock) {
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(CONNECT_TIMEOUT_MILLIS);
+                while (devices == null && open && deadline - System.nanoTime() > 0) {
+                    TimeUnit.NANOSECONDS.timedWait(lock, deadline - System.nanoTime());
+                }
+                return devices == null ? Collections.emptyMap() : devices;
+            }
+        }
+
+        /**
+         * Wait until the device list satisfies a condition.
+         *
+         * @return false if it did not within the timeout, or the tracker
+         *         closed first
+         */
+        public boolean await(Predicate<Map<String, String>> condition, long timeoutMillis)
+                throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            synchronized (lock) {
+                while (devices == null || !condition.test(devices)) {
+                    long remaining = deadline - System.nanoTime();
+                    if (!open || remaining <= 0) {
+                        return false;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+                }
+                return true;
+            }
+        }
+
+        public boolean isOpen() {
+            synchronized (lock) {
+                return open;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    private Socket connect(int timeoutMillis) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+            socket.setSoTimeout(timeoutMillis);
+            socket.setTcpNoDelay(true);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        return socket;
+    }
+
+    private Socket openTransport(String serial, long timeoutMillis) throws IOException {
+        Socket socket = connect((int) Math.max(1, Math.min(timeoutMillis, Integer.MAX_VALUE)));
+        try {
+            request(socket, "host:transport:" + serial);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        return socket;
+    }
+
+    /**
+     * Send a request and read the OKAY that accepts it.
+     *
+     * @throws IOException with the server's message if it answered FAIL
+     */
+    private static void request(Socket socket, String request) throws IOException {
+        byte[] payload = request.getBytes(StandardCharsets.UTF_8);
+        OutputStream out = socket.getOutputStream();
+        out.write(String.format("%04x", payload.length).getBytes(StandardCharsets.US_ASCII));
+        out.write(payload);
+        out.flush();
+        InputStream in = socket.getInputStream();
+        String status = new String(readFully(in, 4), StandardCharsets.US_ASCII);
+        if ("FAIL".equals(status)) {
+            throw new IOException("adb server refused " + request + ": " + readLengthPrefixed(in));
+        }
+        if (!"OKAY".equals(status)) {
+            throw new IOException("Unexpected adb server response to " + request + ": " + status);
+        }
+    }
+
+    private static String readLengthPrefixed(InputStream in) throws IOException {
+        int length;
+        try {
+            length = Integer.parseInt(new String(readFully(in, 4), StandardCharsets.US_ASCII), 16);
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed length in adb server response", e);
+        }
+        return new String(readFully(in, length), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readFully(InputStream in, int length) throws IOException {
+        byte[] bytes = in.readNBytes(length);
+        if (bytes.length < length) {
+            throw new EOFException("adb server closed the connection");
+        }
+        return bytes;
+    }
+
+    private static Map<String, String> parseDevices(String list) {
+        Map<String, String> devices = new LinkedHashMap<>();
+        for (String line : list.split("\n")) {
+            String[] fields = line.trim().split("\t");
+            if (fields.length >= 2) {
+                devices.put(fields[0], fields[1]);
+            }
+        }
+        return Collections.unmodifiableMap(devices);
+    }
+}
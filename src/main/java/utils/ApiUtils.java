@@ -1,38 +1,353 @@
 package utils;
 
-import io.github.cdimascio.dotenv.Dotenv;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.restassured.builder.RequestSpecBuilder;
+import io.restassured.config.HttpClientConfig;
+import io.restassured.config.RestAssuredConfig;
 import io.restassured.response.Response;
+import io.restassured.specification.RequestSpecification;
+
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.impl.conn.SchemeRegistryFactory;
 
 import static io.restassured.RestAssured.given;
 
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509ExtendedTrustManager;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+@SuppressWarnings("deprecation") // RestAssured still requires the 4.x AbstractHttpClient API
 public class ApiUtils {
-  // Initialize Dotenv for loading environment variables from the `.env` file
-  private static final Dotenv dotenv = Dotenv.configure().load();
+  // Fallback base URL for threads that have not bound one (see bindBaseUrl)
+  private static final String CONFIGURED_BASE_URL = ConfigUtils.get("API_BASE_URL");
+  // Base URL bound to the current worker, e.g. its own mock server instance.
+  // Inherited by threads the worker starts.
+  private static final ThreadLocal<String> boundBaseUrl = new InheritableThreadLocal<>();
+
+  // Connection pool settings
+  private static final boolean POOL_ENABLED = ConfigUtils.getBoolean("API_POOL_ENABLED", true);
+  private static final int POOL_MAX_TOTAL = ConfigUtils.getInt("API_POOL_MAX_TOTAL", 50);
+  private static final int POOL_MAX_PER_ROUTE = ConfigUtils.getInt("API_POOL_MAX_PER_ROUTE", 20);
+  private static final long POOL_KEEP_ALIVE_MS = ConfigUtils.getLong("API_POOL_KEEP_ALIVE_MS", 30000);
+  private static final long POOL_IDLE_EVICT_MS = ConfigUtils.getLong("API_POOL_IDLE_EVICT_MS", 10000);
+
+  // Async client settings
+  private static final long ASYNC_CONNECT_TIMEOUT_MS = ConfigUtils.getLong("API_ASYNC_CONNECT_TIMEOUT_MS", 10000);
+  private static final long ASYNC_REQUEST_TIMEOUT_MS = ConfigUtils.getLong("API_ASYNC_REQUEST_TIMEOUT_MS", 30000);
+
+  // HTTP/2 settings: the protocol used by the async client, the base URL HTTP/2
+  // requests go to and whether self-signed certificates of loopback servers
+  // are accepted
+  private static final HttpClient.Version HTTP_VERSION = parseVersion(
+      ConfigUtils.get("API_HTTP_VERSION", "HTTP_1_1"));
+  private static final String CONFIGURED_HTTP2_BASE_URL = ConfigUtils.get("API_HTTP2_BASE_URL");
+  private static final boolean TLS_TRUST_ALL = ConfigUtils.getBoolean("API_TLS_TRUST_ALL", true);
 
-  private static final String BASE_URL;
+  // Record mode: capture all traffic into a RecordingStore for later replay
+  private static final String RECORD_DIR = ConfigUtils.get("API_RECORD_DIR");
+
+  private static final ObjectMapper objectMapper = new ObjectMapper();
+
+  private static final PoolingClientConnectionManager connectionPool;
+  private static final RequestSpecification pooledSpec;
+  private static final RequestSpecification unpooledSpec;
+  private static final HttpClient http1Client;
+  private static final HttpClient http2Client;
+  private static final Map<String, CompletableFuture<Void>> http2Connected = new ConcurrentHashMap<>();
+  private static final RecordingStore recordingStore;
 
   static {
-    // Load BASE_URL with priority: System Property > Environment Variable > .env
-    BASE_URL = System.getProperty("API_BASE_URL",
-        System.getenv("API_BASE_URL") != null ? System.getenv("API_BASE_URL") : dotenv.get("API_BASE_URL"));
+    recordingStore = RECORD_DIR == null || RECORD_DIR.isEmpty() ? null
+        : RecordingStore.openForRecording(Paths.get(RECORD_DIR));
+    if (recordingStore != null) {
+      Runtime.getRuntime().addShutdownHook(new Thread(recordingStore::close, "api-recording-store-close"));
+      System.out.println("Recording API traffic to: " + RECORD_DIR);
+    }
+
+    connectionPool = createConnectionPool();
+    pooledSpec = baseSpec()
+        .setConfig(RestAssuredConfig.config().httpClient(HttpClientConfig.httpClientConfig()
+            .httpClientFactory(() -> createPooledClient(connectionPool))
+            .reuseHttpClientInstance()))
+        .build();
+    unpooledSpec = baseSpec().build();
+
+    // Async requests run on virtual threads, so fan-out does not tie up platform
+    // threads. The HTTP/1.1 client opens a connection per in-flight request; the
+    // HTTP/2 client multiplexes concurrent requests as streams over a few
+    // connections.
+    http1Client = createAsyncClient(HttpClient.Version.HTTP_1_1);
+    http2Client = createAsyncClient(HttpClient.Version.HTTP_2);
+
+    System.out.println("Base URL initialized: "
+        + (CONFIGURED_BASE_URL != null ? CONFIGURED_BASE_URL : "none configured, bound per worker"));
+    System.out.println("Connection pooling " + (POOL_ENABLED ? "enabled" : "disabled") + " (max total: "
+        + POOL_MAX_TOTAL + ", max per route: " + POOL_MAX_PER_ROUTE + ")");
+    System.out.println("Async requests use " + HTTP_VERSION);
+  }
+
+  private static RequestSpecBuilder baseSpec() {
+    RequestSpecBuilder builder = new RequestSpecBuilder()
+        .setContentType("application/json");
+    if (recordingStore != null) {
+      builder.addFilter(new RecordingFilter(recordingStore));
+    }
+    return builder;
+  }
+
+  /**
+   * Bind a base URL to the current thread (and threads it starts), so that
+   * parallel workers can each target their own server instance.
+   */
+  public static void bindBaseUrl(String baseUrl) {
+    boundBaseUrl.set(baseUrl);
+  }
 
-    if (BASE_URL == null || BASE_URL.isEmpty()) {
+  public static void unbindBaseUrl() {
+    boundBaseUrl.remove();
+  }
+
+  /**
+   * The base URL for the current thread: the bound one if any, otherwise
+   * API_BASE_URL.
+   */
+  public static String getBaseUrl() {
+    String baseUrl = boundBaseUrl.get();
+    if (baseUrl == null) {
+      baseUrl = CONFIGURED_BASE_URL;
+    }
+    if (baseUrl == null || baseUrl.isEmpty()) {
       throw new IllegalStateException(
-          "API_BASE_URL is not configured. Set it in the .env file, as a system property, or as an environment variable.");
+          "API_BASE_URL is not configured. Set it in the .env file, as a system property, or as an environment variable, or bind one with ApiUtils.bindBaseUrl.");
+    }
+    return baseUrl;
+  }
+
+  /**
+   * The base URL HTTP/2 requests go to. MockServer, like most servers, only
+   * negotiates HTTP/2 over TLS (ALPN) on its unified port, so unless
+   * API_HTTP2_BASE_URL is set this is the https:// form of the base URL.
+   */
+  private static String getHttp2BaseUrl() {
+    if (CONFIGURED_HTTP2_BASE_URL != null && boundBaseUrl.get() == null) {
+      return CONFIGURED_HTTP2_BASE_URL;
+    }
+    return getBaseUrl().replaceFirst("^http://", "https://");
+  }
+
+  private static HttpClient createAsyncClient(HttpClient.Version version) {
+    HttpClient.Builder builder = HttpClient.newBuilder()
+        .executor(Executors.newVirtualThreadPerTaskExecutor())
+        .version(version)
+        .connectTimeout(Duration.ofMillis(ASYNC_CONNECT_TIMEOUT_MS));
+    if (version == HttpClient.Version.HTTP_2 && TLS_TRUST_ALL) {
+      builder.sslContext(loopbackTrustingSslContext());
+    }
+    return builder.build();
+  }
+
+  /**
+   * SSL context that accepts any certificate from a loopback server, for the
+   * self-signed certificate of a local stub. Certificates of every other host
+   * go through the JDK's default trust store and hostname check.
+   */
+  private static SSLContext loopbackTrustingSslContext() {
+    try {
+      TrustManagerFactory factory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+      factory.init((KeyStore) null);
+      X509ExtendedTrustManager defaultTrust = null;
+      for (TrustManager manager : factory.getTrustManagers()) {
+        if (manager instanceof X509ExtendedTrustManager) {
+          defaultTrust = (X509ExtendedTrustManager) manager;
+        }
+      }
+      if (defaultTrust == null) {
+        throw new IllegalStateException("No default X509 trust manager available for HTTP/2 requests.");
+      }
+      SSLContext context = SSLContext.getInstance("TLS");
+      context.init(null, new TrustManager[] { new LoopbackTrustManager(defaultTrust) }, new SecureRandom());
+      return context;
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException("Failed to create SSL context for HTTP/2 requests.", e);
+    }
+  }
+
+  /**
+   * Extended trust manager, so the JDK does not add its own hostname check on
+   * top of it. It only skips validation when the peer is a loopback address.
+   */
+  private static final class LoopbackTrustManager extends X509ExtendedTrustManager {
+    private final X509ExtendedTrustManager delegate;
+
+    LoopbackTrustManager(X509ExtendedTrustManager delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+      delegate.checkClientTrusted(chain, authType);
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType, Socket socket)
+        throws CertificateException {
+      delegate.checkClientTrusted(chain, authType, socket);
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType, SSLEngine engine)
+        throws CertificateException {
+      delegate.checkClientTrusted(chain, authType, engine);
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+      // No peer to check, so no exception for loopback servers
+      delegate.checkServerTrusted(chain, authType);
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType, Socket socket)
+        throws CertificateException {
+      if (socket == null || socket.getInetAddress() == null || !socket.getInetAddress().isLoopbackAddress()) {
+        delegate.checkServerTrusted(chain, authType, socket);
+      }
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType, SSLEngine engine)
+        throws CertificateException {
+      if (engine == null || !isLoopbackHost(engine.getPeerHost())) {
+        delegate.checkServerTrusted(chain, authType, engine);
+      }
+    }
+
+    @Override
+    public X509Certificate[] getAcceptedIssuers() {
+      return delegate.getAcceptedIssuers();
     }
+  }
 
-    System.out.println("Base URL initialized: " + BASE_URL);
+  /**
+   * Whether a host name is localhost or a loopback IP literal. Other names are
+   * not resolved, so a DNS entry pointing at 127.0.0.1 does not count.
+   */
+  private static boolean isLoopbackHost(String host) {
+    if (host == null || host.isEmpty()) {
+      return false;
+    }
+    if (host.startsWith("[") && host.endsWith("]")) {
+      host = host.substring(1, host.length() - 1);
+    }
+    if ("localhost".equalsIgnoreCase(host)) {
+      return true;
+    }
+    if (!host.contains(":") && !host.matches("[0-9.]+")) {
+      return false;
+    }
+    try {
+      // An IP literal is parsed without a lookup
+      return InetAddress.getByName(host).isLoopbackAddress();
+    } catch (UnknownHostException e) {
+      return false;
+    }
+  }
+
+  private static HttpClient.Version parseVersion(String version) {
+    switch (version.trim().toUpperCase().replace("/", "_").replace(".", "_")) {
+      case "HTTP_1_1":
+        return HttpClient.Version.HTTP_1_1;
+      case "HTTP_2":
+      case "HTTP_2_0":
+        return HttpClient.Version.HTTP_2;
+      default:
+        throw new IllegalStateException("Unsupported API_HTTP_VERSION: " + version + " (use HTTP_1_1 or HTTP_2)");
+    }
+  }
+
+  /**
+   * Create the bounded connection pool shared by all pooled requests and start
+   * evicting expired and idle connections in the background.
+   */
+  private static PoolingClientConnectionManager createConnectionPool() {
+    PoolingClientConnectionManager pool = new PoolingClientConnectionManager(
+        SchemeRegistryFactory.createDefault(), POOL_KEEP_ALIVE_MS, TimeUnit.MILLISECONDS);
+    pool.setMaxTotal(POOL_MAX_TOTAL);
+    pool.setDefaultMaxPerRoute(POOL_MAX_PER_ROUTE);
+
+    ScheduledExecutorService evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "api-pool-evictor");
+      thread.setDaemon(true);
+      return thread;
+    });
+    long period = Math.max(POOL_IDLE_EVICT_MS / 2, 1000);
+    evictor.scheduleAtFixedRate(() -> {
+      pool.closeExpiredConnections();
+      pool.closeIdleConnections(POOL_IDLE_EVICT_MS, TimeUnit.MILLISECONDS);
+    }, period, period, TimeUnit.MILLISECONDS);
+    return pool;
+  }
+
+  /**
+   * Create an HTTP client on top of the shared pool that keeps connections alive
+   * for the configured time unless the server asks for less.
+   */
+  private static DefaultHttpClient createPooledClient(PoolingClientConnectionManager pool) {
+    DefaultHttpClient client = new DefaultHttpClient(pool);
+    client.setKeepAliveStrategy((response, context) -> {
+      long serverKeepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+      return serverKeepAlive > 0 ? serverKeepAlive : POOL_KEEP_ALIVE_MS;
+    });
+    return client;
+  }
+
+  /**
+   * Start a request from the shared, prebuilt specification
+   *
+   * @param pooled Whether the request should go through the keep-alive
+   *               connection pool or open a connection of its own
+   */
+  public static RequestSpecification request(boolean pooled) {
+    return given().spec(pooled ? pooledSpec : unpooledSpec).baseUri(getBaseUrl());
   }
 
   /**
    * Send a GET request to the given endpoint
    */
   public static Response get(String endpoint) {
-    return given()
-        .baseUri(BASE_URL)
-        .contentType("application/json")
+    return request(POOL_ENABLED)
         .when()
         .get(endpoint)
         .then()
@@ -44,9 +359,7 @@ public class ApiUtils {
    * Send a POST request to the given endpoint with the provided payload
    */
   public static Response post(String endpoint, Map<String, String> payload) {
-    return given()
-        .baseUri(BASE_URL)
-        .contentType("application/json")
+    return request(POOL_ENABLED)
         .body(payload)
         .when()
         .post(endpoint)
@@ -59,9 +372,7 @@ public class ApiUtils {
    * Send a PUT request to the given endpoint with the provided payload
    */
   public static Response put(String endpoint, Map<String, String> payload) {
-    return given()
-        .baseUri(BASE_URL)
-        .contentType("application/json")
+    return request(POOL_ENABLED)
         .body(payload)
         .when()
         .put(endpoint)
@@ -74,13 +385,210 @@ public class ApiUtils {
    * Send a DELETE request to the given endpoint
    */
   public static Response delete(String endpoint) {
-    return given()
-        .baseUri(BASE_URL)
-        .contentType("application/json")
+    return request(POOL_ENABLED)
         .when()
         .delete(endpoint)
         .then()
         .extract()
         .response();
   }
+
+  /**
+   * Send a GET request to the given endpoint without blocking the caller
+   */
+  public static CompletableFuture<HttpResponse<String>> getAsync(String endpoint) {
+    return sendAsync("GET", endpoint, null);
+  }
+
+  /**
+   * Send a POST request to the given endpoint with the provided payload without
+   * blocking the caller
+   */
+  public static CompletableFuture<HttpResponse<String>> postAsync(String endpoint, Map<String, String> payload) {
+    return sendAsync("POST", endpoint, payload);
+  }
+
+  /**
+   * Send a PUT request to the given endpoint with the provided payload without
+   * blocking the caller
+   */
+  public static CompletableFuture<HttpResponse<String>> putAsync(String endpoint, Map<String, String> payload) {
+    return sendAsync("PUT", endpoint, payload);
+  }
+
+  /**
+   * Send a DELETE request to the given endpoint without blocking the caller
+   */
+  public static CompletableFuture<HttpResponse<String>> deleteAsync(String endpoint) {
+    return sendAsync("DELETE", endpoint, null);
+  }
+
+  /**
+   * Send a GET request to the given endpoint and spool the body straight to a
+   * temporary file, so very large responses never have to fit in memory
+   */
+  public static StreamedResponse getStreamed(String endpoint) {
+    Path bodyFile = null;
+    try {
+      bodyFile = Files.createTempFile("api-response-", ".json");
+      HttpResponse<Path> response = clientFor(HTTP_VERSION).send(
+          buildRequest("GET", endpoint, null, HTTP_VERSION), HttpResponse.BodyHandlers.ofFile(bodyFile));
+      return new StreamedResponse(response.statusCode(), response.body());
+    } catch (IOException e) {
+      deleteQuietly(bodyFile);
+      throw new RuntimeException("Failed to stream response from " + endpoint, e);
+    } catch (InterruptedException e) {
+      deleteQuietly(bodyFile);
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while streaming response from " + endpoint, e);
+    }
+  }
+
+  /**
+   * Send a batch of requests over the configured protocol (API_HTTP_VERSION)
+   * and wait for all of them
+   *
+   * @return The responses, in the same order as the requests
+   */
+  public static List<HttpResponse<String>> sendBatch(List<BatchRequest> requests) {
+    return sendBatch(requests, HTTP_VERSION);
+  }
+
+  /**
+   * Send a batch of requests over the given protocol and wait for all of them.
+   * Every request is written before any response is awaited: over HTTP/2 the
+   * batch is pipelined as concurrent streams on a shared connection, over
+   * HTTP/1.1 each in-flight request gets its own connection.
+   *
+   * @return The responses, in the same order as the requests
+   */
+  public static List<HttpResponse<String>> sendBatch(List<BatchRequest> requests, HttpClient.Version version) {
+    List<CompletableFuture<HttpResponse<String>>> futures = new ArrayList<>(requests.size());
+    for (BatchRequest request : requests) {
+      futures.add(sendAsync(request.method, request.endpoint, request.payload, version));
+    }
+    List<HttpResponse<String>> responses = new ArrayList<>(futures.size());
+    for (CompletableFuture<HttpResponse<String>> future : futures) {
+      responses.add(future.join());
+    }
+    return responses;
+  }
+
+  /**
+   * A single request of a batch
+   */
+  public static final class BatchRequest {
+    private final String method;
+    private final String endpoint;
+    private final Map<String, String> payload;
+
+    private BatchRequest(String method, String endpoint, Map<String, String> payload) {
+      this.method = method;
+      this.endpoint = endpoint;
+      this.payload = payload;
+    }
+
+    public static BatchRequest get(String endpoint) {
+      return new BatchRequest("GET", endpoint, null);
+    }
+
+    public static BatchRequest post(String endpoint, Map<String, String> payload) {
+      return new BatchRequest("POST", endpoint, payload);
+    }
+
+    public static BatchRequest put(String endpoint, Map<String, String> payload) {
+      return new BatchRequest("PUT", endpoint, payload);
+    }
+
+    public static BatchRequest delete(String endpoint) {
+      return new BatchRequest("DELETE", endpoint, null);
+    }
+  }
+
+  private static CompletableFuture<HttpResponse<String>> sendAsync(String method, String endpoint,
+      Map<String, String> payload) {
+    return sendAsync(method, endpoint, payload, HTTP_VERSION);
+  }
+
+  private static CompletableFuture<HttpResponse<String>> sendAsync(String method, String endpoint,
+      Map<String, String> payload, HttpClient.Version version) {
+    HttpRequest request = buildRequest(method, endpoint, payload, version);
+    CompletableFuture<HttpResponse<String>> future = dispatch(request, version);
+    if (recordingStore == null) {
+      return future;
+    }
+    return future.thenApply(response -> {
+      recordingStore.record(method, RecordingStore.normalizePath(request.uri()),
+          payload == null ? null : toJson(payload).getBytes(StandardCharsets.UTF_8), response.statusCode(),
+          response.headers().firstValue("Content-Type").orElse(null),
+          response.body().getBytes(StandardCharsets.UTF_8));
+      return response;
+    });
+  }
+
+  /**
+   * Hand a request to the client for the given protocol. Until the first HTTP/2
+   * exchange with a host completes, further HTTP/2 requests to that host wait
+   * for it, so they share the negotiated connection instead of racing to open
+   * connections of their own.
+   */
+  private static CompletableFuture<HttpResponse<String>> dispatch(HttpRequest request, HttpClient.Version version) {
+    HttpClient client = clientFor(version);
+    if (version != HttpClient.Version.HTTP_2) {
+      return client.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+    }
+    String authority = request.uri().getScheme() + "://" + request.uri().getRawAuthority();
+    CompletableFuture<Void> first = new CompletableFuture<>();
+    CompletableFuture<Void> connected = http2Connected.putIfAbsent(authority, first);
+    if (connected == null) {
+      return client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+          .whenComplete((response, error) -> first.complete(null));
+    }
+    return connected
+        .thenCompose(ready -> client.sendAsync(request, HttpResponse.BodyHandlers.ofString()));
+  }
+
+  /**
+   * Forget the HTTP/2 connections made to a server that was stopped, so the
+   * first request to a new server on the same host and port negotiates again
+   * before the others follow.
+   */
+  public static void forgetConnections(String baseUrl) {
+    String authority = "://" + URI.create(baseUrl).getRawAuthority();
+    http2Connected.keySet().removeIf(key -> key.endsWith(authority));
+  }
+
+  private static HttpClient clientFor(HttpClient.Version version) {
+    return version == HttpClient.Version.HTTP_2 ? http2Client : http1Client;
+  }
+
+  private static HttpRequest buildRequest(String method, String endpoint, Map<String, String> payload,
+      HttpClient.Version version) {
+    String baseUrl = version == HttpClient.Version.HTTP_2 ? getHttp2BaseUrl() : getBaseUrl();
+    return HttpRequest.newBuilder(URI.create(baseUrl + endpoint))
+        .timeout(Duration.ofMillis(ASYNC_REQUEST_TIMEOUT_MS))
+        .header("Content-Type", "application/json")
+        .method(method, payload == null
+            ? HttpRequest.BodyPublishers.noBody()
+            : HttpRequest.BodyPublishers.ofString(toJson(payload)))
+        .build();
+  }
+
+  private static void deleteQuietly(Path file) {
+    if (file != null) {
+      try {
+        Files.deleteIfExists(file);
+      } catch (IOException ignored) {
+        // Best effort cleanup of a partially spooled body
+      }
+    }
+  }
+
+  private static String toJson(Map<String, String> payload) {
+    try {
+      return objectMapper.writeValueAsString(payload);
+    } catch (JsonProcessingException e) {
+      throw new IllegalArgumentException("Failed to serialize request payload.", e);
+    }
+  }
 }
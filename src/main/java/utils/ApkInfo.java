@@ -0,0 +1,234 @@
+package utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Package name, version and content hash of an APK, read in-JVM without aapt.
+ *
+ * The APK is a zip whose AndroidManifest.xml is compiled to Android's binary
+ * XML format. Only the root `manifest` element is needed, so the parser reads
+ * the string pool, the attribute resource map and the first start element,
+ * and stops there. Results are cached per path, size and modification time,
+ * so parallel installs on several devices parse and hash the APK once.
+ */
+public class ApkInfo {
+    private static final int RES_XML_TYPE = 0x0003;
+    private static final int RES_STRING_POOL_TYPE = 0x0001;
+    private static final int RES_XML_RESOURCE_MAP_TYPE = 0x0180;
+    private static final int RES_XML_START_ELEMENT_TYPE = 0x0102;
+    private static final int UTF8_FLAG = 1 << 8;
+    private static final int TYPE_STRING = 0x03;
+    private static final int TYPE_INT_DEC = 0x10;
+    private static final int TYPE_INT_HEX = 0x11;
+    private static final int ATTR_VERSION_CODE = 0x0101021b;
+    private static final int ATTR_VERSION_NAME = 0x0101021c;
+    private static final int ATTR_VERSION_CODE_MAJOR = 0x01010576;
+
+    private static final Map<Path, ApkInfo> cache = new ConcurrentHashMap<>();
+
+    private final Path path;
+    private final long size;
+    private final long modifiedMillis;
+    private String packageName;
+    private long versionCode;
+    private String versionName;
+    private String sha256;
+
+    private ApkInfo(Path path, long size, long modifiedMillis) {
+        this.path = path;
+        this.size = size;
+        this.modifiedMillis = modifiedMillis;
+    }
+
+    /**
+     * Read the APK, or return the cached result if it has not changed.
+     *
+     * @throws IllegalArgumentException if it is not an APK with a readable
+     *                                  manifest
+     */
+    public static ApkInfo read(Path apk) {
+        Path key = apk.toAbsolutePath().normalize();
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(key, BasicFileAttributes.class);
+        } catch (IOException e) {
+            throw new IllegalStateException("APK not found at: " + key, e);
+        }
+        long modified = attributes.lastModifiedTime().toMillis();
+        return cache.compute(key, (path, cached) -> cached != null && cached.size == attributes.size()
+                && cached.modifiedMillis == modified ? cached : parse(path, attributes.size(), modified));
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public String getPackageName() {
+        return packageName;
+    }
+
+    /**
+     * Version code, including versionCodeMajor in the upper 32 bits
+     */
+    public long getVersionCode() {
+        return versionCode;
+    }
+
+    /**
+     * Version name, or null if the manifest has none
+     */
+    public String getVersionName() {
+        return versionName;
+    }
+
+    /**
+     * Hex SHA-256 of the APK file
+     */
+    public String getSha256() {
+        return sha256;
+    }
+
+    @Override
+    public String toString() {
+        return packageName + " " + (versionName == null ? "" : versionName + " ") + "(" + versionCode + ")";
+    }
+
+    private static ApkInfo parse(Path apk, long size, long modified) {
+        ApkInfo info = new ApkInfo(apk, size, modified);
+        try (ZipFile zip = new ZipFile(apk.toFile())) {
+            ZipEntry manifest = zip.getEntry("AndroidManifest.xml");
+            if (manifest == null) {
+                throw new IllegalArgumentException("No AndroidManifest.xml in " + apk);
+            }
+            try (InputStream in = zip.getInputStream(manifest)) {
+                parseManifest(in.readAllBytes(), info);
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Not a readable APK: " + apk, e);
+        }
+        try {
+            info.sha256 = FileHashes.sha256(apk);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to hash APK " + apk, e);
+        }
+        return info;
+    }
+
+    private static void parseManifest(byte[] xml, ApkInfo info) {
+        ByteBuffer buffer = ByteBuffer.wrap(xml).order(ByteOrder.LITTLE_ENDIAN);
+        if (xml.length < 8 || (buffer.getShort(0) & 0xffff) != RES_XML_TYPE) {
+            throw new IllegalArgumentException("AndroidManifest.xml is not compiled binary XML");
+        }
+        String[] strings = new String[0];
+        int[] resourceIds = new int[0];
+        int position = buffer.getShort(2) & 0xffff;
+        while (position + 8 <= xml.length) {
+            int type = buffer.getShort(position) & 0xffff;
+            int headerSize = buffer.getShort(position + 2) & 0xffff;
+            int chunkSize = buffer.getInt(position + 4);
+            if (chunkSize < 8 || position + chunkSize > xml.length) {
+                throw new IllegalArgumentException("Corrupt binary XML chunk at offset " + position);
+            }
+            if (type == RES_STRING_POOL_TYPE) {
+                strings = readStringPool(buffer, position, headerSize, xml);
+            } else if (type == RES_XML_RESOURCE_MAP_TYPE) {
+                resourceIds = new int[(chunkSize - headerSize) / 4];
+                for (int i = 0; i < resourceIds.length; i++) {
+                    resourceIds[i] = buffer.getInt(position + headerSize + 4 * i);
+                }
+            } else if (type == RES_XML_START_ELEMENT_TYPE) {
+                readManifestElement(buffer, position + headerSize, strings, resourceIds, info);
+                return;
+            }
+            position += chunkSize;
+        }
+        throw new IllegalArgumentException("AndroidManifest.xml has no manifest element");
+    }
+
+    private static void readManifestElement(ByteBuffer buffer, int element, String[] strings, int[] resourceIds,
+            ApkInfo info) {
+        String name = string(strings, buffer.getInt(element + 4));
+        if (!"manifest".equals(name)) {
+            throw new IllegalArgumentException("Root element of AndroidManifest.xml is " + name);
+        }
+        int attributeStart = buffer.getShort(element + 8) & 0xffff;
+        int attributeSize = buffer.getShort(element + 10) & 0xffff;
+        int attributeCount = buffer.getShort(element + 12) & 0xffff;
+        long versionCodeMajor = 0;
+        for (int i = 0; i < attributeCount; i++) {
+            int attribute = element + attributeStart + i * attributeSize;
+            int nameIndex = buffer.getInt(attribute + 4);
+            int rawValue = buffer.getInt(attribute + 8);
+            int dataType = buffer.get(attribute + 15) & 0xff;
+            int data = buffer.getInt(attribute + 16);
+            int resourceId = nameIndex >= 0 && nameIndex < resourceIds.length ? resourceIds[nameIndex] : 0;
+            String attributeName = string(strings, nameIndex);
+            String text = rawValue >= 0 ? string(strings, rawValue)
+                    : dataType == TYPE_STRING ? string(strings, data) : null;
+            boolean integer = dataType == TYPE_INT_DEC || dataType == TYPE_INT_HEX;
+
+            if (resourceId == ATTR_VERSION_CODE || resourceId == 0 && "versionCode".equals(attributeName)) {
+                info.versionCode = integer ? data & 0xffffffffL : Long.parseLong(text);
+            } else if (resourceId == ATTR_VERSION_CODE_MAJOR
+                    || resourceId == 0 && "versionCodeMajor".equals(attributeName)) {
+                versionCodeMajor = integer ? data & 0xffffffffL : Long.parseLong(text);
+            } else if (resourceId == ATTR_VERSION_NAME || resourceId == 0 && "versionName".equals(attributeName)) {
+                info.versionName = text;
+            } else if ("package".equals(attributeName)) {
+                info.packageName = text;
+            }
+        }
+        if (info.packageName == null) {
+            throw new IllegalArgumentException("AndroidManifest.xml has no package name");
+        }
+        info.versionCode |= versionCodeMajor << 32;
+    }
+
+    private static String[] readStringPool(ByteBuffer buffer, int chunk, int headerSize, byte[] xml) {
+        int count = buffer.getInt(chunk + 8);
+        boolean utf8 = (buffer.getInt(chunk + 16) & UTF8_FLAG) != 0;
+        int stringsStart = chunk + buffer.getInt(chunk + 20);
+        String[] strings = new String[count];
+        for (int i = 0; i < count; i++) {
+            int offset = stringsStart + buffer.getInt(chunk + headerSize + 4 * i);
+            if (utf8) {
+                // UTF-16 length, then UTF-8 byte length, each one or two bytes
+                offset += (buffer.get(offset) & 0x80) != 0 ? 2 : 1;
+                int length = buffer.get(offset) & 0xff;
+                if ((length & 0x80) != 0) {
+                    length = (length & 0x7f) << 8 | buffer.get(offset + 1) & 0xff;
+                    offset += 2;
+                } else {
+                    offset += 1;
+                }
+                strings[i] = new String(xml, offset, length, StandardCharsets.UTF_8);
+            } else {
+                int length = buffer.getShort(offset) & 0xffff;
+                if ((length & 0x8000) != 0) {
+                    length = (length & 0x7fff) << 16 | buffer.getShort(offset + 2) & 0xffff;
+                    offset += 4;
+                } else {
+                    offset += 2;
+                }
+                strings[i] = new String(xml, offset, length * 2, StandardCharsets.UTF_16LE);
+            }
+        }
+        return strings;
+    }
+
+    private static String string(String[] strings, int index) {
+        return index >= 0 && index < strings.length ? strings[index] : null;
+    }
+}
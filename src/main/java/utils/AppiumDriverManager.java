@@ -1,6 +1,8 @@
 package utils;
 
 import io.appium.java_client.AppiumDriver;
+import io.appium.java_client.InteractsWithApps;
+import io.appium.java_client.android.AndroidDriver;
 import io.appium.java_client.android.options.UiAutomator2Options;
 
 import org.openqa.selenium.WebElement;
@@ -11,6 +13,7 @@ import io.github.cdimascio.dotenv.Dotenv;
 import org.openqa.selenium.By;
 import org.openqa.selenium.Dimension;
 import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.WebDriverException;
 import org.openqa.selenium.support.ui.ExpectedConditions;
 import org.openqa.selenium.support.ui.WebDriverWait;
 
@@ -19,7 +22,6 @@ import java.util.Collections;
 import java.util.Map;
 
 public class AppiumDriverManager {
-    private static AppiumDriver driver;
     private static final int DEFAULT_WAIT_TIME = 10; // Default wait time in seconds
     private static Dotenv dotenv;
     private static final String APK_URL_STRING = "/src/test/resources/binaries/android/com.kpmoney.android_3a.13.19-362_minAPI26(arm64-v8a,armeabi,armeabi-v7a,mips,mips64,x86,x86_64)(nodpi)_apkmirror.com.apk";
@@ -29,34 +31,96 @@ public class AppiumDriverManager {
         dotenv = Dotenv.configure().load();
     }
 
+    // Sessions outlive scenarios: the next scenario on a device resets the app
+    // instead of starting a new session. A session is confined to the thread
+    // holding its device for the scenario, so parallel scenarios never share one.
+    private static final SessionPool<AppiumDriver> sessions = new SessionPool<>(new AppiumSessions(),
+            ConfigUtils.getInt("APPIUM_SESSION_MAX_AGE_SECONDS", 1800) * 1000L,
+            ConfigUtils.getBoolean("APPIUM_SESSION_REUSE", true)
+                    ? ConfigUtils.getInt("APPIUM_SESSION_MAX_USES", 50)
+                    : 1);
+
     /**
-     * Initialize and return the AppiumDriver
+     * Creates UiAutomator2 sessions and resets the app between scenarios
      */
-    public static AppiumDriver getAppiumDriver() {
-        if (driver == null) {
+    private static final class AppiumSessions implements SessionPool.Factory<AppiumDriver> {
+        @Override
+        public AppiumDriver create(String key) throws Exception {
+            // Use UiAutomator2Options for Android
+            UiAutomator2Options options = new UiAutomator2Options()
+                    .setPlatformName(dotenv.get("PLATFORM_NAME"))
+                    .setDeviceName(dotenv.get("DEVICE_NAME"))
+                    .setAutomationName(dotenv.get("AUTOMATION_NAME"))
+                    .setPlatformVersion(dotenv.get("PLATFORM_VERSION"))
+                    .setAppPackage(dotenv.get("APP_PACKAGE"))
+                    .setAppActivity(dotenv.get("APP_ACTIVITY"))
+                    .setNoReset(noReset())
+                    .setApp(System.getProperty("user.dir") + APK_URL_STRING);
+
+            EmulatorDevice device = DevicePool.currentDevice();
+            if (device != null) {
+                // Each parallel UiAutomator2 session needs its own device and system port
+                options.setUdid(device.getSerial()).setSystemPort(8200 + device.getIndex());
+            }
+            return new AndroidDriver(new URL(dotenv.get("APPIUM_SERVER")), options);
+        }
+
+        @Override
+        public boolean isHealthy(AppiumDriver driver) {
             try {
-                // Use UiAutomator2Options for Android
-                UiAutomator2Options options = new UiAutomator2Options()
-                        .setPlatformName(dotenv.get("PLATFORM_NAME"))
-                        .setDeviceName(dotenv.get("DEVICE_NAME"))
-                        .setAutomationName(dotenv.get("AUTOMATION_NAME"))
-                        .setPlatformVersion(dotenv.get("PLATFORM_VERSION"))
-                        .setAppPackage(dotenv.get("APP_PACKAGE"))
-                        .setAppActivity(dotenv.get("APP_ACTIVITY"))
-                        .setNoReset(Boolean.parseBoolean(dotenv.get("APPIUM_NORESET")))
-                        .setApp(System.getProperty("user.dir") + APK_URL_STRING);
-
-                // Initialize the Appium driver
-                driver = new AppiumDriver(new URL(dotenv.get("APPIUM_SERVER")), options);
-
-            } catch (Exception e) {
-                throw new RuntimeException("Failed to initialize AppiumDriver", e);
+                // One round trip to the device; fails once the session or UiAutomator2 died
+                return driver.getSessionId() != null
+                        && ((InteractsWithApps) driver).queryAppState(dotenv.get("APP_PACKAGE")) != null;
+            } catch (WebDriverException e) {
+                return false;
             }
         }
+
+        /**
+         * Restart the app, clearing its data first unless APPIUM_NORESET is
+         * set, the same start state a new session gives
+         */
+        @Override
+        public void reset(AppiumDriver driver) {
+            String appPackage = dotenv.get("APP_PACKAGE");
+            InteractsWithApps apps = (InteractsWithApps) driver;
+            apps.terminateApp(appPackage);
+            if (!noReset()) {
+                driver.executeScript("mobile: clearApp", Map.of("appId", appPackage));
+            }
+            apps.activateApp(appPackage);
+        }
+
+        @Override
+        public void quit(AppiumDriver driver) {
+            try {
+                driver.quit();
+            } catch (WebDriverException e) {
+                System.out.println("Failed to quit Appium session " + driver.getSessionId() + ": " + e.getMessage());
+            }
+        }
+
+        private static boolean noReset() {
+            return Boolean.parseBoolean(dotenv.get("APPIUM_NORESET"));
+        }
+    }
+
+    /**
+     * Return the current thread's AppiumDriver, acquiring one for the device
+     * the thread leased from the DevicePool (or for the thread without a pool):
+     * the device's idle session with the app reset, or a new session.
+     */
+    public static AppiumDriver getAppiumDriver() {
+        AppiumDriver driver = sessions.current();
+        if (driver == null) {
+            EmulatorDevice device = DevicePool.currentDevice();
+            driver = sessions.acquire(device != null ? device.getSerial() : Thread.currentThread().getName());
+        }
         return driver;
     }
 
     public static Map<String, Object> getCapabilities() {
+        AppiumDriver driver = sessions.current();
         if (driver == null) {
             throw new IllegalStateException("Driver not initialized. Call getAppiumDriver() first.");
         }
@@ -65,13 +129,31 @@ public class AppiumDriverManager {
     }
 
     /**
-     * Quit the AppiumDriver
+     * Keep the current thread's session for the next scenario on its device.
+     * Call before releasing the device.
+     */
+    public static void releaseDriver() {
+        sessions.release();
+    }
+
+    /**
+     * Quit the current thread's session instead of keeping it
      */
     public static void quitDriver() {
-        if (driver != null) {
-            driver.quit();
-            driver = null;
-        }
+        sessions.discard();
+    }
+
+    /**
+     * Quit the sessions kept for reuse and print what reusing them saved. Call
+     * once scenarios are done, before stopping the Appium server.
+     */
+    public static void quitAllDrivers() {
+        sessions.close();
+        System.out.println("Appium sessions: " + sessions.report());
+    }
+
+    public static SessionPool<AppiumDriver> getSessions() {
+        return sessions;
     }
 
     /**
@@ -81,7 +163,7 @@ public class AppiumDriverManager {
      * @return MobileElement once it becomes visible
      */
     public static WebElement waitForElementVisible(By locator) {
-        WebDriverWait wait = new WebDriverWait(driver, java.time.Duration.ofSeconds(DEFAULT_WAIT_TIME));
+        WebDriverWait wait = new WebDriverWait(sessions.current(), java.time.Duration.ofSeconds(DEFAULT_WAIT_TIME));
         return wait.until(ExpectedConditions.visibilityOfElementLocated(locator));
     }
 
@@ -89,7 +171,7 @@ public class AppiumDriverManager {
      * Scroll down the screen
      */
     public static void scrollDown() {
-        Dimension dimension = driver.manage().window().getSize();
+        Dimension dimension = sessions.current().manage().window().getSize();
         int startX = dimension.width / 2;
         int startY = (int) (dimension.height * 0.8);
         int endY = (int) (dimension.height * 0.2);
@@ -104,7 +186,7 @@ public class AppiumDriverManager {
                 startX, endY));
         swipe.addAction(finger.createPointerUp(PointerInput.MouseButton.LEFT.asArg()));
 
-        driver.perform(Collections.singletonList(swipe));
+        sessions.current().perform(Collections.singletonList(swipe));
     }
 
     /**
@@ -115,7 +197,7 @@ public class AppiumDriverManager {
      */
     public static boolean isElementDisplayed(By locator) {
         try {
-            return driver.findElement(locator).isDisplayed();
+            return sessions.current().findElement(locator).isDisplayed();
         } catch (NoSuchElementException e) {
             return false;
         }
@@ -153,7 +235,7 @@ public class AppiumDriverManager {
      */
     public static void swipeByPercentage(double startXPercentage, double startYPercentage, double endXPercentage,
             double endYPercentage) {
-        Dimension size = driver.manage().window().getSize();
+        Dimension size = sessions.current().manage().window().getSize();
         int startX = (int) (size.width * startXPercentage);
         int startY = (int) (size.height * startYPercentage);
         int endX = (int) (size.width * endXPercentage);
@@ -169,6 +251,6 @@ public class AppiumDriverManager {
                 finger.createPointerMove(java.time.Duration.ofMillis(500), PointerInput.Origin.viewport(), endX, endY));
         swipe.addAction(finger.createPointerUp(PointerInput.MouseButton.LEFT.asArg()));
 
-        driver.perform(Collections.singletonList(swipe));
+        sessions.current().perform(Collections.singletonList(swipe));
     }
 }
@@ -0,0 +1,394 @@
+package utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Runs external commands (adb, emulator, avdmanager) without blocking on
+ * their pipes.
+ *
+ * Commands are started with ProcessBuilder from argument arrays, so nothing
+ * is parsed by a shell. Standard output and error are drained concurrently on
+ * daemon threads into bounded buffers that keep the last COMMAND_OUTPUT_LIMIT
+ * bytes, so a chatty command can neither fill a pipe and deadlock nor exhaust
+ * memory. Every command has a timeout, after which the command and all its
+ * descendants are killed.
+ *
+ * The latency of every command is recorded per label, the tool name followed
+ * by its subcommand (`adb get-state`, `adb shell getprop`, `avdmanager
+ * create`), see {@link #getStats()} and {@link #report()}.
+ */
+public class CommandRunner {
+    private static final CommandRunner shared = new CommandRunner(ConfigUtils.getInt("COMMAND_OUTPUT_LIMIT", 1 << 20));
+    // Time to finish reading output after a command exits, in case a
+    // daemonized descendant (e.g. the adb server) kept a pipe open
+    private static final long DRAIN_GRACE_MILLIS = 500;
+
+    private final int maxOutputBytes;
+    private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+    private final ExecutorService drains = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "command-output");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param maxOutputBytes Bytes of standard output and of standard error
+     *                       kept per command; earlier output is dropped
+     */
+    public CommandRunner(int maxOutputBytes) {
+        if (maxOutputBytes < 1) {
+            throw new IllegalArgumentException("Output limit must be positive: " + maxOutputBytes);
+        }
+        this.maxOutputBytes = maxOutputBytes;
+    }
+
+    /**
+     * The runner shared by EmulatorManager, keeping COMMAND_OUTPUT_LIMIT
+     * (1 MiB) of output per stream
+     */
+    public static CommandRunner shared() {
+        return shared;
+    }
+
+    /**
+     * Outcome of one command
+     */
+    public static final class Result {
+        private final String label;
+        private final List<String> command;
+        private final int exitCode;
+        private final String stdout;
+        private final String stderr;
+        private final long millis;
+        private final boolean timedOut;
+        private final boolean truncated;
+
+        Result(String label, List<String> command, int exitCode, String stdout, String stderr, long millis,
+                boolean timedOut, boolean truncated) {
+            this.label = label;
+            this.command = command;
+            this.exitCode = exitCode;
+            this.stdout = stdout;
+            this.stderr = stderr;
+            this.millis = millis;
+            this.timedOut = timedOut;
+            this.truncated = truncated;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public List<String> getCommand() {
+            return command;
+        }
+
+        /**
+         * Exit code, or -1 if the command timed out
+         */
+        public int getExitCode() {
+            return exitCode;
+        }
+
+        public String getStdout() {
+            return stdout;
+        }
+
+        public String getStderr() {
+            return stderr;
+        }
+
+        /**
+         * Standard output followed by standard error
+         */
+        public String getOutput() {
+            return stdout + stderr;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        public boolean isTimedOut() {
+            return timedOut;
+        }
+
+        /**
+         * Whether output beyond the limit was dropped
+         */
+        public boolean isTruncated() {
+            return truncated;
+        }
+
+        public boolean isSuccess() {
+            return !timedOut && exitCode == 0;
+        }
+
+        /**
+         * @throws RuntimeException if the command failed or timed out
+         */
+        public Result orThrow() {
+            if (timedOut) {
+                throw new RuntimeException("Command timed out after " + millis + " ms: " + String.join(" ", command)
+                        + System.lineSeparator() + getOutput());
+            }
+            if (exitCode != 0) {
+                throw new RuntimeException("Command failed with exit code " + exitCode + ": "
+                        + String.join(" ", command) + System.lineSeparator() + getOutput());
+            }
+            return this;
+        }
+    }
+
+    /**
+     * Latency of the commands with one label
+     */
+    public static final class Stats {
+        private final LatencyHistogram latencies = new LatencyHistogram();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder timeouts = new LongAdder();
+
+        public long getCount() {
+            return latencies.getCount();
+        }
+
+        /**
+         * Commands that exited non-zero or timed out
+         */
+        public long getFailures() {
+            return failures.sum();
+        }
+
+        public long getTimeouts() {
+            return timeouts.sum();
+        }
+
+        public LatencyHistogram getLatencies() {
+            return latencies;
+        }
+    }
+
+    /**
+     * Run a command to completion, or kill it with its descendants once the
+     * timeout has passed.
+     *
+     * @param environment Variables added to the inherited environment
+     * @return The result, also when the command failed or timed out
+     */
+    public Result run(Map<String, String> environment, long timeoutMillis, String... command)
+            throws IOException, InterruptedException {
+        String label = label(command);
+        long start = System.nanoTime();
+        Process process = builder(environment, command).start();
+        process.getOutputStream().close();
+        OutputBuffer stdout = new OutputBuffer(maxOutputBytes);
+        OutputBuffer stderr = new OutputBuffer(maxOutputBytes);
+        Future<?> stdoutDrain = drains.submit(() -> drain(process.getInputStream(), stdout));
+        Future<?> stderrDrain = drains.submit(() -> drain(process.getErrorStream(), stderr));
+
+        boolean timedOut;
+        try {
+            timedOut = !process.waitFor(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            killTree(process);
+            throw e;
+        }
+        if (timedOut) {
+            killTree(process);
+        }
+        long drainDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(DRAIN_GRACE_MILLIS);
+        awaitDrain(stdoutDrain, drainDeadline);
+        awaitDrain(stderrDrain, drainDeadline);
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        int exitCode = timedOut ? -1 : process.exitValue();
+        Stats commandStats = stats.computeIfAbsent(label, key -> new Stats());
+        commandStats.latencies.record(TimeUnit.MILLISECONDS.toMicros(millis));
+        if (timedOut) {
+            commandStats.timeouts.increment();
+        }
+        if (timedOut || exitCode != 0) {
+            commandStats.failures.increment();
+        }
+        return new Result(label, List.of(command), exitCode, stdout.toString(), stderr.toString(), millis, timedOut,
+                stdout.isTruncated() || stderr.isTruncated());
+    }
+
+    /**
+     * Start a long-running command such as the emulator, handing each line
+     * of its output to a consumer on a daemon thread. The caller owns the
+     * process; stop it with {@link #killTree(Process)}.
+     */
+    public Process start(Map<String, String> environment, Consumer<String> stdoutLines, Consumer<String> stderrLines,
+            String... command) throws IOException {
+        Process process = builder(environment, command).start();
+        process.getOutputStream().close();
+        drains.submit(() -> forEachLine(process.getInputStream(), stdoutLines));
+        drains.submit(() -> forEachLine(process.getErrorStream(), stderrLines));
+        return process;
+    }
+
+    /**
+     * Forcibly stop a process and every process it started
+     */
+    public static void killTree(Process process) {
+        // Collect the descendants first: they are re-parented once the root dies
+        List<ProcessHandle> descendants = process.descendants().collect(Collectors.toList());
+        process.destroyForcibly();
+        descendants.forEach(ProcessHandle::destroyForcibly);
+    }
+
+    /**
+     * Latency per command label, sorted by label
+     */
+    public Map<String, Stats> getStats() {
+        return Collections.unmodifiableMap(new TreeMap<>(stats));
+    }
+
+    public void resetStats() {
+        stats.clear();
+    }
+
+    /**
+     * One line per command label: count, failures, timeouts and latency
+     * percentiles in milliseconds
+     */
+    public String report() {
+        StringBuilder report = new StringBuilder(String.format("%-28s %6s %6s %6s %8s %8s %8s %8s%n", "command",
+                "count", "failed", "timeout", "mean", "p50", "p99", "max"));
+        getStats().forEach((label, value) -> {
+            LatencyHistogram latencies = value.getLatencies();
+            report.append(String.format("%-28s %6d %6d %6d %8.1f %8.1f %8.1f %8.1f%n", label, value.getCount(),
+                    value.getFailures(), value.getTimeouts(), latencies.getMeanMicros() / 1000.0,
+                    latencies.getValueAtPercentile(50) / 1000.0, latencies.getValueAtPercentile(99) / 1000.0,
+                    latencies.getMaxMicros() / 1000.0));
+        });
+        return report.toString();
+    }
+
+    /**
+     * The tool name and its subcommand, skipping options and the device
+     * serial: `adb -s emulator-5554 shell getprop x` is `adb shell getprop`,
+     * `emulator @avd -port 5554` is `emulator`
+     */
+    static String label(String... command) {
+        StringBuilder label = new StringBuilder(Paths.get(command[0]).getFileName().toString());
+        int i = 1;
+        while (i < command.length && "-s".equals(command[i])) {
+            i += 2;
+        }
+        if (i < command.length && !command[i].startsWith("-") && !command[i].startsWith("@")) {
+            label.append(' ').append(command[i]);
+            if ("shell".equals(command[i]) && i + 1 < command.length) {
+                // A shell command may come as a single argument
+                label.append(' ').append(command[i + 1].trim().split("\\s+")[0]);
+            }
+        }
+        return label.toString();
+    }
+
+    private static ProcessBuilder builder(Map<String, String> environment, String... command) {
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.environment().putAll(environment);
+        return builder;
+    }
+
+    private static Void drain(InputStream in, OutputBuffer buffer) throws IOException {
+        try (InputStream stream = in) {
+            byte[] chunk = new byte[8192];
+            int read;
+            while ((read = stream.read(chunk)) > 0) {
+                buffer.write(chunk, read);
+            }
+        }
+        return null;
+    }
+
+    private static void forEachLine(InputStream in, Consumer<String> lines) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.accept(line);
+            }
+        } catch (IOException e) {
+            // The process exited and its pipe was closed
+        }
+    }
+
+    private static void awaitDrain(Future<?> drain, long deadlineNanos) throws InterruptedException {
+        try {
+            drain.get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            // Keep the output read so far; a daemonized descendant may hold the pipe
+        }
+    }
+
+    /**
+     * Keeps the last `capacity` bytes written to it. The array starts small
+     * and doubles as output arrives, so short commands never allocate the
+     * full capacity; once it is full it wraps around as a ring.
+     */
+    private static final class OutputBuffer {
+        private static final int INITIAL_SIZE = 8 * 1024;
+
+        private final int capacity;
+        private byte[] ring;
+        private long total;
+
+        OutputBuffer(int capacity) {
+            this.capacity = capacity;
+            ring = new byte[Math.min(capacity, INITIAL_SIZE)];
+        }
+
+        synchronized void write(byte[] bytes, int length) {
+            if (total + length > ring.length && ring.length < capacity) {
+                // Still linear: total is within the array, so a copy keeps positions
+                ring = Arrays.copyOf(ring, (int) Math.min(capacity, Math.max(2L * ring.length, total + length)));
+            }
+            int offset = Math.max(0, length - capacity);
+            for (int i = offset; i < length; ) {
+                int position = (int) ((total + i) % capacity);
+                int count = Math.min(length - i, capacity - position);
+                System.arraycopy(bytes, i, ring, position, count);
+                i += count;
+            }
+            total += length;
+        }
+
+        synchronized boolean isTruncated() {
+            return total > capacity;
+        }
+
+        @Override
+        public synchronized String toString() {
+            if (total <= capacity) {
+                return new String(ring, 0, (int) total, StandardCharsets.UTF_8);
+            }
+            int start = (int) (total % capacity);
+            byte[] ordered = new byte[capacity];
+            System.arraycopy(ring, start, ordered, 0, capacity - start);
+            System.arraycopy(ring, 0, ordered, capacity - start, start);
+            return new String(ordered, StandardCharsets.UTF_8);
+        }
+    }
+}
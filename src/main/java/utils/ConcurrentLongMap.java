@@ -0,0 +1,215 @@
+package utils;
+
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.UnaryOperator;
+
+/**
+ * Concurrent hash map from primitive long keys to non-null values.
+ *
+ * Entries live in open-addressed (linear probing) key and value arrays, so
+ * there is no boxed key or node object per entry. The table is split into
+ * stripes that each have their own lock and grow independently: writers only
+ * contend within a stripe, and lookups are optimistic reads that take no lock
+ * unless a writer changed the same stripe meanwhile.
+ */
+public class ConcurrentLongMap<V> {
+    private static final int STRIPE_BITS = 6;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private static final class Stripe {
+        private final StampedLock lock = new StampedLock();
+        private long[] keys = new long[INITIAL_CAPACITY];
+        // A null value marks a free slot
+        private Object[] values = new Object[INITIAL_CAPACITY];
+        private int size;
+
+        Object lookup(long key, long hash) {
+            long[] k = keys;
+            Object[] v = values;
+            if (k.length != v.length) {
+                // Torn read during a resize; the caller's validation fails
+                return null;
+            }
+            int mask = k.length - 1;
+            for (int i = (int) hash & mask, probes = 0; probes <= mask; i = (i + 1) & mask, probes++) {
+                Object value = v[i];
+                if (value == null) {
+                    return null;
+                }
+                if (k[i] == key) {
+                    return value;
+                }
+            }
+            return null;
+        }
+
+        int indexOf(long key, long hash) {
+            int mask = keys.length - 1;
+            for (int i = (int) hash & mask;; i = (i + 1) & mask) {
+                if (values[i] == null) {
+                    return -1;
+                }
+                if (keys[i] == key) {
+                    return i;
+                }
+            }
+        }
+
+        void insert(long key, long hash, Object value) {
+            if ((size + 1) * 4 > keys.length * 3) {
+                resize();
+            }
+            int mask = keys.length - 1;
+            int i = (int) hash & mask;
+            while (values[i] != null) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values[i] = value;
+            size++;
+        }
+
+        /**
+         * Free a slot and shift later entries of the same probe run back, so
+         * lookups never need tombstones.
+         */
+        void delete(int index) {
+            int mask = keys.length - 1;
+            values[index] = null;
+            size--;
+            int free = index;
+            for (int i = (index + 1) & mask; values[i] != null; i = (i + 1) & mask) {
+                int home = (int) mix(keys[i]) & mask;
+                boolean reachable = free <= i ? (free < home && home <= i) : (free < home || home <= i);
+                if (!reachable) {
+                    keys[free] = keys[i];
+                    values[free] = values[i];
+                    values[i] = null;
+                    free = i;
+                }
+            }
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            Object[] oldValues = values;
+            long[] newKeys = new long[oldKeys.length * 2];
+            Object[] newValues = new Object[oldKeys.length * 2];
+            int mask = newKeys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] != null) {
+                    int j = (int) mix(oldKeys[i]) & mask;
+                    while (newValues[j] != null) {
+                        j = (j + 1) & mask;
+                    }
+                    newKeys[j] = oldKeys[i];
+                    newValues[j] = oldValues[i];
+                }
+            }
+            keys = newKeys;
+            values = newValues;
+        }
+    }
+
+    private final Stripe[] stripes = new Stripe[1 << STRIPE_BITS];
+
+    public ConcurrentLongMap() {
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * @return The value for the key, or null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        long hash = mix(key);
+        Stripe stripe = stripeFor(hash);
+        long stamp = stripe.lock.tryOptimisticRead();
+        Object value = stripe.lookup(key, hash);
+        if (!stripe.lock.validate(stamp)) {
+            stamp = stripe.lock.readLock();
+            try {
+                value = stripe.lookup(key, hash);
+            } finally {
+                stripe.lock.unlockRead(stamp);
+            }
+        }
+        return (V) value;
+    }
+
+    /**
+     * @return The previous value for the key, or null if there was none
+     */
+    public V put(long key, V value) {
+        return compute(key, previous -> value);
+    }
+
+    /**
+     * @return The removed value, or null if there was none
+     */
+    public V remove(long key) {
+        return compute(key, previous -> null);
+    }
+
+    /**
+     * Atomically replace the value for a key with the result of the function,
+     * which receives the current value (null if absent) and returns the new
+     * one (null to remove the entry). The function runs under the stripe's
+     * lock, so it must be short and must not touch this map.
+     *
+     * @return The previous value for the key, or null if there was none
+     */
+    @SuppressWarnings("unchecked")
+    public V compute(long key, UnaryOperator<V> function) {
+        long hash = mix(key);
+        Stripe stripe = stripeFor(hash);
+        long stamp = stripe.lock.writeLock();
+        try {
+            int index = stripe.indexOf(key, hash);
+            V previous = index < 0 ? null : (V) stripe.values[index];
+            V value = function.apply(previous);
+            if (value == null) {
+                if (index >= 0) {
+                    stripe.delete(index);
+                }
+            } else if (index >= 0) {
+                stripe.values[index] = value;
+            } else {
+                stripe.insert(key, hash, value);
+            }
+            return previous;
+        } finally {
+            stripe.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Number of entries; not a snapshot while other threads write
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            long stamp = stripe.lock.readLock();
+            try {
+                size += stripe.size;
+            } finally {
+                stripe.lock.unlockRead(stamp);
+            }
+        }
+        return size;
+    }
+
+    private Stripe stripeFor(long hash) {
+        return stripes[(int) (hash >>> (64 - STRIPE_BITS))];
+    }
+
+    // Stafford variant 13 of the splitmix64 finalizer: consecutive ids spread
+    // over all stripes and slots
+    private static long mix(long key) {
+        long h = (key ^ (key >>> 30)) * 0xbf58476d1ce4e5b9L;
+        h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+        return h ^ (h >>> 31);
+    }
+}
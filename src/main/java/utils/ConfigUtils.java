@@ -0,0 +1,61 @@
+package utils;
+
+import io.github.cdimascio.dotenv.Dotenv;
+
+public class ConfigUtils {
+    // Initialize Dotenv for loading environment variables from the `.env` file
+    private static final Dotenv dotenv = Dotenv.configure().ignoreIfMissing().load();
+
+    /**
+     * Resolve a setting with priority: System Property > Environment Variable >
+     * .env
+     *
+     * @param key The name of the setting
+     * @return The configured value, or null if it is not set anywhere
+     */
+    public static String get(String key) {
+        String value = System.getProperty(key);
+        if (value == null) {
+            value = System.getenv(key);
+        }
+        if (value == null) {
+            value = dotenv.get(key);
+        }
+        return value;
+    }
+
+    /**
+     * Resolve a setting, falling back to the given default when it is not set.
+     */
+    public static String get(String key, String defaultValue) {
+        String value = get(key);
+        return value == null || value.isEmpty() ? defaultValue : value;
+    }
+
+    /**
+     * Resolve an integer setting, falling back to the given default when it is
+     * not set.
+     */
+    public static int getInt(String key, int defaultValue) {
+        String value = get(key);
+        return value == null || value.isEmpty() ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    /**
+     * Resolve a long setting, falling back to the given default when it is not
+     * set.
+     */
+    public static long getLong(String key, long defaultValue) {
+        String value = get(key);
+        return value == null || value.isEmpty() ? defaultValue : Long.parseLong(value.trim());
+    }
+
+    /**
+     * Resolve a boolean setting, falling back to the given default when it is not
+     * set.
+     */
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        String value = get(key);
+        return value == null || value.isEmpty() ? defaultValue : Boolean.parseBoolean(value.trim());
+    }
+}
@@ -0,0 +1,110 @@
+package utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The logs captured for one emulator: its own output and, once it has booted,
+ * a streaming `adb logcat`. Each goes to a {@link LogCapture} under
+ * `<LOG_DIR>/<serial>/`.
+ *
+ * A scenario takes a {@link Mark} when it starts and reads the lines logged
+ * since with {@link #since(Mark)} if it fails.
+ */
+public class DeviceLogs implements Closeable {
+    public static final String EMULATOR = "emulator";
+    public static final String LOGCAT = "logcat";
+
+    private final Path directory;
+    private final LogCapture emulator;
+    private final LogCapture logcat;
+    private Process logcatProcess;
+
+    /**
+     * Positions in both logs
+     */
+    public static final class Mark {
+        private final long emulator;
+        private final long logcat;
+
+        Mark(long emulator, long logcat) {
+            this.emulator = emulator;
+            this.logcat = logcat;
+        }
+    }
+
+    /**
+     * @param directory Directory for `emulator.log` and `logcat.log`
+     */
+    public DeviceLogs(Path directory) throws IOException {
+        this.directory = directory.toAbsolutePath();
+        this.emulator = LogCapture.open(this.directory.resolve(EMULATOR + ".log"));
+        this.logcat = LogCapture.open(this.directory.resolve(LOGCAT + ".log"));
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Emulator standard output and error
+     */
+    public LogCapture getEmulator() {
+        return emulator;
+    }
+
+    public LogCapture getLogcat() {
+        return logcat;
+    }
+
+    /**
+     * Stream logcat into {@link #getLogcat()}, replacing a previous logcat
+     * of this device (it ends with the emulator anyway)
+     */
+    synchronized void startLogcat(Process process) {
+        stopLogcat();
+        logcatProcess = process;
+    }
+
+    synchronized void stopLogcat() {
+        if (logcatProcess != null) {
+            CommandRunner.killTree(logcatProcess);
+            logcatProcess = null;
+        }
+    }
+
+    public Mark mark() {
+        return new Mark(emulator.mark(), logcat.mark());
+    }
+
+    /**
+     * The lines of each log since the mark, by log name; logs without new
+     * lines are left out
+     */
+    public Map<String, String> since(Mark mark) throws InterruptedException {
+        Map<String, String> slices = new LinkedHashMap<>();
+        List<String> emulatorLines = emulator.since(mark.emulator);
+        if (!emulatorLines.isEmpty()) {
+            slices.put(EMULATOR, String.join(System.lineSeparator(), emulatorLines));
+        }
+        List<String> logcatLines = logcat.since(mark.logcat);
+        if (!logcatLines.isEmpty()) {
+            slices.put(LOGCAT, String.join(System.lineSeparator(), logcatLines));
+        }
+        return slices;
+    }
+
+    /**
+     * Stop logcat and write out everything captured
+     */
+    @Override
+    public void close() throws IOException {
+        stopLogcat();
+        emulator.close();
+        logcat.close();
+    }
+}
@@ -0,0 +1,367 @@
+package utils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A fixed set of emulators that scenarios lease one at a time, so mobile
+ * scenarios can run in parallel, one per device.
+ *
+ * Device i boots AVD `EMULATOR_NAME` (i = 0) or `EMULATOR_NAME_i` on console
+ * port base + 2i, so every emulator has its own console/adb port pair and its
+ * own snapshot. All devices boot in parallel on {@link #start()}.
+ *
+ * Idle devices wait in a queue. A device is health-checked when it is leased
+ * and when it is returned. An unhealthy device is restarted in the background,
+ * at most EMULATOR_POOL_MAX_RESTARTS times. After that it is marked failed and
+ * no longer leased. Leasing fails fast once no device is left that could ever
+ * become available.
+ *
+ * Each device installs the APK as soon as it has booted, so installs run
+ * concurrently with each other and with the remaining boots. The start is a
+ * {@link SetupGraph}, so the AVDs are created while the system image is
+ * synced and other setup steps can be added to run alongside.
+ */
+public class DevicePool {
+    private static volatile DevicePool shared;
+    private static final ThreadLocal<EmulatorDevice> currentDevice = new ThreadLocal<>();
+
+    private final List<EmulatorDevice> devices;
+    private final LinkedBlockingQueue<EmulatorDevice> idle = new LinkedBlockingQueue<>();
+    private final ExecutorService workers;
+    private final int maxRestarts;
+
+    /**
+     * @param avdName     AVD of device 0; the others get `_i` appended
+     * @param size        Number of emulators
+     * @param basePort    Console port of device 0
+     * @param maxRestarts Restarts per device after failed health checks
+     */
+    public DevicePool(String avdName, int size, int basePort, int maxRestarts) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Device pool size must be at least 1: " + size);
+        }
+        List<EmulatorDevice> created = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            created.add(new EmulatorDevice(i, i == 0 ? avdName : avdName + "_" + i, basePort + 2 * i));
+        }
+        this.devices = Collections.unmodifiableList(created);
+        this.maxRestarts = maxRestarts;
+        this.workers = Executors.newFixedThreadPool(size, runnable -> {
+            Thread thread = new Thread(runnable, "device-pool");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * A pool sized by EMULATOR_POOL_SIZE (1) from EMULATOR_PORT (5554), with
+     * EMULATOR_POOL_MAX_RESTARTS (1) restarts per device
+     */
+    public static DevicePool fromConfig() {
+        return new DevicePool(ConfigUtils.get("EMULATOR_NAME"), ConfigUtils.getInt("EMULATOR_POOL_SIZE", 1),
+                ConfigUtils.getInt("EMULATOR_PORT", 5554), ConfigUtils.getInt("EMULATOR_POOL_MAX_RESTARTS", 1));
+    }
+
+    /**
+     * Start the pool from configuration and share it with
+     * {@link #getShared()}
+     */
+    public static synchronized DevicePool startShared() throws InterruptedException {
+        return startShared(new SetupGraph("Device pool start"));
+    }
+
+    /**
+     * Start the pool from configuration as part of a larger setup: its steps
+     * are added to the graph, which is then run
+     *
+     * @param dependencies Steps of the graph the AVDs are created after, e.g.
+     *                     checks that the Android tools are installed
+     */
+    public static synchronized DevicePool startShared(SetupGraph setup, String... dependencies)
+            throws InterruptedException {
+        if (shared == null) {
+            DevicePool pool = fromConfig();
+            pool.addStartSteps(setup, dependencies);
+            setup.run();
+            shared = pool;
+        } else {
+            setup.run();
+        }
+        return shared;
+    }
+
+    /**
+     * @throws IllegalStateException if no pool was started with
+     *                               {@link #startShared()}
+     */
+    public static DevicePool getShared() {
+        DevicePool pool = shared;
+        if (pool == null) {
+            throw new IllegalStateException("Device pool not started. Call DevicePool.startShared() first.");
+        }
+        return pool;
+    }
+
+    public static synchronized void stopShared() {
+        if (shared != null) {
+            shared.stop();
+            shared = null;
+        }
+    }
+
+    /**
+     * The device the current thread leased, or null
+     */
+    public static EmulatorDevice currentDevice() {
+        return currentDevice.get();
+    }
+
+    public List<EmulatorDevice> getDevices() {
+        return devices;
+    }
+
+    /**
+     * Number of devices that are healthy, whether leased or idle
+     */
+    public int getHealthyCount() {
+        return (int) devices.stream().filter(d -> d.getHealth() == EmulatorDevice.Health.HEALTHY).count();
+    }
+
+    /**
+     * Link the system image, then create and boot every emulator in parallel.
+     *
+     * @throws RuntimeException if no emulator could be started
+     */
+    public void start() throws InterruptedException {
+        SetupGraph setup = new SetupGraph("Device pool start");
+        addStartSteps(setup);
+        setup.run();
+    }
+
+    /**
+     * Add the steps starting the pool to a setup graph: the image sync and
+     * the ADB server, then for each device the AVD creation, boot and APK
+     * install, then a check that at least one device started. A device that
+     * fails one of its steps is marked failed and skips the rest, without
+     * failing the setup.
+     *
+     * @param dependencies Steps of the graph the AVDs are created after
+     */
+    public void addStartSteps(SetupGraph setup, String... dependencies) {
+        setup.add(EmulatorManager.IMAGE_SYNC_STEP, EmulatorManager::linkSystemImage);
+        setup.add(EmulatorManager.ADB_SERVER_STEP, EmulatorManager::ensureADBServer);
+        String[] installs = new String[devices.size()];
+        for (EmulatorDevice device : devices) {
+            String avd = EmulatorManager.AVD_STEP + device.getAvdName();
+            String boot = EmulatorManager.BOOT_STEP + device.getSerial();
+            installs[device.getIndex()] = EmulatorManager.INSTALL_STEP + device.getSerial();
+            setup.add(avd, () -> {
+                device.setHealth(EmulatorDevice.Health.STARTING);
+                onDevice(device, () -> EmulatorManager.createEmulator(device.getAvdName()));
+            }, EmulatorManager.avdStepDependencies(dependencies));
+            setup.add(boot, () -> onDevice(device, () -> EmulatorManager.startEmulator(device)), avd,
+                    EmulatorManager.IMAGE_SYNC_STEP, EmulatorManager.ADB_SERVER_STEP);
+            setup.add(installs[device.getIndex()], () -> {
+                onDevice(device, () -> EmulatorManager.installApkUnlessInstalledAtBoot(device));
+                if (device.getHealth() == EmulatorDevice.Health.STARTING) {
+                    device.setHealth(EmulatorDevice.Health.HEALTHY);
+                    idle.offer(device);
+                }
+            }, boot);
+        }
+        setup.add("device pool", () -> {
+            System.out.println("Device pool started " + getHealthyCount() + " of " + devices.size() + " emulators");
+            System.out.println("Emulator boot time (ms) and host usage per launch profile:"
+                    + System.lineSeparator() + EmulatorManager.profileReport());
+            if (getHealthyCount() == 0) {
+                throw new RuntimeException("No emulator in the device pool could be started.");
+            }
+        }, installs);
+    }
+
+    /**
+     * Run a start step of a device unless it already failed, marking it
+     * failed if the step fails
+     */
+    private static void onDevice(EmulatorDevice device, SetupGraph.Step step) throws InterruptedException {
+        if (device.getHealth() == EmulatorDevice.Health.FAILED) {
+            return;
+        }
+        try {
+            step.run();
+        } catch (InterruptedException e) {
+            device.setHealth(EmulatorDevice.Health.FAILED);
+            throw e;
+        } catch (Exception e) {
+            System.err.println("Failed to start " + device + ": " + e.getMessage());
+            device.setHealth(EmulatorDevice.Health.FAILED);
+        }
+    }
+
+    /**
+     * Install the APK on every healthy device in parallel, e.g. after a new
+     * build, skipping devices that already have it. Call it between scenarios,
+     * as leased devices are installed on too.
+     *
+     * @return Number of devices the APK was installed on
+     * @throws RuntimeException if the install failed on any device
+     */
+    public int installApk() throws InterruptedException {
+        long start = System.currentTimeMillis();
+        List<Future<Boolean>> installs = new ArrayList<>();
+        for (EmulatorDevice device : devices) {
+            if (device.getHealth() == EmulatorDevice.Health.HEALTHY) {
+                installs.add(workers.submit(() -> EmulatorManager.installApk(device)));
+            }
+        }
+        int installed = 0;
+        RuntimeException failure = null;
+        for (Future<Boolean> install : installs) {
+            try {
+                installed += install.get() ? 1 : 0;
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = new RuntimeException("Failed to install the APK in the device pool", e.getCause());
+                } else {
+                    failure.addSuppressed(e.getCause());
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        System.out.println("Installed the APK on " + installed + " of " + installs.size() + " emulators in "
+                + (System.currentTimeMillis() - start) + " ms");
+        return installed;
+    }
+
+    /**
+     * Lease an idle healthy device, waiting up to the timeout for one to be
+     * returned. The device is also bound to the current thread, see
+     * {@link #currentDevice()}.
+     *
+     * @throws IllegalStateException if no device became available in time, or
+     *                               none is left that could
+     */
+    public EmulatorDevice lease(long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (true) {
+            if (devices.stream().allMatch(d -> d.getHealth() == EmulatorDevice.Health.FAILED)) {
+                throw new IllegalStateException("All emulators in the device pool have failed.");
+            }
+            long remaining = deadline - System.nanoTime();
+            // Wake up periodically to notice devices failing while waiting
+            EmulatorDevice device = remaining <= 0 ? null
+                    : idle.poll(Math.min(remaining, TimeUnit.SECONDS.toNanos(1)), TimeUnit.NANOSECONDS);
+            if (device == null) {
+                if (System.nanoTime() - deadline >= 0) {
+                    throw new IllegalStateException("No emulator became available within " + timeoutMillis + " ms.");
+                }
+                continue;
+            }
+            if (EmulatorManager.isDeviceHealthy(device)) {
+                device.recordLease();
+                currentDevice.set(device);
+                return device;
+            }
+            recover(device);
+        }
+    }
+
+    /**
+     * Lease with EMULATOR_LEASE_TIMEOUT_SECONDS (600)
+     */
+    public EmulatorDevice lease() throws InterruptedException {
+        return lease(ConfigUtils.getLong("EMULATOR_LEASE_TIMEOUT_SECONDS", 600) * 1000);
+    }
+
+    /**
+     * Return a leased device. A device that fails its health check is
+     * restarted before it is leased again.
+     */
+    public void release(EmulatorDevice device) throws InterruptedException {
+        if (currentDevice.get() == device) {
+            currentDevice.remove();
+        }
+        if (EmulatorManager.isDeviceHealthy(device)) {
+            idle.offer(device);
+        } else {
+            recover(device);
+        }
+    }
+
+    /**
+     * Stop every emulator and close its logs, then print the host usage per
+     * launch profile. Devices still leased are stopped too.
+     */
+    public void stop() {
+        workers.shutdownNow();
+        idle.clear();
+        for (EmulatorDevice device : devices) {
+            if (device.getHealth() != EmulatorDevice.Health.FAILED) {
+                try {
+                    EmulatorManager.stopEmulator(device);
+                } catch (Exception e) {
+                    System.err.println("Failed to stop " + device.getSerial() + ": " + e.getMessage());
+                }
+                device.setHealth(EmulatorDevice.Health.FAILED);
+            }
+            EmulatorManager.closeLogs(device);
+        }
+        System.out.println("Emulator boot time (ms) and host usage per launch profile:" + System.lineSeparator()
+                + EmulatorManager.profileReport());
+    }
+
+    private void boot(EmulatorDevice device) {
+        device.setHealth(EmulatorDevice.Health.STARTING);
+        try {
+            EmulatorManager.setupEmulator(device);
+            device.setHealth(EmulatorDevice.Health.HEALTHY);
+            idle.offer(device);
+        } catch (Exception e) {
+            System.err.println("Failed to start " + device + ": " + e.getMessage());
+            device.setHealth(EmulatorDevice.Health.FAILED);
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Restart an unhealthy device in the background, or give up on it once
+     * it has used its restarts.
+     */
+    private void recover(EmulatorDevice device) {
+        synchronized (device) {
+            if (device.getHealth() != EmulatorDevice.Health.HEALTHY) {
+                return; // Already being recovered or failed
+            }
+            if (device.getRestarts() >= maxRestarts) {
+                System.err.println(device.getSerial() + " failed its health check and has no restarts left.");
+                device.setHealth(EmulatorDevice.Health.FAILED);
+                return;
+            }
+            System.err.println(device.getSerial() + " failed its health check, restarting it...");
+            device.setHealth(EmulatorDevice.Health.UNHEALTHY);
+            device.recordRestart();
+        }
+        workers.submit(() -> {
+            try {
+                EmulatorManager.stopEmulator(device);
+                EmulatorManager.waitForEmulatorExit(device, 60);
+            } catch (Exception e) {
+                System.err.println("Failed to stop " + device.getSerial() + ": " + e.getMessage());
+            }
+            boot(device);
+        });
+    }
+}
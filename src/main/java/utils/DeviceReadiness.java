@@ -0,0 +1,279 @@
+package utils;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Detects when a device is ready without fixed sleeps.
+ *
+ * Waiting happens in two phases. First, `adb wait-for-device` blocks until
+ * adb reports the device online. Then several independent boot signals are
+ * polled concurrently: the `sys.boot_completed` and `dev.bootcomplete`
+ * properties and the package manager service. Each probe polls with
+ * exponential back-off, starting fast so a quick boot is noticed within
+ * milliseconds. The first signal that reports ready ends the wait.
+ *
+ * Given an {@link AdbClient}, no adb processes are started: the device list
+ * pushed by `host:track-devices` replaces `wait-for-device`, and each poll
+ * queries all three signals in one command on a shell kept open for the
+ * whole wait.
+ */
+public class DeviceReadiness {
+    public static final String BOOT_COMPLETED = "sys.boot_completed";
+    public static final String DEV_BOOTCOMPLETE = "dev.bootcomplete";
+    public static final String PACKAGE_MANAGER = "package manager";
+
+    /**
+     * Runs a command such as `adb -s emulator-5554 shell ...` to completion,
+     * killing it after the timeout
+     */
+    public interface Launcher {
+        CommandRunner.Result run(long timeoutMillis, String... command) throws IOException, InterruptedException;
+    }
+
+    private static final long PROBE_TIMEOUT_MILLIS = 10000;
+    // One line per signal, so a single round-trip answers all of them
+    private static final String SIGNAL_QUERY = "echo " + BOOT_COMPLETED + "=$(getprop sys.boot_completed); "
+            + "echo " + DEV_BOOTCOMPLETE + "=$(getprop dev.bootcomplete); "
+            + "echo pm=$(pm path android 2>/dev/null)";
+
+    private final Launcher launcher;
+    private final AdbClient adb;
+    private final String serial;
+    private final long initialPollMillis;
+    private final long maxPollMillis;
+
+    /**
+     * @param launcher          Runs the adb commands
+     * @param serial            Device serial, e.g. `emulator-5554`
+     * @param initialPollMillis Delay after the first unsuccessful probe
+     * @param maxPollMillis     Cap on the doubling delay between probes
+     */
+    public DeviceReadiness(Launcher launcher, String serial, long initialPollMillis, long maxPollMillis) {
+        if (initialPollMillis < 1 || maxPollMillis < initialPollMillis) {
+            throw new IllegalArgumentException("Poll delays must satisfy 1 <= initial <= max: " + initialPollMillis
+                    + ", " + maxPollMillis);
+        }
+        this.launcher = launcher;
+        this.adb = null;
+        this.serial = serial;
+        this.initialPollMillis = initialPollMillis;
+        this.maxPollMillis = maxPollMillis;
+    }
+
+    /**
+     * Readiness over the adb server socket
+     *
+     * @param adb               Client for the adb server
+     * @param serial            Device serial, e.g. `emulator-5554`
+     * @param initialPollMillis Delay after the first unsuccessful poll
+     * @param maxPollMillis     Cap on the doubling delay between polls
+     */
+    public DeviceReadiness(AdbClient adb, String serial, long initialPollMillis, long maxPollMillis) {
+        if (initialPollMillis < 1 || maxPollMillis < initialPollMillis) {
+            throw new IllegalArgumentException("Poll delays must satisfy 1 <= initial <= max: " + initialPollMillis
+                    + ", " + maxPollMillis);
+        }
+        this.launcher = null;
+        this.adb = adb;
+        this.serial = serial;
+        this.initialPollMillis = initialPollMillis;
+        this.maxPollMillis = maxPollMillis;
+    }
+
+    /**
+     * Block until the device is online, in `adb wait-for-device` or on the
+     * device list pushed by the adb server.
+     *
+     * @return true if the device came online within the timeout
+     */
+    public boolean waitForDevice(long timeoutMillis) throws IOException, InterruptedException {
+        if (adb == null) {
+            return launcher.run(timeoutMillis, "adb", "-s", serial, "wait-for-device").isSuccess();
+        }
+        try (AdbClient.DeviceTracker tracker = adb.trackDevices()) {
+            return tracker.await(devices -> "device".equals(devices.get(serial)), timeoutMillis);
+        }
+    }
+
+    /**
+     * Wait until any boot signal reports the device ready.
+     *
+     * @return The signal that ended the wait, e.g. {@link #BOOT_COMPLETED}
+     * @throws RuntimeException if no signal reported ready within the timeout
+     */
+    public String waitForBoot(long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        if (adb != null) {
+            return pollShell(deadline, timeoutMillis);
+        }
+        List<Probe> probes = List.of(
+                new Probe(BOOT_COMPLETED, "1"::equals, "getprop", "sys.boot_completed"),
+                new Probe(DEV_BOOTCOMPLETE, "1"::equals, "getprop", "dev.bootcomplete"),
+                new Probe(PACKAGE_MANAGER, output -> output.startsWith("package:"), "pm", "path", "android"));
+
+        ExecutorService executor = Executors.newFixedThreadPool(probes.size(), runnable -> {
+            Thread thread = new Thread(runnable, "readiness-" + serial);
+            thread.setDaemon(true);
+            return thread;
+        });
+        CompletionService<String> completion = new ExecutorCompletionService<>(executor);
+        try {
+            for (Probe probe : probes) {
+                completion.submit(() -> poll(probe, deadline));
+            }
+            Throwable failure = null;
+            for (int i = 0; i < probes.size(); i++) {
+                Future<String> result = completion.take();
+                try {
+                    String signal = result.get();
+                    if (signal != null) {
+                        return signal;
+                    }
+                } catch (ExecutionException e) {
+                    failure = e.getCause();
+                }
+            }
+            throw new RuntimeException("Device " + serial + " did not report boot completion within "
+                    + timeoutMillis + " ms.", failure);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Query every signal on one device shell until one reports ready. A
+     * shell that fails (e.g. the device went offline) is reopened on the next
+     * poll.
+     */
+    private String pollShell(long deadline, long timeoutMillis) throws InterruptedException {
+        long delay = initialPollMillis;
+        AdbClient.Shell shell = null;
+        IOException failure = null;
+        try {
+            while (true) {
+                try {
+                    if (shell == null || !shell.isOpen()) {
+                        shell = adb.openShell(serial);
+                    }
+                    String signal = readySignal(shell.run(SIGNAL_QUERY, PROBE_TIMEOUT_MILLIS).getOutput());
+                    if (signal != null) {
+                        return signal;
+                    }
+                } catch (IOException e) {
+                    failure = e;
+                }
+                long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remainingMillis <= 0) {
+                    throw new RuntimeException("Device " + serial + " did not report boot completion within "
+                            + timeoutMillis + " ms.", failure);
+                }
+                Thread.sleep(Math.min(delay, remainingMillis));
+                delay = Math.min(delay * 2, maxPollMillis);
+            }
+        } finally {
+            if (shell != null) {
+                try {
+                    shell.close();
+                } catch (IOException e) {
+                    // Already closed by the device
+                }
+            }
+        }
+    }
+
+    /**
+     * The first signal in the output of {@link #SIGNAL_QUERY} that reports
+     * ready, or null
+     */
+    private static String readySignal(String output) {
+        String bootCompleted = null;
+        String devBootComplete = null;
+        String packageManager = null;
+        for (String line : output.split("\\R")) {
+            int separator = line.indexOf('=');
+            if (separator < 0) {
+                continue;
+            }
+            String value = line.substring(separator + 1).trim();
+            switch (line.substring(0, separator)) {
+                case BOOT_COMPLETED:
+                    bootCompleted = value;
+                    break;
+                case DEV_BOOTCOMPLETE:
+                    devBootComplete = value;
+                    break;
+                case "pm":
+                    packageManager = value;
+                    break;
+                default:
+                    break;
+            }
+        }
+        if ("1".equals(bootCompleted)) {
+            return BOOT_COMPLETED;
+        }
+        if ("1".equals(devBootComplete)) {
+            return DEV_BOOTCOMPLETE;
+        }
+        return packageManager != null && packageManager.startsWith("package:") ? PACKAGE_MANAGER : null;
+    }
+
+    /**
+     * Probe until ready or past the deadline.
+     *
+     * @return The probe name once ready, or null on timeout
+     */
+    private String poll(Probe probe, long deadline) throws IOException, InterruptedException {
+        long delay = initialPollMillis;
+        while (!Thread.currentThread().isInterrupted()) {
+            if (probe.isReady()) {
+                return probe.name;
+            }
+            long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remainingMillis <= 0) {
+                return null;
+            }
+            Thread.sleep(Math.min(delay, remainingMillis));
+            delay = Math.min(delay * 2, maxPollMillis);
+        }
+        return null;
+    }
+
+    /**
+     * One boot signal: a shell command and the output meaning ready
+     */
+    private final class Probe {
+        private final String name;
+        private final Predicate<String> ready;
+        private final String[] command;
+
+        Probe(String name, Predicate<String> ready, String... shellCommand) {
+            this.name = name;
+            this.ready = ready;
+            this.command = new String[shellCommand.length + 4];
+            command[0] = "adb";
+            command[1] = "-s";
+            command[2] = serial;
+            command[3] = "shell";
+            System.arraycopy(shellCommand, 0, command, 4, shellCommand.length);
+        }
+
+        /**
+         * Run the command once. An offline device, a failing command or a
+         * hung adb all count as not ready.
+         */
+        boolean isReady() throws IOException, InterruptedException {
+            CommandRunner.Result result = launcher.run(PROBE_TIMEOUT_MILLIS, command);
+            return result.isSuccess() && ready.test(result.getStdout().trim());
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package utils;
+
+/**
+ * One emulator instance: its AVD, its console/adb port pair and the health
+ * and boot metrics tracked by EmulatorManager and DevicePool.
+ *
+ * The emulator listens on an even console port and the next odd port for
+ * adb, and adb names it `emulator-<console port>`.
+ */
+public class EmulatorDevice {
+    public static final int MIN_CONSOLE_PORT = 5554;
+    public static final int MAX_CONSOLE_PORT = 5682;
+
+    public enum Health {
+        STARTING, HEALTHY, UNHEALTHY, FAILED
+    }
+
+    private final int index;
+    private final String avdName;
+    private final int consolePort;
+    private volatile Health health = Health.STARTING;
+    private volatile String bootMode;
+    private volatile long bootMillis;
+    private volatile String readySignal;
+    private volatile boolean appInstalledAtBoot;
+    private volatile int restarts;
+    private volatile long leases;
+    private volatile Process emulatorProcess;
+    private volatile EmulatorProfile profile;
+    private volatile long launchNanos;
+
+    /**
+     * @param index       Position in the pool, 0 for a single emulator
+     * @param avdName     AVD to boot
+     * @param consolePort Even console port between 5554 and 5682
+     */
+    public EmulatorDevice(int index, String avdName, int consolePort) {
+        if (consolePort % 2 != 0 || consolePort < MIN_CONSOLE_PORT || consolePort > MAX_CONSOLE_PORT) {
+            throw new IllegalArgumentException("Console port must be even and between " + MIN_CONSOLE_PORT + " and "
+                    + MAX_CONSOLE_PORT + ": " + consolePort);
+        }
+        this.index = index;
+        this.avdName = avdName;
+        this.consolePort = consolePort;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public String getAvdName() {
+        return avdName;
+    }
+
+    public int getConsolePort() {
+        return consolePort;
+    }
+
+    public int getAdbPort() {
+        return consolePort + 1;
+    }
+
+    /**
+     * adb serial, e.g. `emulator-5554`
+     */
+    public String getSerial() {
+        return "emulator-" + consolePort;
+    }
+
+    public Health getHealth() {
+        return health;
+    }
+
+    void setHealth(Health health) {
+        this.health = health;
+    }
+
+    /**
+     * Boot mode of the last boot: `snapshot` or `cold`
+     */
+    public String getBootMode() {
+        return bootMode;
+    }
+
+    /**
+     * Time from launching the emulator to boot completion in the last boot
+     */
+    public long getBootMillis() {
+        return bootMillis;
+    }
+
+    /**
+     * The boot signal that ended the last readiness wait
+     */
+    public String getReadySignal() {
+        return readySignal;
+    }
+
+    void recordBoot(String mode, long millis) {
+        this.bootMode = mode;
+        this.bootMillis = millis;
+    }
+
+    /**
+     * Launch profile of the last boot
+     */
+    public EmulatorProfile getProfile() {
+        return profile;
+    }
+
+    void recordLaunch(Process emulatorProcess, EmulatorProfile profile) {
+        this.emulatorProcess = emulatorProcess;
+        this.profile = profile;
+        this.launchNanos = System.nanoTime();
+    }
+
+    /**
+     * The running emulator process, or null once it is stopped
+     */
+    Process getEmulatorProcess() {
+        return emulatorProcess;
+    }
+
+    void clearEmulatorProcess() {
+        emulatorProcess = null;
+    }
+
+    long getLaunchNanos() {
+        return launchNanos;
+    }
+
+    void setReadySignal(String readySignal) {
+        this.readySignal = readySignal;
+    }
+
+    boolean isAppInstalledAtBoot() {
+        return appInstalledAtBoot;
+    }
+
+    void setAppInstalledAtBoot(boolean appInstalledAtBoot) {
+        this.appInstalledAtBoot = appInstalledAtBoot;
+    }
+
+    /**
+     * Number of times the pool restarted this emulator after a failed health
+     * check
+     */
+    public int getRestarts() {
+        return restarts;
+    }
+
+    void recordRestart() {
+        restarts++;
+    }
+
+    /**
+     * Number of times this emulator was leased
+     */
+    public long getLeases() {
+        return leases;
+    }
+
+    void recordLease() {
+        leases++;
+    }
+
+    @Override
+    public String toString() {
+        return getSerial() + " (" + avdName + ", " + health + ")";
+    }
+}
@@ -1,91 +1,270 @@
 package utils;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import io.appium.java_client.service.local.AppiumDriverLocalService;
 import io.appium.java_client.service.local.AppiumServiceBuilder;
 import io.appium.java_client.service.local.flags.GeneralServerFlag;
-import io.github.cdimascio.dotenv.Dotenv;
 
+/**
+ * Android emulator and Appium server lifecycle for the mobile suite.
+ *
+ * Settings are read through ConfigUtils on every call, so System Properties
+ * set by a test take effect without restarting the JVM. The Android tools are
+ * looked up in ANDROID_TOOLS_PATH first and on the PATH otherwise.
+ */
 public class EmulatorManager {
     private static AppiumDriverLocalService appiumService;
-    private static final Dotenv dotenv = Dotenv.configure().load();
-    private static final String EMULATOR_NAME = dotenv.get("EMULATOR_NAME");
-    private static final String DEVICE_PROFILE = dotenv.get("DEVICE_PROFILE");
-    private static final String LOCAL_IMAGE_PATH = dotenv.get("LOCAL_IMAGE_PATH");
-    private static final String SDK_SYSTEM_IMAGES_PATH = System.getProperty("user.home")
-            + "/Library/Android/sdk/system-images/";
-    private static final String APK_URL_STRING = dotenv.get("APK_PATH");
+    // Boot metrics of the last emulator boot
+    private static volatile String lastBootMode;
+    private static volatile long lastBootMillis;
+    private static volatile String lastReadySignal;
+    private static volatile SetupGraph.Report lastSetupReport;
+    // The single emulator outside a DevicePool, so stopEmulator() can reach its process
+    private static volatile EmulatorDevice startedDefaultDevice;
+    private static AdbClient.DeviceTracker deviceTracker;
+    private static int deviceTrackerPort;
+    private static final Map<String, DeviceLogs> deviceLogs = new ConcurrentHashMap<>();
+    private static final Map<String, EmulatorProfile.Stats> profileStats = new ConcurrentHashMap<>();
+    private static final String DEFAULT_APK_DIR = "src/test/resources/binaries/android";
+    // Written next to the app on the device after an install, see installApk
+    private static final String APK_HASH_DIR = "/data/local/tmp";
+    // Setup step names, see setupEmulatorAndInstallApp
+    static final String IMAGE_SYNC_STEP = "image sync";
+    static final String ADB_SERVER_STEP = "adb server";
+    static final String AVD_STEP = "avd ";
+    static final String BOOT_STEP = "boot ";
+    static final String INSTALL_STEP = "install ";
+
+    private static String emulatorName() {
+        return ConfigUtils.get("EMULATOR_NAME");
+    }
+
+    /**
+     * The single emulator used outside a DevicePool: EMULATOR_NAME on console
+     * port EMULATOR_PORT (5554)
+     */
+    public static EmulatorDevice defaultDevice() {
+        return new EmulatorDevice(0, emulatorName(), ConfigUtils.getInt("EMULATOR_PORT", 5554));
+    }
+
+    /**
+     * The default device as last started, which knows its emulator process,
+     * unless the configuration now names another port
+     */
+    private static EmulatorDevice startedDefaultDevice() {
+        EmulatorDevice device = defaultDevice();
+        EmulatorDevice started = startedDefaultDevice;
+        return started != null && started.getSerial().equals(device.getSerial()) ? started : device;
+    }
+
+    private static String localImagePath() {
+        return ConfigUtils.get("LOCAL_IMAGE_PATH");
+    }
+
+    /**
+     * APK_PATH, or else the most recently modified APK in
+     * src/test/resources/binaries/android
+     */
+    private static String apkPath() {
+        String configured = ConfigUtils.get("APK_PATH");
+        if (configured != null && !configured.isBlank()) {
+            return configured;
+        }
+        File[] apks = new File(DEFAULT_APK_DIR).listFiles((dir, name) -> name.endsWith(".apk"));
+        if (apks == null || apks.length == 0) {
+            return null;
+        }
+        Arrays.sort(apks, Comparator.comparingLong(File::lastModified).reversed());
+        return apks[0].getPath();
+    }
+
+    /**
+     * Directory holding the AVDs (ANDROID_AVD_HOME, as used by the Android
+     * tools themselves)
+     */
+    private static Path avdHome() {
+        return Paths.get(ConfigUtils.get("ANDROID_AVD_HOME", System.getProperty("user.home") + "/.android/avd"));
+    }
+
+    /**
+     * Resolve an Android tool from ANDROID_TOOLS_PATH, falling back to the
+     * PATH.
+     */
+    private static String tool(String name) {
+        String toolsPath = ConfigUtils.get("ANDROID_TOOLS_PATH");
+        if (toolsPath != null && !toolsPath.isEmpty()) {
+            for (String directory : toolsPath.split(File.pathSeparator)) {
+                File candidate = new File(directory, name);
+                if (candidate.canExecute()) {
+                    return candidate.getAbsolutePath();
+                }
+            }
+        }
+        return name;
+    }
+
+    /**
+     * Readiness detection for the emulator, polling with
+     * EMULATOR_POLL_INITIAL_MS doubling up to EMULATOR_POLL_MAX_MS
+     */
+    private static DeviceReadiness readiness(EmulatorDevice device) {
+        long initialPollMillis = ConfigUtils.getLong("EMULATOR_POLL_INITIAL_MS", 50);
+        long maxPollMillis = ConfigUtils.getLong("EMULATOR_POLL_MAX_MS", 1000);
+        AdbClient adb = adbClient();
+        return adb != null ? new DeviceReadiness(adb, device.getSerial(), initialPollMillis, maxPollMillis)
+                : new DeviceReadiness(EmulatorManager::execute, device.getSerial(), initialPollMillis, maxPollMillis);
+    }
+
+    /**
+     * A client for the running adb server, or null to use adb processes:
+     * with ADB_TRANSPORT=process or while no server answers
+     */
+    private static AdbClient adbClient() {
+        if ("process".equalsIgnoreCase(ConfigUtils.get("ADB_TRANSPORT", "socket"))) {
+            return null;
+        }
+        AdbClient client = AdbClient.fromConfig();
+        return client.isServerRunning() ? client : null;
+    }
+
+    /**
+     * The shared device list pushed by the adb server, reconnected when the
+     * server restarted or its port changed
+     */
+    private static synchronized AdbClient.DeviceTracker deviceTracker(AdbClient adb) throws IOException {
+        if (deviceTracker == null || !deviceTracker.isOpen() || deviceTrackerPort != adb.getPort()) {
+            if (deviceTracker != null) {
+                deviceTracker.close();
+            }
+            deviceTracker = adb.trackDevices();
+            deviceTrackerPort = adb.getPort();
+        }
+        return deviceTracker;
+    }
+
+    /**
+     * Environment of the Android tools: the SDK root and the AVD home, so
+     * avdmanager, the emulator and adb agree on them, and the adb server port
+     * if configured
+     */
+    private static Map<String, String> toolEnvironment() {
+        Map<String, String> environment = new HashMap<>();
+        environment.put("ANDROID_SDK_ROOT", SystemImage.sdkRoot().toString());
+        environment.put("ANDROID_HOME", SystemImage.sdkRoot().toString());
+        environment.put("ANDROID_AVD_HOME", avdHome().toString());
+        String adbPort = ConfigUtils.get("ANDROID_ADB_SERVER_PORT");
+        if (adbPort != null) {
+            environment.put("ANDROID_ADB_SERVER_PORT", adbPort);
+        }
+        return environment;
+    }
+
+    /**
+     * Run an Android tool through the shared CommandRunner, killing it after
+     * the timeout.
+     */
+    private static CommandRunner.Result execute(long timeoutMillis, String... command)
+            throws IOException, InterruptedException {
+        // Resolve the tool in a copy, so the caller's array can be run again
+        String[] resolved = command.clone();
+        resolved[0] = tool(resolved[0]);
+        return CommandRunner.shared().run(toolEnvironment(), timeoutMillis, resolved);
+    }
+
+    /**
+     * Run an Android tool to completion within ADB_COMMAND_TIMEOUT_SECONDS
+     * (30).
+     *
+     * @return Its standard output and error
+     * @throws RuntimeException if it failed or timed out
+     */
+    private static String run(String... command) throws IOException, InterruptedException {
+        return execute(commandTimeoutMillis(), command).orThrow().getOutput();
+    }
+
+    private static long commandTimeoutMillis() {
+        return ConfigUtils.getLong("ADB_COMMAND_TIMEOUT_SECONDS", 30) * 1000;
+    }
 
     /**
      * Verify that the local system image exists
      */
     private static void verifyLocalImagePath() {
-        File imageDir = new File(LOCAL_IMAGE_PATH);
+        File imageDir = new File(localImagePath());
         if (!imageDir.exists() || !imageDir.isDirectory()) {
-            throw new RuntimeException("System image directory not found at: " + LOCAL_IMAGE_PATH);
+            throw new RuntimeException("System image directory not found at: " + localImagePath());
         }
     }
 
     /**
-     * Copy the local system image to the SDK system-images directory.
+     * Sync the local system image into the SDK system-images directory,
+     * transferring only files that changed since the last sync.
      */
     public static void linkSystemImage() throws IOException {
         System.out.println("Linking system image from project directory...");
         verifyLocalImagePath();
 
-        Path targetDir = Paths.get(SDK_SYSTEM_IMAGES_PATH, "android-35/google_apis_playstore/arm64-v8a");
-        Path sourceDir = Paths.get(LOCAL_IMAGE_PATH);
+        ImageSync.Result result = ImageSync.fromConfig(Paths.get(localImagePath()), systemImageDir()).sync();
+        System.out.println("System image linked successfully: " + result);
+    }
 
-        // Ensure target directory exists
-        if (!Files.exists(targetDir)) {
-            Files.createDirectories(targetDir);
-        }
+    /**
+     * Directory of SYSTEM_IMAGE in the SDK of this host, see
+     * {@link SystemImage}
+     */
+    private static Path systemImageDir() {
+        return SystemImage.fromConfig().resolve(SystemImage.sdkRoot());
+    }
 
-        // Copy files from source to target
-        Files.walk(sourceDir).forEach(sourcePath -> {
-            try {
-                Path targetPath = targetDir.resolve(sourceDir.relativize(sourcePath));
-                if (Files.isDirectory(sourcePath)) {
-                    if (!Files.exists(targetPath)) {
-                        Files.createDirectories(targetPath);
-                    }
-                } else {
-                    Files.copy(sourcePath, targetPath, StandardCopyOption.REPLACE_EXISTING);
-                }
-            } catch (IOException e) {
-                throw new RuntimeException("Failed to copy system image files.", e);
-            }
-        });
-        System.out.println("System image linked successfully.");
+    /**
+     * Whether a system image is already in the SDK from an earlier run, so
+     * AVDs can be created while it is synced
+     */
+    static boolean isSystemImageInstalled() {
+        return Files.exists(systemImageDir().resolve("source.properties"));
     }
 
     /**
      * Create a new emulator if it does not exist
      */
     public static void createEmulator() throws IOException, InterruptedException {
+        createEmulator(emulatorName());
+    }
+
+    /**
+     * Create the named AVD if it does not exist
+     */
+    public static void createEmulator(String avdName) throws IOException, InterruptedException {
         System.out.println("Checking if emulator exists...");
-        File avdFolder = new File(System.getProperty("user.home") + "/.android/avd/" + EMULATOR_NAME + ".avd");
+        File avdFolder = avdHome().resolve(avdName + ".avd").toFile();
         if (avdFolder.exists()) {
-            System.out.println("Emulator already exists: " + EMULATOR_NAME);
+            System.out.println("Emulator already exists: " + avdName);
             return;
         }
 
         System.out.println("Creating new emulator...");
+        SystemImage image = SystemImage.fromConfig();
         String[] command = {
                 "avdmanager", "create", "avd",
-                "--name", EMULATOR_NAME,
-                "--device", DEVICE_PROFILE,
+                "--name", avdName,
+                "--device", ConfigUtils.get("DEVICE_PROFILE"),
                 "--force",
-                "--package", "system-images;android-35;google_apis_playstore;arm64-v8a", // Ensure this path is correct
-                "--abi", "google_apis_playstore/arm64-v8a" // Specify the ABI explicitly
-
+                "--package", image.getPackage(),
+                "--abi", image.getAvdAbi() // Specify the ABI explicitly
         };
 
         System.out.println("Executing command:");
@@ -94,144 +273,333 @@ public class EmulatorManager {
         }
         System.out.println();
 
-        Process process = Runtime.getRuntime().exec(command);
+        CommandRunner.Result result = execute(ConfigUtils.getLong("AVD_CREATE_TIMEOUT_SECONDS", 120) * 1000, command);
 
-        // Capture and log standard output and error streams
-        try (BufferedReader stdOutput = new BufferedReader(new InputStreamReader(process.getInputStream()));
-                BufferedReader stdError = new BufferedReader(new InputStreamReader(process.getErrorStream()))) {
+        // Log standard output and error streams
+        System.out.println("Command Output:");
+        System.out.print(result.getStdout());
+        System.out.println("Command Errors:");
+        System.err.print(result.getStderr());
 
-            System.out.println("Command Output:");
-            stdOutput.lines().forEach(System.out::println);
-
-            System.out.println("Command Errors:");
-            stdError.lines().forEach(System.err::println);
-        }
-
-        process.waitFor();
-
-        if (process.exitValue() != 0) {
-            throw new RuntimeException("Failed to create emulator. Exit code: " + process.exitValue());
+        if (!result.isSuccess()) {
+            throw new RuntimeException(result.isTimedOut() ? "Timed out creating emulator after "
+                    + result.getMillis() + " ms" : "Failed to create emulator. Exit code: " + result.getExitCode());
         }
 
         System.out.println("Emulator created successfully.");
     }
 
+    /**
+     * Boot the emulator. With EMULATOR_BOOT_MODE=snapshot (the default) it is
+     * booted from the golden snapshot when one exists for the current APK and
+     * system image. Otherwise it is cold booted with wiped data, the APK is
+     * installed and the golden snapshot is saved for the next run. With
+     * EMULATOR_BOOT_MODE=cold every boot is a wipe-data cold boot.
+     */
     public static void startEmulator() throws IOException, InterruptedException {
-        System.out.println("Restarting ADB server...");
-
-        // Restart ADB server to ensure a clean state
-        restartADBServer();
-
-        System.out.println("Starting emulator...");
-        String command = String.format("emulator @%s -no-snapshot-load -wipe-data", EMULATOR_NAME);
+        ensureADBServer();
+        startedDefaultDevice = defaultDevice();
+        startEmulator(startedDefaultDevice);
+    }
 
-        // Start emulator and capture logs
-        Process process = Runtime.getRuntime().exec(command);
-        BufferedReader inputReader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-        BufferedReader errorReader = new BufferedReader(new InputStreamReader(process.getErrorStream()));
+    /**
+     * Boot one emulator as described in {@link #startEmulator()}, without
+     * restarting the ADB server other emulators may be using.
+     */
+    public static void startEmulator(EmulatorDevice device) throws IOException, InterruptedException {
+        device.setAppInstalledAtBoot(false);
+        EmulatorProfile profile = EmulatorProfile.fromConfig();
+
+        if (!"snapshot".equalsIgnoreCase(ConfigUtils.get("EMULATOR_BOOT_MODE", "snapshot"))) {
+            bootEmulator(device, profile, "cold", "-no-snapshot-load", "-wipe-data");
+            waitForUiStabilization();
+            System.out.println(device.getSerial() + " is running and ready for further actions.");
+            return;
+        }
 
-        // Threads to capture emulator logs
-        Thread logThread = createLogThread("Emulator Log", inputReader);
-        Thread errorLogThread = createLogThread("Emulator Error", errorReader);
+        GoldenSnapshot snapshot = new GoldenSnapshot(avdHome().resolve(device.getAvdName() + ".avd"),
+                ConfigUtils.get("EMULATOR_SNAPSHOT_NAME", "golden"));
+        String fingerprint = GoldenSnapshot.fingerprint(apkPath() == null ? null : Paths.get(apkPath()),
+                localImagePath() == null ? null : Paths.get(localImagePath()), profile.getSnapshotKey());
+        if (snapshot.isValid(fingerprint)) {
+            try {
+                // The snapshot was taken after stabilization, so no settle delay is needed
+                bootEmulator(device, profile, "snapshot", "-snapshot", snapshot.getName(), "-no-snapshot-save");
+                device.setAppInstalledAtBoot(true);
+                System.out.println(device.getSerial() + " is running and ready for further actions.");
+                return;
+            } catch (RuntimeException e) {
+                System.err.println("Booting " + device.getSerial() + " from snapshot " + snapshot.getName()
+                        + " failed, falling back to a cold boot: " + e.getMessage());
+                snapshot.invalidate();
+                // bootEmulator killed its processes already; wait until adb has dropped the serial
+                try {
+                    stopEmulator(device);
+                    waitForEmulatorExit(device, 60);
+                } catch (RuntimeException stopFailure) {
+                    // e.g. "no emulator detected" when it never reached adb
+                    System.err.println("Stopping " + device.getSerial() + " failed: " + stopFailure.getMessage());
+                }
+            }
+        } else {
+            System.out.println("Snapshot " + snapshot.getName()
+                    + " is missing or was taken with another APK or system image, creating it...");
+        }
 
-        logThread.start();
-        errorLogThread.start();
+        bootEmulator(device, profile, "cold", "-no-snapshot-load", "-wipe-data");
+        waitForUiStabilization();
+        installApk(device);
+        long saveStart = System.currentTimeMillis();
+        run("adb", "-s", device.getSerial(), "emu", "avd", "snapshot", "save", snapshot.getName());
+        snapshot.markSaved(fingerprint);
+        device.setAppInstalledAtBoot(true);
+        System.out.println("Saved snapshot " + snapshot.getName() + " of " + device.getAvdName() + " in "
+                + (System.currentTimeMillis() - saveStart) + " ms");
+        System.out.println(device.getSerial() + " is running and ready for further actions.");
+    }
 
-        System.out.println("Waiting for emulator to initialize...");
-        boolean emulatorStarted = waitForEmulatorInADB(120); // Wait up to 120 seconds
-        if (!emulatorStarted) {
-            throw new RuntimeException(
-                    "Emulator did not appear in ADB devices. Ensure the emulator is starting properly.");
+    /**
+     * Launch the emulator with the profile's and the given boot options and
+     * wait until it has booted, logging the boot time and the host CPU time
+     * and memory the emulator used for it.
+     */
+    private static void bootEmulator(EmulatorDevice device, EmulatorProfile profile, String mode, String... options)
+            throws IOException, InterruptedException {
+        System.out.println("Starting " + device.getAvdName() + " as " + device.getSerial() + " (" + mode
+                + " boot, profile " + profile + ")...");
+        long start = System.currentTimeMillis();
+        List<String> command = new ArrayList<>(List.of(tool("emulator"), "@" + device.getAvdName(), "-port",
+                String.valueOf(device.getConsolePort())));
+        command.addAll(profile.getOptions());
+        command.addAll(Arrays.asList(options));
+
+        // Start emulator, its output going to the log file in the background
+        LogCapture output = logs(device).getEmulator();
+        System.out.println("Emulator output of " + device.getSerial() + " is captured in " + output.getFile());
+        Process emulator = CommandRunner.shared().start(toolEnvironment(), output::offer, output::offer,
+                command.toArray(new String[0]));
+        device.recordLaunch(emulator, profile);
+
+        try {
+            awaitReady(device);
+        } catch (RuntimeException | IOException | InterruptedException e) {
+            // A half-booted emulator would keep its console and adb ports from the next launch
+            CommandRunner.killTree(emulator);
+            device.clearEmulatorProcess();
+            throw e;
         }
+        ProcessUsage usage = ProcessUsage.of(emulator.toHandle());
+        startLogcat(device);
+
+        long bootMillis = System.currentTimeMillis() - start;
+        device.recordBoot(mode, bootMillis);
+        profileStats(profile).recordBoot(bootMillis, usage);
+        lastBootMode = mode;
+        lastBootMillis = bootMillis;
+        System.out.println("Emulator boot (" + mode + ") of " + device.getSerial() + ": " + bootMillis + " ms, "
+                + usage + " (" + profile.getName() + ")");
+    }
 
-        System.out.println("Emulator detected. Checking for boot completion...");
-        waitForEmulatorBoot(120); // Wait up to 120 seconds for boot completion
-
-        System.out.println("Waiting for emulator UI stabilization...");
-        Thread.sleep(10000); // Stabilization delay for UI
+    private static EmulatorProfile.Stats profileStats(EmulatorProfile profile) {
+        return profileStats.computeIfAbsent(profile.toString(), key -> new EmulatorProfile.Stats());
+    }
 
-        // Join log threads with a timeout to ensure they don't block indefinitely
-        logThread.join(5000); // 5 seconds timeout
-        errorLogThread.join(5000); // 5 seconds timeout
+    /**
+     * Boot time and host usage per launch profile, sorted by profile
+     */
+    public static Map<String, EmulatorProfile.Stats> getProfileStats() {
+        return Collections.unmodifiableMap(new TreeMap<>(profileStats));
+    }
 
-        System.out.println("Emulator is running and ready for further actions.");
+    /**
+     * One line per launch profile: boots, boot time percentiles, mean host
+     * CPU time per boot, peak resident memory of one emulator and the host
+     * cores one emulator kept busy on average
+     */
+    public static String profileReport() {
+        StringBuilder report = new StringBuilder(String.format("%6s %8s %8s %8s %10s %8s %6s  %s%n", "boots",
+                "mean", "p50", "max", "boot cpu", "rss MB", "load", "profile"));
+        getProfileStats().forEach((profile, stats) -> {
+            LatencyHistogram bootTimes = stats.getBootTimes();
+            report.append(String.format("%6d %8.0f %8.0f %8.0f %10.0f %8s %6.2f  %s%n", stats.getBoots(),
+                    bootTimes.getMeanMicros() / 1000.0, bootTimes.getValueAtPercentile(50) / 1000.0,
+                    bootTimes.getMaxMicros() / 1000.0, stats.getMeanBootCpuMillis(),
+                    stats.getMaxResidentBytes() < 0 ? "-" : String.valueOf(stats.getMaxResidentBytes() >> 20),
+                    stats.getMeanCores(), profile));
+        });
+        return report.toString();
     }
 
     /**
-     * Creates a thread to print logs from a BufferedReader.
+     * The logs of a device, under LOG_DIR (target/logs). They are kept across
+     * restarts of the device and reopened when LOG_DIR changes.
      */
-    private static Thread createLogThread(String logType, BufferedReader reader) {
-        return new Thread(() -> {
+    public static DeviceLogs logs(EmulatorDevice device) {
+        Path directory = Paths.get(ConfigUtils.get("LOG_DIR", "target/logs")).resolve(device.getSerial())
+                .toAbsolutePath();
+        return deviceLogs.compute(device.getSerial(), (serial, logs) -> {
+            if (logs != null && logs.getDirectory().equals(directory) && logs.getEmulator().isOpen()) {
+                return logs;
+            }
             try {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    System.out.println(logType + ": " + line);
+                if (logs != null) {
+                    logs.close();
                 }
+                return new DeviceLogs(directory);
             } catch (IOException e) {
-                e.printStackTrace();
+                throw new RuntimeException("Failed to open the logs of " + serial + " in " + directory, e);
             }
         });
     }
 
     /**
-     * Waits for the emulator to appear in ADB devices.
-     * 
-     * @param timeoutSeconds Maximum time to wait in seconds.
-     * @return true if the emulator is detected, false otherwise.
-     */
-    private static boolean waitForEmulatorInADB(int timeoutSeconds) throws IOException, InterruptedException {
-        long startTime = System.currentTimeMillis();
-        long timeout = timeoutSeconds * 1000;
-
-        while (System.currentTimeMillis() - startTime < timeout) {
-            Process process = Runtime.getRuntime().exec("adb devices");
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    if (line.startsWith("emulator-5554")) {
-                        System.out.println("Emulator detected in ADB devices.");
-                        return true;
-                    }
-                }
+     * Stream `adb logcat` of a booted device into its logs, keeping the
+     * messages that pass LOGCAT_FILTER (`*:I`), logcat filter specs such as
+     * `ActivityManager:I MyApp:D *:S`. Off with LOGCAT_CAPTURE=false.
+     */
+    private static void startLogcat(EmulatorDevice device) throws IOException {
+        if (!ConfigUtils.getBoolean("LOGCAT_CAPTURE", true)) {
+            return;
+        }
+        DeviceLogs logs = logs(device);
+        String[] filters = ConfigUtils.get("LOGCAT_FILTER", "*:I").trim().split("\\s+");
+        String[] command = new String[filters.length + 6];
+        command[0] = tool("adb");
+        command[1] = "-s";
+        command[2] = device.getSerial();
+        command[3] = "logcat";
+        command[4] = "-v";
+        command[5] = "threadtime";
+        System.arraycopy(filters, 0, command, 6, filters.length);
+        LogCapture logcat = logs.getLogcat();
+        logs.startLogcat(CommandRunner.shared().start(toolEnvironment(), logcat::offer, logcat::offer, command));
+    }
+
+    /**
+     * Stop the logcat of a device and write out its logs
+     */
+    static void closeLogs(EmulatorDevice device) {
+        DeviceLogs logs = deviceLogs.remove(device.getSerial());
+        if (logs != null) {
+            try {
+                logs.close();
+            } catch (IOException e) {
+                System.err.println("Failed to close the logs of " + device.getSerial() + ": " + e.getMessage());
             }
-            Thread.sleep(5000); // Retry every 5 seconds
         }
-        return false;
+    }
+
+    private static void waitForUiStabilization() throws InterruptedException {
+        long stabilizationMillis = ConfigUtils.getLong("EMULATOR_STABILIZATION_MS", 0);
+        if (stabilizationMillis > 0) {
+            System.out.println("Waiting for emulator UI stabilization...");
+            Thread.sleep(stabilizationMillis); // Stabilization delay for UI
+        }
+    }
+
+    /**
+     * Boot mode of the last emulator boot: `snapshot` or `cold`
+     */
+    public static String getLastBootMode() {
+        return lastBootMode;
+    }
+
+    /**
+     * Time from launching the emulator to boot completion in the last
+     * emulator boot
+     */
+    public static long getLastBootMillis() {
+        return lastBootMillis;
+    }
+
+    /**
+     * The boot signal that ended the last readiness wait, e.g.
+     * {@link DeviceReadiness#BOOT_COMPLETED}
+     */
+    public static String getLastReadySignal() {
+        return lastReadySignal;
+    }
+
+    /**
+     * Step timings of the last {@link #setupEmulatorAndInstallApp()}, or null
+     */
+    public static SetupGraph.Report getLastSetupReport() {
+        return lastSetupReport;
+    }
+
+    /**
+     * Wait until the emulator is online in adb and reports boot completion
+     * through any of its boot signals, within EMULATOR_BOOT_TIMEOUT_SECONDS.
+     */
+    private static void awaitReady(EmulatorDevice device) throws IOException, InterruptedException {
+        long timeoutMillis = ConfigUtils.getLong("EMULATOR_BOOT_TIMEOUT_SECONDS", 120) * 1000;
+        long start = System.currentTimeMillis();
+        DeviceReadiness readiness = readiness(device);
+
+        System.out.println("Waiting for " + device.getSerial() + " to come online...");
+        if (!readiness.waitForDevice(timeoutMillis)) {
+            throw new RuntimeException(device.getSerial()
+                    + " did not appear in ADB devices. Ensure the emulator is starting properly.");
+        }
+
+        System.out.println(device.getSerial() + " detected. Checking for boot completion...");
+        long remainingMillis = Math.max(0, timeoutMillis - (System.currentTimeMillis() - start));
+        String signal = readiness.waitForBoot(remainingMillis);
+        device.setReadySignal(signal);
+        lastReadySignal = signal;
+        System.out.println(device.getSerial() + " boot process completed (" + signal + ").");
     }
 
     /**
-     * Waits for the emulator to complete the boot process.
-     * 
+     * Waits for the emulator to disappear from ADB devices after being stopped.
+     *
      * @param timeoutSeconds Maximum time to wait in seconds.
      */
-    private static void waitForEmulatorBoot(int timeoutSeconds) throws IOException, InterruptedException {
-        long startTime = System.currentTimeMillis();
-        long timeout = timeoutSeconds * 1000;
-
-        while (System.currentTimeMillis() - startTime < timeout) {
-            Process bootCheck = Runtime.getRuntime().exec("adb -s emulator-5554 shell getprop sys.boot_completed");
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(bootCheck.getInputStream()))) {
-                String bootOutput = reader.readLine();
-                if ("1".equals(bootOutput)) {
-                    System.out.println("Emulator boot process completed.");
-                    return;
-                }
+    static void waitForEmulatorExit(EmulatorDevice device, int timeoutSeconds)
+            throws IOException, InterruptedException {
+        AdbClient adb = adbClient();
+        if (adb != null) {
+            // Woken by the server's device list update instead of polling
+            if (!deviceTracker(adb).await(devices -> !devices.containsKey(device.getSerial()),
+                    timeoutSeconds * 1000L)) {
+                throw new RuntimeException(device.getSerial() + " did not shut down within " + timeoutSeconds
+                        + " seconds.");
             }
-            System.out.println("Emulator boot not completed yet. Retrying...");
-            Thread.sleep(5000); // Retry every 5 seconds
+            return;
+        }
+        long deadline = System.currentTimeMillis() + timeoutSeconds * 1000L;
+        while (isEmulatorListedInADB(device.getSerial())) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new RuntimeException(device.getSerial() + " did not shut down within " + timeoutSeconds
+                        + " seconds.");
+            }
+            Thread.sleep(500);
         }
-        throw new RuntimeException("Emulator failed to boot within the timeout period.");
     }
 
     /**
-     * Restart ADB server to ensure no stale connections exist.
+     * Start the ADB server unless one is already running. With
+     * ADB_RESTART_SERVER=true it is restarted instead, as before.
      */
-    private static void restartADBServer() throws IOException, InterruptedException {
-        Process adbKill = Runtime.getRuntime().exec("adb kill-server");
-        adbKill.waitFor();
+    static void ensureADBServer() throws IOException, InterruptedException {
+        if (ConfigUtils.getBoolean("ADB_RESTART_SERVER", false)) {
+            System.out.println("Restarting ADB server...");
+            restartADBServer();
+        } else if (AdbClient.fromConfig().isServerRunning()) {
+            System.out.println("ADB server is already running.");
+        } else {
+            run("adb", "start-server");
+            System.out.println("ADB server started successfully.");
+        }
+    }
 
-        Process adbStart = Runtime.getRuntime().exec("adb start-server");
-        adbStart.waitFor();
+    /**
+     * Restart ADB server to ensure no stale connections exist.
+     */
+    static void restartADBServer() throws IOException, InterruptedException {
+        // Fails harmlessly when no server is running
+        execute(commandTimeoutMillis(), "adb", "kill-server");
+        run("adb", "start-server");
         System.out.println("ADB server restarted successfully.");
     }
 
@@ -241,106 +609,203 @@ public class EmulatorManager {
      * @return true if the emulator is listed, false otherwise.
      * @throws IOException If an I/O error occurs during ADB execution.
      */
-    private static boolean isEmulatorListedInADB() throws IOException {
-        Process process = Runtime.getRuntime().exec("adb devices");
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (line.startsWith("emulator-5554")) { // Adjust if using a different emulator port
-                    System.out.println("Emulator detected in ADB devices.");
-                    return true;
-                }
+    private static boolean isEmulatorListedInADB(String serial) throws IOException, InterruptedException {
+        AdbClient adb = adbClient();
+        if (adb != null) {
+            return adb.devices().containsKey(serial);
+        }
+        for (String line : run("adb", "devices").split("\\R")) {
+            if (line.startsWith(serial + "\t")) {
+                System.out.println(serial + " detected in ADB devices.");
+                return true;
             }
         }
         return false;
     }
 
     /**
-     * Wait for the emulator to be ready
+     * Wait for an already started emulator to be ready
      */
     public static void waitForEmulator() throws IOException, InterruptedException {
-        System.out.println("Waiting for emulator to boot...");
-        long startTime = System.currentTimeMillis();
-        long timeout = 300000; // 5 minutes
-
-        while (System.currentTimeMillis() - startTime < timeout) {
-            System.out.println("Checking ADB for connected devices...");
-            Process process = Runtime.getRuntime().exec("adb devices");
-            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-            StringBuilder builder = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                builder.append(line).append(System.lineSeparator());
-            }
-            String output = builder.toString();
-            System.out.println("ADB Devices Output: " + output);
-
-            if (output.contains("emulator-5554")) {
-                System.out.println("Emulator detected. Checking if boot completed...");
-                Process bootCheck = Runtime.getRuntime().exec("adb -s emulator-5554 shell getprop sys.boot_completed");
-                BufferedReader bootReader = new BufferedReader(new InputStreamReader(bootCheck.getInputStream()));
-                StringBuilder bootBuilder = new StringBuilder();
-                while ((line = bootReader.readLine()) != null) {
-                    bootBuilder.append(line);
-                }
-                String bootOutput = bootBuilder.toString();
-                System.out.println("Boot Check Output: " + bootOutput);
+        awaitReady(defaultDevice());
+        waitForUiStabilization();
+    }
+
+    public static void installApk() throws IOException, InterruptedException {
+        installApk(defaultDevice());
+    }
+
+    /**
+     * Install the APK on one emulator, unless the same APK is already
+     * installed there.
+     *
+     * One adb query returns the installed version code and the SHA-256 marker
+     * left on the device by the last install. The install is skipped when both
+     * match the APK. Otherwise it is installed with APK_INSTALL_MODE:
+     * `streaming` (default) streams the APK to the package manager instead of
+     * pushing it first, `incremental` installs incrementally (needs a v4
+     * signature next to the APK) and `legacy` pushes then installs.
+     *
+     * @return Whether the APK was installed
+     */
+    public static boolean installApk(EmulatorDevice device) throws IOException, InterruptedException {
+        if (apkPath() == null) {
+            throw new IllegalStateException("No APK to install. Set APK_PATH or place one in " + DEFAULT_APK_DIR);
+        }
+        ApkInfo apk = ApkInfo.read(Paths.get(apkPath()));
+        if (isApkInstalled(device, apk)) {
+            System.out.println(apk + " is already installed on " + device.getSerial() + ", skipping install.");
+            return false;
+        }
+        System.out.println("Preparing to install " + apk + " on " + device.getSerial() + "...");
 
-                if ("1".equals(bootOutput.trim())) {
-                    System.out.println("Emulator is fully booted.");
+        long start = System.currentTimeMillis();
+        String[] command = { "adb", "-s", device.getSerial(), "install", "-r", installModeFlag(),
+                apk.getPath().toString() };
+        System.out.println("Executing command: " + String.join(" ", command));
+        CommandRunner.Result result = execute(ConfigUtils.getLong("APK_INSTALL_TIMEOUT_SECONDS", 300) * 1000,
+                command);
 
-                    // Adding stabilization delay
-                    System.out.println("Waiting for UI stabilization...");
-                    Thread.sleep(10000); // Wait for 10 seconds
+        System.out.println("APK Installation Output: " + result.getStdout().trim());
+        System.err.println("APK Installation Errors: " + result.getStderr().trim());
 
-                    return;
-                } else {
-                    System.out.println("Boot output indicates incomplete boot: " + bootOutput.trim());
-                }
-            }
-            System.out.println("Emulator not ready. Retrying in 5 seconds...");
-            Thread.sleep(5000); // Retry every 5 seconds
+        if (!result.isSuccess()) {
+            throw new RuntimeException(result.isTimedOut() ? "Timed out installing APK after " + result.getMillis()
+                    + " ms" : "Failed to install APK. Exit code: " + result.getExitCode());
         }
+        shell(device, "echo " + apk.getSha256() + " > " + apkHashFile(apk));
 
-        throw new RuntimeException("Emulator failed to boot within the timeout period.");
+        System.out.println("APK installed successfully on " + device.getSerial() + " in "
+                + (System.currentTimeMillis() - start) + " ms.");
+        return true;
     }
 
-    public static void installApk() throws IOException, InterruptedException {
-        System.out.println("Preparing to install APK...");
-
-        String command = String.format("adb -s emulator-5554 install -r %s", APK_URL_STRING);
-        System.out.println("Executing command: " + command);
-        Process process = Runtime.getRuntime().exec(command);
+    /**
+     * Whether this exact APK is installed on the device, in a single adb call
+     */
+    static boolean isApkInstalled(EmulatorDevice device, ApkInfo apk) throws IOException, InterruptedException {
+        String output;
+        try {
+            output = shell(device, "pm list packages --show-versioncode " + apk.getPackageName() + "; cat "
+                    + apkHashFile(apk) + " 2>/dev/null; true");
+        } catch (IOException | RuntimeException e) {
+            return false; // Let the install report what is wrong with the device
+        }
+        boolean sameVersion = false;
+        boolean sameContent = false;
+        for (String line : output.split("\\R")) {
+            line = line.trim();
+            // pm filters by substring, so match the package name exactly
+            if (line.equals("package:" + apk.getPackageName() + " versionCode:" + apk.getVersionCode())) {
+                sameVersion = true;
+            } else if (line.equals(apk.getSha256())) {
+                sameContent = true;
+            }
+        }
+        return sameVersion && sameContent;
+    }
 
-        // Step 5: Log the output of the command
-        try (BufferedReader stdOutput = new BufferedReader(new InputStreamReader(process.getInputStream()));
-                BufferedReader stdError = new BufferedReader(new InputStreamReader(process.getErrorStream()))) {
+    /**
+     * Run a shell command on the device over the adb server socket, or with
+     * `adb shell` when no server answers
+     *
+     * @return Its output
+     */
+    private static String shell(EmulatorDevice device, String command) throws IOException, InterruptedException {
+        AdbClient adb = adbClient();
+        if (adb != null) {
+            return adb.shell(device.getSerial(), command, commandTimeoutMillis());
+        }
+        return run("adb", "-s", device.getSerial(), "shell", command);
+    }
 
-            String output = stdOutput.lines().reduce("", String::concat);
-            String error = stdError.lines().reduce("", String::concat);
+    private static String apkHashFile(ApkInfo apk) {
+        return APK_HASH_DIR + "/" + apk.getPackageName() + ".apk.sha256";
+    }
 
-            System.out.println("APK Installation Output: " + output);
-            System.err.println("APK Installation Errors: " + error);
+    private static String installModeFlag() {
+        String mode = ConfigUtils.get("APK_INSTALL_MODE", "streaming");
+        switch (mode.toLowerCase()) {
+            case "streaming":
+                return "--streaming";
+            case "incremental":
+                return "--incremental";
+            case "legacy":
+                return "--no-streaming";
+            default:
+                throw new IllegalArgumentException("Unknown APK_INSTALL_MODE: " + mode);
         }
+    }
+
+    /**
+     * Full setup: link the system image, create the emulator, start it, and
+     * install the APK (unless the emulator was booted from a snapshot that
+     * already has it).
+     *
+     * The steps run as a {@link SetupGraph}: the image sync, the ADB server
+     * and, once the image is in the SDK, the AVD creation run concurrently,
+     * and a timing report with the critical path is printed at the end.
+     */
+    public static void setupEmulatorAndInstallApp() throws IOException, InterruptedException {
+        EmulatorDevice device = defaultDevice();
+        startedDefaultDevice = device;
+        String avd = AVD_STEP + device.getAvdName();
+        String boot = BOOT_STEP + device.getSerial();
+        lastSetupReport = new SetupGraph("Emulator setup")
+                .add(IMAGE_SYNC_STEP, EmulatorManager::linkSystemImage)
+                .add(ADB_SERVER_STEP, EmulatorManager::ensureADBServer)
+                .add(avd, () -> createEmulator(device.getAvdName()), avdStepDependencies())
+                .add(boot, () -> startEmulator(device), avd, IMAGE_SYNC_STEP, ADB_SERVER_STEP)
+                .add(INSTALL_STEP + device.getSerial(), () -> installApkUnlessInstalledAtBoot(device), boot)
+                .run();
+        System.out.println("Android tool command latency (ms):" + System.lineSeparator()
+                + CommandRunner.shared().report());
+        System.out.println("Emulator boot time (ms) and host usage per launch profile:" + System.lineSeparator()
+                + profileReport());
+    }
 
-        int exitCode = process.waitFor();
-        if (exitCode != 0) {
-            throw new RuntimeException("Failed to install APK. Exit code: " + exitCode);
+    /**
+     * Setup steps an AVD creation waits for: the image sync, unless the
+     * image is already in the SDK
+     */
+    static String[] avdStepDependencies(String... dependencies) {
+        if (isSystemImageInstalled()) {
+            return dependencies;
         }
+        String[] withImage = Arrays.copyOf(dependencies, dependencies.length + 1);
+        withImage[dependencies.length] = IMAGE_SYNC_STEP;
+        return withImage;
+    }
 
-        System.out.println("APK installed successfully.");
+    /**
+     * Create, boot and install the APK on one emulator. The system image must
+     * already be linked and the ADB server running.
+     */
+    static void setupEmulator(EmulatorDevice device) throws IOException, InterruptedException {
+        createEmulator(device.getAvdName());
+        startEmulator(device); // Returns once the emulator is ready
+        installApkUnlessInstalledAtBoot(device);
+    }
+
+    static void installApkUnlessInstalledAtBoot(EmulatorDevice device) throws IOException, InterruptedException {
+        if (!device.isAppInstalledAtBoot()) {
+            installApk(device);
+        }
     }
 
     /**
-     * Full setup: Create emulator, link system image, start emulator, and install
-     * APK
+     * Whether the emulator is online in adb
      */
-    public static void setupEmulatorAndInstallApp() throws IOException, InterruptedException {
-        linkSystemImage();
-        createEmulator();
-        startEmulator();
-        waitForEmulator();
-        installApk();
+    public static boolean isDeviceHealthy(EmulatorDevice device) throws InterruptedException {
+        try {
+            AdbClient adb = adbClient();
+            if (adb != null) {
+                return "device".equals(adb.devices().get(device.getSerial()));
+            }
+            return "device".equals(run("adb", "-s", device.getSerial(), "get-state").trim());
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
     }
 
     /**
@@ -352,10 +817,16 @@ public class EmulatorManager {
      * @throws IOException If an I/O error occurs during the check.
      */
     public static boolean isCommandAvailable(String command) throws IOException {
-        Process process = Runtime.getRuntime().exec(new String[] { "which", command });
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-            // If the reader returns a non-empty line, the command is available
-            return reader.readLine() != null;
+        if (!tool(command).equals(command)) {
+            return true; // Found in ANDROID_TOOLS_PATH
+        }
+        try {
+            // If which prints a path, the command is available
+            CommandRunner.Result which = CommandRunner.shared().run(Map.of(), commandTimeoutMillis(), "which", command);
+            return !which.getStdout().isBlank();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
         }
     }
 
@@ -363,33 +834,53 @@ public class EmulatorManager {
      * Stops the running emulator.
      */
     public static void stopEmulator() throws IOException, InterruptedException {
-        System.out.println("Stopping emulator...");
+        stopEmulator(startedDefaultDevice());
+    }
 
-        // Use adb command to terminate the emulator
-        String command = "adb emu kill";
-        Process process = Runtime.getRuntime().exec(command);
+    /**
+     * Stops one emulator.
+     */
+    public static void stopEmulator(EmulatorDevice device) throws IOException, InterruptedException {
+        System.out.println("Stopping " + device.getSerial() + "...");
+        DeviceLogs logs = deviceLogs.get(device.getSerial());
+        if (logs != null) {
+            logs.stopLogcat();
+        }
 
-        // Capture the output to ensure the command was successful
-        try (BufferedReader stdOutput = new BufferedReader(new InputStreamReader(process.getInputStream()));
-                BufferedReader stdError = new BufferedReader(new InputStreamReader(process.getErrorStream()))) {
+        Process emulator = device.getEmulatorProcess();
+        if (emulator != null && emulator.isAlive() && device.getProfile() != null) {
+            ProcessUsage usage = ProcessUsage.of(emulator.toHandle());
+            profileStats(device.getProfile()).recordRun(usage,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - device.getLaunchNanos()));
+        }
 
-            String output = stdOutput.lines().reduce("", String::concat);
-            String error = stdError.lines().reduce("", String::concat);
+        // Use adb command to terminate the emulator
+        CommandRunner.Result result = execute(commandTimeoutMillis(), "adb", "-s", device.getSerial(), "emu", "kill");
 
-            if (!output.isEmpty()) {
-                System.out.println("Emulator Stop Output: " + output);
-            }
-            if (!error.isEmpty()) {
-                System.err.println("Emulator Stop Error: " + error);
-            }
+        // Check the output to ensure the command was successful
+        if (!result.getStdout().isBlank()) {
+            System.out.println("Emulator Stop Output: " + result.getStdout().trim());
+        }
+        if (!result.getStderr().isBlank()) {
+            System.err.println("Emulator Stop Error: " + result.getStderr().trim());
         }
 
-        process.waitFor();
-        if (process.exitValue() != 0) {
-            throw new RuntimeException("Failed to stop the emulator. Exit code: " + process.exitValue());
+        if (emulator != null) {
+            // A wedged or offline emulator ignores the console, and would keep its ports
+            long graceSeconds = ConfigUtils.getLong("EMULATOR_STOP_GRACE_SECONDS", 20);
+            if (!result.isSuccess() || !emulator.waitFor(graceSeconds, TimeUnit.SECONDS)) {
+                System.err.println(device.getSerial() + (result.isSuccess() ? " still runs " + graceSeconds
+                        + " seconds after emu kill" : " did not take emu kill") + ", killing its processes.");
+                CommandRunner.killTree(emulator);
+                emulator.waitFor(10, TimeUnit.SECONDS);
+            }
+            device.clearEmulatorProcess();
+        } else if (!result.isSuccess()) {
+            throw new RuntimeException(result.isTimedOut() ? "Timed out stopping the emulator after "
+                    + result.getMillis() + " ms" : "Failed to stop the emulator. Exit code: " + result.getExitCode());
         }
 
-        System.out.println("Emulator stopped successfully.");
+        System.out.println(device.getSerial() + " stopped successfully.");
     }
 
     /**
@@ -0,0 +1,210 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * How the emulator is launched: with a window or headless, the GPU mode,
+ * audio, boot animation, and the cores and memory of the virtual device.
+ *
+ * `window` launches with the emulator defaults, for desktops. `headless` is
+ * for Linux build hosts without a display or GPU: no window, SwiftShader
+ * software rendering, no audio and no boot animation, with a fixed number of
+ * cores and memory so more emulators fit on one host.
+ */
+public class EmulatorProfile {
+    public static final String WINDOW = "window";
+    public static final String HEADLESS = "headless";
+
+    private final String name;
+    private final boolean window;
+    private final String gpu;
+    private final boolean audio;
+    private final boolean bootAnimation;
+    private final int cores;
+    private final int memoryMb;
+    private final List<String> extraOptions;
+
+    /**
+     * @param gpu      `-gpu` mode, null for the emulator's choice
+     * @param cores    Virtual CPU cores, 0 for the AVD's setting
+     * @param memoryMb Guest RAM, 0 for the AVD's setting
+     */
+    public EmulatorProfile(String name, boolean window, String gpu, boolean audio, boolean bootAnimation, int cores,
+            int memoryMb, List<String> extraOptions) {
+        if (cores < 0 || memoryMb < 0) {
+            throw new IllegalArgumentException("Invalid emulator cores or memory: " + cores + ", " + memoryMb);
+        }
+        this.name = name;
+        this.window = window;
+        this.gpu = gpu;
+        this.audio = audio;
+        this.bootAnimation = bootAnimation;
+        this.cores = cores;
+        this.memoryMb = memoryMb;
+        this.extraOptions = Collections.unmodifiableList(new ArrayList<>(extraOptions));
+    }
+
+    /**
+     * The profile named by EMULATOR_PROFILE: `window`, `headless`, or `auto`
+     * (the default), which is headless on Linux without DISPLAY or
+     * WAYLAND_DISPLAY. Headless defaults to `-gpu swiftshader_indirect`, 2
+     * cores and 2048 MB. EMULATOR_GPU, EMULATOR_CORES and EMULATOR_MEMORY_MB
+     * override the profile, and EMULATOR_OPTIONS adds options.
+     *
+     * @throws IllegalArgumentException for an unknown profile
+     */
+    public static EmulatorProfile fromConfig() {
+        String name = ConfigUtils.get("EMULATOR_PROFILE", "auto").toLowerCase(Locale.ROOT);
+        if ("auto".equals(name)) {
+            boolean display = ConfigUtils.get("DISPLAY", null) != null
+                    || ConfigUtils.get("WAYLAND_DISPLAY", null) != null;
+            boolean linux = System.getProperty("os.name").toLowerCase(Locale.ROOT).contains("linux");
+            name = linux && !display ? HEADLESS : WINDOW;
+        }
+        boolean headless;
+        switch (name) {
+            case WINDOW:
+                headless = false;
+                break;
+            case HEADLESS:
+                headless = true;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown EMULATOR_PROFILE: " + name);
+        }
+        String options = ConfigUtils.get("EMULATOR_OPTIONS", "").trim();
+        return new EmulatorProfile(name, !headless,
+                ConfigUtils.get("EMULATOR_GPU", headless ? "swiftshader_indirect" : null), !headless, !headless,
+                ConfigUtils.getInt("EMULATOR_CORES", headless ? Math.min(2, Runtime.getRuntime().availableProcessors())
+                        : 0),
+                ConfigUtils.getInt("EMULATOR_MEMORY_MB", headless ? 2048 : 0),
+                options.isEmpty() ? List.of() : Arrays.asList(options.split("\\s+")));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Options added to the emulator command line
+     */
+    public List<String> getOptions() {
+        List<String> options = new ArrayList<>();
+        if (!window) {
+            options.add("-no-window");
+        }
+        if (gpu != null) {
+            options.add("-gpu");
+            options.add(gpu);
+        }
+        if (!audio) {
+            options.add("-no-audio");
+        }
+        if (!bootAnimation) {
+            options.add("-no-boot-anim");
+        }
+        if (cores > 0) {
+            options.add("-cores");
+            options.add(String.valueOf(cores));
+        }
+        if (memoryMb > 0) {
+            options.add("-memory");
+            options.add(String.valueOf(memoryMb));
+        }
+        options.addAll(extraOptions);
+        return options;
+    }
+
+    /**
+     * The settings a quick-boot snapshot depends on: a snapshot saved with
+     * other cores, memory or GPU mode does not load
+     */
+    public String getSnapshotKey() {
+        return "gpu=" + gpu + ",cores=" + cores + ",memory=" + memoryMb;
+    }
+
+    /**
+     * Name and options, e.g. `headless -no-window -gpu swiftshader_indirect ...`,
+     * which also tells apart profiles tuned differently
+     */
+    @Override
+    public String toString() {
+        List<String> options = getOptions();
+        return options.isEmpty() ? name : name + " " + String.join(" ", options);
+    }
+
+    /**
+     * Boot time and host resource usage of the emulators launched with one
+     * profile
+     */
+    public static final class Stats {
+        private final LatencyHistogram bootTimes = new LatencyHistogram();
+        private final LongAdder bootCpuMillis = new LongAdder();
+        private final AtomicLong maxResidentBytes = new AtomicLong(-1);
+        private final LongAdder runs = new LongAdder();
+        private final LongAdder runCpuMillis = new LongAdder();
+        private final LongAdder runMillis = new LongAdder();
+
+        /**
+         * An emulator booted
+         *
+         * @param usage Its process tree once it was ready
+         */
+        public void recordBoot(long bootMillis, ProcessUsage usage) {
+            bootTimes.record(bootMillis * 1000);
+            bootCpuMillis.add(usage.getCpuMillis());
+            maxResidentBytes.accumulateAndGet(usage.getResidentBytes(), Math::max);
+        }
+
+        /**
+         * An emulator is being stopped
+         *
+         * @param usage  Its process tree just before stopping
+         * @param millis Time since it was launched
+         */
+        public void recordRun(ProcessUsage usage, long millis) {
+            runs.increment();
+            runCpuMillis.add(usage.getCpuMillis());
+            runMillis.add(millis);
+            maxResidentBytes.accumulateAndGet(usage.getResidentBytes(), Math::max);
+        }
+
+        public long getBoots() {
+            return bootTimes.getCount();
+        }
+
+        public LatencyHistogram getBootTimes() {
+            return bootTimes;
+        }
+
+        /**
+         * Mean CPU time the host spent on booting an emulator
+         */
+        public double getMeanBootCpuMillis() {
+            long boots = getBoots();
+            return boots == 0 ? 0 : bootCpuMillis.sum() / (double) boots;
+        }
+
+        /**
+         * Largest resident memory of one emulator, -1 if unknown
+         */
+        public long getMaxResidentBytes() {
+            return maxResidentBytes.get();
+        }
+
+        /**
+         * Host cores one emulator kept busy on average from launch to stop,
+         * 0 before any emulator was stopped
+         */
+        public double getMeanCores() {
+            long millis = runMillis.sum();
+            return millis == 0 ? 0 : runCpuMillis.sum() / (double) millis;
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency, bandwidth and fault injection applied to mock server responses.
+ *
+ * A profile combines:
+ * - a response delay: none, fixed, uniform between two bounds, or log-normal
+ * around a median (long right tail, like real backends)
+ * - a bandwidth limit on the body: the JDK engine paces its writes to that
+ * rate, while MockServer, which sends a body in one go, approximates it by
+ * adding the transfer time to the delay
+ * - a percentage of dropped connections: the connection is closed after a
+ * truncated response, so the client sees an I/O error
+ * - a percentage of 5xx responses
+ *
+ * Profiles are immutable. Built-in ones are available by name, and further
+ * named profiles can be registered at runtime (e.g. from a Gherkin data table
+ * via {@link #fromSettings(Map)}).
+ */
+public class FaultProfile {
+    public static final FaultProfile NONE = new FaultProfile(Delay.NONE, 0, 0, 0, 0, 0, 503);
+
+    private static final Map<String, FaultProfile> namedProfiles = new ConcurrentHashMap<>();
+
+    static {
+        register("slow-backend", NONE.withLogNormalDelay(200, 0.5));
+        register("flaky", NONE.withErrorRate(10, 503));
+        register("unstable-network", NONE.withUniformDelay(50, 500).withDropRate(2));
+        register("3g", NONE.withFixedDelay(150).withBandwidth(96 * 1024));
+        register("dead", NONE.withDropRate(100));
+    }
+
+    private enum Delay {
+        NONE, FIXED, UNIFORM, LOG_NORMAL
+    }
+
+    private final Delay delay;
+    // FIXED: value; UNIFORM: min and max; LOG_NORMAL: median and sigma
+    private final double delayA;
+    private final double delayB;
+    private final long bytesPerSecond;
+    private final double dropRate;
+    private final double errorRate;
+    private final int errorStatus;
+
+    private FaultProfile(Delay delay, double delayA, double delayB, long bytesPerSecond, double dropRate,
+            double errorRate, int errorStatus) {
+        this.delay = delay;
+        this.delayA = delayA;
+        this.delayB = delayB;
+        this.bytesPerSecond = bytesPerSecond;
+        this.dropRate = dropRate;
+        this.errorRate = errorRate;
+        this.errorStatus = errorStatus;
+    }
+
+    /**
+     * Look up a built-in or registered profile.
+     */
+    public static FaultProfile named(String name) {
+        FaultProfile profile = namedProfiles.get(name.toLowerCase(Locale.ROOT));
+        if (profile == null) {
+            throw new IllegalArgumentException("Unknown fault profile: " + name + " (known: "
+                    + namedProfiles.keySet() + ")");
+        }
+        return profile;
+    }
+
+    /**
+     * Register a profile under a name, replacing any profile with that name.
+     */
+    public static void register(String name, FaultProfile profile) {
+        namedProfiles.put(name.toLowerCase(Locale.ROOT), profile);
+    }
+
+    /**
+     * Build a profile from settings such as a Gherkin data table:
+     * - `delay`: `fixed <ms>`, `uniform <min ms> <max ms>` or
+     * `lognormal <median ms> <sigma>`
+     * - `bandwidth_kbps`: kilobytes per second for response bodies
+     * - `drop_rate`: percentage of dropped connections
+     * - `error_rate`: percentage of 5xx responses
+     * - `error_status`: status used for those responses (default 503)
+     */
+    public static FaultProfile fromSettings(Map<String, String> settings) {
+        FaultProfile profile = NONE;
+        for (Map.Entry<String, String> setting : settings.entrySet()) {
+            String value = setting.getValue().trim();
+            switch (setting.getKey().trim().toLowerCase(Locale.ROOT)) {
+                case "delay":
+                    profile = profile.withDelay(value);
+                    break;
+                case "bandwidth_kbps":
+                    profile = profile.withBandwidth(Long.parseLong(value) * 1024);
+                    break;
+                case "drop_rate":
+                    profile = profile.withDropRate(Double.parseDouble(value));
+                    break;
+                case "error_rate":
+                    profile = profile.withErrorRate(Double.parseDouble(value), profile.errorStatus);
+                    break;
+                case "error_status":
+                    profile = profile.withErrorRate(profile.errorRate, Integer.parseInt(value));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown fault profile setting: " + setting.getKey());
+            }
+        }
+        return profile;
+    }
+
+    public FaultProfile withFixedDelay(long millis) {
+        return new FaultProfile(Delay.FIXED, millis, 0, bytesPerSecond, dropRate, errorRate, errorStatus);
+    }
+
+    public FaultProfile withUniformDelay(long minMillis, long maxMillis) {
+        if (maxMillis < minMillis) {
+            throw new IllegalArgumentException(
+                    "Maximum delay is below the minimum: " + maxMillis + " < " + minMillis);
+        }
+        return new FaultProfile(Delay.UNIFORM, minMillis, maxMillis, bytesPerSecond, dropRate, errorRate,
+                errorStatus);
+    }
+
+    /**
+     * Delays whose logarithm is normally distributed: half of them are below
+     * the median, and sigma controls how long the tail is.
+     */
+    public FaultProfile withLogNormalDelay(long medianMillis, double sigma) {
+        return new FaultProfile(Delay.LOG_NORMAL, medianMillis, sigma, bytesPerSecond, dropRate, errorRate,
+                errorStatus);
+    }
+
+    public FaultProfile withBandwidth(long bytesPerSecond) {
+        return new FaultProfile(delay, delayA, delayB, bytesPerSecond, dropRate, errorRate, errorStatus);
+    }
+
+    public FaultProfile withDropRate(double percent) {
+        return new FaultProfile(delay, delayA, delayB, bytesPerSecond, checkPercent(percent), errorRate,
+                errorStatus);
+    }
+
+    public FaultProfile withErrorRate(double percent, int status) {
+        if (status < 500 || status > 599) {
+            throw new IllegalArgumentException("Injected errors must use a 5xx status: " + status);
+        }
+        return new FaultProfile(delay, delayA, delayB, bytesPerSecond, dropRate, checkPercent(percent), status);
+    }
+
+    /**
+     * Apply the profile to a response about to be sent.
+     *
+     * @return The response to send instead
+     */
+    public MockResponse apply(MockResponse response) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (dropRate > 0 && random.nextDouble(100) < dropRate) {
+            return response.withDroppedConnection();
+        }
+
+        MockResponse result = response;
+        if (errorRate > 0 && random.nextDouble(100) < errorRate) {
+            result = MockResponse.json(errorStatus, ("{\"error\": \"Injected fault\", \"status\": " + errorStatus
+                    + "}").getBytes(StandardCharsets.UTF_8));
+        }
+
+        if (bytesPerSecond > 0) {
+            result.withBandwidth(bytesPerSecond);
+        }
+        long delayMillis = sampleDelayMillis(random);
+        return delayMillis > 0 ? result.withAddedDelay(delayMillis) : result;
+    }
+
+    private long sampleDelayMillis(ThreadLocalRandom random) {
+        switch (delay) {
+            case FIXED:
+                return (long) delayA;
+            case UNIFORM:
+                return delayA == delayB ? (long) delayA : (long) random.nextDouble(delayA, delayB);
+            case LOG_NORMAL:
+                return Math.round(delayA * Math.exp(delayB * random.nextGaussian()));
+            default:
+                return 0;
+        }
+    }
+
+    private FaultProfile withDelay(String spec) {
+        String[] parts = spec.trim().split("\\s+");
+        try {
+            switch (parts[0].toLowerCase(Locale.ROOT)) {
+                case "none":
+                    return new FaultProfile(Delay.NONE, 0, 0, bytesPerSecond, dropRate, errorRate, errorStatus);
+                case "fixed":
+                    return withFixedDelay(Long.parseLong(parts[1]));
+                case "uniform":
+                    return withUniformDelay(Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+                case "lognormal":
+                    return withLogNormalDelay(Long.parseLong(parts[1]), Double.parseDouble(parts[2]));
+                default:
+                    break;
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("Invalid delay '" + spec
+                + "', expected 'fixed <ms>', 'uniform <min ms> <max ms>' or 'lognormal <median ms> <sigma>'");
+    }
+
+    private static double checkPercent(double percent) {
+        if (percent < 0 || percent > 100) {
+            throw new IllegalArgumentException("Percentage must be between 0 and 100: " + percent);
+        }
+        return percent;
+    }
+
+    @Override
+    public String toString() {
+        return "FaultProfile[delay=" + delay + (delay == Delay.NONE ? "" : " " + delayA + "/" + delayB)
+                + ", bytesPerSecond=" + bytesPerSecond + ", dropRate=" + dropRate + "%, errorRate=" + errorRate
+                + "% (" + errorStatus + ")]";
+    }
+}
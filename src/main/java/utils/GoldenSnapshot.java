@@ -0,0 +1,135 @@
+package utils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A named AVD snapshot taken right after a cold boot and app install, so later
+ * runs can boot straight into a ready device.
+ *
+ * Next to the snapshot the fingerprint of the APK and system image it was
+ * taken with is stored. The snapshot counts as valid only while both are
+ * unchanged, so a new build or image forces a fresh cold boot. The launch
+ * settings it depends on can be part of the fingerprint too.
+ */
+public class GoldenSnapshot {
+    private final Path avdDirectory;
+    private final String name;
+
+    /**
+     * @param avdDirectory The AVD's `<name>.avd` directory
+     * @param name         Snapshot name
+     */
+    public GoldenSnapshot(Path avdDirectory, String name) {
+        this.avdDirectory = avdDirectory;
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Fingerprint of an APK (its content hash, cached by {@link ApkInfo}) and a
+     * system image directory (path, size and modification time of every file,
+     * which is enough to notice a replaced image without reading gigabytes).
+     *
+     * @param apk         The APK, or null if none is installed
+     * @param systemImage The system image directory, or null if unknown
+     */
+    public static String fingerprint(Path apk, Path systemImage) {
+        return fingerprint(apk, systemImage, "");
+    }
+
+    /**
+     * Fingerprint of an APK, a system image directory and the launch settings
+     * the snapshot depends on, see {@link EmulatorProfile#getSnapshotKey()}
+     */
+    public static String fingerprint(Path apk, Path systemImage, String launchSettings) {
+        MessageDigest digest = FileHashes.sha256();
+        if (!launchSettings.isEmpty()) {
+            digest.update(launchSettings.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        if (apk != null) {
+            if (!Files.isRegularFile(apk)) {
+                throw new IllegalStateException("APK not found at: " + apk.toAbsolutePath());
+            }
+            digest.update(ApkInfo.read(apk).getSha256().getBytes(StandardCharsets.UTF_8));
+        }
+        digest.update((byte) 0);
+        if (systemImage != null && Files.isDirectory(systemImage)) {
+            List<Path> files;
+            try (Stream<Path> paths = Files.walk(systemImage)) {
+                files = paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to list system image " + systemImage, e);
+            }
+            for (Path file : files) {
+                try {
+                    BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                    digest.update((systemImage.relativize(file) + "|" + attributes.size() + "|"
+                            + attributes.lastModifiedTime().toMillis() + "\n").getBytes(StandardCharsets.UTF_8));
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to read attributes of " + file, e);
+                }
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Whether the snapshot exists and was taken with this fingerprint
+     */
+    public boolean isValid(String fingerprint) {
+        Path fingerprintFile = fingerprintFile();
+        if (!Files.isDirectory(snapshotDirectory()) || !Files.isRegularFile(fingerprintFile)) {
+            return false;
+        }
+        try {
+            return Files.readString(fingerprintFile).trim().equals(fingerprint);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Record that the snapshot was just saved with this fingerprint.
+     */
+    public void markSaved(String fingerprint) {
+        try {
+            Files.writeString(fingerprintFile(), fingerprint + "\n");
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to store the fingerprint of snapshot " + name, e);
+        }
+    }
+
+    /**
+     * Make the snapshot invalid, so the next boot is a cold one that saves it
+     * again.
+     */
+    public void invalidate() {
+        try {
+            Files.deleteIfExists(fingerprintFile());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to invalidate snapshot " + name, e);
+        }
+    }
+
+    private Path snapshotDirectory() {
+        return avdDirectory.resolve("snapshots").resolve(name);
+    }
+
+    private Path fingerprintFile() {
+        return avdDirectory.resolve(name + ".fingerprint");
+    }
+}
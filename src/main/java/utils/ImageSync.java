@@ -0,0 +1,334 @@
+package utils;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Incremental one-way sync of a directory tree, used to install the system
+ * image into the SDK without copying gigabytes on every run.
+ *
+ * A manifest in the target directory records the size, modification time and
+ * (optionally) SHA-256 of every source file as of its last sync. A file whose
+ * size and mtime still match is skipped, as is a file whose hash still matches
+ * after only its mtime changed. Anything else is hard-linked to the source
+ * where the filesystem allows it, or copied with FileChannel.transferTo into a
+ * temporary file that is then moved into place. Transfers run in parallel.
+ * Files that disappeared from the source are deleted from the target, but
+ * only when the manifest shows this sync put them there.
+ */
+public class ImageSync {
+    public static final String MANIFEST = ".image-sync-manifest";
+
+    private final Path source;
+    private final Path target;
+    private final boolean hashContent;
+    private final boolean hardLinks;
+    private final int threads;
+
+    /**
+     * Counts of one sync
+     */
+    public static final class Result {
+        private final int skipped;
+        private final int linked;
+        private final int copied;
+        private final int deleted;
+        private final long bytesCopied;
+        private final long millis;
+
+        Result(int skipped, int linked, int copied, int deleted, long bytesCopied, long millis) {
+            this.skipped = skipped;
+            this.linked = linked;
+            this.copied = copied;
+            this.deleted = deleted;
+            this.bytesCopied = bytesCopied;
+            this.millis = millis;
+        }
+
+        public int getSkipped() {
+            return skipped;
+        }
+
+        public int getLinked() {
+            return linked;
+        }
+
+        public int getCopied() {
+            return copied;
+        }
+
+        public int getDeleted() {
+            return deleted;
+        }
+
+        public long getBytesCopied() {
+            return bytesCopied;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        @Override
+        public String toString() {
+            return skipped + " unchanged, " + linked + " linked, " + copied + " copied (" + bytesCopied / (1 << 20)
+                    + " MB), " + deleted + " deleted in " + millis + " ms";
+        }
+    }
+
+    /**
+     * @param source      Directory to mirror
+     * @param target      Directory to update
+     * @param hashContent Whether to store SHA-256 hashes, so a file whose mtime
+     *                    changed but whose content did not is still skipped
+     * @param hardLinks   Whether to hard-link files instead of copying them
+     *                    when source and target share a filesystem
+     * @param threads     Number of parallel transfers
+     */
+    public ImageSync(Path source, Path target, boolean hashContent, boolean hardLinks, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Image sync needs at least one thread: " + threads);
+        }
+        this.source = source;
+        this.target = target;
+        this.hashContent = hashContent;
+        this.hardLinks = hardLinks;
+        this.threads = threads;
+    }
+
+    /**
+     * A sync configured by IMAGE_SYNC_HASH (false), IMAGE_SYNC_HARD_LINKS
+     * (true) and IMAGE_SYNC_THREADS (4)
+     */
+    public static ImageSync fromConfig(Path source, Path target) {
+        return new ImageSync(source, target, ConfigUtils.getBoolean("IMAGE_SYNC_HASH", false),
+                ConfigUtils.getBoolean("IMAGE_SYNC_HARD_LINKS", true), ConfigUtils.getInt("IMAGE_SYNC_THREADS", 4));
+    }
+
+    /**
+     * Bring the target up to date with the source.
+     */
+    public Result sync() throws IOException {
+        long start = System.currentTimeMillis();
+        if (!Files.isDirectory(source)) {
+            throw new IllegalStateException("System image directory not found at: " + source);
+        }
+        Files.createDirectories(target);
+        Map<String, Entry> previous = readManifest();
+        Map<String, Entry> current = new ConcurrentHashMap<>();
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> paths = Files.walk(source)) {
+            paths.forEach(path -> {
+                try {
+                    if (Files.isDirectory(path)) {
+                        Files.createDirectories(target.resolve(relative(path)));
+                    } else if (Files.isRegularFile(path)) {
+                        files.add(path);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        AtomicInteger skipped = new AtomicInteger();
+        AtomicInteger linked = new AtomicInteger();
+        AtomicInteger copied = new AtomicInteger();
+        AtomicLong bytesCopied = new AtomicLong();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, files.size())));
+        try {
+            List<Future<?>> transfers = new ArrayList<>(files.size());
+            for (Path file : files) {
+                transfers.add(executor.submit(() -> {
+                    String name = relative(file);
+                    Path destination = target.resolve(name);
+                    BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                    Entry entry = new Entry(attributes.size(), attributes.lastModifiedTime().toMillis(), null);
+                    Entry last = previous.get(name);
+                    if (isUpToDate(file, destination, attributes, entry, last)) {
+                        current.put(name, last.sameContent(entry) ? last : entry.withHash(last.hash));
+                        skipped.incrementAndGet();
+                        return null;
+                    }
+                    if (hardLinks && link(file, destination)) {
+                        linked.incrementAndGet();
+                    } else {
+                        copy(file, destination);
+                        copied.incrementAndGet();
+                        bytesCopied.addAndGet(attributes.size());
+                    }
+                    current.put(name, hashContent ? entry.withHash(FileHashes.sha256(file)) : entry);
+                    return null;
+                }));
+            }
+            for (Future<?> transfer : transfers) {
+                transfer.get();
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new RuntimeException("Failed to sync " + source + " to " + target, cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while syncing " + source, e);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        int deleted = 0;
+        for (String name : previous.keySet()) {
+            if (!current.containsKey(name) && Files.deleteIfExists(target.resolve(name))) {
+                deleted++;
+            }
+        }
+        writeManifest(current);
+        return new Result(skipped.get(), linked.get(), copied.get(), deleted, bytesCopied.get(),
+                System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Whether the target copy still matches the source as recorded in the
+     * manifest. A target that is a hard link to the source always does.
+     */
+    private boolean isUpToDate(Path file, Path destination, BasicFileAttributes attributes, Entry entry, Entry last)
+            throws IOException {
+        if (last == null || !Files.isRegularFile(destination)) {
+            return false;
+        }
+        BasicFileAttributes copy = Files.readAttributes(destination, BasicFileAttributes.class);
+        if (copy.size() != attributes.size()) {
+            return false;
+        }
+        if (attributes.fileKey() != null && attributes.fileKey().equals(copy.fileKey())) {
+            return true;
+        }
+        if (last.sameContent(entry)) {
+            return true;
+        }
+        // Only the mtime changed (e.g. a fresh checkout): compare content hashes
+        return hashContent && last.hash != null && last.size == entry.size && last.hash.equals(FileHashes.sha256(file));
+    }
+
+    /**
+     * Replace the destination with a hard link to the file.
+     *
+     * @return false if the filesystem does not allow it
+     */
+    private static boolean link(Path file, Path destination) throws IOException {
+        Path temporary = destination.resolveSibling(destination.getFileName() + ".link");
+        try {
+            Files.deleteIfExists(temporary);
+            Files.createLink(temporary, file);
+        } catch (FileSystemException | UnsupportedOperationException e) {
+            return false; // Different filesystem or no hard link support
+        }
+        Files.move(temporary, destination, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return true;
+    }
+
+    /**
+     * Copy through a temporary file, so an interrupted copy never leaves a
+     * truncated file that a later sync could mistake for a complete one.
+     */
+    private static void copy(Path file, Path destination) throws IOException {
+        Path temporary = destination.resolveSibling(destination.getFileName() + ".part");
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                position += in.transferTo(position, size - position, out);
+            }
+        }
+        Files.move(temporary, destination, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private String relative(Path path) {
+        return source.relativize(path).toString().replace('\\', '/');
+    }
+
+    private Map<String, Entry> readManifest() throws IOException {
+        Map<String, Entry> entries = new ConcurrentHashMap<>();
+        Path manifest = target.resolve(MANIFEST);
+        if (!Files.isRegularFile(manifest)) {
+            return entries;
+        }
+        for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+            String[] fields = line.split("\t");
+            if (fields.length < 3) {
+                continue;
+            }
+            try {
+                entries.put(fields[0], new Entry(Long.parseLong(fields[1]), Long.parseLong(fields[2]),
+                        fields.length > 3 ? fields[3] : null));
+            } catch (NumberFormatException e) {
+                // A damaged line only costs a re-copy of that file
+            }
+        }
+        return entries;
+    }
+
+    private void writeManifest(Map<String, Entry> entries) throws IOException {
+        Path temporary = target.resolve(MANIFEST + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Entry> entry : new TreeMap<>(entries).entrySet()) {
+                Entry value = entry.getValue();
+                writer.write(entry.getKey() + "\t" + value.size + "\t" + value.mtime
+                        + (value.hash == null ? "" : "\t" + value.hash));
+                writer.newLine();
+            }
+        }
+        Files.move(temporary, target.resolve(MANIFEST), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * A source file as of its last sync
+     */
+    private static final class Entry {
+        private final long size;
+        private final long mtime;
+        private final String hash;
+
+        Entry(long size, long mtime, String hash) {
+            this.size = size;
+            this.mtime = mtime;
+            this.hash = hash;
+        }
+
+        boolean sameContent(Entry other) {
+            return size == other.size && mtime == other.mtime;
+        }
+
+        Entry withHash(String hash) {
+            return Objects.equals(this.hash, hash) ? this : new Entry(size, mtime, hash);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package utils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lightweight mock engine on the JDK's built-in HTTP server, with each
+ * exchange handled on its own virtual thread. It starts in milliseconds since
+ * there is no Netty stack, TLS setup or expectation engine to bring up.
+ * It only speaks plain HTTP/1.1.
+ *
+ * A bandwidth limit is applied to the body writes themselves, so the client
+ * receives the body gradually at that rate.
+ */
+public class JdkMockEngine implements MockEngine {
+    private static final int BACKLOG = 1024;
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    @Override
+    public void start(int port, MockRouter.Handler handler) {
+        try {
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to start the JDK mock server on port " + port, e);
+        }
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        server.createContext("/", exchange -> handle(exchange, handler));
+        server.start();
+    }
+
+    @Override
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+        }
+    }
+
+    private static void handle(HttpExchange exchange, MockRouter.Handler handler) throws IOException {
+        try (exchange) {
+            byte[] requestBody = exchange.getRequestBody().readAllBytes();
+            MockRequest request = new MockRequest(exchange.getRequestMethod(), exchange.getRequestURI().getPath(),
+                    exchange.getRequestURI().getQuery(), requestBody);
+            MockResponse response;
+            try {
+                response = handler.handle(request);
+            } catch (RuntimeException e) {
+                System.err.println("Mock handler failed for " + request.getMethod() + " " + request.getPath() + ": "
+                        + e);
+                response = new MockResponse(500);
+            }
+
+            if (response.getDelayMillis() > 0) {
+                // Parks only this exchange's virtual thread
+                Thread.sleep(response.getDelayMillis());
+            }
+            for (Map.Entry<String, String> header : response.getHeaders().entrySet()) {
+                exchange.getResponseHeaders().set(header.getKey(), header.getValue());
+            }
+            boolean bodyAllowed = response.getStatusCode() != 204 && response.getStatusCode() != 304
+                    && !"HEAD".equals(request.getMethod());
+            if (response.isConnectionDropped()) {
+                // Promise more bytes than are sent; closing the exchange early drops the connection
+                exchange.sendResponseHeaders(response.getStatusCode(), response.getBodyLength() + 1024L);
+                response.writeBody(exchange.getResponseBody());
+                return;
+            }
+            if (response.getBodyLength() == 0 || !bodyAllowed) {
+                exchange.sendResponseHeaders(response.getStatusCode(), -1);
+                return;
+            }
+            exchange.sendResponseHeaders(response.getStatusCode(), response.getBodyLength());
+            // A streamed body goes out as it is written, without being held in memory
+            try (OutputStream out = throttle(exchange.getResponseBody(), response.getBandwidth())) {
+                response.writeBody(out);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static OutputStream throttle(OutputStream out, long bytesPerSecond) {
+        return bytesPerSecond > 0 ? new ThrottledOutputStream(out, bytesPerSecond) : out;
+    }
+
+    /**
+     * Writes in slices of 1/20 s worth of bytes, flushing each and sleeping
+     * until the rate allows the next
+     */
+    private static final class ThrottledOutputStream extends FilterOutputStream {
+        private final long bytesPerSecond;
+        private final int sliceBytes;
+        private final long startNanos = System.nanoTime();
+        private long written;
+
+        ThrottledOutputStream(OutputStream out, long bytesPerSecond) {
+            super(out);
+            this.bytesPerSecond = bytesPerSecond;
+            this.sliceBytes = (int) Math.max(1, Math.min(64 * 1024, bytesPerSecond / 20));
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            while (length > 0) {
+                int slice = Math.min(length, sliceBytes);
+                out.write(bytes, offset, slice);
+                out.flush();
+                written += slice;
+                offset += slice;
+                length -= slice;
+                pace();
+            }
+        }
+
+        private void pace() throws IOException {
+            long dueNanos = startNanos + TimeUnit.SECONDS.toNanos(written) / bytesPerSecond;
+            long waitNanos = dueNanos - System.nanoTime();
+            if (waitNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(waitNanos);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while throttling the response body");
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package utils;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Collects JSON body assertions for a single response and checks them all in
+ * one pass over a body that is parsed only once.
+ *
+ * Paths use the subset of GPath the step definitions rely on: dotted field
+ * names, array indexes (`results[0].name`) and a trailing `.size()`. All
+ * expectations are compiled into a trie keyed by path segment, so each node of
+ * the parsed tree is visited at most once no matter how many assertions share
+ * a prefix. Every failing expectation is reported together.
+ *
+ * Bodies spooled to disk can be checked with a streaming parser instead of a
+ * tree, in which case memory use does not grow with the body size.
+ */
+public class JsonAssertionPlan {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private enum Check {
+        VALUE, NUMBER, SIZE
+    }
+
+    private static class Expectation {
+        private final String path;
+        private final Check check;
+        private final String expected;
+
+        Expectation(String path, Check check, String expected) {
+            this.path = path;
+            this.check = check;
+            this.expected = expected;
+        }
+    }
+
+    private static class PathNode {
+        private final Map<Object, PathNode> children = new LinkedHashMap<>();
+        private final List<Expectation> expectations = new ArrayList<>();
+    }
+
+    private final PathNode root = new PathNode();
+    private int size;
+
+    /**
+     * Expect the value at the given path to equal the given text.
+     */
+    public JsonAssertionPlan expectValue(String path, String expectedValue) {
+        return add(path, Check.VALUE, expectedValue);
+    }
+
+    /**
+     * Expect the value at the given path to be the given number.
+     */
+    public JsonAssertionPlan expectNumber(String path, long expectedValue) {
+        return add(path, Check.NUMBER, String.valueOf(expectedValue));
+    }
+
+    /**
+     * Expect the array or object at the given path to have the given size. A
+     * trailing `.size()` on the path is accepted and ignored.
+     */
+    public JsonAssertionPlan expectSize(String path, int expectedSize) {
+        String arrayPath = path.endsWith(".size()") ? path.substring(0, path.length() - 7) : path;
+        return add(arrayPath, Check.SIZE, String.valueOf(expectedSize));
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Parse the body once and check every expectation against it.
+     *
+     * @throws AssertionError listing every expectation that did not hold
+     */
+    public void verify(byte[] body) {
+        if (isEmpty()) {
+            return;
+        }
+        verify(parse(body));
+    }
+
+    /**
+     * Parse a body once, for checking several plans against it with
+     * {@link #verify(JsonNode)}
+     *
+     * @throws AssertionError if the body is not valid JSON
+     */
+    public static JsonNode parse(byte[] body) {
+        try {
+            return objectMapper.readTree(body);
+        } catch (IOException e) {
+            throw new AssertionError("Response body is not valid JSON: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Check every expectation against an already parsed body.
+     *
+     * @throws AssertionError listing every expectation that did not hold
+     */
+    public void verify(JsonNode tree) {
+        List<String> failures = new ArrayList<>();
+        walk(root, tree, failures);
+        report(failures);
+    }
+
+    /**
+     * Check every expectation in a single streaming pass over a body on disk.
+     * Only the subtrees an expectation points into are looked at; everything
+     * else is skipped token by token, and arrays are sized by counting their
+     * elements, so memory stays flat whatever the body size.
+     *
+     * @throws AssertionError listing every expectation that did not hold
+     */
+    public void verify(Path bodyFile) {
+        if (isEmpty()) {
+            return;
+        }
+        List<String> failures = new ArrayList<>();
+        try (JsonParser parser = objectMapper.createParser(bodyFile.toFile())) {
+            if (parser.nextToken() == null) {
+                walk(root, null, failures);
+            } else {
+                stream(root, parser, failures);
+            }
+        } catch (IOException e) {
+            throw new AssertionError("Response body is not valid JSON: " + e.getMessage(), e);
+        }
+        report(failures);
+    }
+
+    private void report(List<String> failures) {
+        if (!failures.isEmpty()) {
+            throw new AssertionError(failures.size() + " of " + size + " response body expectations failed:\n  "
+                    + String.join("\n  ", failures));
+        }
+    }
+
+    private JsonAssertionPlan add(String path, Check check, String expected) {
+        PathNode node = root;
+        for (Object segment : compile(path)) {
+            node = node.children.computeIfAbsent(segment, key -> new PathNode());
+        }
+        node.expectations.add(new Expectation(path, check, expected));
+        size++;
+        return this;
+    }
+
+    private static void walk(PathNode planNode, JsonNode jsonNode, List<String> failures) {
+        for (Expectation expectation : planNode.expectations) {
+            String failure = check(expectation, jsonNode);
+            if (failure != null) {
+                failures.add(failure);
+            }
+        }
+        for (Map.Entry<Object, PathNode> child : planNode.children.entrySet()) {
+            Object segment = child.getKey();
+            JsonNode next = jsonNode == null ? null
+                    : segment instanceof Integer ? jsonNode.get((Integer) segment) : jsonNode.get((String) segment);
+            walk(child.getValue(), next, failures);
+        }
+    }
+
+    /**
+     * Streaming counterpart of walk, with the parser positioned on the first
+     * token of the value that belongs to the given plan node.
+     */
+    private static void stream(PathNode planNode, JsonParser parser, List<String> failures) throws IOException {
+        JsonToken token = parser.currentToken();
+        if ((token != JsonToken.START_OBJECT && token != JsonToken.START_ARRAY) || comparesWholeValue(planNode)) {
+            // Scalars, and containers compared as a whole, are small enough to materialize
+            JsonNode value = parser.readValueAsTree();
+            walk(planNode, value, failures);
+            return;
+        }
+
+        Set<Object> seen = new HashSet<>();
+        int count = 0;
+        if (token == JsonToken.START_OBJECT) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                parser.nextToken();
+                streamChild(planNode, name, parser, seen, failures);
+                count++;
+            }
+        } else {
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                streamChild(planNode, count, parser, seen, failures);
+                count++;
+            }
+        }
+
+        for (Expectation expectation : planNode.expectations) {
+            String actual = String.valueOf(count);
+            if (!expectation.expected.equals(actual)) {
+                failures.add("'" + expectation.path + "' was <" + actual + ">, expected " + describe(expectation));
+            }
+        }
+        for (Map.Entry<Object, PathNode> child : planNode.children.entrySet()) {
+            if (!seen.contains(child.getKey())) {
+                walk(child.getValue(), null, failures);
+            }
+        }
+    }
+
+    private static void streamChild(PathNode planNode, Object segment, JsonParser parser, Set<Object> seen,
+            List<String> failures) throws IOException {
+        PathNode child = planNode.children.get(segment);
+        if (child == null) {
+            parser.skipChildren();
+        } else {
+            seen.add(segment);
+            stream(child, parser, failures);
+        }
+    }
+
+    private static boolean comparesWholeValue(PathNode planNode) {
+        for (Expectation expectation : planNode.expectations) {
+            if (expectation.check != Check.SIZE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String check(Expectation expectation, JsonNode node) {
+        if (node == null || node.isMissingNode()) {
+            return "'" + expectation.path + "' was missing, expected " + describe(expectation);
+        }
+        String actual;
+        switch (expectation.check) {
+            case SIZE:
+                if (!node.isContainerNode()) {
+                    return "'" + expectation.path + "' is not an array or object, expected " + describe(expectation);
+                }
+                actual = String.valueOf(node.size());
+                break;
+            case NUMBER:
+                actual = node.isIntegralNumber() ? String.valueOf(node.longValue()) : node.toString();
+                break;
+            default:
+                actual = node.isValueNode() ? node.asText() : node.toString();
+        }
+        return expectation.expected.equals(actual) ? null
+                : "'" + expectation.path + "' was <" + actual + ">, expected " + describe(expectation);
+    }
+
+    private static String describe(Expectation expectation) {
+        return (expectation.check == Check.SIZE ? "size <" : "<") + expectation.expected + ">";
+    }
+
+    /**
+     * Split a path such as `results[0].name` into field and index segments.
+     */
+    private static List<Object> compile(String path) {
+        List<Object> segments = new ArrayList<>();
+        if (path.isEmpty()) {
+            return segments;
+        }
+        for (String part : path.split("\\.")) {
+            int bracket = part.indexOf('[');
+            String field = bracket < 0 ? part : part.substring(0, bracket);
+            if (!field.isEmpty()) {
+                segments.add(field);
+            }
+            while (bracket >= 0) {
+                int close = part.indexOf(']', bracket);
+                if (close < 0) {
+                    throw new IllegalArgumentException("Unclosed index in path: " + path);
+                }
+                segments.add(Integer.parseInt(part.substring(bracket + 1, close).trim()));
+                bracket = part.indexOf('[', close);
+            }
+        }
+        return segments;
+    }
+}
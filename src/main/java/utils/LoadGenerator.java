@@ -0,0 +1,170 @@
+package utils;
+
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Open-model load generator.
+ *
+ * Requests are dispatched on a fixed schedule (a linear ramp-up to the target
+ * rate, then a constant rate) regardless of how quickly earlier requests
+ * complete. Latency is measured from each request's intended send time rather
+ * than its actual send time, so a stalled dispatcher or a slow server shows
+ * up in the percentiles instead of silently lowering the offered load
+ * (coordinated omission correction).
+ */
+public class LoadGenerator {
+
+    /**
+     * Outcome of a load run
+     */
+    public static class LoadResult {
+        private final LatencyHistogram histogram;
+        private final long sent;
+        private final long errors;
+        private final long elapsedNanos;
+
+        LoadResult(LatencyHistogram histogram, long sent, long errors, long elapsedNanos) {
+            this.histogram = histogram;
+            this.sent = sent;
+            this.errors = errors;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public LatencyHistogram getHistogram() {
+            return histogram;
+        }
+
+        public long getSent() {
+            return sent;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        /**
+         * Percentage of requests that failed or returned a 4xx/5xx status
+         */
+        public double getErrorRate() {
+            return sent == 0 ? 0 : errors * 100.0 / sent;
+        }
+
+        public double getAchievedRps() {
+            return elapsedNanos == 0 ? 0 : sent * 1_000_000_000.0 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "sent=%d, errors=%d (%.3f%%), achieved=%.1f req/s, mean=%.2f ms, p50=%.2f ms, p90=%.2f ms, "
+                            + "p99=%.2f ms, p99.9=%.2f ms, max=%.2f ms",
+                    sent, errors, getErrorRate(), getAchievedRps(), histogram.getMeanMicros() / 1000.0,
+                    histogram.getValueAtPercentile(50) / 1000.0, histogram.getValueAtPercentile(90) / 1000.0,
+                    histogram.getValueAtPercentile(99) / 1000.0, histogram.getValueAtPercentile(99.9) / 1000.0,
+                    histogram.getMaxMicros() / 1000.0);
+        }
+    }
+
+    /**
+     * Generate GET load against the given endpoint.
+     *
+     * @param endpoint  Endpoint relative to the API base URL
+     * @param targetRps Requests per second once the ramp-up is over
+     * @param duration  How long to hold the target rate after the ramp-up
+     * @param rampUp    How long to ramp linearly from 0 to the target rate
+     */
+    public static LoadResult run(String endpoint, int targetRps, Duration duration, Duration rampUp) {
+        return run(() -> ApiUtils.getAsync(endpoint), targetRps, duration, rampUp);
+    }
+
+    /**
+     * Generate load by invoking the given request supplier on schedule.
+     */
+    public static LoadResult run(Supplier<CompletableFuture<HttpResponse<String>>> request, int targetRps,
+            Duration duration, Duration rampUp) {
+        if (targetRps <= 0) {
+            throw new IllegalArgumentException("Target RPS must be positive: " + targetRps);
+        }
+        double rampSeconds = rampUp.toNanos() / 1e9;
+        double totalSeconds = rampSeconds + duration.toNanos() / 1e9;
+        long totalRequests = (long) (targetRps * rampSeconds / 2 + targetRps * (totalSeconds - rampSeconds));
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        LongAdder errors = new LongAdder();
+        // Outstanding requests plus one for the sender, so the run drains only
+        // once every request is sent and has completed. Completed responses are
+        // not kept, only their latency and outcome.
+        AtomicLong outstanding = new AtomicLong(1);
+        CompletableFuture<Void> drained = new CompletableFuture<>();
+
+        System.out.printf("Generating load: %d req/s for %s after %s ramp-up (%d requests)%n", targetRps, duration,
+                rampUp, totalRequests);
+        long start = System.nanoTime();
+        for (long i = 0; i < totalRequests; i++) {
+            long intendedStart = start + intendedOffsetNanos(i, targetRps, rampSeconds);
+            long wait;
+            while ((wait = intendedStart - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+
+            CompletableFuture<HttpResponse<String>> future;
+            try {
+                future = request.get();
+            } catch (RuntimeException e) {
+                future = CompletableFuture.failedFuture(e);
+            }
+            outstanding.incrementAndGet();
+            future.whenComplete((response, error) -> {
+                try {
+                    histogram.record((System.nanoTime() - intendedStart) / 1000);
+                    if (error != null || response.statusCode() >= 400) {
+                        errors.increment();
+                    }
+                } finally {
+                    if (outstanding.decrementAndGet() == 0) {
+                        drained.complete(null);
+                    }
+                }
+            });
+        }
+        if (outstanding.decrementAndGet() == 0) {
+            drained.complete(null);
+        }
+
+        try {
+            drained.get(Math.max(30, (long) totalSeconds), TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            throw new RuntimeException("Load run did not drain within the timeout period.", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for the load run to drain.", e);
+        } catch (Exception e) {
+            throw new RuntimeException("Load run failed.", e);
+        }
+
+        LoadResult result = new LoadResult(histogram, totalRequests, errors.sum(), System.nanoTime() - start);
+        System.out.println("Load run completed: " + result);
+        return result;
+    }
+
+    /**
+     * Intended send time of the i-th request relative to the start of the run.
+     * During the ramp-up the rate grows linearly, so the number of requests sent
+     * by time t is rps * t^2 / (2 * ramp); afterwards it grows at the full rate.
+     */
+    private static long intendedOffsetNanos(long i, int targetRps, double rampSeconds) {
+        double rampRequests = targetRps * rampSeconds / 2;
+        double seconds = i < rampRequests
+                ? Math.sqrt(2 * i * rampSeconds / targetRps)
+                : rampSeconds + (i - rampRequests) / targetRps;
+        return (long) (seconds * 1e9);
+    }
+}
@@ -0,0 +1,301 @@
+package utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Asynchronous capture of a line-oriented log (emulator output, logcat) to a
+ * rotating file.
+ *
+ * {@link #offer(String)} appends to a lock-free queue bounded by a counter and
+ * returns at once; when the queue is full the line is dropped and counted, so
+ * a chatty producer never blocks the thread feeding it. A single writer
+ * thread drains the queue in batches, writes each batch with one call and
+ * flushes it, so the file is never more than one batch behind. Once the file
+ * exceeds its size limit it is compressed to `<file>.1.gz`, older archives
+ * move up one number and the oldest beyond the limit is deleted; compression
+ * runs on the writer thread too.
+ *
+ * The writer also keeps the last lines in a ring buffer, so the lines written
+ * since a {@link #mark()} can be read back without touching the files, e.g.
+ * to attach to a failed scenario.
+ */
+public final class LogCapture implements Closeable {
+    private static final int BATCH_LINES = 1024;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long CATCH_UP_MILLIS = 1000;
+
+    private final Path file;
+    private final long maxFileBytes;
+    private final int maxArchives;
+    private final int queueCapacity;
+    private final Queue<String> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong accepted = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+    private final AtomicReferenceArray<String> tail;
+    private final Thread writer;
+    // Only advanced by the writer thread
+    private volatile long written;
+    private volatile long rotations;
+    private volatile boolean closed;
+    private volatile boolean writerParked;
+    private OutputStream out;
+    private long fileBytes;
+
+    /**
+     * @param file          Log file, appended to if it exists
+     * @param maxFileBytes  Size after which the file is rotated
+     * @param maxArchives   Compressed archives kept, 0 to delete the file on
+     *                      rotation
+     * @param queueCapacity Lines waiting for the writer beyond which new lines
+     *                      are dropped
+     * @param tailLines     Lines kept in memory for {@link #since(long)}
+     */
+    public LogCapture(Path file, long maxFileBytes, int maxArchives, int queueCapacity, int tailLines)
+            throws IOException {
+        if (maxFileBytes < 1 || maxArchives < 0 || queueCapacity < 1 || tailLines < 1) {
+            throw new IllegalArgumentException("Invalid log capture limits: " + maxFileBytes + " bytes, "
+                    + maxArchives + " archives, " + queueCapacity + " queued, " + tailLines + " tail lines");
+        }
+        this.file = file.toAbsolutePath();
+        this.maxFileBytes = maxFileBytes;
+        this.maxArchives = maxArchives;
+        this.queueCapacity = queueCapacity;
+        this.tail = new AtomicReferenceArray<>(tailLines);
+        Files.createDirectories(this.file.getParent());
+        openFile();
+        writer = new Thread(this::writeLoop, "log-capture-" + this.file.getFileName());
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * A capture with the limits from LOG_FILE_MAX_BYTES (10 MiB),
+     * LOG_FILE_MAX_ARCHIVES (5), LOG_QUEUE_LINES (65536) and LOG_TAIL_LINES
+     * (10000)
+     */
+    public static LogCapture open(Path file) throws IOException {
+        return new LogCapture(file, ConfigUtils.getLong("LOG_FILE_MAX_BYTES", 10L << 20),
+                ConfigUtils.getInt("LOG_FILE_MAX_ARCHIVES", 5), ConfigUtils.getInt("LOG_QUEUE_LINES", 65536),
+                ConfigUtils.getInt("LOG_TAIL_LINES", 10000));
+    }
+
+    /**
+     * Queue a line for writing without blocking.
+     *
+     * @return false if the queue was full or the capture closed, and the line
+     *         was dropped
+     */
+    public boolean offer(String line) {
+        if (closed || queued.incrementAndGet() > queueCapacity) {
+            queued.decrementAndGet();
+            dropped.increment();
+            return false;
+        }
+        accepted.incrementAndGet();
+        queue.add(line);
+        if (writerParked) {
+            LockSupport.unpark(writer);
+        }
+        return true;
+    }
+
+    /**
+     * Position of the next line offered, to read the lines after it with
+     * {@link #since(long)}
+     */
+    public long mark() {
+        return accepted.get();
+    }
+
+    /**
+     * The lines offered since a mark, once the writer has caught up with
+     * them. Lines that already left the in-memory tail are replaced by a
+     * note saying how many were skipped.
+     */
+    public List<String> since(long mark) throws InterruptedException {
+        awaitWritten(accepted.get(), CATCH_UP_MILLIS);
+        long end = written;
+        long start = Math.max(mark, end - tail.length());
+        List<String> lines = new ArrayList<>();
+        for (long i = start; i < end; i++) {
+            lines.add(tail.get((int) (i % tail.length())));
+        }
+        // The writer may have overwritten the oldest lines while they were copied
+        long overwritten = Math.max(0, written - tail.length() - start);
+        if (overwritten > 0) {
+            lines.subList(0, (int) Math.min(overwritten, lines.size())).clear();
+        }
+        long skipped = end - mark - lines.size();
+        if (skipped > 0) {
+            lines.add(0, "... " + skipped + " earlier lines are only in " + file);
+        }
+        return lines;
+    }
+
+    /**
+     * Wait until every line offered so far is in the file.
+     *
+     * @return false if the writer did not catch up within the timeout
+     */
+    public boolean flush(long timeoutMillis) throws InterruptedException {
+        return awaitWritten(accepted.get(), timeoutMillis);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Lines written to the file
+     */
+    public long getWritten() {
+        return written;
+    }
+
+    /**
+     * Lines dropped because the queue was full
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public long getRotations() {
+        return rotations;
+    }
+
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    /**
+     * Write the lines still queued and close the file. Lines offered later
+     * are dropped.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean awaitWritten(long target, long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (written < target && writer.isAlive()) {
+            if (deadline - System.nanoTime() <= 0) {
+                return false;
+            }
+            LockSupport.unpark(writer);
+            Thread.sleep(1);
+        }
+        return written >= target;
+    }
+
+    private void writeLoop() {
+        StringBuilder batch = new StringBuilder();
+        try {
+            while (true) {
+                int count = 0;
+                String line;
+                while (count < BATCH_LINES && (line = queue.poll()) != null) {
+                    batch.append(line).append('\n');
+                    tail.set((int) ((written + count) % tail.length()), line);
+                    count++;
+                }
+                if (count > 0) {
+                    queued.addAndGet(-count);
+                    write(batch);
+                    batch.setLength(0);
+                    written += count;
+                    continue;
+                }
+                if (closed) {
+                    break;
+                }
+                writerParked = true;
+                if (queue.isEmpty() && !closed) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                writerParked = false;
+            }
+        } catch (IOException e) {
+            System.err.println("Log capture to " + file + " failed: " + e.getMessage());
+            closed = true;
+        } finally {
+            try {
+                out.close();
+            } catch (IOException e) {
+                System.err.println("Failed to close " + file + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void write(StringBuilder batch) throws IOException {
+        byte[] bytes = batch.toString().getBytes(StandardCharsets.UTF_8);
+        out.write(bytes);
+        out.flush();
+        fileBytes += bytes.length;
+        if (fileBytes >= maxFileBytes) {
+            rotate();
+        }
+    }
+
+    /**
+     * Compress the file to `.1.gz`, shifting the older archives up by one
+     */
+    private void rotate() throws IOException {
+        out.close();
+        if (maxArchives == 0) {
+            Files.delete(file);
+        } else {
+            Files.deleteIfExists(archive(maxArchives));
+            for (int i = maxArchives - 1; i >= 1; i--) {
+                if (Files.exists(archive(i))) {
+                    Files.move(archive(i), archive(i + 1), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            Path compressed = archive(1);
+            Path partial = compressed.resolveSibling(compressed.getFileName() + ".tmp");
+            try (InputStream in = Files.newInputStream(file);
+                    OutputStream gzip = new GZIPOutputStream(Files.newOutputStream(partial), 1 << 16)) {
+                in.transferTo(gzip);
+            }
+            Files.move(partial, compressed, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.delete(file);
+        }
+        rotations++;
+        openFile();
+    }
+
+    private Path archive(int number) {
+        return file.resolveSibling(file.getFileName() + "." + number + ".gz");
+    }
+
+    private void openFile() throws IOException {
+        out = Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        fileBytes = Files.size(file);
+    }
+}
@@ -0,0 +1,37 @@
+package utils;
+
+import java.util.Locale;
+
+/**
+ * An HTTP server that hands every request to the mock backend and writes back
+ * its response. MockServerUtils runs one engine per worker thread.
+ */
+public interface MockEngine {
+
+    /**
+     * Start serving on the given port (0 for an OS-assigned one).
+     */
+    void start(int port, MockRouter.Handler handler);
+
+    /**
+     * The port the engine is listening on
+     */
+    int getPort();
+
+    void stop();
+
+    /**
+     * Create an engine by name: `mockserver` (MockServer/Netty) or `jdk`
+     * (JDK HTTP server on virtual threads).
+     */
+    static MockEngine create(String name) {
+        switch (name.trim().toLowerCase(Locale.ROOT)) {
+            case "mockserver":
+                return new MockServerEngine();
+            case "jdk":
+                return new JdkMockEngine();
+            default:
+                throw new IllegalArgumentException("Unknown mock server engine: " + name + " (use mockserver or jdk)");
+        }
+    }
+}
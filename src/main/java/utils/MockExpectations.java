@@ -0,0 +1,279 @@
+package utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.yaml.snakeyaml.LoaderOptions;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.SafeConstructor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Immutable index of stub routes loaded from a directory of JSON and YAML
+ * definition files.
+ *
+ * Each file holds a list of expectations, either at the top level or under an
+ * `expectations` key:
+ *
+ * <pre>
+ * expectations:
+ *   - method: GET
+ *     path: /people/1
+ *     status: 200                          # optional, defaults to 200
+ *     headers:                             # optional
+ *       Content-Type: application/json
+ *     body: {name: Luke Skywalker}         # object, array or plain text
+ * </pre>
+ *
+ * Bodies are encoded to bytes once at load time and routes are indexed by
+ * exact method and path, so a lookup costs two hash probes whatever the number
+ * of routes. Query strings are not part of the key. When several files define
+ * the same route, the file that sorts last wins.
+ */
+public class MockExpectations {
+    public static final MockExpectations EMPTY = new MockExpectations(Collections.emptyMap(), 0);
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final long RELOAD_DEBOUNCE_MS = 200;
+
+    /**
+     * A single pre-encoded response
+     */
+    public static class Route {
+        private final int statusCode;
+        private final Map<String, String> headers;
+        private final byte[] body;
+
+        Route(int statusCode, Map<String, String> headers, byte[] body) {
+            this.statusCode = statusCode;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        public Map<String, String> getHeaders() {
+            return headers;
+        }
+
+        /**
+         * The encoded body, or null for an empty response
+         */
+        public byte[] getBody() {
+            return body;
+        }
+
+        /**
+         * Build a fresh response around the shared encoded body
+         */
+        public MockResponse toResponse() {
+            MockResponse response = new MockResponse(statusCode).withBody(body);
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                response.withHeader(header.getKey(), header.getValue());
+            }
+            return response;
+        }
+    }
+
+    private final Map<String, Map<String, Route>> routesByMethod;
+    private final int size;
+
+    private MockExpectations(Map<String, Map<String, Route>> routesByMethod, int size) {
+        this.routesByMethod = routesByMethod;
+        this.size = size;
+    }
+
+    /**
+     * Look up the route for a request.
+     *
+     * @return The route, or null if no file defines this method and path
+     */
+    public Route find(String method, String path) {
+        Map<String, Route> routes = routesByMethod.get(method.toUpperCase());
+        return routes == null ? null : routes.get(path);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Load every `.json`, `.yaml` and `.yml` file under the given directory.
+     */
+    public static MockExpectations load(Path directory) {
+        if (!Files.isDirectory(directory)) {
+            throw new IllegalStateException("Mock expectations directory not found: " + directory.toAbsolutePath());
+        }
+        List<Path> files;
+        try (Stream<Path> paths = Files.walk(directory)) {
+            files = paths.filter(MockExpectations::isDefinitionFile).sorted().collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to list mock expectations in " + directory, e);
+        }
+
+        Map<String, Map<String, Route>> routesByMethod = new HashMap<>();
+        int size = 0;
+        for (Path file : files) {
+            for (JsonNode definition : readDefinitions(file)) {
+                String method = required(definition, "method", file).toUpperCase();
+                String path = required(definition, "path", file);
+                Route previous = routesByMethod.computeIfAbsent(method, key -> new HashMap<>())
+                        .put(path, toRoute(definition, file));
+                if (previous == null) {
+                    size++;
+                } else {
+                    System.out.println("Mock expectation " + method + " " + path + " redefined in " + file);
+                }
+            }
+        }
+        return new MockExpectations(routesByMethod, size);
+    }
+
+    /**
+     * Watch the directory and hand a freshly loaded index to the callback
+     * whenever a definition file changes. Bursts of changes are coalesced into
+     * one reload; a reload that fails is reported and the callback is not
+     * invoked, so the previous index stays in use. Interrupt the returned
+     * daemon thread to stop watching.
+     */
+    public static Thread watch(Path directory, Consumer<MockExpectations> onReload) {
+        WatchService watchService;
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            registerAll(directory, watchService);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to watch mock expectations in " + directory, e);
+        }
+
+        Thread watcher = new Thread(() -> {
+            try (WatchService service = watchService) {
+                while (!Thread.currentThread().isInterrupted()) {
+                    WatchKey key = service.take();
+                    // Let editors finish writing before reloading
+                    do {
+                        key.pollEvents();
+                        key.reset();
+                    } while ((key = service.poll(RELOAD_DEBOUNCE_MS, TimeUnit.MILLISECONDS)) != null);
+
+                    try {
+                        registerAll(directory, service);
+                        MockExpectations reloaded = load(directory);
+                        onReload.accept(reloaded);
+                        System.out.println("Reloaded " + reloaded.size() + " mock expectations from " + directory);
+                    } catch (RuntimeException e) {
+                        System.err.println("Failed to reload mock expectations, keeping the previous set: "
+                                + e.getMessage());
+                    }
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                // Stopped
+            } catch (IOException e) {
+                System.err.println("Mock expectations watcher failed: " + e.getMessage());
+            }
+        }, "mock-expectations-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+        return watcher;
+    }
+
+    private static void registerAll(Path directory, WatchService watchService) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path dir : (Iterable<Path>) paths.filter(Files::isDirectory)::iterator) {
+                dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            }
+        }
+    }
+
+    private static boolean isDefinitionFile(Path path) {
+        String name = path.getFileName().toString().toLowerCase();
+        return Files.isRegularFile(path) && (name.endsWith(".json") || name.endsWith(".yaml")
+                || name.endsWith(".yml"));
+    }
+
+    private static List<JsonNode> readDefinitions(Path file) {
+        JsonNode root;
+        try (InputStream in = Files.newInputStream(file)) {
+            if (file.getFileName().toString().toLowerCase().endsWith(".json")) {
+                root = objectMapper.readTree(in);
+            } else {
+                Object yaml = new Yaml(new SafeConstructor(new LoaderOptions())).load(in);
+                root = objectMapper.valueToTree(yaml);
+            }
+        } catch (IOException | RuntimeException e) {
+            throw new IllegalStateException("Failed to parse mock expectations file " + file + ": "
+                    + e.getMessage(), e);
+        }
+
+        JsonNode list = root != null && root.isObject() ? root.get("expectations") : root;
+        if (list == null || list.isNull()) {
+            return Collections.emptyList();
+        }
+        if (!list.isArray()) {
+            throw new IllegalStateException("Expected a list of expectations in " + file);
+        }
+        List<JsonNode> definitions = new ArrayList<>(list.size());
+        list.forEach(definitions::add);
+        return definitions;
+    }
+
+    private static Route toRoute(JsonNode definition, Path file) {
+        Map<String, String> headers = new LinkedHashMap<>();
+        Iterator<Map.Entry<String, JsonNode>> fields = definition.path("headers").fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> header = fields.next();
+            headers.put(header.getKey(), header.getValue().asText());
+        }
+
+        JsonNode bodyNode = definition.get("body");
+        byte[] body = null;
+        if (bodyNode != null && !bodyNode.isNull()) {
+            if (bodyNode.isContainerNode()) {
+                try {
+                    body = objectMapper.writeValueAsBytes(bodyNode);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Failed to encode body of " + definition.path("path").asText()
+                            + " in " + file, e);
+                }
+                if (headers.keySet().stream().noneMatch("Content-Type"::equalsIgnoreCase)) {
+                    headers.put("Content-Type", "application/json");
+                }
+            } else {
+                body = bodyNode.asText().getBytes(StandardCharsets.UTF_8);
+            }
+        }
+        return new Route(definition.path("status").asInt(200), Collections.unmodifiableMap(headers), body);
+    }
+
+    private static String required(JsonNode definition, String field, Path file) {
+        JsonNode value = definition.get(field);
+        if (value == null || !value.isValueNode() || value.asText().isEmpty()) {
+            throw new IllegalStateException("Mock expectation without '" + field + "' in " + file + ": "
+                    + definition);
+        }
+        return value.asText();
+    }
+}
@@ -0,0 +1,76 @@
+package utils;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An incoming request as seen by the mock backend, independent of the engine
+ * that received it.
+ */
+public class MockRequest {
+    private final String method;
+    private final String path;
+    private final String query;
+    private final byte[] body;
+    private Map<String, String> queryParameters;
+    private Map<String, String> pathParameters = Collections.emptyMap();
+
+    /**
+     * @param method HTTP method
+     * @param path   Decoded path
+     * @param query  Decoded query string without the leading `?`, or null
+     * @param body   Request body, or null when empty
+     */
+    public MockRequest(String method, String path, String query, byte[] body) {
+        this.method = method.toUpperCase();
+        this.path = path;
+        this.query = query == null || query.isEmpty() ? null : query;
+        this.body = body == null || body.length == 0 ? null : body;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    /**
+     * First value of a query parameter, or null
+     */
+    public String getQueryParameter(String name) {
+        if (queryParameters == null) {
+            Map<String, String> parameters = new HashMap<>();
+            if (query != null) {
+                for (String pair : query.split("&")) {
+                    int equals = pair.indexOf('=');
+                    parameters.putIfAbsent(equals < 0 ? pair : pair.substring(0, equals),
+                            equals < 0 ? "" : pair.substring(equals + 1));
+                }
+            }
+            queryParameters = parameters;
+        }
+        return queryParameters.get(name);
+    }
+
+    /**
+     * Value of a `{name}` segment of the route that matched, or null
+     */
+    public String getPathParameter(String name) {
+        return pathParameters.get(name);
+    }
+
+    void setPathParameters(Map<String, String> pathParameters) {
+        this.pathParameters = pathParameters;
+    }
+}
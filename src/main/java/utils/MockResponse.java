@@ -0,0 +1,174 @@
+package utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A response produced by the mock backend, written out by whichever engine is
+ * running. Besides status, headers and body it carries the delay before it is
+ * sent and whether the connection should be dropped instead.
+ *
+ * A body is either held in memory or streamed: a streamed body is produced by
+ * a {@link BodyWriter} while it is sent, so engines that can write a response
+ * incrementally never hold all of it.
+ */
+public class MockResponse {
+    /**
+     * Writes a streamed body of a known length
+     */
+    public interface BodyWriter {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    private int statusCode;
+    private final Map<String, String> headers = new LinkedHashMap<>();
+    private byte[] body;
+    private BodyWriter bodyWriter;
+    private long bodyLength;
+    private long delayMillis;
+    private long bytesPerSecond;
+    private boolean dropConnection;
+
+    public MockResponse(int statusCode) {
+        this.statusCode = statusCode;
+    }
+
+    public static MockResponse notFound() {
+        return new MockResponse(404);
+    }
+
+    /**
+     * A response with a JSON body
+     */
+    public static MockResponse json(int statusCode, byte[] body) {
+        return new MockResponse(statusCode).withHeader("Content-Type", "application/json").withBody(body);
+    }
+
+    public MockResponse withStatusCode(int statusCode) {
+        this.statusCode = statusCode;
+        return this;
+    }
+
+    public MockResponse withHeader(String name, String value) {
+        headers.put(name, value);
+        return this;
+    }
+
+    public MockResponse withBody(byte[] body) {
+        this.body = body == null || body.length == 0 ? null : body;
+        this.bodyWriter = null;
+        this.bodyLength = this.body == null ? 0 : body.length;
+        return this;
+    }
+
+    /**
+     * Stream the body instead of holding it
+     *
+     * @param length Exact number of bytes the writer produces
+     */
+    public MockResponse withStreamedBody(long length, BodyWriter writer) {
+        this.body = null;
+        this.bodyWriter = length == 0 ? null : writer;
+        this.bodyLength = length;
+        return this;
+    }
+
+    /**
+     * Add to the time the response is held back before it is sent
+     */
+    public MockResponse withAddedDelay(long millis) {
+        delayMillis += millis;
+        return this;
+    }
+
+    /**
+     * Send the body at no more than the given rate
+     */
+    public MockResponse withBandwidth(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+        return this;
+    }
+
+    /**
+     * Send a truncated response and close the connection
+     */
+    public MockResponse withDroppedConnection() {
+        dropConnection = true;
+        return this;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * The body, or null for an empty response. A streamed body is written into
+     * memory, for engines that cannot send it incrementally.
+     *
+     * @throws IllegalStateException if a streamed body does not fit in an array
+     */
+    public byte[] getBody() {
+        if (bodyWriter == null) {
+            return body;
+        }
+        if (bodyLength > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Streamed body of " + bodyLength + " bytes does not fit in memory");
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) bodyLength);
+        try {
+            bodyWriter.writeTo(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    public long getBodyLength() {
+        return bodyLength;
+    }
+
+    public boolean isStreamed() {
+        return bodyWriter != null;
+    }
+
+    /**
+     * Write the body, streamed or held, to an engine's output
+     */
+    public void writeBody(OutputStream out) throws IOException {
+        if (bodyWriter != null) {
+            bodyWriter.writeTo(out);
+        } else if (body != null) {
+            out.write(body);
+        }
+    }
+
+    public long getDelayMillis() {
+        return delayMillis;
+    }
+
+    /**
+     * Rate limit of the body in bytes per second, or 0 for none
+     */
+    public long getBandwidth() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * Time the body takes to send at the bandwidth limit
+     */
+    public long getTransferMillis() {
+        return bytesPerSecond > 0 ? bodyLength * 1000L / bytesPerSecond : 0;
+    }
+
+    public boolean isConnectionDropped() {
+        return dropConnection;
+    }
+}
@@ -0,0 +1,108 @@
+package utils;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Routes requests to code-defined handlers through a trie of path segments.
+ *
+ * Patterns are paths whose segments are either literal or a `{name}`
+ * placeholder matching any single segment (e.g. `/people/{id}`). Lookup walks
+ * one trie node per segment, so its cost depends on the depth of the path and
+ * not on the number of routes. Literal segments win over placeholders.
+ */
+public class MockRouter {
+
+    /**
+     * Handles a routed request, or returns null to let it fall through to
+     * the mock server's other sources of responses
+     */
+    @FunctionalInterface
+    public interface Handler {
+        MockResponse handle(MockRequest request);
+    }
+
+    private static class Node {
+        private final Map<String, Node> literals = new ConcurrentHashMap<>();
+        private volatile Node placeholder;
+        private volatile String placeholderName;
+        private final Map<String, Handler> handlers = new ConcurrentHashMap<>();
+    }
+
+    private final Node root = new Node();
+
+    /**
+     * Register a handler for a method and path pattern, replacing any handler
+     * already registered for them.
+     */
+    public synchronized MockRouter add(String method, String pattern, Handler handler) {
+        Node node = root;
+        for (String segment : segments(pattern)) {
+            if (segment.startsWith("{") && segment.endsWith("}")) {
+                String name = segment.substring(1, segment.length() - 1);
+                if (node.placeholder == null) {
+                    node.placeholder = new Node();
+                    node.placeholderName = name;
+                } else if (!node.placeholderName.equals(name)) {
+                    throw new IllegalArgumentException("Conflicting placeholder {" + name + "} in " + pattern
+                            + ", already registered as {" + node.placeholderName + "}");
+                }
+                node = node.placeholder;
+            } else {
+                node = node.literals.computeIfAbsent(segment, key -> new Node());
+            }
+        }
+        node.handlers.put(method.toUpperCase(), handler);
+        return this;
+    }
+
+    /**
+     * Handle the request if a route matches it.
+     *
+     * @return The handler's response, or null if no route matches or the
+     *         handler declined the request
+     */
+    public MockResponse route(MockRequest request) {
+        String[] segments = segments(request.getPath());
+        Map<String, String> parameters = new HashMap<>(4);
+        Node node = find(root, request.getMethod(), segments, 0, parameters);
+        if (node == null) {
+            return null;
+        }
+        request.setPathParameters(parameters.isEmpty() ? Collections.emptyMap() : parameters);
+        return node.handlers.get(request.getMethod()).handle(request);
+    }
+
+    private static Node find(Node node, String method, String[] segments, int index,
+            Map<String, String> parameters) {
+        if (index == segments.length) {
+            return node.handlers.containsKey(method) ? node : null;
+        }
+        Node literal = node.literals.get(segments[index]);
+        if (literal != null) {
+            Node found = find(literal, method, segments, index + 1, parameters);
+            if (found != null) {
+                return found;
+            }
+        }
+        Node placeholder = node.placeholder;
+        if (placeholder != null) {
+            Node found = find(placeholder, method, segments, index + 1, parameters);
+            if (found != null) {
+                parameters.put(node.placeholderName, segments[index]);
+                return found;
+            }
+        }
+        return null;
+    }
+
+    private static String[] segments(String path) {
+        String trimmed = path.startsWith("/") ? path.substring(1) : path;
+        if (trimmed.endsWith("/")) {
+            trimmed = trimmed.substring(0, trimmed.length() - 1);
+        }
+        return trimmed.isEmpty() ? new String[0] : trimmed.split("/");
+    }
+}
@@ -0,0 +1,82 @@
+package utils;
+
+import org.mockserver.configuration.ConfigurationProperties;
+import org.mockserver.integration.ClientAndServer;
+import org.mockserver.model.ConnectionOptions;
+import org.mockserver.model.HttpRequest;
+import org.mockserver.model.HttpResponse;
+import org.mockserver.model.NottableString;
+import org.mockserver.model.Parameter;
+
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mock engine backed by MockServer. A single catch-all callback hands every
+ * request to the mock backend. This engine also negotiates TLS and HTTP/2
+ * on its port.
+ */
+public class MockServerEngine implements MockEngine {
+    private ClientAndServer server;
+
+    @Override
+    public void start(int port, MockRouter.Handler handler) {
+        // Requests are journaled by MockServerUtils; keep MockServer's own
+        // event log, which holds every request in full, small
+        ConfigurationProperties.maxLogEntries(ConfigUtils.getInt("MOCK_SERVER_MAX_LOG_ENTRIES", 100));
+        server = port == 0 ? ClientAndServer.startClientAndServer() : ClientAndServer.startClientAndServer(port);
+        server.when(HttpRequest.request()).respond(request -> toHttpResponse(handler.handle(toMockRequest(request))));
+    }
+
+    @Override
+    public int getPort() {
+        return server.getPort();
+    }
+
+    @Override
+    public void stop() {
+        if (server != null) {
+            server.stop();
+            server = null;
+        }
+    }
+
+    private static MockRequest toMockRequest(HttpRequest request) {
+        StringJoiner query = new StringJoiner("&");
+        if (request.getQueryStringParameterList() != null) {
+            for (Parameter parameter : request.getQueryStringParameterList()) {
+                for (NottableString value : parameter.getValues()) {
+                    query.add(parameter.getName().getValue() + "=" + value.getValue());
+                }
+            }
+        }
+        return new MockRequest(request.getMethod().getValue(), request.getPath().getValue(), query.toString(),
+                request.getBodyAsRawBytes());
+    }
+
+    private static HttpResponse toHttpResponse(MockResponse mockResponse) {
+        HttpResponse response = HttpResponse.response().withStatusCode(mockResponse.getStatusCode());
+        for (Map.Entry<String, String> header : mockResponse.getHeaders().entrySet()) {
+            response.withHeader(header.getKey(), header.getValue());
+        }
+        // MockServer needs the whole body, so a streamed one is written into memory here
+        byte[] body = mockResponse.getBody();
+        if (body != null) {
+            response.withBody(body);
+        }
+        if (mockResponse.isConnectionDropped()) {
+            // Promise more bytes than are sent, then close the socket
+            response.withConnectionOptions(ConnectionOptions.connectionOptions()
+                    .withContentLengthHeaderOverride((int) mockResponse.getBodyLength() + 1024)
+                    .withCloseSocket(true));
+        }
+        // MockServer writes a body in one go, so a bandwidth limit becomes extra delay
+        long delayMillis = mockResponse.getDelayMillis() + mockResponse.getTransferMillis();
+        if (delayMillis > 0) {
+            // Delayed by MockServer's scheduler, without holding a thread
+            response.withDelay(TimeUnit.MILLISECONDS, delayMillis);
+        }
+        return response;
+    }
+}
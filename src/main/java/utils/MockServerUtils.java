@@ -1,116 +1,458 @@
 package utils;
 
-import org.mockserver.integration.ClientAndServer;
-import org.mockserver.model.HttpRequest;
-import org.mockserver.model.HttpResponse;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiFunction;
 
+/**
+ * Mock backend for the API suite.
+ *
+ * Every worker thread gets its own mock server on an OS-assigned port (or on
+ * MOCK_SERVER_PORT when set), so scenarios can run in parallel threads and
+ * forks without competing for a port. The static methods act on the calling
+ * thread's instance; the expectation files are loaded once and shared by all
+ * instances. Routing, replay and fault injection are the same whichever
+ * {@link MockEngine} serves the requests.
+ */
 public class MockServerUtils {
-        private static ClientAndServer mockServer;
+        private static final String DEFAULT_EXPECTATIONS_DIR = "src/test/resources/mocks";
+        private static final ThreadLocal<Instance> currentInstance = new ThreadLocal<>();
+        private static final Set<Instance> runningInstances = ConcurrentHashMap.newKeySet();
+        private static final String PEOPLE_FOOTER = "]}";
+        // Swapped as a whole on reload, so requests always see one consistent set
+        private static volatile MockExpectations expectations = MockExpectations.EMPTY;
+        private static Path expectationsDirectory;
+        private static Thread expectationsWatcher;
 
+        /**
+         * A mock server owned by one worker thread
+         */
+        private static class Instance {
+                private final MockEngine engine;
+                private final String engineName;
+                private final MockRouter router = new MockRouter();
+                private final List<RecordingStore> replayStores = new CopyOnWriteArrayList<>();
+                private final List<Path> replayDirectories = new CopyOnWriteArrayList<>();
+                private volatile FaultProfile globalFaults = FaultProfile.NONE;
+                private final Map<String, FaultProfile> routeFaults = new ConcurrentHashMap<>();
+                private final RequestJournal journal = new RequestJournal(
+                                ConfigUtils.getInt("MOCK_JOURNAL_CAPACITY", 10_000),
+                                ConfigUtils.getInt("MOCK_JOURNAL_MAX_ROUTES", 1_000));
+                // Null unless the stateful /people backend is enabled
+                private volatile PeopleStore people;
+                private long startupMillis;
+                // Set when the server is stopped, possibly from another thread
+                private volatile boolean stopped;
+
+                Instance(MockEngine engine, String engineName) {
+                        this.engine = engine;
+                        this.engineName = engineName;
+                }
+
+                /**
+                 * Answer a request and record it in the journal
+                 */
+                MockResponse dispatch(MockRequest request) {
+                        long start = System.nanoTime();
+                        MockResponse response = respond(request);
+                        long latencyMicros = (System.nanoTime() - start) / 1_000
+                                        + (response.getDelayMillis() + response.getTransferMillis()) * 1_000;
+                        journal.record(request.getMethod(), request.getPath(), response.getStatusCode(),
+                                        latencyMicros, response.isConnectionDropped());
+                        return response;
+                }
+
+                /**
+                 * Answer a request from the code-defined routes, then the
+                 * file-defined routes (exact method and path), then the replay
+                 * stores, or with 404.
+                 */
+                MockResponse respond(MockRequest request) {
+                        MockResponse response = router.route(request);
+                        if (response == null) {
+                                MockExpectations.Route route = expectations.find(request.getMethod(),
+                                                request.getPath());
+                                response = route != null ? route.toResponse() : replay(request);
+                        }
+                        FaultProfile profile = routeFaults.isEmpty() ? globalFaults
+                                        : routeFaults.getOrDefault(request.getPath(), globalFaults);
+                        return profile == FaultProfile.NONE ? response : profile.apply(response);
+                }
+
+                MockResponse replay(MockRequest request) {
+                        if (replayStores.isEmpty()) {
+                                return MockResponse.notFound();
+                        }
+                        String path = RecordingStore.normalizePath(request.getPath(), request.getQuery());
+                        for (RecordingStore store : replayStores) {
+                                RecordingStore.Recording recording = store.find(request.getMethod(), path,
+                                                request.getBody());
+                                if (recording != null) {
+                                        MockResponse response = new MockResponse(recording.getStatusCode())
+                                                        .withBody(recording.getBodyAsBytes());
+                                        if (recording.getContentType() != null) {
+                                                response.withHeader("Content-Type", recording.getContentType());
+                                        }
+                                        return response;
+                                }
+                        }
+                        return MockResponse.notFound();
+                }
+
+                void stop() {
+                        stopped = true;
+                        String baseUrl = "http://localhost:" + engine.getPort();
+                        engine.stop();
+                        ApiUtils.forgetConnections(baseUrl);
+                        replayStores.forEach(RecordingStore::close);
+                        replayStores.clear();
+                        replayDirectories.clear();
+                }
+        }
+
+        /**
+         * Start a mock server for the calling thread, unless it already has one,
+         * on the engine selected by MOCK_SERVER_ENGINE (`mockserver` by default,
+         * or `jdk` for the lightweight JDK HTTP server).
+         */
         public static void startMockServer() {
-                if (mockServer == null) {
-                        mockServer = ClientAndServer.startClientAndServer(1080);
-
-                        // Mock GET request for "/people"
-                        mockServer.when(
-                                        HttpRequest.request()
-                                                        .withMethod("GET")
-                                                        .withPath("/people"))
-                                        .respond(
-                                                        HttpResponse.response()
-                                                                        .withStatusCode(200)
-                                                                        .withHeader("Content-Type", "application/json")
-                                                                        .withBody("{\n" +
-                                                                                        "  \"count\": 3,\n" +
-                                                                                        "  \"results\": [\n" +
-                                                                                        "    {\n" +
-                                                                                        "      \"name\": \"Luke Skywalker\",\n"
-                                                                                        +
-                                                                                        "      \"gender\": \"male\",\n"
-                                                                                        +
-                                                                                        "      \"birth_year\": \"19BBY\"\n"
-                                                                                        +
-                                                                                        "    },\n" +
-                                                                                        "    {\n" +
-                                                                                        "      \"name\": \"Leia Organa\",\n"
-                                                                                        +
-                                                                                        "      \"gender\": \"female\",\n"
-                                                                                        +
-                                                                                        "      \"birth_year\": \"19BBY\"\n"
-                                                                                        +
-                                                                                        "    },\n" +
-                                                                                        "    {\n" +
-                                                                                        "      \"name\": \"Han Solo\",\n"
-                                                                                        +
-                                                                                        "      \"gender\": \"male\",\n"
-                                                                                        +
-                                                                                        "      \"birth_year\": \"29BBY\"\n"
-                                                                                        +
-                                                                                        "    }\n" +
-                                                                                        "  ]\n" +
-                                                                                        "}"));
-
-                        // Mock GET request for "/people/1"
-                        mockServer.when(
-                                        HttpRequest.request()
-                                                        .withMethod("GET")
-                                                        .withPath("/people/1"))
-                                        .respond(
-                                                        HttpResponse.response()
-                                                                        .withStatusCode(200)
-                                                                        .withHeader("Content-Type", "application/json")
-                                                                        .withBody("{\"name\": \"Luke Skywalker\", \"gender\": \"male\", \"birth_year\": \"19BBY\"}"));
-
-                        // Mock GET request for "/starships/9"
-                        mockServer.when(
-                                        HttpRequest.request()
-                                                        .withMethod("GET")
-                                                        .withPath("/starships/9"))
-                                        .respond(
-                                                        HttpResponse.response()
-                                                                        .withStatusCode(200)
-                                                                        .withHeader("Content-Type", "application/json")
-                                                                        .withBody("{\"name\": \"Death Star\"}"));
-
-                        // Mock POST request for "/people"
-                        mockServer.when(
-                                        HttpRequest.request()
-                                                        .withMethod("POST")
-                                                        .withPath("/people"))
-                                        .respond(
-                                                        HttpResponse.response()
-                                                                        .withStatusCode(201)
-                                                                        .withHeader("Content-Type", "application/json")
-                                                                        .withBody("{\"id\": 101, \"name\": \"Obi-Wan Kenobi\"}"));
-
-                        // Mock PUT request for "/people/1"
-                        mockServer.when(
-                                        HttpRequest.request()
-                                                        .withMethod("PUT")
-                                                        .withPath("/people/1"))
-                                        .respond(
-                                                        HttpResponse.response()
-                                                                        .withStatusCode(200)
-                                                                        .withHeader("Content-Type", "application/json")
-                                                                        .withBody("{\"name\": \"Luke Skywalker\", \"gender\": \"male\", \"birth_year\": \"19BBY\"}"));
-
-                        // Mock DELETE request for "/people/1"
-                        mockServer.when(
-                                        HttpRequest.request()
-                                                        .withMethod("DELETE")
-                                                        .withPath("/people/1"))
-                                        .respond(
-                                                        HttpResponse.response()
-                                                                        .withStatusCode(204));
-
-                        System.out.println("Mock server started at: http://localhost:1080");
+                startMockServer(getDefaultEngine());
+        }
+
+        /**
+         * The engine selected by MOCK_SERVER_ENGINE, `mockserver` by default
+         */
+        public static String getDefaultEngine() {
+                return ConfigUtils.get("MOCK_SERVER_ENGINE", "mockserver");
+        }
+
+        /**
+         * Start a mock server on the given engine for the calling thread, unless
+         * it already has one.
+         */
+        public static void startMockServer(String engineName) {
+                if (current() != null) {
+                        return;
+                }
+                long start = System.nanoTime();
+                Instance instance = new Instance(MockEngine.create(engineName), engineName);
+
+                // Mock GET request for "/people/generated?count=N" (synthetic, arbitrarily large body)
+                instance.router.add("GET", "/people/generated", MockServerUtils::generatedPeople);
+
+                // Stateful /people routes; they fall through to the expectation files while disabled
+                instance.router.add("GET", "/people", stateful(instance, PeopleStore::list))
+                                .add("POST", "/people", stateful(instance, PeopleStore::create))
+                                .add("GET", "/people/{id}", stateful(instance, PeopleStore::get))
+                                .add("PUT", "/people/{id}", stateful(instance, PeopleStore::update))
+                                .add("DELETE", "/people/{id}", stateful(instance, PeopleStore::delete));
+                instance.people = defaultPeopleStore();
+
+                instance.engine.start(ConfigUtils.getInt("MOCK_SERVER_PORT", 0), instance::dispatch);
+                currentInstance.set(instance);
+                runningInstances.add(instance);
+                loadDefaultExpectations();
+                instance.startupMillis = (System.nanoTime() - start) / 1_000_000;
+
+                System.out.println("Mock server (" + engineName + ") started at: " + getBaseUrl() + " in "
+                                + instance.startupMillis + " ms");
+
+                String replayDir = ConfigUtils.get("MOCK_REPLAY_DIR");
+                if (replayDir != null && !replayDir.isEmpty()) {
+                        replayFrom(Paths.get(replayDir));
+                }
+        }
+
+        /**
+         * Replace the calling thread's mock server with one on the given engine,
+         * unless it already runs on that engine.
+         */
+        public static void restartMockServer(String engineName) {
+                Instance instance = current();
+                if (instance != null && instance.engineName.equalsIgnoreCase(engineName)) {
+                        return;
+                }
+                stopMockServer();
+                startMockServer(engineName);
+        }
+
+        /**
+         * Port of the calling thread's mock server
+         */
+        public static int getPort() {
+                return requireInstance().engine.getPort();
+        }
+
+        /**
+         * Base URL of the calling thread's mock server, for ApiUtils.bindBaseUrl
+         */
+        public static String getBaseUrl() {
+                return "http://localhost:" + getPort();
+        }
+
+        /**
+         * Time the calling thread's mock server took to start, including
+         * loading the expectation files when it was the first instance
+         */
+        public static long getStartupMillis() {
+                return requireInstance().startupMillis;
+        }
+
+        private static synchronized void loadDefaultExpectations() {
+                if (expectationsDirectory != null) {
+                        return;
+                }
+                Path directory = Paths.get(ConfigUtils.get("MOCK_EXPECTATIONS_DIR", DEFAULT_EXPECTATIONS_DIR));
+                if (Files.isDirectory(directory)) {
+                        loadExpectationsFrom(directory);
+                } else {
+                        System.out.println("No mock expectations directory at: " + directory.toAbsolutePath());
+                }
+        }
+
+        /**
+         * Serve the routes defined in the JSON/YAML files under the given directory
+         * from every mock server, replacing any previously loaded set, and reload
+         * them whenever the files change (unless MOCK_EXPECTATIONS_WATCH is false).
+         */
+        public static synchronized void loadExpectationsFrom(Path directory) {
+                stopWatchingExpectations();
+                Path normalized = directory.toAbsolutePath().normalize();
+                expectations = MockExpectations.load(normalized);
+                expectationsDirectory = normalized;
+                System.out.println("Loaded " + expectations.size() + " mock expectations from: " + normalized);
+                if (ConfigUtils.getBoolean("MOCK_EXPECTATIONS_WATCH", true)) {
+                        expectationsWatcher = MockExpectations.watch(normalized, reloaded -> expectations = reloaded);
+                }
+        }
+
+        /**
+         * Serve interactions recorded by ApiUtils (API_RECORD_DIR) from the given
+         * store for every request to the calling thread's mock server that no
+         * stub or expectation file matches. Bodies are read from the
+         * memory-mapped store on demand, not loaded up front.
+         */
+        public static void replayFrom(Path directory) {
+                Instance instance = requireInstance();
+                Path normalized = directory.toAbsolutePath().normalize();
+                if (instance.replayDirectories.contains(normalized)) {
+                        return;
+                }
+                instance.replayStores.add(RecordingStore.openForReplay(normalized));
+                instance.replayDirectories.add(normalized);
+                System.out.println("Mock server replaying recordings from: " + normalized);
+        }
+
+        /**
+         * Apply a fault profile to every route of the calling thread's mock
+         * server that has no profile of its own.
+         */
+        public static void useFaultProfile(FaultProfile profile) {
+                requireInstance().globalFaults = profile;
+                System.out.println("Mock server fault profile: " + profile);
+        }
+
+        /**
+         * Apply a fault profile to one path (any method) of the calling thread's
+         * mock server.
+         */
+        public static void useFaultProfile(String path, FaultProfile profile) {
+                requireInstance().routeFaults.put(path, profile);
+                System.out.println("Mock server fault profile for " + path + ": " + profile);
+        }
+
+        /**
+         * Make the calling thread's mock server respond right away again.
+         */
+        public static void clearFaultProfiles() {
+                Instance instance = current();
+                if (instance != null) {
+                        instance.globalFaults = FaultProfile.NONE;
+                        instance.routeFaults.clear();
+                }
+        }
+
+        /**
+         * Serve `/people` on the calling thread's mock server from a fresh
+         * stateful store holding the given number of generated people, so
+         * writes change what later reads return.
+         */
+        public static PeopleStore useStatefulPeople(long count) {
+                PeopleStore store = new PeopleStore(count);
+                requireInstance().people = store;
+                System.out.println("Mock server /people is stateful with " + count + " generated people");
+                return store;
+        }
+
+        /**
+         * Put the calling thread's `/people` routes back to their configured
+         * default: a fresh stateful store when MOCK_STATEFUL is set (with
+         * MOCK_PEOPLE_COUNT generated people), the expectation files otherwise.
+         */
+        public static void resetPeople() {
+                Instance instance = current();
+                if (instance != null) {
+                        instance.people = defaultPeopleStore();
+                }
+        }
+
+        /**
+         * Bounded journal of the requests served by the calling thread's mock
+         * server, with per-route counts and latency (MOCK_JOURNAL_CAPACITY
+         * recent requests, MOCK_JOURNAL_MAX_ROUTES routes).
+         */
+        public static RequestJournal getJournal() {
+                return requireInstance().journal;
+        }
+
+        /**
+         * Forget the requests served so far by the calling thread's mock server.
+         */
+        public static void resetJournal() {
+                Instance instance = current();
+                if (instance != null) {
+                        instance.journal.reset();
+                }
+        }
+
+        private static PeopleStore defaultPeopleStore() {
+                return ConfigUtils.getBoolean("MOCK_STATEFUL", false)
+                                ? new PeopleStore(ConfigUtils.getLong("MOCK_PEOPLE_COUNT", 1_000_000))
+                                : null;
+        }
+
+        private static MockRouter.Handler stateful(Instance instance,
+                        BiFunction<PeopleStore, MockRequest, MockResponse> handler) {
+                return request -> {
+                        PeopleStore store = instance.people;
+                        return store == null ? null : handler.apply(store, request);
+                };
+        }
+
+        /**
+         * The calling thread's mock server, or null. An instance stopped by
+         * {@link #stopAllMockServers()} from another thread is dropped here, so
+         * the thread starts a new one instead of binding to a dead server.
+         */
+        private static Instance current() {
+                Instance instance = currentInstance.get();
+                if (instance != null && instance.stopped) {
+                        currentInstance.remove();
+                        return null;
+                }
+                return instance;
+        }
+
+        private static Instance requireInstance() {
+                Instance instance = current();
+                if (instance == null) {
+                        throw new IllegalStateException("Mock server is not running on this thread.");
+                }
+                return instance;
+        }
+
+        /**
+         * Answer `/people/generated?count=N`, or 400 when count is missing or
+         * not a number from 0 up
+         */
+        private static MockResponse generatedPeople(MockRequest request) {
+                String value = request.getQueryParameter("count");
+                int count = parseCount(value);
+                if (count < 0) {
+                        return PeopleStore.error(400, "Expected a count of 0 or more, got: " + value);
+                }
+                return new MockResponse(200).withHeader("Content-Type", "application/json")
+                                .withStreamedBody(generatedPeopleLength(count), out -> writePeopleBody(out, count));
+        }
+
+        /**
+         * The count parameter, or -1 when it is missing or not a number
+         */
+        private static int parseCount(String value) {
+                if (value == null) {
+                        return -1;
+                }
+                try {
+                        return Integer.parseInt(value);
+                } catch (NumberFormatException e) {
+                        return -1;
+                }
+        }
+
+        /**
+         * Size of the `{"count": N, "results": [...]}` body with N generated
+         * people, computed up front without generating them, so it is sent with
+         * a Content-Length
+         */
+        static long generatedPeopleLength(int count) {
+                long separators = Math.max(0, count - 1);
+                return peopleHeader(count).length() + PeopleStore.syntheticJsonLength(count) + separators
+                                + PEOPLE_FOOTER.length();
+        }
+
+        /**
+         * Write the body with N generated people a buffer at a time, so it is
+         * never held in memory as a whole
+         */
+        static void writePeopleBody(OutputStream target, int count) throws IOException {
+                OutputStream out = new BufferedOutputStream(target, 64 * 1024);
+                out.write(peopleHeader(count).getBytes(StandardCharsets.US_ASCII));
+                for (int i = 1; i <= count; i++) {
+                        if (i > 1) {
+                                out.write(',');
+                        }
+                        out.write(PeopleStore.syntheticJson(i).getBytes(StandardCharsets.US_ASCII));
                 }
+                out.write(PEOPLE_FOOTER.getBytes(StandardCharsets.US_ASCII));
+                out.flush();
         }
 
+        private static String peopleHeader(int count) {
+                return "{\"count\": " + count + ", \"results\": [";
+        }
+
+        private static synchronized void stopWatchingExpectations() {
+                if (expectationsWatcher != null) {
+                        expectationsWatcher.interrupt();
+                        expectationsWatcher = null;
+                }
+        }
+
+        /**
+         * Stop the calling thread's mock server.
+         */
         public static void stopMockServer() {
-                if (mockServer != null) {
-                        mockServer.stop();
+                Instance instance = current();
+                if (instance != null) {
+                        currentInstance.remove();
+                        runningInstances.remove(instance);
+                        instance.stop();
                         System.out.println("Mock server stopped.");
                 }
         }
+
+        /**
+         * Stop the mock servers of every thread and the expectation file watcher.
+         */
+        public static synchronized void stopAllMockServers() {
+                currentInstance.remove();
+                for (Instance instance : runningInstances) {
+                        runningInstances.remove(instance);
+                        instance.stop();
+                }
+                stopWatchingExpectations();
+                expectations = MockExpectations.EMPTY;
+                expectationsDirectory = null;
+                System.out.println("All mock servers stopped.");
+        }
 }
@@ -0,0 +1,525 @@
+package utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongPredicate;
+
+/**
+ * Stateful in-memory `/people` backend for the mock server.
+ *
+ * The store starts with a synthetic dataset of people 1..N that is never
+ * materialized: a person that was not written is derived from its id on the
+ * fly, so millions of records cost no memory. Writes go to a
+ * {@link ConcurrentLongMap} of overrides keyed by id; deleting a synthetic
+ * person stores a tombstone. New people get ids after the dataset.
+ *
+ * Routes:
+ * - `GET /people?page=P&limit=L&gender=G&search=S&after=A`: a page of people
+ * in id order, SWAPI style (`count`, `next`, `previous`, `results`),
+ * optionally filtered by gender and by a case-insensitive name substring.
+ * `next` links carry the last id of the page as `after`, so a page reached
+ * through them starts right there instead of walking past the earlier ones.
+ * - `GET /people/{id}`, `PUT /people/{id}` (merges the given fields),
+ * `DELETE /people/{id}` and `POST /people`
+ *
+ * A page costs O(limit) plus a lookup: unfiltered offsets are resolved
+ * through an index of deleted ids, filtered pages through the cursor. Only a
+ * filtered page requested by number without a cursor walks from the start.
+ * Total and per-gender counts are kept up to date on every write; counts of
+ * name searches are computed once per version of the store.
+ */
+public class PeopleStore {
+    public static final int DEFAULT_PAGE_SIZE = 10;
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final Person DELETED = new Person(null, null, null, null);
+    private static final int MAX_CACHED_COUNTS = 256;
+
+    /**
+     * A person that was written through the API
+     */
+    private static final class Person {
+        private final String name;
+        private final String gender;
+        private final String birthYear;
+        // Encoded once when written
+        private final byte[] json;
+
+        Person(String name, String gender, String birthYear, byte[] json) {
+            this.name = name;
+            this.gender = gender;
+            this.birthYear = birthYear;
+            this.json = json;
+        }
+    }
+
+    private final long syntheticCount;
+    private final ConcurrentLongMap<Person> overrides = new ConcurrentLongMap<>();
+    private final AtomicLong nextId;
+    private final AtomicLong size;
+    private final DeletedIds deletedIds = new DeletedIds();
+    private final Map<String, AtomicLong> genderCounts = new ConcurrentHashMap<>();
+    // Bumped on every write, so cached search counts of older versions are ignored
+    private final AtomicLong version = new AtomicLong();
+    private final Map<String, long[]> searchCounts = new ConcurrentHashMap<>();
+
+    /**
+     * @param syntheticCount Number of generated people the store starts with
+     */
+    public PeopleStore(long syntheticCount) {
+        if (syntheticCount < 0) {
+            throw new IllegalArgumentException("Dataset size must not be negative: " + syntheticCount);
+        }
+        this.syntheticCount = syntheticCount;
+        this.nextId = new AtomicLong(syntheticCount + 1);
+        this.size = new AtomicLong(syntheticCount);
+        // Synthetic people alternate male, female from id 1
+        adjustGenderCount("female", syntheticCount / 2);
+        adjustGenderCount("male", syntheticCount - syntheticCount / 2);
+    }
+
+    /**
+     * Number of people currently in the store
+     */
+    public long size() {
+        return size.get();
+    }
+
+    public MockResponse list(MockRequest request) {
+        int page;
+        int limit;
+        long after;
+        try {
+            page = parsePositive(request.getQueryParameter("page"), 1);
+            limit = Math.min(parsePositive(request.getQueryParameter("limit"), DEFAULT_PAGE_SIZE), MAX_PAGE_SIZE);
+            after = parseCursor(request.getQueryParameter("after"));
+        } catch (IllegalArgumentException e) {
+            return error(400, e.getMessage());
+        }
+        String gender = request.getQueryParameter("gender");
+        String search = request.getQueryParameter("search");
+        String searchLower = search == null || search.isEmpty() ? null : search.toLowerCase(Locale.ROOT);
+        boolean filtered = gender != null || searchLower != null;
+
+        long offset = (long) (page - 1) * limit;
+        long lastId = nextId.get() - 1;
+        long id;
+        long skip = 0;
+        if (after > 0) {
+            id = after + 1;
+        } else if (!filtered) {
+            id = offset < lastId ? deletedIds.idAt(offset + 1, this::exists) : lastId + 1;
+        } else {
+            id = 1;
+            skip = offset;
+        }
+
+        ByteArrayOutputStream results = new ByteArrayOutputStream(limit * 96);
+        int found = 0;
+        long lastFound = 0;
+        for (; id <= lastId && found < limit; id++) {
+            Person person = overrides.get(id);
+            if (!exists(id, person) || !matches(id, person, gender, searchLower)) {
+                continue;
+            }
+            if (skip > 0) {
+                skip--;
+                continue;
+            }
+            if (found++ > 0) {
+                results.write(',');
+            }
+            results.writeBytes(toJson(id, person));
+            lastFound = id;
+        }
+
+        long count = count(gender, searchLower, lastId);
+        boolean hasNext = offset + found < count;
+        String body = "{\"count\": " + count + ", \"next\": " + pageLink(request, page + 1, hasNext, lastFound)
+                + ", \"previous\": " + pageLink(request, page - 1, page > 1, 0) + ", \"results\": [";
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length() + results.size() + 2);
+        out.writeBytes(body.getBytes(StandardCharsets.UTF_8));
+        out.writeBytes(results.toByteArray());
+        out.writeBytes("]}".getBytes(StandardCharsets.UTF_8));
+        return MockResponse.json(200, out.toByteArray());
+    }
+
+    public MockResponse get(MockRequest request) {
+        long id = parseId(request);
+        Person person = id > 0 ? overrides.get(id) : null;
+        if (!exists(id, person)) {
+            return notFound();
+        }
+        return MockResponse.json(200, toJson(id, person));
+    }
+
+    public MockResponse create(MockRequest request) {
+        ObjectNode fields;
+        try {
+            fields = parseFields(request);
+        } catch (IllegalArgumentException e) {
+            return error(400, e.getMessage());
+        }
+        long id = nextId.getAndIncrement();
+        Person person = toPerson(id, fields.path("name").asText(null), fields.path("gender").asText(null),
+                fields.path("birth_year").asText(null));
+        overrides.put(id, person);
+        size.incrementAndGet();
+        adjustGenderCount(person.gender, 1);
+        version.incrementAndGet();
+        return MockResponse.json(201, person.json);
+    }
+
+    public MockResponse update(MockRequest request) {
+        long id = parseId(request);
+        ObjectNode fields;
+        try {
+            fields = parseFields(request);
+        } catch (IllegalArgumentException e) {
+            return error(400, e.getMessage());
+        }
+        Person[] updated = new Person[2];
+        if (id > 0) {
+            overrides.compute(id, current -> {
+                if (!exists(id, current)) {
+                    return current;
+                }
+                Person base = current != null ? current : syntheticPerson(id);
+                updated[0] = toPerson(id, fields.path("name").asText(base.name),
+                        fields.path("gender").asText(base.gender), fields.path("birth_year").asText(base.birthYear));
+                updated[1] = base;
+                return updated[0];
+            });
+        }
+        if (updated[0] == null) {
+            return notFound();
+        }
+        adjustGenderCount(updated[1].gender, -1);
+        adjustGenderCount(updated[0].gender, 1);
+        version.incrementAndGet();
+        return MockResponse.json(200, updated[0].json);
+    }
+
+    public MockResponse delete(MockRequest request) {
+        long id = parseId(request);
+        Person[] deleted = new Person[1];
+        if (id > 0) {
+            overrides.compute(id, current -> {
+                if (!exists(id, current)) {
+                    return current;
+                }
+                deleted[0] = current != null ? current : syntheticPerson(id);
+                return id <= syntheticCount ? DELETED : null;
+            });
+        }
+        if (deleted[0] == null) {
+            return notFound();
+        }
+        size.decrementAndGet();
+        deletedIds.add(id);
+        adjustGenderCount(deleted[0].gender, -1);
+        version.incrementAndGet();
+        return new MockResponse(204);
+    }
+
+    /**
+     * JSON of the generated person with the given id, as served by the
+     * stateless `/people/generated` stub too.
+     */
+    static String syntheticJson(long id) {
+        return "{\"id\": " + id + ", \"name\": \"" + syntheticName(id) + "\", \"gender\": \""
+                + syntheticGender(id) + "\", \"birth_year\": \"" + syntheticBirthYear(id) + "\"}";
+    }
+
+    /**
+     * Total length of the JSON of generated people 1..count, in closed form.
+     * A record's length only varies with the digits of its id (written twice),
+     * its gender (odd ids male, even ones female) and the digits of id % 100.
+     */
+    static long syntheticJsonLength(long count) {
+        // Length of the record of id 1 without its variable parts
+        long fixed = syntheticJson(1).length() - 2 - "male".length() - 1;
+        long idDigits = 0;
+        for (long low = 1, digits = 1; low <= count; low *= 10, digits++) {
+            idDigits += (Math.min(count, low * 10 - 1) - low + 1) * digits;
+        }
+        long females = count / 2;
+        long genders = (count - females) * "male".length() + females * "female".length();
+        // Years 0BBY to 9BBY have one digit
+        long oneDigitYears = count / 100 * 10 + Math.min(count % 100, 9);
+        long yearDigits = 2 * count - oneDigitYears;
+        return fixed * count + 2 * idDigits + genders + yearDigits;
+    }
+
+    private static String syntheticName(long id) {
+        return "Person " + id;
+    }
+
+    private static String syntheticGender(long id) {
+        return id % 2 == 0 ? "female" : "male";
+    }
+
+    private static String syntheticBirthYear(long id) {
+        return (id % 100) + "BBY";
+    }
+
+    private static Person syntheticPerson(long id) {
+        return new Person(syntheticName(id), syntheticGender(id), syntheticBirthYear(id), null);
+    }
+
+    private boolean exists(long id) {
+        return exists(id, overrides.get(id));
+    }
+
+    private boolean exists(long id, Person override) {
+        return override == null ? id >= 1 && id <= syntheticCount : override != DELETED;
+    }
+
+    private static boolean matches(long id, Person person, String gender, String searchLower) {
+        if (gender != null && !gender.equalsIgnoreCase(person != null ? person.gender : syntheticGender(id))) {
+            return false;
+        }
+        if (searchLower == null) {
+            return true;
+        }
+        String name = person != null ? person.name : syntheticName(id);
+        return name != null && name.toLowerCase(Locale.ROOT).contains(searchLower);
+    }
+
+    /**
+     * People matching the filters. Total and per-gender counts are tracked;
+     * a name search is counted with a scan once per version of the store.
+     */
+    private long count(String gender, String searchLower, long lastId) {
+        if (searchLower == null) {
+            if (gender == null) {
+                return size.get();
+            }
+            AtomicLong count = genderCounts.get(gender.toLowerCase(Locale.ROOT));
+            return count == null ? 0 : count.get();
+        }
+        String key = (gender == null ? "" : gender.toLowerCase(Locale.ROOT)) + "\n" + searchLower;
+        long currentVersion = version.get();
+        long[] cached = searchCounts.get(key);
+        if (cached != null && cached[0] == currentVersion) {
+            return cached[1];
+        }
+        long count = 0;
+        for (long id = 1; id <= lastId; id++) {
+            Person person = overrides.get(id);
+            if (exists(id, person) && matches(id, person, gender, searchLower)) {
+                count++;
+            }
+        }
+        if (searchCounts.size() >= MAX_CACHED_COUNTS) {
+            searchCounts.clear();
+        }
+        searchCounts.put(key, new long[] { currentVersion, count });
+        return count;
+    }
+
+    private void adjustGenderCount(String gender, long delta) {
+        if (gender != null && delta != 0) {
+            genderCounts.computeIfAbsent(gender.toLowerCase(Locale.ROOT), key -> new AtomicLong()).addAndGet(delta);
+        }
+    }
+
+    private static byte[] toJson(long id, Person person) {
+        return person != null ? person.json : syntheticJson(id).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static Person toPerson(long id, String name, String gender, String birthYear) {
+        ObjectNode json = objectMapper.createObjectNode();
+        json.put("id", id);
+        json.put("name", name);
+        json.put("gender", gender);
+        json.put("birth_year", birthYear);
+        try {
+            return new Person(name, gender, birthYear, objectMapper.writeValueAsBytes(json));
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to encode person " + id, e);
+        }
+    }
+
+    private static ObjectNode parseFields(MockRequest request) {
+        if (request.getBody() == null) {
+            throw new IllegalArgumentException("Request body is required");
+        }
+        JsonNode body;
+        try {
+            body = objectMapper.readTree(request.getBody());
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Request body is not valid JSON");
+        }
+        if (!(body instanceof ObjectNode)) {
+            throw new IllegalArgumentException("Request body must be a JSON object");
+        }
+        return (ObjectNode) body;
+    }
+
+    private static long parseId(MockRequest request) {
+        try {
+            return Long.parseLong(request.getPathParameter("id"));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * The id a page starts after, or 0 without a cursor
+     */
+    private static long parseCursor(String value) {
+        if (value == null || value.isEmpty()) {
+            return 0;
+        }
+        try {
+            long parsed = Long.parseLong(value);
+            if (parsed > 0) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("Expected a positive id after which to start, got: " + value);
+    }
+
+    private static int parsePositive(String value, int defaultValue) {
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed > 0) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("Expected a positive number, got: " + value);
+    }
+
+    /**
+     * @param after Id the linked page starts after, or 0 to link by page number
+     *              only
+     */
+    private static String pageLink(MockRequest request, int page, boolean present, long after) {
+        if (!present) {
+            return "null";
+        }
+        StringBuilder link = new StringBuilder("\"").append(request.getPath()).append("?page=").append(page);
+        for (String name : new String[] { "limit", "gender", "search" }) {
+            String value = request.getQueryParameter(name);
+            if (value != null) {
+                link.append('&').append(name).append('=').append(URLEncoder.encode(value, StandardCharsets.UTF_8));
+            }
+        }
+        if (after > 0) {
+            link.append("&after=").append(after);
+        }
+        // URL-encoded values contain no quotes or backslashes
+        return link.append('"').toString();
+    }
+
+    private static MockResponse notFound() {
+        return error(404, "Not found");
+    }
+
+    static MockResponse error(int status, String message) {
+        ObjectNode json = objectMapper.createObjectNode().put("detail", message);
+        try {
+            return MockResponse.json(status, objectMapper.writeValueAsBytes(json));
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to encode error response", e);
+        }
+    }
+
+    /**
+     * Deleted ids counted per block of 64 in a Fenwick tree, to find the Nth
+     * person in O(log n) plus a scan of one block, however many people were
+     * deleted before it. Grows with the id space.
+     */
+    private static final class DeletedIds {
+        private static final int BLOCK_BITS = 6;
+        private static final int BLOCK_SIZE = 1 << BLOCK_BITS;
+
+        private int[] blocks = new int[16];
+        // 1-based Fenwick tree over blocks
+        private int[] tree = new int[17];
+
+        synchronized void add(long id) {
+            int block = (int) ((id - 1) >>> BLOCK_BITS);
+            if (block >= blocks.length) {
+                grow(block + 1);
+            }
+            blocks[block]++;
+            for (int i = block + 1; i < tree.length; i += i & -i) {
+                tree[i]++;
+            }
+        }
+
+        /**
+         * Id of the person at the given 1-based position, counting every id
+         * that was not deleted
+         *
+         * @param exists Whether an id holds a person, checked within the block
+         *               the position falls into
+         * @return The id, or one past the block when fewer people exist
+         */
+        synchronized long idAt(long position, LongPredicate exists) {
+            // Find the last block prefix with fewer than position people in it
+            int capacity = blocks.length;
+            int prefix = 0;
+            long deleted = 0;
+            for (int step = Integer.highestOneBit(capacity); step > 0; step >>= 1) {
+                int next = prefix + step;
+                if (next <= capacity && (long) next * BLOCK_SIZE - (deleted + tree[next]) < position) {
+                    prefix = next;
+                    deleted += tree[next];
+                }
+            }
+            long id = (long) prefix * BLOCK_SIZE + 1;
+            long remaining = position - ((long) prefix * BLOCK_SIZE - deleted);
+            if (prefix == capacity) {
+                // Nothing was deleted past the tracked blocks
+                return id + remaining - 1;
+            }
+            // Past the last id the block holds fewer people than counted, so
+            // the scan stops at its end
+            for (long end = id + BLOCK_SIZE; id < end; id++) {
+                if (exists.test(id) && --remaining == 0) {
+                    return id;
+                }
+            }
+            return id;
+        }
+
+        private void grow(int minBlocks) {
+            int capacity = blocks.length;
+            while (capacity < minBlocks) {
+                capacity *= 2;
+            }
+            int[] grown = new int[capacity];
+            System.arraycopy(blocks, 0, grown, 0, blocks.length);
+            blocks = grown;
+            tree = new int[capacity + 1];
+            for (int i = 1; i <= capacity; i++) {
+                tree[i] += blocks[i - 1];
+                int parent = i + (i & -i);
+                if (parent <= capacity) {
+                    tree[parent] += tree[i];
+                }
+            }
+        }
+    }
+}
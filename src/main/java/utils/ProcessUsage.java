@@ -0,0 +1,78 @@
+package utils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * CPU time and resident memory of a process and its live descendants, e.g.
+ * the emulator launcher and the QEMU process it starts.
+ *
+ * Resident memory is read from /proc, so it is only known on Linux.
+ */
+public class ProcessUsage {
+    private final long cpuMillis;
+    private final long residentBytes;
+
+    public ProcessUsage(long cpuMillis, long residentBytes) {
+        this.cpuMillis = cpuMillis;
+        this.residentBytes = residentBytes;
+    }
+
+    /**
+     * Sample a process tree now
+     */
+    public static ProcessUsage of(ProcessHandle process) {
+        List<ProcessHandle> tree = Stream.concat(Stream.of(process), process.descendants())
+                .collect(Collectors.toList());
+        long cpuMillis = 0;
+        long residentBytes = 0;
+        for (ProcessHandle handle : tree) {
+            cpuMillis += handle.info().totalCpuDuration().map(Duration::toMillis).orElse(0L);
+            long resident = residentBytes(handle.pid());
+            residentBytes = resident < 0 || residentBytes < 0 ? -1 : residentBytes + resident;
+        }
+        return new ProcessUsage(cpuMillis, residentBytes);
+    }
+
+    /**
+     * VmRSS of a process, 0 if it already exited, -1 without /proc
+     */
+    private static long residentBytes(long pid) {
+        if (!Files.isDirectory(Paths.get("/proc/self"))) {
+            return -1;
+        }
+        Path status = Paths.get("/proc", String.valueOf(pid), "status");
+        try (Stream<String> lines = Files.lines(status)) {
+            return lines.filter(line -> line.startsWith("VmRSS:")).findFirst()
+                    .map(line -> Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024).orElse(0L);
+        } catch (IOException | RuntimeException e) {
+            return 0; // Exited while sampling
+        }
+    }
+
+    /**
+     * CPU time used so far by the processes still running
+     */
+    public long getCpuMillis() {
+        return cpuMillis;
+    }
+
+    /**
+     * Resident memory, -1 if unknown on this OS
+     */
+    public long getResidentBytes() {
+        return residentBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "CPU " + cpuMillis + " ms, RSS "
+                + (residentBytes < 0 ? "unknown" : (residentBytes >> 20) + " MB");
+    }
+}
@@ -0,0 +1,42 @@
+package utils;
+
+import io.restassured.filter.Filter;
+import io.restassured.filter.FilterContext;
+import io.restassured.response.Response;
+import io.restassured.specification.FilterableRequestSpecification;
+import io.restassured.specification.FilterableResponseSpecification;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * RestAssured filter that captures every request/response pair into a
+ * {@link RecordingStore} so it can later be replayed by the mock server.
+ */
+public class RecordingFilter implements Filter {
+    private final RecordingStore store;
+
+    public RecordingFilter(RecordingStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public Response filter(FilterableRequestSpecification requestSpec, FilterableResponseSpecification responseSpec,
+            FilterContext ctx) {
+        Response response = ctx.next(requestSpec, responseSpec);
+        store.record(requestSpec.getMethod(), RecordingStore.normalizePath(URI.create(requestSpec.getURI())),
+                bodyBytes(requestSpec.getBody()), response.getStatusCode(), response.getContentType(),
+                response.asByteArray());
+        return response;
+    }
+
+    private static byte[] bodyBytes(Object body) {
+        if (body == null) {
+            return null;
+        }
+        if (body instanceof byte[]) {
+            return (byte[]) body;
+        }
+        return body.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,275 @@
+package utils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compact on-disk store of recorded HTTP interactions.
+ *
+ * A store is a directory with two append-only files:
+ * - `interactions.dat`: one entry per interaction (method, path, status,
+ * content type and response body)
+ * - `interactions.idx`: fixed 16-byte records of (key hash, data offset)
+ *
+ * The key is a 64-bit FNV-1a hash of method, normalized path and request
+ * body. Readers keep only the index on the heap and serve bodies as slices of
+ * a read-only memory-mapped view of the data file, so thousands of recordings
+ * can be replayed without loading them into memory. When the same key is
+ * recorded twice, the latest recording wins.
+ */
+public class RecordingStore implements AutoCloseable {
+    private static final String DATA_FILE = "interactions.dat";
+    private static final String INDEX_FILE = "interactions.idx";
+    private static final int INDEX_ENTRY_SIZE = 16;
+
+    /**
+     * A single recorded response
+     */
+    public static class Recording {
+        private final String method;
+        private final String path;
+        private final int statusCode;
+        private final String contentType;
+        private final ByteBuffer body;
+
+        Recording(String method, String path, int statusCode, String contentType, ByteBuffer body) {
+            this.method = method;
+            this.path = path;
+            this.statusCode = statusCode;
+            this.contentType = contentType;
+            this.body = body;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        /**
+         * Read-only view of the body backed by the mapped data file
+         */
+        public ByteBuffer getBody() {
+            return body.duplicate();
+        }
+
+        public byte[] getBodyAsBytes() {
+            byte[] bytes = new byte[body.remaining()];
+            body.duplicate().get(bytes);
+            return bytes;
+        }
+    }
+
+    private final FileChannel dataChannel;
+    private final FileChannel indexChannel;
+    private final boolean writable;
+    private final Map<Long, Long> index;
+    private final MappedByteBuffer data;
+
+    private RecordingStore(FileChannel dataChannel, FileChannel indexChannel, boolean writable,
+            Map<Long, Long> index, MappedByteBuffer data) {
+        this.dataChannel = dataChannel;
+        this.indexChannel = indexChannel;
+        this.writable = writable;
+        this.index = index;
+        this.data = data;
+    }
+
+    /**
+     * Open a store for appending new recordings, creating it if needed.
+     */
+    public static RecordingStore openForRecording(Path directory) {
+        try {
+            Files.createDirectories(directory);
+            FileChannel dataChannel = FileChannel.open(directory.resolve(DATA_FILE), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            FileChannel indexChannel = FileChannel.open(directory.resolve(INDEX_FILE), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            return new RecordingStore(dataChannel, indexChannel, true, null, null);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open recording store for writing: " + directory, e);
+        }
+    }
+
+    /**
+     * Open an existing store for replay. Only the index is read onto the heap;
+     * the data file is memory-mapped.
+     */
+    public static RecordingStore openForReplay(Path directory) {
+        Path dataFile = directory.resolve(DATA_FILE);
+        Path indexFile = directory.resolve(INDEX_FILE);
+        if (!Files.isRegularFile(dataFile) || !Files.isRegularFile(indexFile)) {
+            throw new IllegalStateException("No recordings found at: " + directory.toAbsolutePath());
+        }
+        try (FileChannel indexChannel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            FileChannel dataChannel = FileChannel.open(dataFile, StandardOpenOption.READ);
+            if (dataChannel.size() > Integer.MAX_VALUE) {
+                dataChannel.close();
+                throw new IllegalStateException("Recording store exceeds 2 GB, split it into several stores: "
+                        + directory);
+            }
+            MappedByteBuffer data = dataChannel.map(FileChannel.MapMode.READ_ONLY, 0, dataChannel.size());
+
+            ByteBuffer indexBuffer = ByteBuffer.allocate((int) indexChannel.size());
+            while (indexBuffer.hasRemaining() && indexChannel.read(indexBuffer) >= 0) {
+                // Read the whole index
+            }
+            indexBuffer.flip();
+            Map<Long, Long> index = new HashMap<>(indexBuffer.remaining() / INDEX_ENTRY_SIZE * 2);
+            while (indexBuffer.remaining() >= INDEX_ENTRY_SIZE) {
+                index.put(indexBuffer.getLong(), indexBuffer.getLong());
+            }
+            System.out.println("Loaded " + index.size() + " recordings from " + directory);
+            return new RecordingStore(dataChannel, null, false, index, data);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open recording store for replay: " + directory, e);
+        }
+    }
+
+    /**
+     * Append a recording. Safe to call from several threads.
+     */
+    public synchronized void record(String method, String path, byte[] requestBody, int statusCode,
+            String contentType, byte[] responseBody) {
+        if (!writable) {
+            throw new IllegalStateException("Recording store was opened for replay only.");
+        }
+        byte[] methodBytes = method.toUpperCase().getBytes(StandardCharsets.UTF_8);
+        byte[] pathBytes = path.getBytes(StandardCharsets.UTF_8);
+        byte[] contentTypeBytes = (contentType == null ? "" : contentType).getBytes(StandardCharsets.UTF_8);
+        byte[] body = responseBody == null ? new byte[0] : responseBody;
+
+        ByteBuffer entry = ByteBuffer.allocate(2 + methodBytes.length + 4 + pathBytes.length + 4 + 2
+                + contentTypeBytes.length + 4 + body.length);
+        entry.putShort((short) methodBytes.length).put(methodBytes);
+        entry.putInt(pathBytes.length).put(pathBytes);
+        entry.putInt(statusCode);
+        entry.putShort((short) contentTypeBytes.length).put(contentTypeBytes);
+        entry.putInt(body.length).put(body);
+        entry.flip();
+
+        ByteBuffer indexEntry = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+        try {
+            long offset = dataChannel.size();
+            while (entry.hasRemaining()) {
+                dataChannel.write(entry);
+            }
+            indexEntry.putLong(key(method, path, requestBody)).putLong(offset).flip();
+            while (indexEntry.hasRemaining()) {
+                indexChannel.write(indexEntry);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append recording for " + method + " " + path, e);
+        }
+    }
+
+    /**
+     * Look up the recording for a request.
+     *
+     * @return The recording, or null if this request was never recorded
+     */
+    public Recording find(String method, String path, byte[] requestBody) {
+        if (writable) {
+            throw new IllegalStateException("Recording store was opened for recording only.");
+        }
+        Long offset = index.get(key(method, path, requestBody));
+        if (offset == null) {
+            return null;
+        }
+        ByteBuffer entry = data.duplicate();
+        entry.position(offset.intValue());
+        String recordedMethod = readString(entry, entry.getShort());
+        String recordedPath = readString(entry, entry.getInt());
+        int statusCode = entry.getInt();
+        String contentType = readString(entry, entry.getShort());
+        int bodyLength = entry.getInt();
+        ByteBuffer body = entry.slice(entry.position(), bodyLength).asReadOnlyBuffer();
+
+        // Guard against hash collisions between different requests
+        if (!recordedMethod.equalsIgnoreCase(method) || !recordedPath.equals(path)) {
+            return null;
+        }
+        return new Recording(recordedMethod, recordedPath, statusCode, contentType.isEmpty() ? null : contentType,
+                body);
+    }
+
+    public int size() {
+        return index == null ? 0 : index.size();
+    }
+
+    /**
+     * Normalize a request target into the path used as part of the key: the
+     * decoded path followed by the decoded query parameters in sorted order.
+     */
+    public static String normalizePath(String path, String query) {
+        if (query == null || query.isEmpty()) {
+            return path;
+        }
+        String[] parameters = query.split("&");
+        Arrays.sort(parameters);
+        return path + "?" + String.join("&", parameters);
+    }
+
+    /**
+     * Normalize a full URI into the path used as part of the key.
+     */
+    public static String normalizePath(URI uri) {
+        return normalizePath(uri.getPath(), uri.getQuery());
+    }
+
+    @Override
+    public void close() {
+        try {
+            dataChannel.close();
+            if (indexChannel != null) {
+                indexChannel.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to close recording store: " + e.getMessage());
+        }
+    }
+
+    private static String readString(ByteBuffer buffer, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long key(String method, String path, byte[] requestBody) {
+        long hash = 0xcbf29ce484222325L;
+        hash = fnv(hash, method.toUpperCase().getBytes(StandardCharsets.UTF_8));
+        hash = fnv(hash, new byte[] { 0 });
+        hash = fnv(hash, path.getBytes(StandardCharsets.UTF_8));
+        hash = fnv(hash, new byte[] { 0 });
+        return requestBody == null ? hash : fnv(hash, requestBody);
+    }
+
+    private static long fnv(long hash, byte[] bytes) {
+        for (byte b : bytes) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
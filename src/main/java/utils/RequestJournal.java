@@ -0,0 +1,259 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded journal of the requests served by a mock server.
+ *
+ * The most recent requests are kept in a fixed-size ring buffer: a writer
+ * claims a slot with one atomic increment and overwrites whatever was there,
+ * so recording never blocks and memory stays constant however long a soak run
+ * lasts. Alongside it, per-route aggregates (request count, error count, total
+ * and maximum latency) and a journal-wide latency histogram are updated with
+ * adders, so call-count checks read a counter instead of scanning entries.
+ *
+ * Routes are keyed by method and path without the query string. To keep the
+ * aggregates bounded too, requests to paths beyond the route limit are counted
+ * under {@link #OTHER_PATH}.
+ */
+public class RequestJournal {
+    public static final String OTHER_PATH = "(other)";
+
+    /**
+     * One served request
+     */
+    public static final class Entry {
+        private final long sequence;
+        private final long timestampMillis;
+        private final String method;
+        private final String path;
+        private final int statusCode;
+        private final long latencyMicros;
+        private final boolean dropped;
+
+        Entry(long sequence, long timestampMillis, String method, String path, int statusCode, long latencyMicros,
+                boolean dropped) {
+            this.sequence = sequence;
+            this.timestampMillis = timestampMillis;
+            this.method = method;
+            this.path = path;
+            this.statusCode = statusCode;
+            this.latencyMicros = latencyMicros;
+            this.dropped = dropped;
+        }
+
+        public long getTimestampMillis() {
+            return timestampMillis;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        /**
+         * Time to build the response plus any injected delay
+         */
+        public long getLatencyMicros() {
+            return latencyMicros;
+        }
+
+        public boolean isDropped() {
+            return dropped;
+        }
+
+        @Override
+        public String toString() {
+            return method + " " + path + " -> " + (dropped ? "dropped" : String.valueOf(statusCode)) + " in "
+                    + latencyMicros + " us";
+        }
+    }
+
+    /**
+     * Aggregates for one method and path
+     */
+    public static final class RouteStats {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder totalMicros = new LongAdder();
+        private final AtomicLong maxMicros = new AtomicLong();
+
+        void record(int statusCode, long latencyMicros, boolean dropped) {
+            count.increment();
+            if (dropped || statusCode >= 500) {
+                errors.increment();
+            }
+            totalMicros.add(latencyMicros);
+            maxMicros.accumulateAndGet(latencyMicros, Math::max);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        /**
+         * Requests answered with a 5xx status or a dropped connection
+         */
+        public long getErrorCount() {
+            return errors.sum();
+        }
+
+        public double getMeanMicros() {
+            long requests = count.sum();
+            return requests == 0 ? 0 : (double) totalMicros.sum() / requests;
+        }
+
+        public long getMaxMicros() {
+            return maxMicros.get();
+        }
+
+        @Override
+        public String toString() {
+            return getCount() + " requests, " + getErrorCount() + " errors, mean " + Math.round(getMeanMicros())
+                    + " us, max " + getMaxMicros() + " us";
+        }
+    }
+
+    private final AtomicReferenceArray<Entry> slots;
+    private final int mask;
+    private final int maxRoutes;
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<String, RouteStats> routes = new ConcurrentHashMap<>();
+    private volatile LatencyHistogram latencies = new LatencyHistogram();
+
+    /**
+     * @param capacity  Number of most recent requests kept, rounded up to a
+     *                  power of two
+     * @param maxRoutes Number of distinct method and path pairs with their own
+     *                  aggregates
+     */
+    public RequestJournal(int capacity, int maxRoutes) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Journal capacity must be between 1 and 2^30: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        size = size < capacity ? size << 1 : size;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.maxRoutes = maxRoutes;
+    }
+
+    /**
+     * Record a served request. Lock-free and safe to call from any thread.
+     */
+    public void record(String method, String path, int statusCode, long latencyMicros, boolean dropped) {
+        long seq = sequence.getAndIncrement();
+        slots.lazySet((int) (seq & mask), new Entry(seq, System.currentTimeMillis(), method, path, statusCode,
+                latencyMicros, dropped));
+        routeStats(method, path).record(statusCode, latencyMicros, dropped);
+        latencies.record(latencyMicros);
+    }
+
+    /**
+     * Number of slots in the ring buffer
+     */
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Number of requests recorded since the last reset, including those no
+     * longer held in the ring buffer
+     */
+    public long getTotalCount() {
+        return sequence.get();
+    }
+
+    /**
+     * Number of requests with this method and path; a query string on the
+     * path is ignored
+     */
+    public long getCount(String method, String path) {
+        RouteStats stats = getRouteStats(method, path);
+        return stats == null ? 0 : stats.getCount();
+    }
+
+    /**
+     * @return The aggregates for this method and path, or null if there were
+     *         no such requests
+     */
+    public RouteStats getRouteStats(String method, String path) {
+        int query = path.indexOf('?');
+        return routes.get(routeKey(method, query < 0 ? path : path.substring(0, query)));
+    }
+
+    /**
+     * Aggregates of every route, keyed by `METHOD path` in sorted order
+     */
+    public Map<String, RouteStats> getRouteStats() {
+        return Collections.unmodifiableMap(new TreeMap<>(routes));
+    }
+
+    /**
+     * Latency distribution of every request since the last reset
+     */
+    public LatencyHistogram getLatencies() {
+        return latencies;
+    }
+
+    /**
+     * The requests still held in the ring buffer, oldest first. Entries being
+     * overwritten while the snapshot is taken are left out.
+     */
+    public List<Entry> getRecentEntries() {
+        long end = sequence.get();
+        long start = Math.max(0, end - slots.length());
+        List<Entry> entries = new ArrayList<>((int) (end - start));
+        for (long seq = start; seq < end; seq++) {
+            Entry entry = slots.get((int) (seq & mask));
+            if (entry != null && entry.sequence == seq) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Forget all requests and aggregates. Requests recorded concurrently with
+     * a reset may be counted on either side of it.
+     */
+    public void reset() {
+        routes.clear();
+        latencies = new LatencyHistogram();
+        for (int i = 0; i < slots.length(); i++) {
+            slots.set(i, null);
+        }
+        sequence.set(0);
+    }
+
+    private RouteStats routeStats(String method, String path) {
+        String key = routeKey(method, path);
+        RouteStats stats = routes.get(key);
+        if (stats != null) {
+            return stats;
+        }
+        if (routes.size() >= maxRoutes) {
+            key = routeKey(method, OTHER_PATH);
+        }
+        return routes.computeIfAbsent(key, k -> new RouteStats());
+    }
+
+    private static String routeKey(String method, String path) {
+        return method.toUpperCase() + " " + path;
+    }
+}
@@ -0,0 +1,240 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Driver sessions kept across scenarios, so a scenario resets the app in an
+ * existing session instead of paying for a new one.
+ *
+ * Sessions are keyed by what they are bound to, e.g. the serial of the
+ * device they drive. A thread acquires the session of a key for the duration
+ * of a scenario and releases it afterwards; in between the session is
+ * confined to that thread ({@link #current()}). Only one thread holds a key
+ * at a time, which the device lease guarantees.
+ *
+ * An idle session is reset before it is handed out again. It is recycled
+ * (quit and replaced by a new one) instead when it is older than the maximum
+ * age, has been used the maximum number of times, fails its health check or
+ * fails to reset.
+ *
+ * @param <S> Session type, e.g. AppiumDriver
+ */
+public class SessionPool<S> {
+    /**
+     * Creates, checks, resets and quits sessions
+     */
+    public interface Factory<S> {
+        S create(String key) throws Exception;
+
+        /**
+         * Whether the session still answers
+         */
+        boolean isHealthy(S session);
+
+        /**
+         * Bring the app back to its start state for the next scenario
+         */
+        void reset(S session) throws Exception;
+
+        void quit(S session);
+    }
+
+    private final Factory<S> factory;
+    private final long maxAgeMillis;
+    private final int maxUses;
+    private final Map<String, Entry<S>> idle = new ConcurrentHashMap<>();
+    private final ThreadLocal<Entry<S>> current = new ThreadLocal<>();
+    private final LatencyHistogram creationTimes = new LatencyHistogram();
+    private final LatencyHistogram resetTimes = new LatencyHistogram();
+    private final LongAdder recycled = new LongAdder();
+
+    private static final class Entry<S> {
+        private final String key;
+        private final S session;
+        private final long createdNanos = System.nanoTime();
+        private int uses;
+
+        Entry(String key, S session) {
+            this.key = key;
+            this.session = session;
+        }
+    }
+
+    /**
+     * @param maxAgeMillis Age after which a session is recycled
+     * @param maxUses      Scenarios a session serves before it is recycled,
+     *                     1 for a new session per scenario
+     */
+    public SessionPool(Factory<S> factory, long maxAgeMillis, int maxUses) {
+        if (maxAgeMillis < 1 || maxUses < 1) {
+            throw new IllegalArgumentException("Invalid session limits: " + maxAgeMillis + " ms, " + maxUses + " uses");
+        }
+        this.factory = factory;
+        this.maxAgeMillis = maxAgeMillis;
+        this.maxUses = maxUses;
+    }
+
+    /**
+     * The session of a key for the current thread: the idle one, reset, or a
+     * new one. A thread already holding a session gets it back.
+     *
+     * @throws RuntimeException if a new session could not be created
+     */
+    public S acquire(String key) {
+        Entry<S> entry = current.get();
+        if (entry != null) {
+            if (entry.key.equals(key)) {
+                return entry.session;
+            }
+            release(); // The thread moved on to another device
+        }
+        entry = idle.remove(key);
+        if (entry != null) {
+            entry = reuse(entry);
+        }
+        if (entry == null) {
+            long start = System.nanoTime();
+            try {
+                entry = new Entry<>(key, factory.create(key));
+            } catch (Exception e) {
+                throw new RuntimeException("Failed to create a session for " + key, e);
+            }
+            creationTimes.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+            System.out.println("New session for " + key + " in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+        }
+        entry.uses++;
+        current.set(entry);
+        return entry.session;
+    }
+
+    /**
+     * Reset an idle session for another scenario, or recycle it
+     *
+     * @return The entry, or null if it was recycled
+     */
+    private Entry<S> reuse(Entry<S> entry) {
+        long ageMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - entry.createdNanos);
+        String reason = null;
+        if (ageMillis >= maxAgeMillis) {
+            reason = "is " + ageMillis + " ms old";
+        } else if (entry.uses >= maxUses) {
+            reason = "was used " + entry.uses + " times";
+        } else if (!factory.isHealthy(entry.session)) {
+            reason = "failed its health check";
+        } else {
+            long start = System.nanoTime();
+            try {
+                factory.reset(entry.session);
+                resetTimes.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+                return entry;
+            } catch (Exception e) {
+                reason = "failed to reset: " + e.getMessage();
+            }
+        }
+        System.out.println("Recycling the session for " + entry.key + ", it " + reason);
+        recycled.increment();
+        factory.quit(entry.session);
+        return null;
+    }
+
+    /**
+     * The session the current thread holds, or null
+     */
+    public S current() {
+        Entry<S> entry = current.get();
+        return entry == null ? null : entry.session;
+    }
+
+    /**
+     * Return the current thread's session for the next scenario on its key
+     */
+    public void release() {
+        Entry<S> entry = current.get();
+        if (entry != null) {
+            current.remove();
+            Entry<S> replaced = idle.put(entry.key, entry);
+            if (replaced != null) {
+                factory.quit(replaced.session);
+            }
+        }
+    }
+
+    /**
+     * Quit the current thread's session instead of keeping it
+     */
+    public void discard() {
+        Entry<S> entry = current.get();
+        if (entry != null) {
+            current.remove();
+            recycled.increment();
+            factory.quit(entry.session);
+        }
+    }
+
+    /**
+     * Quit every idle session. Sessions still held are quit by their
+     * threads with {@link #discard()}.
+     */
+    public void close() {
+        List<String> keys = new ArrayList<>(idle.keySet());
+        for (String key : keys) {
+            Entry<S> entry = idle.remove(key);
+            if (entry != null) {
+                factory.quit(entry.session);
+            }
+        }
+    }
+
+    /**
+     * Sessions created, including replacements of recycled ones
+     */
+    public long getCreated() {
+        return creationTimes.getCount();
+    }
+
+    /**
+     * Scenarios served by resetting an existing session
+     */
+    public long getReused() {
+        return resetTimes.getCount();
+    }
+
+    public long getRecycled() {
+        return recycled.sum();
+    }
+
+    public LatencyHistogram getCreationTimes() {
+        return creationTimes;
+    }
+
+    public LatencyHistogram getResetTimes() {
+        return resetTimes;
+    }
+
+    /**
+     * Session startup time saved by resets: for each reuse, the mean
+     * creation time minus the reset time
+     */
+    public long getSavedMillis() {
+        return Math.max(0, Math.round(getReused()
+                * (creationTimes.getMeanMicros() - resetTimes.getMeanMicros()) / 1000.0));
+    }
+
+    /**
+     * Sessions created and reused, their mean times and the time saved per
+     * scenario
+     */
+    public String report() {
+        long scenarios = getCreated() + getReused();
+        return String.format("%d scenarios: %d sessions created (mean %.0f ms), %d reused (mean reset %.0f ms), "
+                + "%d recycled, %d ms saved (%.0f ms per scenario)", scenarios, getCreated(),
+                creationTimes.getMeanMicros() / 1000.0, getReused(), resetTimes.getMeanMicros() / 1000.0,
+                getRecycled(), getSavedMillis(), scenarios == 0 ? 0.0 : getSavedMillis() / (double) scenarios);
+    }
+}
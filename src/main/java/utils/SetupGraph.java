@@ -0,0 +1,325 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Setup steps and the steps each depends on, run with as much concurrency as
+ * the dependencies allow.
+ *
+ * A step starts as soon as all its dependencies have finished, on a thread of
+ * its own. Dependencies must be added before the steps that need them, which
+ * also rules out cycles. If a step fails, the steps depending on it are
+ * skipped, while independent steps run to completion, and {@link #run()}
+ * then throws the first failure.
+ *
+ * Every run produces a {@link Report} of when each step started and finished
+ * and of the critical path: the chain of steps, each waiting on the previous
+ * one, that ends with the last step to finish. Only shortening a step on that
+ * path shortens the setup.
+ */
+public class SetupGraph {
+    /**
+     * A setup step
+     */
+    public interface Step {
+        void run() throws Exception;
+    }
+
+    private final String name;
+    private final Map<String, Node> nodes = new LinkedHashMap<>();
+    private volatile Report report;
+
+    private static final class Node {
+        private final String name;
+        private final Step step;
+        private final List<String> dependencies;
+        private volatile long startNanos;
+        private volatile long endNanos;
+        private volatile String outcome = "skipped";
+
+        Node(String name, Step step, List<String> dependencies) {
+            this.name = name;
+            this.step = step;
+            this.dependencies = dependencies;
+        }
+    }
+
+    /**
+     * @param name Shown in the report, e.g. `Emulator setup`
+     */
+    public SetupGraph(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Add a step.
+     *
+     * @param dependencies Steps that must finish before it starts
+     * @throws IllegalArgumentException if the name is taken or a dependency
+     *                                  was not added yet
+     */
+    public synchronized SetupGraph add(String name, Step step, String... dependencies) {
+        if (nodes.containsKey(name)) {
+            throw new IllegalArgumentException("Duplicate setup step: " + name);
+        }
+        for (String dependency : dependencies) {
+            if (!nodes.containsKey(dependency)) {
+                throw new IllegalArgumentException("Setup step " + name + " depends on unknown step " + dependency);
+            }
+        }
+        nodes.put(name, new Node(name, step, List.of(dependencies)));
+        return this;
+    }
+
+    /**
+     * Report of the last run, also when it failed, or null
+     */
+    public Report getReport() {
+        return report;
+    }
+
+    /**
+     * Run every step and print the report.
+     *
+     * @return The report, also printed to standard output
+     * @throws RuntimeException if a step failed, once the steps that could
+     *                          still run have finished
+     */
+    public Report run() throws InterruptedException {
+        List<Node> order;
+        synchronized (this) {
+            order = new ArrayList<>(nodes.values());
+        }
+        ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "setup-step");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long start = System.nanoTime();
+        Map<String, CompletableFuture<Void>> futures = new LinkedHashMap<>();
+        try {
+            for (Node node : order) {
+                CompletableFuture<?>[] dependencies = node.dependencies.stream().map(futures::get)
+                        .toArray(CompletableFuture<?>[]::new);
+                futures.put(node.name, CompletableFuture.allOf(dependencies).thenRunAsync(() -> runStep(node),
+                        executor));
+            }
+            try {
+                CompletableFuture.allOf(futures.values().toArray(CompletableFuture<?>[]::new)).get();
+            } catch (ExecutionException e) {
+                // Wait for the steps that do not depend on the failed one
+                for (CompletableFuture<Void> future : futures.values()) {
+                    future.handle((result, failure) -> null).get();
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Setup step outcome unavailable", e);
+        } catch (InterruptedException e) {
+            futures.values().forEach(future -> future.cancel(true));
+            throw e;
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Report report = new Report(name, order, start, System.nanoTime());
+        this.report = report;
+        System.out.print(report.format());
+        for (Node node : order) {
+            CompletableFuture<Void> future = futures.get(node.name);
+            if ("failed".equals(node.outcome)) {
+                try {
+                    future.join();
+                } catch (CompletionException e) {
+                    Throwable cause = e.getCause();
+                    throw cause instanceof RuntimeException ? (RuntimeException) cause
+                            : new RuntimeException("Setup step " + node.name + " failed", cause);
+                }
+            }
+        }
+        return report;
+    }
+
+    private static void runStep(Node node) {
+        node.startNanos = System.nanoTime();
+        try {
+            node.step.run();
+            node.outcome = "ok";
+        } catch (RuntimeException e) {
+            node.outcome = "failed";
+            throw e;
+        } catch (Exception e) {
+            node.outcome = "failed";
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            throw new RuntimeException("Setup step " + node.name + " failed: " + e.getMessage(), e);
+        } finally {
+            node.endNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Timings of one run
+     */
+    public static final class Report {
+        private final String name;
+        private final List<StepTiming> steps = new ArrayList<>();
+        private final List<String> criticalPath;
+        private final long totalMillis;
+
+        Report(String name, List<Node> nodes, long startNanos, long endNanos) {
+            this.name = name;
+            this.totalMillis = TimeUnit.NANOSECONDS.toMillis(endNanos - startNanos);
+            Map<String, Node> byName = new LinkedHashMap<>();
+            for (Node node : nodes) {
+                byName.put(node.name, node);
+            }
+            // Walk back from the last step to finish through the dependency that finished last
+            List<String> path = new ArrayList<>();
+            Node current = nodes.stream().filter(node -> node.endNanos != 0)
+                    .max((a, b) -> Long.compare(a.endNanos, b.endNanos)).orElse(null);
+            while (current != null) {
+                path.add(current.name);
+                current = current.dependencies.stream().map(byName::get).filter(node -> node.endNanos != 0)
+                        .max((a, b) -> Long.compare(a.endNanos, b.endNanos)).orElse(null);
+            }
+            Collections.reverse(path);
+            this.criticalPath = Collections.unmodifiableList(path);
+            for (Node node : nodes) {
+                boolean ran = node.endNanos != 0;
+                steps.add(new StepTiming(node.name, node.outcome,
+                        ran ? TimeUnit.NANOSECONDS.toMillis(node.startNanos - startNanos) : -1,
+                        ran ? TimeUnit.NANOSECONDS.toMillis(node.endNanos - node.startNanos) : -1,
+                        path.contains(node.name), node.dependencies));
+            }
+        }
+
+        public List<StepTiming> getSteps() {
+            return Collections.unmodifiableList(steps);
+        }
+
+        public StepTiming getStep(String name) {
+            return steps.stream().filter(step -> step.getName().equals(name)).findFirst()
+                    .orElseThrow(() -> new IllegalArgumentException("No setup step " + name));
+        }
+
+        /**
+         * Step names on the critical path, first to last
+         */
+        public List<String> getCriticalPath() {
+            return criticalPath;
+        }
+
+        /**
+         * Wall-clock time of the whole run
+         */
+        public long getTotalMillis() {
+            return totalMillis;
+        }
+
+        /**
+         * Sum of the step durations, i.e. the time running them one after
+         * another would have taken
+         */
+        public long getSerialMillis() {
+            return steps.stream().mapToLong(step -> Math.max(0, step.getMillis())).sum();
+        }
+
+        /**
+         * One line per step in start order: start offset, duration, outcome,
+         * with `*` marking the critical path, then the path itself
+         */
+        public String format() {
+            StringBuilder report = new StringBuilder(String.format("%s finished in %d ms (%d ms if run serially)%n",
+                    name, totalMillis, getSerialMillis()));
+            report.append(String.format("  %-32s %8s %8s %8s  %s%n", "step", "start", "took", "outcome", "after"));
+            steps.stream().sorted((a, b) -> Long.compare(a.getStartMillis(), b.getStartMillis())).forEach(step ->
+                    report.append(String.format("%s %-32s %8s %8s %8s  %s%n", step.isCritical() ? "*" : " ",
+                            step.getName(), step.getStartMillis() < 0 ? "-" : step.getStartMillis(),
+                            step.getMillis() < 0 ? "-" : step.getMillis(), step.getOutcome(),
+                            String.join(", ", step.getDependencies()))));
+            report.append("  critical path: ");
+            for (int i = 0; i < criticalPath.size(); i++) {
+                report.append(i == 0 ? "" : " -> ").append(criticalPath.get(i)).append(" (")
+                        .append(getStep(criticalPath.get(i)).getMillis()).append(" ms)");
+            }
+            return report.append(System.lineSeparator()).toString();
+        }
+    }
+
+    /**
+     * When one step ran
+     */
+    public static final class StepTiming {
+        private final String name;
+        private final String outcome;
+        private final long startMillis;
+        private final long millis;
+        private final boolean critical;
+        private final List<String> dependencies;
+
+        StepTiming(String name, String outcome, long startMillis, long millis, boolean critical,
+                List<String> dependencies) {
+            this.name = name;
+            this.outcome = outcome;
+            this.startMillis = startMillis;
+            this.millis = millis;
+            this.critical = critical;
+            this.dependencies = dependencies;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * `ok`, `failed` or `skipped` (a dependency failed)
+         */
+        public String getOutcome() {
+            return outcome;
+        }
+
+        /**
+         * Start relative to the start of the run, -1 if skipped
+         */
+        public long getStartMillis() {
+            return startMillis;
+        }
+
+        /**
+         * Duration, -1 if skipped
+         */
+        public long getMillis() {
+            return millis;
+        }
+
+        public boolean isCritical() {
+            return critical;
+        }
+
+        public List<String> getDependencies() {
+            return dependencies;
+        }
+
+        @Override
+        public String toString() {
+            return name + " " + outcome + " at " + startMillis + " ms for " + millis + " ms";
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name + " " + Arrays.toString(nodes.keySet().toArray());
+    }
+}
@@ -0,0 +1,49 @@
+package utils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A response whose body was spooled straight to a temporary file instead of
+ * being held in memory. Assertions run against it with a streaming parser (see
+ * {@link JsonAssertionPlan#verify(Path)}). Closing it deletes the file.
+ */
+public class StreamedResponse implements AutoCloseable {
+    private final int statusCode;
+    private final Path bodyFile;
+
+    StreamedResponse(int statusCode, Path bodyFile) {
+        this.statusCode = statusCode;
+        this.bodyFile = bodyFile;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public Path getBodyFile() {
+        return bodyFile;
+    }
+
+    /**
+     * Size of the spooled body in bytes
+     */
+    public long getBodySize() {
+        try {
+            return Files.size(bodyFile);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read spooled body size: " + bodyFile, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            Files.deleteIfExists(bodyFile);
+        } catch (IOException e) {
+            System.err.println("Failed to delete spooled body " + bodyFile + ": " + e.getMessage());
+        }
+    }
+}
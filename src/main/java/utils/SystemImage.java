@@ -0,0 +1,131 @@
+package utils;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+
+/**
+ * An Android system image package, e.g.
+ * `system-images;android-35;google_apis_playstore;x86_64`, and where the
+ * Android SDK it goes into lives on this host.
+ *
+ * The ABI defaults to the host's, since the emulator only runs images of the
+ * host architecture at full speed: x86_64 images on Linux CI hosts, arm64-v8a
+ * on Apple Silicon.
+ */
+public class SystemImage {
+    private final String platform;
+    private final String tag;
+    private final String abi;
+
+    /**
+     * @param platform e.g. `android-35`
+     * @param tag      e.g. `google_apis_playstore`
+     * @param abi      e.g. `x86_64`
+     */
+    public SystemImage(String platform, String tag, String abi) {
+        this.platform = platform;
+        this.tag = tag;
+        this.abi = abi;
+    }
+
+    /**
+     * The image from SYSTEM_IMAGE (`system-images;android-35;google_apis_playstore`,
+     * `;` or `:` separated, optionally followed by the ABI), with the ABI
+     * from EMULATOR_ABI or else the host's
+     *
+     * @throws IllegalArgumentException if SYSTEM_IMAGE is malformed
+     */
+    public static SystemImage fromConfig() {
+        String image = ConfigUtils.get("SYSTEM_IMAGE", "system-images;android-35;google_apis_playstore");
+        String[] parts = image.trim().split("[;:]");
+        if (parts.length < 3 || parts.length > 4 || !"system-images".equals(parts[0])) {
+            throw new IllegalArgumentException("SYSTEM_IMAGE must look like "
+                    + "system-images;android-35;google_apis_playstore[;abi]: " + image);
+        }
+        String abi = ConfigUtils.get("EMULATOR_ABI", parts.length == 4 ? parts[3] : null);
+        return new SystemImage(parts[1], parts[2], abi == null ? hostAbi() : abi);
+    }
+
+    /**
+     * The ABI of images this host runs natively
+     */
+    public static String hostAbi() {
+        return abiOf(System.getProperty("os.arch"));
+    }
+
+    /**
+     * The ABI of images a CPU architecture runs natively
+     *
+     * @param arch `os.arch`, e.g. `amd64` or `aarch64`
+     * @throws IllegalStateException for architectures without emulator images
+     */
+    public static String abiOf(String arch) {
+        switch (arch.toLowerCase(Locale.ROOT)) {
+            case "amd64":
+            case "x86_64":
+                return "x86_64";
+            case "x86":
+            case "i386":
+            case "i686":
+                return "x86";
+            case "aarch64":
+            case "arm64":
+                return "arm64-v8a";
+            default:
+                throw new IllegalStateException("No emulator system image for the host architecture " + arch
+                        + ", set EMULATOR_ABI");
+        }
+    }
+
+    /**
+     * The Android SDK of this host: SDK_ROOT, ANDROID_SDK_ROOT or ANDROID_HOME,
+     * else where Android Studio installs it on this OS
+     */
+    public static Path sdkRoot() {
+        for (String key : new String[] { "SDK_ROOT", "ANDROID_SDK_ROOT", "ANDROID_HOME" }) {
+            String root = ConfigUtils.get(key, null);
+            if (root != null) {
+                return Paths.get(root);
+            }
+        }
+        String home = System.getProperty("user.home");
+        String os = System.getProperty("os.name").toLowerCase(Locale.ROOT);
+        if (os.contains("mac")) {
+            return Paths.get(home, "Library/Android/sdk");
+        } else if (os.contains("win")) {
+            return Paths.get(ConfigUtils.get("LOCALAPPDATA", home + "/AppData/Local"), "Android/Sdk");
+        }
+        return Paths.get(home, "Android/Sdk");
+    }
+
+    public String getAbi() {
+        return abi;
+    }
+
+    /**
+     * sdkmanager/avdmanager package path
+     */
+    public String getPackage() {
+        return String.join(";", "system-images", platform, tag, abi);
+    }
+
+    /**
+     * The `--abi` of `avdmanager create avd`, e.g. `google_apis_playstore/x86_64`
+     */
+    public String getAvdAbi() {
+        return tag + "/" + abi;
+    }
+
+    /**
+     * Directory of the image in an SDK
+     */
+    public Path resolve(Path sdkRoot) {
+        return sdkRoot.resolve("system-images").resolve(platform).resolve(tag).resolve(abi);
+    }
+
+    @Override
+    public String toString() {
+        return getPackage();
+    }
+}
@@ -1,85 +1,482 @@
 package api;
 
 import io.cucumber.java.BeforeAll;
+import io.cucumber.java.After;
+import io.cucumber.java.Before;
 import io.cucumber.java.AfterAll;
 import io.cucumber.java.en.*;
+import com.fasterxml.jackson.databind.JsonNode;
 import io.restassured.response.Response;
 import utils.ApiUtils;
+import utils.ConfigUtils;
+import utils.FaultProfile;
+import utils.JsonAssertionPlan;
+import utils.LoadGenerator;
 import utils.MockServerUtils;
+import utils.RequestJournal;
+import utils.StreamedResponse;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 
-import static org.hamcrest.Matchers.equalTo;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
 
 public class GenericStepsAPI {
     private Response response;
+    private StreamedResponse streamedResponse;
+    private long streamHeapBaseline;
+    private List<HttpResponse<String>> concurrentResponses;
+    private LoadGenerator.LoadResult loadResult;
+    private static final List<String> ENGINES = List.of("mockserver", "jdk");
+    // Startup time and requests per second of each mock server engine, once compared
+    private final Map<String, Long> engineStartupMillis = new HashMap<>();
+    private final Map<String, Double> engineThroughput = new HashMap<>();
+    // Requests per second of the last batch sent over each protocol
+    private final Map<HttpClient.Version, Double> batchThroughput = new EnumMap<>(HttpClient.Version.class);
+    // The current response's body, parsed once for all the body assertion steps
+    private JsonNode parsedBody;
 
     @BeforeAll
     public static void setup() {
         System.out.println("Initializing API Test Setup...");
+    }
+
+    /**
+     * Scenarios run on parallel worker threads; each worker gets its own mock
+     * server on an ephemeral port and points ApiUtils at it.
+     */
+    @Before
+    public void startWorkerMockServer() {
         MockServerUtils.startMockServer();
+        if (ConfigUtils.getBoolean("API_TARGET_MOCK_SERVER", true)) {
+            ApiUtils.bindBaseUrl(MockServerUtils.getBaseUrl());
+        }
     }
 
     @AfterAll
     public static void teardown() {
-        MockServerUtils.stopMockServer();
+        MockServerUtils.stopAllMockServers();
         System.out.println("API Test Execution Completed.");
     }
 
+    @After
+    public void cleanUpScenario() {
+        try {
+            releaseStreamedResponse();
+            MockServerUtils.clearFaultProfiles();
+            MockServerUtils.resetPeople();
+            MockServerUtils.resetJournal();
+        } finally {
+            // Worker threads are reused, so an engine switch must not outlive the scenario
+            MockServerUtils.restartMockServer(MockServerUtils.getDefaultEngine());
+        }
+    }
+
+    @Given("^the mock server runs on the \"(mockserver|jdk)\" engine$")
+    public void useMockServerEngine(String engine) {
+        MockServerUtils.restartMockServer(engine);
+        if (ConfigUtils.getBoolean("API_TARGET_MOCK_SERVER", true)) {
+            ApiUtils.bindBaseUrl(MockServerUtils.getBaseUrl());
+        }
+    }
+
+    @When("^I compare the mock server engines over (\\d+) concurrent GET requests to \"([^\"]*)\"$")
+    public void compareEngines(int count, String endpoint) {
+        // A first start of each loads the expectation files and the engine's classes
+        for (String engine : ENGINES) {
+            useMockServerEngine(engine);
+        }
+        for (String engine : ENGINES) {
+            MockServerUtils.stopMockServer();
+            useMockServerEngine(engine);
+            engineStartupMillis.put(engine, MockServerUtils.getStartupMillis());
+            long start = System.nanoTime();
+            sendConcurrentGetRequests(count, endpoint);
+            verifyAllConcurrentStatusCodes(200);
+            engineThroughput.put(engine, count / ((System.nanoTime() - start) / 1e9));
+            System.out.printf("Mock server engine %s: started in %d ms, %.0f req/s%n", engine,
+                    engineStartupMillis.get(engine), engineThroughput.get(engine));
+        }
+    }
+
+    @Then("^the \"(mockserver|jdk)\" engine should have started faster than the \"(mockserver|jdk)\" engine$")
+    public void verifyEngineStartup(String faster, String slower) {
+        assertTrue(engineStartupMillis.get(faster) < engineStartupMillis.get(slower), "Startup: " + faster + " "
+                + engineStartupMillis.get(faster) + " ms, " + slower + " " + engineStartupMillis.get(slower) + " ms");
+    }
+
+    @Then("^the \"(mockserver|jdk)\" engine should have served at least (\\d+)% of the requests per second of the \"(mockserver|jdk)\" engine$")
+    public void verifyEngineThroughput(String engine, int percent, String other) {
+        assertTrue(engineThroughput.get(engine) >= engineThroughput.get(other) * percent / 100,
+                String.format("Throughput: %s %.0f req/s, %s %.0f req/s", engine, engineThroughput.get(engine), other,
+                        engineThroughput.get(other)));
+    }
+
+    @Then("^the mock server should have started within (\\d+) ms$")
+    public void verifyMockServerStartup(long maxMillis) {
+        long startupMillis = MockServerUtils.getStartupMillis();
+        assertTrue(startupMillis <= maxMillis,
+                "Mock server took " + startupMillis + " ms to start, expected at most " + maxMillis + " ms");
+    }
+
+    @Given("^the mock server keeps state for (\\d+) people$")
+    public void useStatefulPeople(long count) {
+        MockServerUtils.useStatefulPeople(count);
+    }
+
+    @Given("^a fault profile \"([^\"]*)\" with:$")
+    public void defineFaultProfile(String name, Map<String, String> settings) {
+        FaultProfile.register(name, FaultProfile.fromSettings(settings));
+    }
+
+    @Given("^the mock server uses the \"([^\"]*)\" fault profile$")
+    public void useFaultProfile(String name) {
+        MockServerUtils.useFaultProfile(FaultProfile.named(name));
+    }
+
+    @Given("^the mock server uses the \"([^\"]*)\" fault profile for \"([^\"]*)\"$")
+    public void useFaultProfileForRoute(String name, String path) {
+        MockServerUtils.useFaultProfile(path, FaultProfile.named(name));
+    }
+
+    @Given("^the mock server replays recordings from \"([^\"]*)\"$")
+    public void replayRecordings(String directory) {
+        MockServerUtils.replayFrom(Paths.get(directory));
+    }
+
     @When("^I send a GET request to \"([^\"]*)\"$")
     public void sendGetRequest(String endpoint) {
+        startNewRequest();
         response = ApiUtils.get(endpoint);
     }
 
     @When("^I send a POST request to \"([^\"]*)\" with payload:$")
     public void sendPostRequest(String endpoint, Map<String, String> payload) {
+        startNewRequest();
         response = ApiUtils.post(endpoint, payload);
     }
 
     @When("^I send a PUT request to \"([^\"]*)\" with payload:$")
     public void sendPutRequest(String endpoint, Map<String, String> payload) {
+        startNewRequest();
         response = ApiUtils.put(endpoint, payload);
     }
 
     @When("^I send a DELETE request to \"([^\"]*)\"$")
     public void sendDeleteRequest(String endpoint) {
+        startNewRequest();
         response = ApiUtils.delete(endpoint);
     }
 
+    @When("^I stream a GET request to \"([^\"]*)\"$")
+    public void sendStreamedGetRequest(String endpoint) {
+        startNewRequest();
+        response = null;
+        streamHeapBaseline = resetRetainedHeapPeak();
+        streamedResponse = ApiUtils.getStreamed(endpoint);
+    }
+
+    @When("^I send (\\d+) concurrent GET requests to \"([^\"]*)\"$")
+    public void sendConcurrentGetRequests(int count, String endpoint) {
+        List<CompletableFuture<HttpResponse<String>>> futures = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            futures.add(ApiUtils.getAsync(endpoint));
+        }
+        concurrentResponses = awaitAll(futures);
+    }
+
+    @When("^I send (\\d+) concurrent POST requests to \"([^\"]*)\" with payload:$")
+    public void sendConcurrentPostRequests(int count, String endpoint, Map<String, String> payload) {
+        List<CompletableFuture<HttpResponse<String>>> futures = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            futures.add(ApiUtils.postAsync(endpoint, payload));
+        }
+        concurrentResponses = awaitAll(futures);
+    }
+
+    @Then("^all concurrent responses should have status code (\\d+)$")
+    public void verifyAllConcurrentStatusCodes(int expectedStatusCode) {
+        Map<Integer, Long> statusCounts = concurrentResponses.stream()
+                .collect(Collectors.groupingBy(HttpResponse::statusCode, Collectors.counting()));
+        assertEquals(statusCounts.getOrDefault(expectedStatusCode, 0L).longValue(), concurrentResponses.size(),
+                "Unexpected status codes among concurrent responses: " + statusCounts);
+    }
+
+    @Then("^between (\\d+) and (\\d+) concurrent responses should have status code (\\d+)$")
+    public void verifyConcurrentStatusCodeRange(int minCount, int maxCount, int expectedStatusCode) {
+        long actualCount = concurrentResponses.stream()
+                .filter(concurrentResponse -> concurrentResponse.statusCode() == expectedStatusCode)
+                .count();
+        assertTrue(actualCount >= minCount && actualCount <= maxCount, "Expected between " + minCount + " and "
+                + maxCount + " concurrent responses with status code " + expectedStatusCode + ", got " + actualCount);
+    }
+
+    @Then("^(\\d+) concurrent responses should have status code (\\d+)$")
+    public void verifyConcurrentStatusCodeCount(int expectedCount, int expectedStatusCode) {
+        long actualCount = concurrentResponses.stream()
+                .filter(concurrentResponse -> concurrentResponse.statusCode() == expectedStatusCode)
+                .count();
+        assertEquals(actualCount, expectedCount,
+                "Unexpected number of concurrent responses with status code " + expectedStatusCode);
+    }
+
+    @When("^I send a batch of (\\d+) GET requests to \"([^\"]*)\" over (HTTP/1\\.1|HTTP/2)$")
+    public void sendBatchOfGetRequests(int count, String endpoint, String protocol) {
+        sendBatch(Collections.nCopies(count, endpoint), protocol);
+    }
+
+    @When("^I send a batch of GET requests over (HTTP/1\\.1|HTTP/2):$")
+    public void sendBatchOfGetRequests(String protocol, List<String> endpoints) {
+        sendBatch(endpoints, protocol);
+    }
+
+    @Then("^the batch responses should have \"([^\"]*)\" values in order:$")
+    public void verifyBatchResponseOrder(String key, List<String> expectedValues) {
+        assertEquals(concurrentResponses.size(), expectedValues.size(), "Unexpected number of batch responses");
+        for (int i = 0; i < expectedValues.size(); i++) {
+            new JsonAssertionPlan()
+                    .expectValue(key, expectedValues.get(i))
+                    .verify(concurrentResponses.get(i).body().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Then("^the batch responses should have been served over (HTTP/1\\.1|HTTP/2)$")
+    public void verifyBatchProtocol(String protocol) {
+        HttpClient.Version expected = toVersion(protocol);
+        Map<HttpClient.Version, Long> versionCounts = concurrentResponses.stream()
+                .collect(Collectors.groupingBy(HttpResponse::version, Collectors.counting()));
+        assertEquals(versionCounts.getOrDefault(expected, 0L).longValue(), concurrentResponses.size(),
+                "Unexpected protocols among batch responses: " + versionCounts);
+    }
+
+    @Then("^the HTTP/2 batch throughput should be at least (\\d+)% of HTTP/1\\.1$")
+    public void compareBatchThroughput(int minPercent) {
+        Double http1 = batchThroughput.get(HttpClient.Version.HTTP_1_1);
+        Double http2 = batchThroughput.get(HttpClient.Version.HTTP_2);
+        assertTrue(http1 != null && http2 != null, "Send a batch over both HTTP/1.1 and HTTP/2 first");
+        System.out.printf("Batch throughput: HTTP/1.1 %.0f req/s, HTTP/2 %.0f req/s (%+.1f%%)%n", http1, http2,
+                (http2 - http1) / http1 * 100);
+        assertTrue(http2 >= http1 * minPercent / 100.0, String.format(
+                "HTTP/2 served %.0f req/s, below %d%% of the %.0f req/s over HTTP/1.1", http2, minPercent, http1));
+    }
+
+    @When("^I generate a load of (\\d+) requests per second against \"([^\"]*)\" for (\\d+) seconds with a (\\d+) second ramp-up$")
+    public void generateLoad(int targetRps, String endpoint, int durationSeconds, int rampUpSeconds) {
+        loadResult = LoadGenerator.run(endpoint, targetRps, Duration.ofSeconds(durationSeconds),
+                Duration.ofSeconds(rampUpSeconds));
+    }
+
+    @Then("^the p(\\d+(?:\\.\\d+)?) latency should be below (\\d+) ms$")
+    public void verifyLatencyPercentile(double percentile, int maxMillis) {
+        double actualMillis = loadResult.getHistogram().getValueAtPercentile(percentile) / 1000.0;
+        assertTrue(actualMillis < maxMillis,
+                String.format("p%s latency was %.2f ms, expected below %d ms", percentile, actualMillis, maxMillis));
+    }
+
+    @Then("^the p(\\d+(?:\\.\\d+)?) latency should be above (\\d+) ms$")
+    public void verifyMinimumLatencyPercentile(double percentile, int minMillis) {
+        double actualMillis = loadResult.getHistogram().getValueAtPercentile(percentile) / 1000.0;
+        assertTrue(actualMillis > minMillis,
+                String.format("p%s latency was %.2f ms, expected above %d ms", percentile, actualMillis, minMillis));
+    }
+
+    @Then("^the error rate should be below (\\d+(?:\\.\\d+)?)%$")
+    public void verifyErrorRate(double maxErrorRate) {
+        assertTrue(loadResult.getErrorRate() < maxErrorRate, String.format(
+                "Error rate was %.3f%% (%d of %d), expected below %s%%", loadResult.getErrorRate(),
+                loadResult.getErrors(), loadResult.getSent(), maxErrorRate));
+    }
+
+    @Then("^the error rate should be above (\\d+(?:\\.\\d+)?)%$")
+    public void verifyMinimumErrorRate(double minErrorRate) {
+        assertTrue(loadResult.getErrorRate() > minErrorRate, String.format(
+                "Error rate was %.3f%% (%d of %d), expected above %s%%", loadResult.getErrorRate(),
+                loadResult.getErrors(), loadResult.getSent(), minErrorRate));
+    }
+
+    @Then("^the response time should be at least (\\d+) ms$")
+    public void verifyMinimumResponseTime(long minMillis) {
+        assertTrue(response.getTime() >= minMillis,
+                "Response took " + response.getTime() + " ms, expected at least " + minMillis + " ms");
+    }
+
+    @Then("^the mock server should have received (\\d+) (GET|POST|PUT|PATCH|DELETE) requests? to \"([^\"]*)\"$")
+    public void verifyReceivedRequests(long expectedCount, String method, String path) {
+        assertEquals(MockServerUtils.getJournal().getCount(method, path), expectedCount,
+                "Unexpected number of " + method + " requests to " + path);
+    }
+
+    @Then("^the mock server should have received at least (\\d+) (GET|POST|PUT|PATCH|DELETE) requests? to \"([^\"]*)\"$")
+    public void verifyReceivedAtLeast(long minCount, String method, String path) {
+        long count = MockServerUtils.getJournal().getCount(method, path);
+        assertTrue(count >= minCount,
+                "Mock server received " + count + " " + method + " requests to " + path + ", expected at least "
+                        + minCount);
+    }
+
+    @Then("^the mock server mean latency for (GET|POST|PUT|PATCH|DELETE) \"([^\"]*)\" should be below (\\d+) ms$")
+    public void verifyMockServerLatency(String method, String path, long maxMillis) {
+        RequestJournal.RouteStats stats = MockServerUtils.getJournal().getRouteStats(method, path);
+        assertTrue(stats != null, "Mock server received no " + method + " requests to " + path);
+        System.out.println("Mock server " + method + " " + path + ": " + stats);
+        assertTrue(stats.getMeanMicros() < maxMillis * 1000.0,
+                "Mean mock server latency for " + method + " " + path + " was " + stats.getMeanMicros() / 1000
+                        + " ms, expected below " + maxMillis + " ms");
+    }
+
     @Then("^the response status code should be (\\d+)$")
     public void verifyStatusCode(int expectedStatusCode) {
-        assertEquals(response.getStatusCode(), expectedStatusCode, "Unexpected status code");
+        int actualStatusCode = streamedResponse != null ? streamedResponse.getStatusCode() : response.getStatusCode();
+        assertEquals(actualStatusCode, expectedStatusCode, "Unexpected status code");
     }
 
     @Then("^the response body should contain \"([^\"]*)\" with value \"([^\"]*)\"$")
     public void verifyResponseBody(String key, String expectedValue) {
-        response.then().body(key, equalTo(expectedValue));
+        verifyBody(new JsonAssertionPlan().expectValue(key, expectedValue));
     }
 
     @Then("^the response body should match:$")
     public void verifyResponseBodyMatch(Map<String, String> expectedValues) {
+        JsonAssertionPlan plan = new JsonAssertionPlan();
         for (Map.Entry<String, String> entry : expectedValues.entrySet()) {
-            response.then().body(entry.getKey(), equalTo(entry.getValue()));
+            plan.expectValue(entry.getKey(), entry.getValue());
         }
+        verifyBody(plan);
     }
 
     @Then("^the response body should be empty$")
     public void the_response_body_should_be_empty() {
+        if (streamedResponse != null) {
+            assertEquals(streamedResponse.getBodySize(), 0L, "Expected response body to be empty, but it was not.");
+            return;
+        }
         String responseBody = response.getBody().asString().trim();
         assertEquals(responseBody, "", "Expected response body to be empty, but it was not.");
     }
 
+    @Then("^the streamed response body should be larger than (\\d+) MB$")
+    public void verifyStreamedBodySize(int minMegabytes) {
+        long actualBytes = streamedResponse.getBodySize();
+        assertTrue(actualBytes > minMegabytes * 1024L * 1024L,
+                "Streamed body was " + actualBytes / (1024 * 1024) + " MB, expected more than " + minMegabytes + " MB");
+    }
+
+    @Then("^the heap should have grown by less than (\\d+) MB since the streamed request$")
+    public void verifyStreamedHeapGrowth(int maxMegabytes) {
+        long growth = retainedHeapPeak() - streamHeapBaseline;
+        System.out.println("Heap growth while streaming: " + growth / (1024 * 1024) + " MB");
+        assertTrue(growth < maxMegabytes * 1024L * 1024L, "The heap grew by " + growth / (1024 * 1024)
+                + " MB while streaming, expected less than " + maxMegabytes + " MB");
+    }
+
     @Then("^the response body should contain a count of (\\d+)$")
     public void verifyResponseBodyCount(int expectedCount) {
-        int actualCount = response.then().extract().path("count");
-        assertEquals(actualCount, expectedCount, "The 'count' field does not match the expected value.");
+        verifyBody(new JsonAssertionPlan().expectNumber("count", expectedCount));
     }
 
     @Then("^the response body should have (\\d+) people in results$")
     public void verifyResultsSize(int expectedSize) {
-        int actualSize = response.then().extract().path("results.size()");
-        assertEquals(actualSize, expectedSize, "The 'results' array size does not match the expected value.");
+        verifyBody(new JsonAssertionPlan().expectSize("results.size()", expectedSize));
+    }
+
+    /**
+     * Reset the peak usage of the heap pools that hold objects past a young
+     * collection, and return their current usage. The eden space is left out:
+     * its peak follows the allocation rate, not what is held.
+     */
+    private static long resetRetainedHeapPeak() {
+        System.gc();
+        long used = 0;
+        for (MemoryPoolMXBean pool : retainedHeapPools()) {
+            pool.resetPeakUsage();
+            used += pool.getUsage().getUsed();
+        }
+        return used;
+    }
+
+    private static long retainedHeapPeak() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : retainedHeapPools()) {
+            peak += pool.getPeakUsage().getUsed();
+        }
+        return peak;
+    }
+
+    private static List<MemoryPoolMXBean> retainedHeapPools() {
+        return ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP && pool.isValid())
+                .filter(pool -> !pool.getName().contains("Eden") && !pool.getName().contains("Young"))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Finish with the current response before the next request replaces it
+     */
+    private void startNewRequest() {
+        parsedBody = null;
+        releaseStreamedResponse();
     }
 
+    /**
+     * Check a step's body assertions on the current response in one pass. A
+     * body in memory is parsed only once per response; a streamed body is
+     * checked with a streaming parser straight from disk.
+     *
+     * @throws AssertionError listing every expectation that did not hold
+     */
+    private void verifyBody(JsonAssertionPlan plan) {
+        if (streamedResponse != null) {
+            plan.verify(streamedResponse.getBodyFile());
+            return;
+        }
+        if (parsedBody == null) {
+            parsedBody = JsonAssertionPlan.parse(response.asByteArray());
+        }
+        plan.verify(parsedBody);
+    }
+
+    private void releaseStreamedResponse() {
+        if (streamedResponse != null) {
+            streamedResponse.close();
+            streamedResponse = null;
+        }
+    }
+
+    private void sendBatch(List<String> endpoints, String protocol) {
+        HttpClient.Version version = toVersion(protocol);
+        List<ApiUtils.BatchRequest> requests = endpoints.stream()
+                .map(ApiUtils.BatchRequest::get)
+                .collect(Collectors.toList());
+        long start = System.nanoTime();
+        concurrentResponses = ApiUtils.sendBatch(requests, version);
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        double requestsPerSecond = requests.size() / seconds;
+        batchThroughput.put(version, requestsPerSecond);
+        System.out.printf("Batch of %d requests over %s took %.0f ms (%.0f req/s)%n", requests.size(), protocol,
+                seconds * 1000, requestsPerSecond);
+    }
+
+    private static HttpClient.Version toVersion(String protocol) {
+        return "HTTP/2".equals(protocol) ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1;
+    }
+
+    private static List<HttpResponse<String>> awaitAll(List<CompletableFuture<HttpResponse<String>>> futures) {
+        CompletableFuture.allOf(futures.toArray(CompletableFuture<?>[]::new)).join();
+        return futures.stream().map(CompletableFuture::join).collect(Collectors.toList());
+    }
 }
@@ -1,32 +1,46 @@
 package appium;
 
-import io.appium.java_client.AppiumDriver;
-import io.cucumber.java.BeforeAll;
-import io.cucumber.java.AfterAll;
+import io.cucumber.java.After;
+import io.cucumber.java.Before;
+import io.cucumber.java.Scenario;
 import io.cucumber.java.en.*;
 import org.openqa.selenium.By;
 import org.openqa.selenium.WebElement;
 
 import utils.AppiumDriverManager;
+import utils.DeviceLogs;
+import utils.DevicePool;
+import utils.EmulatorDevice;
+import utils.EmulatorManager;
+
+import java.nio.charset.StandardCharsets;
 
 import java.util.Map;
 
 public class GenericSteps {
-
-    private static AppiumDriver driver;
-
-    @BeforeAll
-    public static void setupDriver() {
-        // Ensure the driver is initialized before any test runs
-        if (driver == null) {
-            driver = AppiumDriverManager.getAppiumDriver();
-        }
+    private DeviceLogs.Mark logMark;
+
+    @Before
+    public void setupDriver() throws InterruptedException {
+        // Each scenario drives its own emulator, leased from the pool for its duration
+        EmulatorDevice device = DevicePool.getShared().lease();
+        logMark = EmulatorManager.logs(device).mark();
+        AppiumDriverManager.getAppiumDriver();
     }
 
-    @AfterAll
-    public static void quitDriver() {
-        // Quit the driver after all tests
-        AppiumDriverManager.quitDriver();
+    @After
+    public void quitDriver(Scenario scenario) throws InterruptedException {
+        // Keep the session for the next scenario on this emulator, then return the emulator to the pool
+        AppiumDriverManager.releaseDriver();
+        EmulatorDevice device = DevicePool.currentDevice();
+        if (device != null) {
+            if (scenario.isFailed() && logMark != null) {
+                // Only the lines logged while this scenario held the device
+                EmulatorManager.logs(device).since(logMark).forEach((log, lines) -> scenario.attach(
+                        lines.getBytes(StandardCharsets.UTF_8), "text/plain", device.getSerial() + " " + log));
+            }
+            DevicePool.getShared().release(device);
+        }
     }
 
     @Given("the application is launched")
@@ -63,7 +77,7 @@ public class GenericSteps {
     @When("I {string} the checkbox identified by {string} with value {string}")
     public void iToggleCheckbox(String action, String locatorType, String locatorValue) {
         By locator = getLocatorByType(locatorType, locatorValue);
-        WebElement checkbox = driver.findElement(locator);
+        WebElement checkbox = AppiumDriverManager.getAppiumDriver().findElement(locator);
         boolean isChecked = checkbox.isSelected();
 
         if (action.equals("check") && !isChecked) {
@@ -86,7 +100,7 @@ public class GenericSteps {
      * @param locatorValue The value of the locator
      * @return A `By` object representing the locator
      */
-    private By getLocatorByType(String locatorType, String locatorValue) {
+    static By getLocatorByType(String locatorType, String locatorValue) {
         switch (locatorType.toLowerCase()) {
             case "id":
                 return By.id(locatorValue);
@@ -9,6 +9,7 @@ import org.testng.annotations.DataProvider;
 
 @CucumberOptions(features = "src/test/resources/features/API", // Path to your API feature files
         glue = "api", // Package containing step definitions
+        tags = "not @slow and not @timing", // Run slow scenarios with -Dcucumber.filter.tags=@slow
         plugin = { "pretty", "html:target/api-cucumber-reports.html",
                 "json:target/api-cucumber.json" }, monochrome = true)
 public class APITestNGRunner extends AbstractTestNGCucumberTests {
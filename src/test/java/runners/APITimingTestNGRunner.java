@@ -0,0 +1,25 @@
+package runners;
+
+import io.cucumber.testng.AbstractTestNGCucumberTests;
+import io.cucumber.testng.CucumberOptions;
+
+import org.testng.annotations.DataProvider;
+
+/**
+ * Runs the `@timing` API scenarios one at a time, after the parallel API
+ * runner, so latency and throughput assertions do not measure other
+ * scenarios competing for the CPU.
+ */
+@CucumberOptions(features = "src/test/resources/features/API",
+        glue = "api",
+        tags = "@timing and not @slow",
+        plugin = { "pretty", "html:target/api-timing-cucumber-reports.html",
+                "json:target/api-timing-cucumber.json" }, monochrome = true)
+public class APITimingTestNGRunner extends AbstractTestNGCucumberTests {
+
+    @Override
+    @DataProvider(parallel = false) // Timing checks need the host to themselves
+    public Object[][] scenarios() {
+        return super.scenarios();
+    }
+}
@@ -2,7 +2,10 @@ package runners;
 
 import io.cucumber.testng.AbstractTestNGCucumberTests;
 import io.cucumber.testng.CucumberOptions;
+import utils.AppiumDriverManager;
+import utils.DevicePool;
 import utils.EmulatorManager;
+import utils.SetupGraph;
 
 import org.testng.annotations.AfterSuite;
 import org.testng.annotations.BeforeSuite;
@@ -18,18 +21,22 @@ public class AppiumTestNGRunner extends AbstractTestNGCucumberTests {
         System.out.println("Starting emulator setup process...");
 
         try {
-            EmulatorManager.startAppiumServer();
-
-            // Verify tools availability
-            if (!EmulatorManager.isCommandAvailable("sdkmanager")
-                    || !EmulatorManager.isCommandAvailable("avdmanager")
-                    || !EmulatorManager.isCommandAvailable("emulator")) {
-                throw new RuntimeException(
-                        "Android SDK tools are missing. Ensure they are installed and available in PATH.");
+            // The Appium server and the tool checks run alongside the pool start
+            SetupGraph setup = new SetupGraph("Emulator setup");
+            setup.add("appium server", EmulatorManager::startAppiumServer);
+            String[] toolChecks = { "which sdkmanager", "which avdmanager", "which emulator" };
+            for (String check : toolChecks) {
+                String tool = check.substring("which ".length());
+                setup.add(check, () -> {
+                    if (!EmulatorManager.isCommandAvailable(tool)) {
+                        throw new RuntimeException("Android SDK tool " + tool
+                                + " is missing. Ensure the tools are installed and available in PATH.");
+                    }
+                });
             }
 
-            // Run emulator and install APK
-            EmulatorManager.setupEmulatorAndInstallApp();
+            // Boot EMULATOR_POOL_SIZE emulators with the APK installed
+            DevicePool.startShared(setup, toolChecks);
             System.out.println("Emulator setup and APK installation completed successfully.");
         } catch (Exception e) {
             System.err.println("Error during emulator setup: " + e.getMessage());
@@ -42,9 +49,12 @@ public class AppiumTestNGRunner extends AbstractTestNGCucumberTests {
         System.out.println("Starting emulator teardown process...");
 
         try {
-            // Stop the emulator
-            EmulatorManager.stopEmulator();
-            System.out.println("Emulator stopped successfully.");
+            // Quit the Appium sessions kept for reuse while their devices still run
+            AppiumDriverManager.quitAllDrivers();
+
+            // Stop the emulators
+            DevicePool.stopShared();
+            System.out.println("Emulators stopped successfully.");
 
             // Stop Appium server
             EmulatorManager.stopAppiumServer();
@@ -56,7 +66,7 @@ public class AppiumTestNGRunner extends AbstractTestNGCucumberTests {
     }
 
     @Override
-    @DataProvider(parallel = true) // Enable parallel execution if needed
+    @DataProvider(parallel = true) // Scenarios run in parallel, one per leased emulator
     public Object[][] scenarios() {
         return super.scenarios();
     }
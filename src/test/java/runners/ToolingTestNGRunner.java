@@ -0,0 +1,13 @@
+package runners;
+
+import io.cucumber.testng.AbstractTestNGCucumberTests;
+import io.cucumber.testng.CucumberOptions;
+
+@CucumberOptions(features = "src/test/resources/features/Tooling", // Emulator tooling against a fake Android SDK
+        glue = "tooling", // Package containing step definitions
+        plugin = { "pretty", "html:target/tooling-cucumber-reports.html",
+                "json:target/tooling-cucumber.json" }, monochrome = true)
+public class ToolingTestNGRunner extends AbstractTestNGCucumberTests {
+    // Scenarios run one at a time: they configure EmulatorManager through
+    // System Properties
+}
@@ -0,0 +1,88 @@
+package tooling;
+
+import io.cucumber.java.en.*;
+import utils.CommandRunner;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Steps running shell commands through a CommandRunner of their own.
+ */
+public class CommandSteps {
+    private CommandRunner runner;
+    private CommandRunner.Result result;
+
+    @Given("^a command runner keeping (\\d+) bytes of output$")
+    public void createRunner(int maxOutputBytes) {
+        runner = new CommandRunner(maxOutputBytes);
+    }
+
+    @When("^I run \"([^\"]*)\" with a timeout of (\\d+) ms$")
+    public void runCommand(String script, long timeoutMillis) throws Exception {
+        result = runner.run(Map.of(), timeoutMillis, "bash", "-c", script);
+        System.out.println("Command finished in " + result.getMillis() + " ms, exit code " + result.getExitCode());
+    }
+
+    @Then("^the command should have succeeded within (\\d+) ms$")
+    public void verifySucceeded(long maxMillis) {
+        assertTrue(result.isSuccess(), "Command failed: " + result.getOutput());
+        assertTrue(result.getMillis() < maxMillis, "Command took " + result.getMillis() + " ms");
+    }
+
+    @Then("^the command should have timed out within (\\d+) ms$")
+    public void verifyTimedOut(long maxMillis) {
+        assertTrue(result.isTimedOut(), "Command did not time out");
+        assertTrue(result.getMillis() < maxMillis, "Command took " + result.getMillis() + " ms");
+    }
+
+    @Then("^the (stdout|stderr) should be the last (\\d+) bytes ending in \"([^\"]*)\"$")
+    public void verifyTruncatedOutput(String stream, int length, String ending) {
+        String output = "stdout".equals(stream) ? result.getStdout() : result.getStderr();
+        assertTrue(result.isTruncated(), "Output was not truncated");
+        assertEquals(output.length(), length, "Unexpected output length");
+        assertTrue(output.endsWith(ending), "Output does not end with " + ending);
+    }
+
+    @Then("^the process recorded in \"([^\"]*)\" should no longer be running$")
+    public void verifyProcessKilled(String pidFile) throws Exception {
+        Path file = Paths.get(pidFile);
+        long pid = Long.parseLong(Files.readString(file).trim());
+        Files.deleteIfExists(file);
+        for (int i = 0; i < 50 && isRunning(pid); i++) {
+            Thread.sleep(20); // A killed process may take a moment to exit
+        }
+        assertFalse(isRunning(pid), "Process " + pid + " is still running");
+    }
+
+    /**
+     * Whether the process is alive and not a zombie: an orphan killed in a
+     * container may never be reaped when PID 1 does not reap
+     */
+    private static boolean isRunning(long pid) throws Exception {
+        if (!ProcessHandle.of(pid).map(ProcessHandle::isAlive).orElse(false)) {
+            return false;
+        }
+        Path stat = Paths.get("/proc", String.valueOf(pid), "stat");
+        if (!Files.exists(stat)) {
+            return true;
+        }
+        String fields = Files.readString(stat);
+        return !fields.substring(fields.lastIndexOf(')') + 1).trim().startsWith("Z");
+    }
+
+    @Then("^the runner should have recorded (\\d+) \"([^\"]*)\" commands? with (\\d+) timeouts?$")
+    public void verifyStats(long count, String label, long timeouts) {
+        CommandRunner.Stats stats = runner.getStats().get(label);
+        System.out.print(runner.report());
+        assertTrue(stats != null, "No commands recorded as " + label + ": " + runner.getStats().keySet());
+        assertEquals(stats.getCount(), count, "Unexpected number of commands");
+        assertEquals(stats.getTimeouts(), timeouts, "Unexpected number of timeouts");
+    }
+}
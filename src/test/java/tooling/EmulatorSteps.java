@@ -0,0 +1,659 @@
+package tooling;
+
+import io.cucumber.java.After;
+import io.cucumber.java.en.*;
+import utils.AdbClient;
+import utils.ApkInfo;
+import utils.CommandRunner;
+import utils.DeviceLogs;
+import utils.DevicePool;
+import utils.EmulatorDevice;
+import utils.EmulatorManager;
+import utils.EmulatorProfile;
+import utils.LogCapture;
+import utils.SetupGraph;
+import utils.SystemImage;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+/**
+ * Steps driving EmulatorManager against a fake Android SDK.
+ */
+public class EmulatorSteps {
+    private FakeAndroidSdk sdk;
+    private DevicePool pool;
+    private final List<EmulatorDevice> leased = new ArrayList<>();
+    private long workersMillis;
+    private final AtomicBoolean overlappingLease = new AtomicBoolean();
+    private int installedOnPool;
+    private long installMillis;
+    private AdbClient.DeviceTracker tracker;
+    private final List<String> shellOutputs = new ArrayList<>();
+    private long socketShellMillis;
+    private long processShellMillis;
+    private DeviceLogs.Mark logMark;
+
+    @After
+    public void closeFakeSdk() throws Exception {
+        if (tracker != null) {
+            tracker.close();
+            tracker = null;
+        }
+        if (pool != null) {
+            pool.stop();
+            pool = null;
+        }
+        if (sdk != null) {
+            sdk.close();
+            sdk = null;
+        }
+    }
+
+    @Given("^a fake Android SDK$")
+    public void createFakeSdk() throws Exception {
+        sdk = new FakeAndroidSdk();
+        CommandRunner.shared().resetStats();
+    }
+
+    @Given("^the fake emulator takes (\\d+) seconds? to cold boot and (\\d+) seconds? to boot from a snapshot$")
+    public void setBootTimes(int coldSeconds, int snapshotSeconds) throws Exception {
+        sdk.writeState("cold_boot_seconds", String.valueOf(coldSeconds));
+        sdk.writeState("snapshot_boot_seconds", String.valueOf(snapshotSeconds));
+    }
+
+    @Given("^the emulator boot mode is \"(snapshot|cold)\"$")
+    public void setBootMode(String mode) {
+        sdk.set("EMULATOR_BOOT_MODE", mode);
+    }
+
+    @Given("^the fake device only reports the \"([^\"]*)\" boot signal$")
+    public void setBootSignal(String signal) throws Exception {
+        sdk.writeState("boot_signals", signal + "\n");
+    }
+
+    @Given("^the fake device reports no boot signals$")
+    public void disableBootSignals() throws Exception {
+        sdk.writeState("boot_signals", "");
+    }
+
+    @Given("^the emulator boot timeout is (\\d+) seconds?$")
+    public void setBootTimeout(int seconds) {
+        sdk.set("EMULATOR_BOOT_TIMEOUT_SECONDS", String.valueOf(seconds));
+    }
+
+    @Given("^the APK has changed$")
+    public void changeApk() throws Exception {
+        sdk.writeApk(1, "fake apk, rebuilt");
+    }
+
+    @Given("^the APK version code is (\\d+)$")
+    public void setApkVersion(long versionCode) throws Exception {
+        sdk.writeApk(versionCode, "fake apk " + versionCode);
+    }
+
+    @Given("^the fake adb takes (\\d+) ms to install an APK$")
+    public void setInstallTime(long millis) throws Exception {
+        sdk.writeState("install_seconds", String.valueOf(millis / 1000.0));
+    }
+
+    @Given("^the fake adb hangs on installs$")
+    public void hangOnInstall() throws Exception {
+        sdk.writeState("install_hangs", "");
+    }
+
+    @Given("^the APK install timeout is (\\d+) seconds?$")
+    public void setInstallTimeout(int seconds) {
+        sdk.set("APK_INSTALL_TIMEOUT_SECONDS", String.valueOf(seconds));
+    }
+
+    @Given("^the APK install mode is \"([^\"]*)\"$")
+    public void setInstallMode(String mode) {
+        sdk.set("APK_INSTALL_MODE", mode);
+    }
+
+    @Given("^the system image has changed$")
+    public void changeSystemImage() throws Exception {
+        Files.write(sdk.getSystemImage().resolve("system.img"), new byte[8192]);
+    }
+
+    @Given("^the fake avdmanager takes (\\d+) ms to create an AVD$")
+    public void setCreateDelay(long millis) throws Exception {
+        sdk.writeState("create_seconds", String.valueOf(millis / 1000.0));
+    }
+
+    @Given("^the fake emulator takes (\\d+) ms to come online and (\\d+) ms to shut down$")
+    public void setOnlineAndShutdownDelays(long onlineMillis, long shutdownMillis) throws Exception {
+        sdk.writeState("online_seconds", String.valueOf(onlineMillis / 1000.0));
+        sdk.writeState("shutdown_seconds", String.valueOf(shutdownMillis / 1000.0));
+    }
+
+    @Given("^the fake emulator ignores emu kill$")
+    public void ignoreEmuKill() throws Exception {
+        sdk.writeState("kill_ignored", "");
+    }
+
+    @Given("^the emulator stop grace period is (\\d+) seconds?$")
+    public void setStopGrace(int seconds) {
+        sdk.set("EMULATOR_STOP_GRACE_SECONDS", String.valueOf(seconds));
+    }
+
+    @Given("^the fake emulator hangs when booting from a snapshot$")
+    public void hangSnapshotBoots() throws Exception {
+        sdk.writeState("snapshot_hangs", "");
+    }
+
+    @Given("^the AVD has been deleted$")
+    public void deleteAvd() throws Exception {
+        try (Stream<Path> files = Files.walk(sdk.getAvdHome().resolve("fake_avd.avd"))) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Given("^the emulator profile is \"(window|headless|auto)\"$")
+    public void setProfile(String profile) {
+        sdk.set("EMULATOR_PROFILE", profile);
+    }
+
+    @Given("^the emulator has (\\d+) cores and (\\d+) MB of memory$")
+    public void setCoresAndMemory(int cores, int memoryMb) {
+        sdk.set("EMULATOR_CORES", String.valueOf(cores));
+        sdk.set("EMULATOR_MEMORY_MB", String.valueOf(memoryMb));
+    }
+
+    @Given("^the emulator ABI is \"([^\"]*)\"$")
+    public void setAbi(String abi) {
+        sdk.set("EMULATOR_ABI", abi);
+    }
+
+    @Given("^the SDK root is only given by ANDROID_SDK_ROOT$")
+    public void setAndroidSdkRoot() {
+        sdk.set("SDK_ROOT", "");
+        sdk.set("ANDROID_SDK_ROOT", sdk.getRoot().resolve("android-sdk").toString());
+    }
+
+    @When("^I set up the emulator$")
+    public void setUpEmulator() throws Exception {
+        EmulatorManager.setupEmulatorAndInstallApp();
+    }
+
+    @When("^I install the APK$")
+    public void installApk() throws Exception {
+        EmulatorManager.installApk();
+    }
+
+    @When("^I install the APK on the device pool$")
+    public void installApkOnPool() throws Exception {
+        long start = System.currentTimeMillis();
+        installedOnPool = pool.installApk();
+        installMillis = System.currentTimeMillis() - start;
+    }
+
+    @When("^I stop the emulator$")
+    public void stopEmulator() throws Exception {
+        EmulatorManager.stopEmulator();
+    }
+
+    @Then("^the emulator should have booted from \"(snapshot|cold)\"$")
+    public void verifyBootMode(String mode) {
+        System.out.println("Last boot: " + EmulatorManager.getLastBootMode() + " in "
+                + EmulatorManager.getLastBootMillis() + " ms");
+        assertEquals(EmulatorManager.getLastBootMode(), mode, "Unexpected boot mode");
+    }
+
+    @Then("^the emulator should have become ready within (\\d+) ms$")
+    public void verifyBootTime(long maxMillis) {
+        System.out.println("Emulator ready in " + EmulatorManager.getLastBootMillis() + " ms");
+        assertTrue(EmulatorManager.getLastBootMillis() < maxMillis,
+                "Emulator took " + EmulatorManager.getLastBootMillis() + " ms to become ready");
+    }
+
+    @Then("^the boot should have been detected through \"([^\"]*)\"$")
+    public void verifyReadySignal(String signal) {
+        assertEquals(EmulatorManager.getLastReadySignal(), signal, "Unexpected readiness signal");
+    }
+
+    @Then("^setting up the emulator should fail with \"([^\"]*)\"$")
+    public void verifySetupFails(String message) throws Exception {
+        try {
+            EmulatorManager.setupEmulatorAndInstallApp();
+        } catch (RuntimeException e) {
+            assertTrue(String.valueOf(e.getMessage()).contains(message), "Unexpected failure: " + e.getMessage());
+            return;
+        }
+        fail("Emulator setup succeeded");
+    }
+
+    @Then("^the emulator should have been launched (with|without) \"([^\"]*)\"$")
+    public void verifyLaunchOptions(String with, String options) throws Exception {
+        List<String> calls = sdk.readState("emulator.calls");
+        assertTrue(!calls.isEmpty(), "The emulator was not launched");
+        String launch = calls.get(calls.size() - 1);
+        assertEquals(launch.contains(options), "with".equals(with), "Unexpected emulator options: " + launch);
+    }
+
+    @Then("^the AVD should have been created from \"([^\"]*)\"$")
+    public void verifyAvdPackage(String image) throws Exception {
+        List<String> calls = sdk.readState("avdmanager.calls");
+        assertTrue(!calls.isEmpty() && calls.get(calls.size() - 1).contains("--package " + image),
+                "Unexpected avdmanager calls: " + calls);
+    }
+
+    @Then("^the system image should have been synced to \"([^\"]*)\"$")
+    public void verifySystemImageTarget(String directory) {
+        assertTrue(Files.isRegularFile(sdk.getRoot().resolve(directory).resolve("system.img")),
+                "No system image in " + directory);
+    }
+
+    @Then("^the host usage of the \"([^\"]*)\" profile should have been recorded$")
+    public void verifyProfileStats(String profile) {
+        System.out.print(EmulatorManager.profileReport());
+        EmulatorProfile.Stats stats = EmulatorManager.getProfileStats().entrySet().stream()
+                .filter(entry -> entry.getKey().startsWith(profile + " ") || entry.getKey().equals(profile))
+                .map(Map.Entry::getValue).findFirst().orElse(null);
+        assertTrue(stats != null, "No boots recorded for profile " + profile);
+        assertTrue(stats.getBoots() > 0, "No boots recorded for profile " + profile);
+        if (Files.isDirectory(Paths.get("/proc/self"))) {
+            assertTrue(stats.getMaxResidentBytes() > 0, "No resident memory recorded for profile " + profile);
+        }
+    }
+
+    @Then("^the host ABI of \"([^\"]*)\" should be \"([^\"]*)\"$")
+    public void verifyHostAbi(String arch, String abi) {
+        assertEquals(SystemImage.abiOf(arch), abi, "Unexpected ABI for " + arch);
+    }
+
+    @Then("^the setup step \"([^\"]*)\" should( not)? have waited for \"([^\"]*)\"$")
+    public void verifySetupDependency(String name, String not, String dependency) {
+        SetupGraph.StepTiming step = EmulatorManager.getLastSetupReport().getStep(name);
+        assertEquals(step.getDependencies().contains(dependency), not == null,
+                name + " waited for " + step.getDependencies());
+    }
+
+    @Then("^the setup critical path should end with \"([^\"]*)\"$")
+    public void verifySetupCriticalPath(String path) {
+        List<String> criticalPath = EmulatorManager.getLastSetupReport().getCriticalPath();
+        List<String> expected = Arrays.asList(path.split(",\\s*"));
+        assertTrue(criticalPath.size() >= expected.size()
+                && criticalPath.subList(criticalPath.size() - expected.size(), criticalPath.size()).equals(expected),
+                "Unexpected critical path " + criticalPath);
+    }
+
+    @Then("^(no|only the last) fake emulator launched should still be running$")
+    public void verifyEmulatorsRunning(String which) throws Exception {
+        List<String> pids = sdk.readState("emulator.pids");
+        assertTrue(!pids.isEmpty(), "No emulator was launched");
+        for (int i = 0; i < pids.size(); i++) {
+            boolean alive = ProcessHandle.of(Long.parseLong(pids.get(i).trim())).map(ProcessHandle::isAlive)
+                    .orElse(false);
+            assertEquals(alive, !"no".equals(which) && i == pids.size() - 1,
+                    "Emulator " + (i + 1) + " of " + pids.size() + " running");
+        }
+    }
+
+    @Then("^the \"([^\"]*)\" snapshot should have been saved$")
+    public void verifySnapshotSaved(String name) {
+        assertTrue(Files.isDirectory(sdk.getAvdHome().resolve("fake_avd.avd/snapshots").resolve(name)),
+                "Snapshot " + name + " was not saved");
+    }
+
+    @Then("^no snapshot should have been saved$")
+    public void verifyNoSnapshotSaved() {
+        assertTrue(!Files.exists(sdk.getAvdHome().resolve("fake_avd.avd/snapshots")), "A snapshot was saved");
+    }
+
+    @Then("^the APK should have been installed (\\d+) times?$")
+    public void verifyInstallCount(int expectedCount) throws Exception {
+        assertEquals(sdk.readState("emulator-5554.installs").size(), expectedCount, "Unexpected number of installs");
+    }
+
+    @Then("^the APK should be read as \"([^\"]*)\" version code (\\d+) named \"([^\"]*)\"$")
+    public void verifyApkInfo(String packageName, long versionCode, String versionName) {
+        ApkInfo apk = ApkInfo.read(sdk.getApk());
+        assertEquals(apk.getPackageName(), packageName, "Unexpected package");
+        assertEquals(apk.getVersionCode(), versionCode, "Unexpected version code");
+        assertEquals(apk.getVersionName(), versionName, "Unexpected version name");
+        assertEquals(apk.getSha256().length(), 64, "Unexpected SHA-256: " + apk.getSha256());
+    }
+
+    @Then("^the last install should have used \"([^\"]*)\"$")
+    public void verifyInstallFlag(String flag) throws Exception {
+        List<String> installs = sdk.readState("emulator-5554.installs");
+        assertTrue(!installs.isEmpty() && Arrays.asList(installs.get(installs.size() - 1).split(" ")).contains(flag),
+                "Install did not use " + flag + ": " + installs);
+    }
+
+    @Then("^the Android tool command latency should include \"([^\"]*)\"$")
+    public void verifyCommandStats(String labels) {
+        System.out.print(CommandRunner.shared().report());
+        for (String label : labels.split(",\\s*")) {
+            CommandRunner.Stats stats = CommandRunner.shared().getStats().get(label);
+            assertTrue(stats != null && stats.getCount() > 0, "No " + label + " commands recorded");
+        }
+    }
+
+    @Given("^the fake adb server is running$")
+    public void startAdbServer() throws Exception {
+        sdk.startAdbServer();
+    }
+
+    @Given("^the adb transport is \"(socket|process)\"$")
+    public void setAdbTransport(String transport) {
+        sdk.set("ADB_TRANSPORT", transport);
+    }
+
+    @When("^I follow the adb device list$")
+    public void trackDevices() throws Exception {
+        tracker = AdbClient.fromConfig().trackDevices();
+    }
+
+    @When("^\"([^\"]*)\" crashes$")
+    public void crashDevice(String serial) throws Exception {
+        sdk.crash(serial);
+    }
+
+    @When("^I run \"([^\"]*)\" (\\d+) times on one adb shell of \"([^\"]*)\"$")
+    public void runOnPersistentShell(String command, int times, String serial) throws Exception {
+        long start = System.nanoTime();
+        try (AdbClient.Shell shell = AdbClient.fromConfig().openShell(serial)) {
+            for (int i = 0; i < times; i++) {
+                shellOutputs.add(shell.run(command, 5000).getOutput());
+            }
+        }
+        socketShellMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    @When("^I run \"([^\"]*)\" (\\d+) times with adb shell processes on \"([^\"]*)\"$")
+    public void runWithProcesses(String command, int times, String serial) throws Exception {
+        String adb = sdk.getRoot().resolve("bin/adb").toString();
+        long start = System.nanoTime();
+        for (int i = 0; i < times; i++) {
+            CommandRunner.shared().run(Map.of(), 5000, adb, "-s", serial, "shell", command).orThrow();
+        }
+        processShellMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    @Then("^every adb shell command should have printed \"([^\"]*)\"$")
+    public void verifyShellOutputs(String expected) {
+        assertTrue(!shellOutputs.isEmpty(), "No commands were run");
+        for (String output : shellOutputs) {
+            assertEquals(output.trim(), expected, "Unexpected shell output");
+        }
+    }
+
+    @Then("^the persistent adb shell should have been faster than adb shell processes$")
+    public void verifyShellFaster() {
+        System.out.println("Persistent shell: " + socketShellMillis + " ms, adb shell processes: "
+                + processShellMillis + " ms");
+        assertTrue(socketShellMillis < processShellMillis, "Persistent shell took " + socketShellMillis
+                + " ms, adb shell processes " + processShellMillis + " ms");
+    }
+
+    @Then("^the adb device list should show \"([^\"]*)\" as \"([^\"]*)\"$")
+    public void verifyDeviceListed(String serial, String state) throws Exception {
+        assertEquals(AdbClient.fromConfig().devices().get(serial), state, "Unexpected device state");
+    }
+
+    @Then("^the adb device tracker should list \"([^\"]*)\" within (\\d+) ms$")
+    public void verifyTrackerListed(String serial, long maxMillis) throws Exception {
+        assertTrue(tracker.await(devices -> devices.containsKey(serial), maxMillis),
+                serial + " is not listed: " + tracker.getDevices());
+    }
+
+    @Then("^the adb device tracker should drop \"([^\"]*)\" within (\\d+) ms$")
+    public void verifyDeviceDropped(String serial, long maxMillis) throws Exception {
+        assertTrue(tracker.await(devices -> !devices.containsKey(serial), maxMillis),
+                serial + " is still listed: " + tracker.getDevices());
+    }
+
+    @Then("^the adb device tracker should still be open$")
+    public void verifyTrackerOpen() {
+        assertTrue(tracker.isOpen(), "The adb device tracker closed");
+    }
+
+    @Then("^the adb server should have served \"([^\"]*)\"$")
+    public void verifyServerRequests(String requests) throws Exception {
+        List<String> served = sdk.readState("adb-server.requests");
+        for (String request : requests.split(",\\s*")) {
+            assertTrue(served.stream().anyMatch(line -> line.startsWith(request)),
+                    "The adb server did not serve " + request);
+        }
+    }
+
+    @Then("^no adb process should have been started for \"([^\"]*)\"$")
+    public void verifyNoAdbProcesses(String commands) throws Exception {
+        for (String call : sdk.readState("adb.calls")) {
+            // Drop the serial, as in "-s emulator-5554 get-state"
+            String command = call.replaceFirst("^-s \\S+ ", "");
+            for (String unexpected : commands.split(",\\s*")) {
+                assertTrue(!command.startsWith(unexpected), "adb process started: adb " + call);
+            }
+        }
+    }
+
+    @Then("^an adb process should have been started for \"([^\"]*)\"$")
+    public void verifyAdbProcess(String command) throws Exception {
+        assertTrue(sdk.readState("adb.calls").stream()
+                .anyMatch(call -> call.replaceFirst("^-s \\S+ ", "").startsWith(command)),
+                "No adb process started for " + command);
+    }
+
+    @Given("^the fake emulator prints (\\d+) lines at boot$")
+    public void setEmulatorOutput(int lines) throws Exception {
+        sdk.writeState("emulator_log_lines", String.valueOf(lines));
+    }
+
+    @Given("^log files rotate at (\\d+) bytes keeping (\\d+) archives$")
+    public void setLogRotation(long maxBytes, int archives) {
+        sdk.set("LOG_FILE_MAX_BYTES", String.valueOf(maxBytes));
+        sdk.set("LOG_FILE_MAX_ARCHIVES", String.valueOf(archives));
+    }
+
+    @Given("^the logcat filter is \"([^\"]*)\"$")
+    public void setLogcatFilter(String filter) {
+        sdk.set("LOGCAT_FILTER", filter);
+    }
+
+    @When("^the app logs \"([VDIWEF])\" \"([^\"]*)\" \"([^\"]*)\"$")
+    public void logcat(String priority, String tag, String message) throws Exception {
+        sdk.logcat("emulator-5554", priority, tag, message);
+    }
+
+    @When("^a scenario starts on the emulator$")
+    public void markLogs() {
+        logMark = EmulatorManager.logs(EmulatorManager.defaultDevice()).mark();
+    }
+
+    @Then("^the (emulator|logcat) log should contain \"([^\"]*)\"$")
+    public void verifyLogContains(String log, String text) throws Exception {
+        // logcat is streamed, so the line may still be on its way
+        long deadline = System.currentTimeMillis() + 3000;
+        while (readDeviceLog(log).stream().noneMatch(line -> line.contains(text))) {
+            assertTrue(System.currentTimeMillis() < deadline, "The " + log + " log lacks " + text);
+            Thread.sleep(50);
+        }
+    }
+
+    @Then("^the (emulator|logcat) log should not contain \"([^\"]*)\"$")
+    public void verifyLogLacks(String log, String text) throws Exception {
+        assertTrue(readDeviceLog(log).stream().noneMatch(line -> line.contains(text)), "The " + log + " log has "
+                + text);
+    }
+
+    @Then("^the emulator log should hold all (\\d+) lines in (\\d+) or fewer compressed archives$")
+    public void verifyEmulatorLogRotated(int count, int archives) throws Exception {
+        LogCapture output = EmulatorManager.logs(EmulatorManager.defaultDevice()).getEmulator();
+        List<String> lines = readDeviceLog(DeviceLogs.EMULATOR).stream()
+                .filter(line -> line.contains("fake emulator line")).collect(Collectors.toList());
+        System.out.println("Emulator log: " + lines.size() + " lines, " + output.getRotations() + " rotations");
+        assertTrue(output.getRotations() > 0, "The emulator log was not rotated");
+        assertTrue(!Files.exists(output.getFile().resolveSibling(output.getFile().getFileName() + "."
+                + (archives + 1) + ".gz")), "More than " + archives + " archives kept");
+        assertEquals(lines.size(), count, "Unexpected number of emulator lines");
+        for (int i = 0; i < count; i++) {
+            assertTrue(lines.get(i).endsWith("fake emulator line " + (i + 1) + " of " + count),
+                    "Out of order: " + lines.get(i));
+        }
+    }
+
+    @Then("^the logcat slice of the scenario should contain \"([^\"]*)\" but not \"([^\"]*)\"$")
+    public void verifyLogSlice(String included, String excluded) throws Exception {
+        verifyLogContains(DeviceLogs.LOGCAT, included);
+        String slice = EmulatorManager.logs(EmulatorManager.defaultDevice()).since(logMark)
+                .getOrDefault(DeviceLogs.LOGCAT, "");
+        System.out.println("Scenario logcat slice:" + System.lineSeparator() + slice);
+        assertTrue(slice.contains(included), "The slice lacks " + included);
+        assertTrue(!slice.contains(excluded), "The slice has " + excluded);
+    }
+
+    /**
+     * The lines of a device log, archives included, once everything offered
+     * so far is written
+     */
+    private List<String> readDeviceLog(String log) throws Exception {
+        DeviceLogs logs = EmulatorManager.logs(EmulatorManager.defaultDevice());
+        LogCapture capture = DeviceLogs.EMULATOR.equals(log) ? logs.getEmulator() : logs.getLogcat();
+        assertTrue(capture.flush(5000), "The " + log + " log writer did not catch up");
+        return LogSteps.readLog(capture.getFile());
+    }
+
+    @Given("^a device pool of (\\d+) emulators? with (\\d+) restarts? each$")
+    public void startDevicePool(int size, int maxRestarts) throws Exception {
+        pool = new DevicePool("fake_avd", size, 5554, maxRestarts);
+        pool.start();
+    }
+
+    @When("^I lease (\\d+) emulators?$")
+    public void leaseDevices(int count) throws Exception {
+        for (int i = 0; i < count; i++) {
+            leased.add(pool.lease(5000));
+        }
+    }
+
+    @When("^I return the leased emulators$")
+    public void releaseDevices() throws Exception {
+        for (EmulatorDevice device : leased) {
+            pool.release(device);
+        }
+        leased.clear();
+    }
+
+    @When("^the leased emulators crash$")
+    public void crashLeasedDevices() throws Exception {
+        for (EmulatorDevice device : leased) {
+            sdk.crash(device.getSerial());
+        }
+    }
+
+    @When("^(\\d+) workers each lease an emulator for (\\d+) ms$")
+    public void leaseFromWorkers(int workers, long holdMillis) throws Exception {
+        Set<String> held = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        long start = System.currentTimeMillis();
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int i = 0; i < workers; i++) {
+                results.add(executor.submit(() -> {
+                    EmulatorDevice device = pool.lease(30000);
+                    if (!held.add(device.getSerial())) {
+                        overlappingLease.set(true);
+                    }
+                    Thread.sleep(holdMillis);
+                    held.remove(device.getSerial());
+                    pool.release(device);
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        workersMillis = System.currentTimeMillis() - start;
+        System.out.println(workers + " workers finished in " + workersMillis + " ms");
+    }
+
+    @Then("^the device pool should have (\\d+) healthy emulators? on ports? \"([^\"]*)\"$")
+    public void verifyHealthyDevices(int expectedCount, String ports) {
+        assertEquals(pool.getHealthyCount(), expectedCount, "Unexpected number of healthy emulators");
+        assertEquals(pool.getDevices().stream().map(d -> d.getConsolePort() + "/" + d.getAdbPort())
+                .collect(Collectors.joining(", ")), ports, "Unexpected console/adb ports");
+    }
+
+    @Then("^every emulator should have the APK installed (once|twice)$")
+    public void verifyInstalledOnEveryDevice(String times) throws Exception {
+        int expectedCount = "once".equals(times) ? 1 : 2;
+        for (EmulatorDevice device : pool.getDevices()) {
+            assertEquals(sdk.readState(device.getSerial() + ".installs").size(), expectedCount,
+                    "Unexpected number of installs on " + device.getSerial());
+        }
+    }
+
+    @Then("^the pool should have installed the APK on (\\d+) emulators? within (\\d+) ms$")
+    public void verifyPoolInstall(int expectedCount, long maxMillis) {
+        System.out.println("Pool install took " + installMillis + " ms");
+        assertEquals(installedOnPool, expectedCount, "Unexpected number of installs");
+        assertTrue(installMillis < maxMillis, "Pool install took " + installMillis + " ms");
+    }
+
+    @Then("^the leased emulators should be distinct$")
+    public void verifyDistinctLeases() {
+        assertEquals(leased.stream().map(EmulatorDevice::getSerial).distinct().count(), (long) leased.size(),
+                "An emulator was leased twice: " + leased);
+    }
+
+    @Then("^leasing another emulator should fail with \"([^\"]*)\"$")
+    public void verifyLeaseFails(String message) throws Exception {
+        try {
+            leased.add(pool.lease(1000));
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains(message), "Unexpected failure: " + e.getMessage());
+            return;
+        }
+        fail("Leasing succeeded");
+    }
+
+    @Then("^no emulator should have been leased by two workers at once$")
+    public void verifyNoOverlappingLeases() {
+        assertTrue(!overlappingLease.get(), "An emulator was leased by two workers at once");
+    }
+
+    @Then("^every emulator should have been leased$")
+    public void verifyEveryDeviceLeased() {
+        for (EmulatorDevice device : pool.getDevices()) {
+            assertTrue(device.getLeases() > 0, device.getSerial() + " was never leased");
+        }
+    }
+
+    @Then("^the workers should have finished within (\\d+) ms$")
+    public void verifyWorkersDuration(long maxMillis) {
+        assertTrue(workersMillis < maxMillis, "Workers took " + workersMillis + " ms");
+    }
+
+    @Then("^emulator (\\d+) should have been restarted (\\d+) times?$")
+    public void verifyRestarts(int index, int expectedRestarts) {
+        assertEquals(pool.getDevices().get(index).getRestarts(), expectedRestarts, "Unexpected number of restarts");
+    }
+}
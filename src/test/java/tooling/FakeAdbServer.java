@@ -0,0 +1,204 @@
+package tooling;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * An adb server on a loopback port for the fake Android SDK. Devices are the
+ * running fake emulators, read from their state files; shell services run the
+ * fake adb's shell, so answers match `adb shell`. Every request is appended
+ * to state/adb-server.requests.
+ */
+public class FakeAdbServer implements Closeable {
+    private static final long TRACK_POLL_MILLIS = 20;
+
+    private final Path root;
+    private final ServerSocket server;
+
+    public FakeAdbServer(Path root) throws IOException {
+        this.root = root;
+        server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::accept, "fake-adb-server");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    private void accept() {
+        while (!server.isClosed()) {
+            try {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                Thread connection = new Thread(() -> serve(socket), "fake-adb-connection");
+                connection.setDaemon(true);
+                connection.start();
+            } catch (IOException e) {
+                // Closed
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket client = socket) {
+            InputStream in = client.getInputStream();
+            OutputStream out = client.getOutputStream();
+            String serial = null;
+            while (true) {
+                String request = readRequest(in);
+                if (request == null) {
+                    return;
+                }
+                Files.writeString(root.resolve("state/adb-server.requests"), request + "\n",
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                if ("host:version".equals(request)) {
+                    reply(out, "OKAY" + lengthPrefixed("0029"));
+                    return;
+                } else if ("host:devices".equals(request)) {
+                    reply(out, "OKAY" + lengthPrefixed(deviceList()));
+                    return;
+                } else if ("host:track-devices".equals(request)) {
+                    reply(out, "OKAY");
+                    trackDevices(out);
+                    return;
+                } else if (request.startsWith("host:transport:")) {
+                    serial = request.substring("host:transport:".length());
+                    if (!Files.exists(root.resolve("state/" + serial + ".state")) || !isRunning(serial)) {
+                        reply(out, "FAIL" + lengthPrefixed("device '" + serial + "' not found"));
+                        return;
+                    }
+                    reply(out, "OKAY");
+                } else if (request.startsWith("shell:") && serial != null) {
+                    reply(out, "OKAY");
+                    shell(client, serial, request.substring("shell:".length()));
+                    return;
+                } else {
+                    reply(out, "FAIL" + lengthPrefixed("unknown host service"));
+                    return;
+                }
+            }
+        } catch (IOException | InterruptedException e) {
+            // The client went away
+        }
+    }
+
+    private void trackDevices(OutputStream out) throws IOException, InterruptedException {
+        String sent = null;
+        while (!server.isClosed()) {
+            String devices = deviceList();
+            if (!devices.equals(sent)) {
+                reply(out, lengthPrefixed(devices));
+                sent = devices;
+            }
+            Thread.sleep(TRACK_POLL_MILLIS);
+        }
+    }
+
+    /**
+     * Run the fake adb's shell for the device, pumping its output to the
+     * client and, for an interactive shell, the client's input to it
+     */
+    private void shell(Socket client, String serial, String command) throws IOException, InterruptedException {
+        ProcessBuilder builder = new ProcessBuilder(root.resolve("bin/adb").toString(), "-s", serial, "shell",
+                command.isEmpty() ? "sh" : command).redirectErrorStream(true);
+        builder.environment().put("FAKE_ADB_SERVER", "1");
+        Process process = builder.start();
+        Thread input = new Thread(() -> {
+            try (OutputStream stdin = process.getOutputStream()) {
+                InputStream in = client.getInputStream();
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    stdin.write(buffer, 0, read);
+                    stdin.flush(); // The process's stdin is buffered
+                }
+            } catch (IOException e) {
+                // The shell exited
+            }
+            process.destroy();
+        }, "fake-adb-shell-input");
+        input.setDaemon(true);
+        input.start();
+        try (InputStream stdout = process.getInputStream()) {
+            stdout.transferTo(client.getOutputStream());
+        } catch (IOException e) {
+            // The client went away
+        } finally {
+            process.destroyForcibly();
+            process.waitFor();
+        }
+    }
+
+    /**
+     * Whether the fake emulator of a serial is still alive, true if it has
+     * not written its pid yet
+     */
+    private boolean isRunning(String serial) {
+        try {
+            long pid = Long.parseLong(Files.readString(root.resolve("state/" + serial + ".pid")).trim());
+            return ProcessHandle.of(pid).map(ProcessHandle::isAlive).orElse(false);
+        } catch (IOException | NumberFormatException e) {
+            return true;
+        }
+    }
+
+    private String deviceList() throws IOException {
+        Map<String, String> devices = new TreeMap<>();
+        try (Stream<Path> files = Files.list(root.resolve("state"))) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (name.startsWith("emulator-") && name.endsWith(".state")) {
+                    String serial = name.substring(0, name.length() - ".state".length());
+                    if (!isRunning(serial)) {
+                        continue; // Killed; adb drops it once its port closes
+                    }
+                    try {
+                        devices.put(serial, Files.readString(file).trim());
+                    } catch (IOException e) {
+                        // The emulator exited while listing
+                    }
+                }
+            }
+        }
+        StringBuilder list = new StringBuilder();
+        devices.forEach((serial, state) -> list.append(serial).append('\t').append(state).append('\n'));
+        return list.toString();
+    }
+
+    private static String readRequest(InputStream in) throws IOException {
+        byte[] length = in.readNBytes(4);
+        if (length.length < 4) {
+            return null;
+        }
+        byte[] request = in.readNBytes(Integer.parseInt(new String(length, StandardCharsets.US_ASCII), 16));
+        return new String(request, StandardCharsets.UTF_8);
+    }
+
+    private static String lengthPrefixed(String message) {
+        return String.format("%04x", message.getBytes(StandardCharsets.UTF_8).length) + message;
+    }
+
+    private static void reply(OutputStream out, String reply) throws IOException {
+        out.write(reply.getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+    }
+}
@@ -0,0 +1,170 @@
+package tooling;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * A throwaway Android SDK made of the scripted fakes in
+ * src/test/resources/fake-android, with its own AVD home, APK and system
+ * image. EmulatorManager is pointed at it through System Properties, which
+ * are cleared again on {@link #close()}.
+ *
+ * The tools are driven through adb processes, on an adb server port nothing
+ * listens on, so a real adb server on the machine is never touched. See
+ * {@link #startAdbServer()} for the socket transport.
+ */
+public class FakeAndroidSdk implements AutoCloseable {
+    private static final Path FAKES = Paths.get("src/test/resources/fake-android/bin");
+    public static final String PACKAGE = "com.example.fake";
+
+    private final Path root;
+    private final List<String> properties = new ArrayList<>();
+    private FakeAdbServer adbServer;
+
+    public FakeAndroidSdk() throws IOException {
+        Files.createDirectories(Paths.get("target"));
+        root = Files.createTempDirectory(Paths.get("target"), "fake-android-").toAbsolutePath();
+        Path bin = Files.createDirectories(root.resolve("bin"));
+        try (Stream<Path> fakes = Files.list(FAKES)) {
+            for (Path fake : (Iterable<Path>) fakes::iterator) {
+                Path target = bin.resolve(fake.getFileName());
+                Files.copy(fake, target);
+                target.toFile().setExecutable(true);
+            }
+        }
+        Files.createDirectories(root.resolve("state"));
+        Files.createDirectories(root.resolve("avd"));
+        Path image = Files.createDirectories(root.resolve("image"));
+        Files.write(image.resolve("system.img"), new byte[4096]);
+        Files.writeString(image.resolve("source.properties"), "Pkg.Revision=1\n");
+        writeApk(1, "fake apk");
+
+        set("ANDROID_TOOLS_PATH", bin.toString());
+        set("ANDROID_AVD_HOME", root.resolve("avd").toString());
+        set("SDK_ROOT", root.resolve("sdk").toString());
+        set("LOCAL_IMAGE_PATH", image.toString());
+        set("APK_PATH", root.resolve("app.apk").toString());
+        set("EMULATOR_NAME", "fake_avd");
+        set("DEVICE_PROFILE", "pixel");
+        set("EMULATOR_STABILIZATION_MS", "0");
+        set("LOG_DIR", root.resolve("logs").toString());
+        set("ADB_TRANSPORT", "process");
+        set("ANDROID_ADB_SERVER_PORT", String.valueOf(unusedPort()));
+    }
+
+    /**
+     * Serve the fake devices on a {@link FakeAdbServer} and switch
+     * EmulatorManager to the socket transport
+     */
+    public FakeAdbServer startAdbServer() throws IOException {
+        adbServer = new FakeAdbServer(root);
+        set("ANDROID_ADB_SERVER_PORT", String.valueOf(adbServer.getPort()));
+        set("ADB_TRANSPORT", "socket");
+        return adbServer;
+    }
+
+    private static int unusedPort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * Set a System Property for the lifetime of this SDK
+     */
+    public void set(String key, String value) {
+        System.setProperty(key, value);
+        properties.add(key);
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    public Path getApk() {
+        return root.resolve("app.apk");
+    }
+
+    /**
+     * Replace the APK with a fixture of package {@link #PACKAGE}
+     *
+     * @param payload Stands in for the code, so builds of the same version
+     *                can differ
+     */
+    public void writeApk(long versionCode, String payload) throws IOException {
+        FakeApk.write(getApk(), PACKAGE, versionCode, "1." + versionCode, payload);
+    }
+
+    public Path getSystemImage() {
+        return root.resolve("image");
+    }
+
+    public Path getAvdHome() {
+        return root.resolve("avd");
+    }
+
+    /**
+     * Write a setting read by the fake tools (e.g. `cold_boot_seconds`)
+     */
+    public void writeState(String name, String value) throws IOException {
+        Files.writeString(root.resolve("state").resolve(name), value);
+    }
+
+    /**
+     * Lines the fake tools wrote to a state file, empty if it does not exist
+     */
+    public List<String> readState(String name) throws IOException {
+        Path file = root.resolve("state").resolve(name);
+        return Files.exists(file) ? Files.readAllLines(file) : new ArrayList<>();
+    }
+
+    /**
+     * Append a message to the device log the fake `adb logcat` streams
+     *
+     * @param priority Logcat priority letter: V, D, I, W, E or F
+     */
+    public void logcat(String serial, String priority, String tag, String message) throws IOException {
+        String line = String.format("%s  1234  1234 %s %s: %s%n",
+                LocalDateTime.now().format(DateTimeFormatter.ofPattern("MM-dd HH:mm:ss.SSS")), priority, tag, message);
+        Files.writeString(root.resolve("state").resolve(serial + ".logcat"), line, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Make a running fake emulator exit as if it crashed
+     */
+    public void crash(String serial) throws IOException {
+        Files.deleteIfExists(root.resolve("state").resolve(serial + ".state"));
+        Files.deleteIfExists(root.resolve("state").resolve(serial + ".booted"));
+    }
+
+    /**
+     * Shut down any fake emulator still running and clear the properties.
+     */
+    @Override
+    public void close() throws IOException {
+        try (Stream<Path> files = Files.list(root.resolve("state"))) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (file.getFileName().toString().endsWith(".state")) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+        if (adbServer != null) {
+            adbServer.close();
+            adbServer = null;
+        }
+        properties.forEach(System::clearProperty);
+        properties.clear();
+    }
+}
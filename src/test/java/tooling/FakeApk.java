@@ -0,0 +1,120 @@
+package tooling;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes a fixture APK: a zip with an AndroidManifest.xml compiled to binary
+ * XML the way aapt2 does (UTF-16 string pool, attribute resource map, one
+ * manifest element) and a payload standing in for the code. The fake adb
+ * cannot parse it, so its package and version code also go to
+ * `<apk>.package`.
+ */
+public final class FakeApk {
+    private static final String[] STRINGS = { "versionCode", "versionName", "package", "manifest",
+            "http://schemas.android.com/apk/res/android" };
+    private static final int VERSION_CODE = 0, VERSION_NAME = 1, PACKAGE = 2, MANIFEST = 3, ANDROID = 4;
+    private static final int PACKAGE_VALUE = 5, VERSION_NAME_VALUE = 6;
+
+    private FakeApk() {
+    }
+
+    public static void write(Path apk, String packageName, long versionCode, String versionName, String payload)
+            throws IOException {
+        try (OutputStream out = Files.newOutputStream(apk); ZipOutputStream zip = new ZipOutputStream(out)) {
+            zip.putNextEntry(new ZipEntry("AndroidManifest.xml"));
+            zip.write(manifest(packageName, (int) versionCode, versionName));
+            zip.closeEntry();
+            zip.putNextEntry(new ZipEntry("classes.dex"));
+            zip.write(payload.getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        }
+        Files.writeString(apk.resolveSibling(apk.getFileName() + ".package"), packageName + " " + versionCode + "\n");
+    }
+
+    private static byte[] manifest(String packageName, int versionCode, String versionName) {
+        String[] strings = new String[STRINGS.length + 2];
+        System.arraycopy(STRINGS, 0, strings, 0, STRINGS.length);
+        strings[PACKAGE_VALUE] = packageName;
+        strings[VERSION_NAME_VALUE] = versionName;
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        writeBytes(body, stringPool(strings));
+        // Resource IDs of the attribute names at string indexes 0 and 1
+        writeBytes(body, chunk(0x0180, 8, ints(0x0101021b, 0x0101021c)));
+        writeBytes(body, chunk(0x0102, 16, startManifest(versionCode)));
+        writeBytes(body, chunk(0x0103, 16, ints(1, -1, -1, MANIFEST)));
+        return chunk(0x0003, 8, body.toByteArray());
+    }
+
+    private static byte[] startManifest(int versionCode) {
+        ByteBuffer buffer = ByteBuffer.allocate(8 + 20 + 3 * 20).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(1).putInt(-1); // Line number, comment
+        buffer.putInt(-1).putInt(MANIFEST);
+        buffer.putShort((short) 20).putShort((short) 20).putShort((short) 3);
+        buffer.putShort((short) 0).putShort((short) 0).putShort((short) 0);
+        attribute(buffer, ANDROID, VERSION_CODE, -1, 0x10, versionCode);
+        attribute(buffer, ANDROID, VERSION_NAME, VERSION_NAME_VALUE, 0x03, VERSION_NAME_VALUE);
+        attribute(buffer, -1, PACKAGE, PACKAGE_VALUE, 0x03, PACKAGE_VALUE);
+        return buffer.array();
+    }
+
+    private static void attribute(ByteBuffer buffer, int namespace, int name, int rawValue, int type, int data) {
+        buffer.putInt(namespace).putInt(name).putInt(rawValue);
+        buffer.putShort((short) 8).put((byte) 0).put((byte) type).putInt(data);
+    }
+
+    private static byte[] stringPool(String[] strings) {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        int[] offsets = new int[strings.length];
+        for (int i = 0; i < strings.length; i++) {
+            offsets[i] = data.size();
+            byte[] chars = strings[i].getBytes(StandardCharsets.UTF_16LE);
+            writeBytes(data, ByteBuffer.allocate(2).order(ByteOrder.LITTLE_ENDIAN)
+                    .putShort((short) strings[i].length()).array());
+            writeBytes(data, chars);
+            writeBytes(data, new byte[2]);
+        }
+        while (data.size() % 4 != 0) {
+            data.write(0);
+        }
+        int headerSize = 28;
+        ByteBuffer buffer = ByteBuffer.allocate(20 + 4 * strings.length + data.size()).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(strings.length).putInt(0).putInt(0) // Strings, styles, flags (UTF-16)
+                .putInt(headerSize + 4 * strings.length).putInt(0);
+        for (int offset : offsets) {
+            buffer.putInt(offset);
+        }
+        buffer.put(data.toByteArray());
+        return chunk(0x0001, headerSize, buffer.array());
+    }
+
+    /**
+     * A chunk whose content starts with the rest of its header
+     */
+    private static byte[] chunk(int type, int headerSize, byte[] content) {
+        ByteBuffer buffer = ByteBuffer.allocate(8 + content.length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putShort((short) type).putShort((short) headerSize).putInt(8 + content.length).put(content);
+        return buffer.array();
+    }
+
+    private static byte[] ints(int... values) {
+        ByteBuffer buffer = ByteBuffer.allocate(4 * values.length).order(ByteOrder.LITTLE_ENDIAN);
+        for (int value : values) {
+            buffer.putInt(value);
+        }
+        return buffer.array();
+    }
+
+    private static void writeBytes(ByteArrayOutputStream out, byte[] bytes) {
+        out.write(bytes, 0, bytes.length);
+    }
+}
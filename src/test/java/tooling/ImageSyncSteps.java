@@ -0,0 +1,130 @@
+package tooling;
+
+import io.cucumber.java.After;
+import io.cucumber.java.en.*;
+import utils.ImageSync;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Steps for the incremental system image sync.
+ */
+public class ImageSyncSteps {
+    private Path root;
+    private Path source;
+    private Path target;
+    private boolean hashContent;
+    private boolean hardLinks = true;
+    private ImageSync.Result result;
+
+    @After
+    public void deleteTrees() throws IOException {
+        if (root != null) {
+            try (Stream<Path> paths = Files.walk(root)) {
+                for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.deleteIfExists(path);
+                }
+            }
+            root = null;
+        }
+    }
+
+    @Given("^a system image with (\\d+) files? of (\\d+) KB$")
+    public void createImage(int files, int kilobytes) throws IOException {
+        Files.createDirectories(Paths.get("target"));
+        root = Files.createTempDirectory(Paths.get("target"), "image-sync-").toAbsolutePath();
+        source = Files.createDirectories(root.resolve("image"));
+        target = root.resolve("sdk/system-images/android-35");
+        Random random = new Random(files);
+        for (int i = 0; i < files; i++) {
+            byte[] content = new byte[kilobytes * 1024];
+            random.nextBytes(content);
+            Path file = source.resolve(i % 2 == 0 ? "file" + i + ".img" : "data/file" + i + ".img");
+            Files.createDirectories(file.getParent());
+            Files.write(file, content);
+        }
+    }
+
+    @Given("^image sync (copies|hard-links) files$")
+    public void setTransferMode(String mode) {
+        hardLinks = "hard-links".equals(mode);
+    }
+
+    @Given("^image sync hashes file contents$")
+    public void enableHashing() {
+        hashContent = true;
+    }
+
+    @When("^I sync the system image$")
+    public void sync() throws IOException {
+        result = new ImageSync(source, target, hashContent, hardLinks, 4).sync();
+        System.out.println("Image sync: " + result);
+    }
+
+    @When("^the image file \"([^\"]*)\" is modified$")
+    public void modifyFile(String name) throws IOException {
+        Path file = source.resolve(name);
+        // Write a new file rather than in place, as an image update would
+        byte[] content = Files.readAllBytes(file);
+        content[0]++;
+        Files.delete(file);
+        Files.write(file, content);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 5000));
+    }
+
+    @When("^the image file \"([^\"]*)\" is touched$")
+    public void touchFile(String name) throws IOException {
+        Files.setLastModifiedTime(source.resolve(name), FileTime.fromMillis(System.currentTimeMillis() + 5000));
+    }
+
+    @When("^the image file \"([^\"]*)\" is removed$")
+    public void removeFile(String name) throws IOException {
+        Files.delete(source.resolve(name));
+    }
+
+    @Then("^(\\d+) files? should have been (skipped|linked|copied|deleted)$")
+    public void verifyCount(int expected, String outcome) {
+        int actual;
+        switch (outcome) {
+            case "skipped":
+                actual = result.getSkipped();
+                break;
+            case "linked":
+                actual = result.getLinked();
+                break;
+            case "copied":
+                actual = result.getCopied();
+                break;
+            default:
+                actual = result.getDeleted();
+        }
+        assertEquals(actual, expected, "Unexpected number of files " + outcome + ": " + result);
+    }
+
+    @Then("^the synced image should match the source$")
+    public void verifyTarget() throws IOException {
+        try (Stream<Path> paths = Files.walk(source)) {
+            for (Path file : (Iterable<Path>) paths.filter(Files::isRegularFile)::iterator) {
+                Path copy = target.resolve(source.relativize(file));
+                assertTrue(Files.isRegularFile(copy), "Missing " + copy);
+                assertEquals(Files.mismatch(file, copy), -1L, "Content differs: " + copy);
+            }
+        }
+    }
+
+    @Then("^the synced image should not contain \"([^\"]*)\"$")
+    public void verifyRemoved(String name) {
+        assertFalse(Files.exists(target.resolve(name)), name + " is still in the synced image");
+    }
+}
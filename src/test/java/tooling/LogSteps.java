@@ -0,0 +1,165 @@
+package tooling;
+
+import io.cucumber.java.After;
+import io.cucumber.java.en.*;
+import utils.LogCapture;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Steps driving a LogCapture of their own.
+ */
+public class LogSteps {
+    private Path directory;
+    private LogCapture capture;
+    private long offered;
+    private long mark;
+    private long offerNanos;
+
+    @After
+    public void closeCapture() throws Exception {
+        if (capture != null) {
+            capture.close();
+            capture = null;
+        }
+    }
+
+    @Given("^a log capture rotating at (\\d+) bytes with (\\d+) archives and a queue of (\\d+) lines$")
+    public void createCapture(long maxFileBytes, int maxArchives, int queueLines) throws Exception {
+        Files.createDirectories(Paths.get("target"));
+        directory = Files.createTempDirectory(Paths.get("target"), "log-capture-");
+        capture = new LogCapture(directory.resolve("test.log"), maxFileBytes, maxArchives, queueLines, 1000);
+    }
+
+    @When("^(\\d+) threads? (?:each )?offers? (\\d+) lines$")
+    public void offerLines(int threads, int lines) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Long>> producers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                producers.add(executor.submit(() -> {
+                    long start = System.nanoTime();
+                    for (int i = 0; i < lines; i++) {
+                        capture.offer("thread " + thread + " line " + i);
+                    }
+                    return System.nanoTime() - start;
+                }));
+            }
+            for (Future<Long> producer : producers) {
+                offerNanos = Math.max(offerNanos, producer.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        offered += (long) threads * lines;
+    }
+
+    @When("^I mark the log capture$")
+    public void markCapture() {
+        mark = capture.mark();
+    }
+
+    @When("^I offer the lines \"([^\"]*)\"$")
+    public void offerNamedLines(String lines) {
+        for (String line : lines.split(",\\s*")) {
+            capture.offer(line);
+            offered++;
+        }
+    }
+
+    @Then("^every offered line should have been written in order$")
+    public void verifyAllWritten() throws Exception {
+        assertTrue(capture.flush(10000), "The writer did not catch up");
+        System.out.println("Offered " + offered + " lines in " + TimeUnit.NANOSECONDS.toMillis(offerNanos)
+                + " ms, " + capture.getRotations() + " rotations");
+        List<String> lines = readLog(capture.getFile());
+        assertEquals(capture.getDropped(), 0, "Lines were dropped");
+        assertEquals(lines.size(), offered, "Unexpected number of lines in the log files");
+        // Lines of one thread keep their order
+        long[] next = new long[64];
+        for (String line : lines) {
+            String[] words = line.split(" ");
+            int thread = Integer.parseInt(words[1]);
+            assertEquals(Long.parseLong(words[3]), next[thread]++, "Out of order: " + line);
+        }
+    }
+
+    @Then("^the lines beyond the queue should have been dropped and counted$")
+    public void verifyDropped() throws Exception {
+        assertTrue(capture.flush(10000), "The writer did not catch up");
+        System.out.println("Dropped " + capture.getDropped() + " of " + offered + " lines");
+        assertTrue(capture.getDropped() > 0, "No lines were dropped");
+        assertEquals(capture.getWritten() + capture.getDropped(), offered, "Lines were lost uncounted");
+        assertEquals(readLog(capture.getFile()).size(), capture.getWritten(), "Unexpected lines in the log files");
+    }
+
+    @Then("^the log should have been rotated into (\\d+) compressed archives$")
+    public void verifyArchives(int archives) throws Exception {
+        assertTrue(capture.flush(10000), "The writer did not catch up");
+        try (Stream<Path> files = Files.list(directory)) {
+            List<String> names = files.map(file -> file.getFileName().toString()).sorted()
+                    .collect(Collectors.toList());
+            List<String> expected = new ArrayList<>();
+            expected.add("test.log");
+            for (int i = 1; i <= archives; i++) {
+                expected.add("test.log." + i + ".gz");
+            }
+            assertEquals(names, expected.stream().sorted().collect(Collectors.toList()), "Unexpected log files");
+        }
+    }
+
+    @Then("^the log should end with the last (\\d+) lines offered$")
+    public void verifyLogTail(int count) throws Exception {
+        List<String> lines = readLog(capture.getFile());
+        assertTrue(lines.size() >= count, "Only " + lines.size() + " lines kept");
+        for (int i = 0; i < count; i++) {
+            String line = lines.get(lines.size() - count + i);
+            assertTrue(line.endsWith(" line " + (offered - count + i)), "Unexpected line " + line);
+        }
+    }
+
+    @Then("^the lines since the mark should be \"([^\"]*)\"$")
+    public void verifySince(String expected) throws Exception {
+        assertEquals(capture.since(mark), Arrays.asList(expected.split(",\\s*")), "Unexpected lines since the mark");
+    }
+
+    /**
+     * The lines of a log file and its compressed archives, oldest first
+     */
+    static List<String> readLog(Path file) throws IOException {
+        List<String> lines = new ArrayList<>();
+        List<Path> archives = new ArrayList<>();
+        for (int i = 1; Files.exists(file.resolveSibling(file.getFileName() + "." + i + ".gz")); i++) {
+            archives.add(0, file.resolveSibling(file.getFileName() + "." + i + ".gz"));
+        }
+        for (Path archive : archives) {
+            try (InputStream in = new GZIPInputStream(Files.newInputStream(archive))) {
+                lines.addAll(new String(in.readAllBytes(), StandardCharsets.UTF_8).lines()
+                        .collect(Collectors.toList()));
+            }
+        }
+        if (Files.exists(file)) {
+            lines.addAll(Files.readAllLines(file));
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,206 @@
+package tooling;
+
+import io.cucumber.java.en.*;
+import utils.SessionPool;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Steps driving a SessionPool of fake sessions that take a while to create,
+ * standing in for Appium sessions.
+ */
+public class SessionSteps {
+    private final List<FakeSession> sessions = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicBoolean shared = new AtomicBoolean();
+    private long createMillis;
+    private long resetMillis;
+    private long maxAgeMillis = 60_000;
+    private int maxUses = 50;
+    private boolean resetFails;
+    private SessionPool<FakeSession> pool;
+
+    private static final class FakeSession {
+        private final String key;
+        private final AtomicInteger users = new AtomicInteger();
+        private volatile boolean healthy = true;
+        private volatile boolean quit;
+        private int resets;
+
+        FakeSession(String key) {
+            this.key = key;
+        }
+    }
+
+    private final SessionPool.Factory<FakeSession> factory = new SessionPool.Factory<FakeSession>() {
+        @Override
+        public FakeSession create(String key) throws Exception {
+            Thread.sleep(createMillis);
+            FakeSession session = new FakeSession(key);
+            sessions.add(session);
+            return session;
+        }
+
+        @Override
+        public boolean isHealthy(FakeSession session) {
+            return session.healthy;
+        }
+
+        @Override
+        public void reset(FakeSession session) throws Exception {
+            Thread.sleep(resetMillis);
+            if (resetFails) {
+                throw new IllegalStateException("app did not start");
+            }
+            session.resets++;
+        }
+
+        @Override
+        public void quit(FakeSession session) {
+            session.quit = true;
+        }
+    };
+
+    @Given("^sessions take (\\d+) ms to create and (\\d+) ms to reset$")
+    public void sessionTimes(long createMillis, long resetMillis) {
+        this.createMillis = createMillis;
+        this.resetMillis = resetMillis;
+    }
+
+    @Given("^sessions are recycled after (\\d+) uses$")
+    public void maxUses(int maxUses) {
+        this.maxUses = maxUses;
+    }
+
+    @Given("^sessions are recycled after (\\d+) ms$")
+    public void maxAge(long maxAgeMillis) {
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    @Given("^resetting the app fails$")
+    public void resetFails() {
+        resetFails = true;
+    }
+
+    @When("^I run (\\d+) scenarios? on \"([^\"]*)\"$")
+    public void runScenarios(int count, String key) throws Exception {
+        for (int i = 0; i < count; i++) {
+            runScenario(key);
+        }
+    }
+
+    @When("^(\\d+) workers each run (\\d+) scenarios on their own device$")
+    public void runWorkers(int workers, int count) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int i = 0; i < workers; i++) {
+                String key = "emulator-" + (5554 + 2 * i);
+                results.add(executor.submit(() -> {
+                    runScenarios(count, key);
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @When("^I wait (\\d+) ms$")
+    public void waitMillis(long millis) throws InterruptedException {
+        Thread.sleep(millis);
+    }
+
+    @When("^the session of \"([^\"]*)\" crashes$")
+    public void crash(String key) {
+        last(key).healthy = false;
+    }
+
+    @When("^I close the session pool$")
+    public void close() {
+        pool().close();
+        System.out.println("Sessions: " + pool().report());
+    }
+
+    @Then("^(\\d+) sessions? should have been created$")
+    public void verifyCreated(int count) {
+        assertEquals(pool().getCreated(), count, "Sessions created");
+        assertEquals(sessions.size(), count, "Sessions created");
+    }
+
+    @Then("^(\\d+) scenarios should have reused a session$")
+    public void verifyReused(int count) {
+        assertEquals(pool().getReused(), count, "Sessions reused");
+    }
+
+    @Then("^(\\d+) sessions? should have been recycled$")
+    public void verifyRecycled(int count) {
+        assertEquals(pool().getRecycled(), count, "Sessions recycled");
+        assertEquals(sessions.stream().filter(session -> session.quit).count(), count, "Sessions quit");
+    }
+
+    @Then("^the session of \"([^\"]*)\" should have been reset (\\d+) times?$")
+    public void verifyResets(String key, int count) {
+        assertEquals(last(key).resets, count, "Resets of the session of " + key);
+    }
+
+    @Then("^no session should have been used by two threads at once$")
+    public void verifyConfined() {
+        assertFalse(shared.get(), "A session was used by two threads at once");
+    }
+
+    @Then("^reusing sessions should have saved at least (\\d+) ms$")
+    public void verifySaved(long millis) {
+        System.out.println("Sessions: " + pool().report());
+        assertTrue(pool().getSavedMillis() >= millis, "Saved " + pool().getSavedMillis() + " ms");
+    }
+
+    @Then("^every session should have been quit$")
+    public void verifyAllQuit() {
+        assertTrue(sessions.stream().allMatch(session -> session.quit), "A session was left running");
+    }
+
+    private void runScenario(String key) throws InterruptedException {
+        FakeSession session = pool().acquire(key);
+        assertSame(pool().current(), session, "Session of the scenario's thread");
+        assertEquals(session.key, key, "Session device");
+        if (session.users.incrementAndGet() > 1) {
+            shared.set(true);
+        }
+        Thread.sleep(5);
+        session.users.decrementAndGet();
+        pool().release();
+    }
+
+    private FakeSession last(String key) {
+        synchronized (sessions) {
+            for (int i = sessions.size() - 1; i >= 0; i--) {
+                if (sessions.get(i).key.equals(key)) {
+                    return sessions.get(i);
+                }
+            }
+        }
+        throw new IllegalStateException("No session for " + key);
+    }
+
+    private synchronized SessionPool<FakeSession> pool() {
+        if (pool == null) {
+            pool = new SessionPool<>(factory, maxAgeMillis, maxUses);
+        }
+        return pool;
+    }
+}
@@ -0,0 +1,89 @@
+package tooling;
+
+import io.cucumber.java.en.*;
+import utils.SetupGraph;
+
+import java.util.Arrays;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+/**
+ * Steps driving a SetupGraph of sleeping steps.
+ */
+public class SetupSteps {
+    private final SetupGraph setup = new SetupGraph("Test setup");
+    private SetupGraph.Report report;
+
+    @Given("^a setup step \"([^\"]*)\" taking (\\d+) ms$")
+    public void addStep(String name, long millis) {
+        setup.add(name, () -> Thread.sleep(millis));
+    }
+
+    @Given("^a setup step \"([^\"]*)\" taking (\\d+) ms after \"([^\"]*)\"$")
+    public void addStepAfter(String name, long millis, String dependencies) {
+        setup.add(name, () -> Thread.sleep(millis), dependencies.split(",\\s*"));
+    }
+
+    @Given("^a setup step \"([^\"]*)\" failing after (\\d+) ms$")
+    public void addFailingStep(String name, long millis) {
+        setup.add(name, () -> {
+            Thread.sleep(millis);
+            throw new IllegalStateException(name + " failed");
+        });
+    }
+
+    @When("^I run the setup$")
+    public void runSetup() throws Exception {
+        report = setup.run();
+    }
+
+    @Then("^running the setup should fail with \"([^\"]*)\"$")
+    public void verifySetupFails(String message) throws Exception {
+        try {
+            setup.run();
+        } catch (RuntimeException e) {
+            assertEquals(e.getMessage(), message, "Unexpected failure");
+            report = setup.getReport();
+            return;
+        }
+        fail("The setup succeeded");
+    }
+
+    @Then("^adding a setup step \"([^\"]*)\" after \"([^\"]*)\" should fail with \"([^\"]*)\"$")
+    public void verifyAddFails(String name, String dependency, String message) {
+        try {
+            setup.add(name, () -> {
+            }, dependency);
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains(message), "Unexpected failure: " + e.getMessage());
+            return;
+        }
+        fail("Setup step " + name + " was added");
+    }
+
+    @Then("^the setup should have taken less than (\\d+) ms$")
+    public void verifyTotalTime(long maxMillis) {
+        assertTrue(report.getTotalMillis() < maxMillis, "The setup took " + report.getTotalMillis() + " ms");
+        assertTrue(report.getSerialMillis() > report.getTotalMillis(), "No steps ran concurrently");
+    }
+
+    @Then("^the critical path should be \"([^\"]*)\"$")
+    public void verifyCriticalPath(String path) {
+        assertEquals(report.getCriticalPath(), Arrays.asList(path.split(",\\s*")), "Unexpected critical path");
+    }
+
+    @Then("^setup step \"([^\"]*)\" should have started before \"([^\"]*)\" finished$")
+    public void verifyOverlap(String name, String other) {
+        SetupGraph.StepTiming step = report.getStep(name);
+        SetupGraph.StepTiming otherStep = report.getStep(other);
+        assertTrue(step.getStartMillis() < otherStep.getStartMillis() + otherStep.getMillis(),
+                step + " did not overlap " + otherStep);
+    }
+
+    @Then("^setup step \"([^\"]*)\" should have been (ok|failed|skipped)$")
+    public void verifyOutcome(String name, String outcome) {
+        assertEquals(report.getStep(name).getOutcome(), outcome, "Unexpected outcome of " + name);
+    }
+}
@@ -85,7 +85,7 @@ public class GenericSteps {
     }
 
     // Utility method for getting locator by label and type
-    private By getLocatorForLabel(String label, String elementType) {
+    static By getLocatorForLabel(String label, String elementType) {
         switch (elementType.toLowerCase()) {
             case "field":
             case "input":
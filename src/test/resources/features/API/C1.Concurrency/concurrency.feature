@@ -0,0 +1,12 @@
+Feature: Concurrent API Requests
+
+    Scenario: Fan out GET requests to a collection endpoint
+        When I send 500 concurrent GET requests to "/people"
+        Then all concurrent responses should have status code 200
+
+    Scenario: Fan out POST requests to a collection endpoint
+        When I send 50 concurrent POST requests to "/people" with payload:
+            | name       | Obi-Wan Kenobi |
+            | gender     | male           |
+            | birth_year | 57BBY          |
+        Then 50 concurrent responses should have status code 201
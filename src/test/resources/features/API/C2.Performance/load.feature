@@ -0,0 +1,8 @@
+Feature: API Load Generation
+
+    @timing
+    Scenario: Sustain a steady request rate against the people endpoint
+        When I generate a load of 50 requests per second against "/people" for 3 seconds with a 1 second ramp-up
+        Then the p99 latency should be below 500 ms
+        And the p50 latency should be below 150 ms
+        And the error rate should be below 0.1%
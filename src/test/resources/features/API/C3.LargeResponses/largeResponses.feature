@@ -0,0 +1,29 @@
+Feature: Large API Responses
+
+    Scenario: Check a streamed body without loading it into memory
+        When I stream a GET request to "/people/generated?count=1000"
+        Then the response status code should be 200
+        And the response body should contain a count of 1000
+        And the response body should have 1000 people in results
+        And the response body should contain "results[999].name" with value "Person 1000"
+
+    Scenario Outline: A missing or invalid count is rejected
+        When I send a GET request to "/people/generated<query>"
+        Then the response status code should be 400
+
+        Examples:
+            | query       |
+            |             |
+            | ?count=many |
+            | ?count=-1   |
+
+    @slow
+    Scenario: Stream a multi-hundred-MB body with flat memory
+        Given the mock server runs on the "jdk" engine
+        When I stream a GET request to "/people/generated?count=3000000"
+        Then the response status code should be 200
+        And the streamed response body should be larger than 200 MB
+        And the response body should contain a count of 3000000
+        And the response body should have 3000000 people in results
+        And the response body should contain "results[2999999].name" with value "Person 3000000"
+        And the heap should have grown by less than 64 MB since the streamed request
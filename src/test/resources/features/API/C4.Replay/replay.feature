@@ -0,0 +1,26 @@
+Feature: Replay Recorded Interactions
+
+    Background:
+        Given the mock server replays recordings from "src/test/resources/recordings/swapi"
+
+    Scenario: Replay a recorded planet
+        When I send a GET request to "/planets/1"
+        Then the response status code should be 200
+        And the response body should match:
+            | name    | Tatooine |
+            | climate | arid     |
+
+    Scenario: Replay a recorded search with query parameters
+        When I send a GET request to "/planets?search=hoth"
+        Then the response status code should be 200
+        And the response body should contain a count of 1
+        And the response body should contain "results[0].name" with value "Hoth"
+
+    Scenario: Replay a recorded delete
+        When I send a DELETE request to "/planets/1"
+        Then the response status code should be 204
+        And the response body should be empty
+
+    Scenario: Requests that were never recorded are not found
+        When I send a GET request to "/planets/999"
+        Then the response status code should be 404
@@ -0,0 +1,30 @@
+@http2
+Feature: HTTP/2 Multiplexing and Pipelining
+
+    Background:
+        Given the mock server runs on the "mockserver" engine
+
+    Scenario: Pipeline a batch of GET requests over HTTP/2
+        When I send a batch of 200 GET requests to "/people/1" over HTTP/2
+        Then all concurrent responses should have status code 200
+        And the batch responses should have been served over HTTP/2
+
+    Scenario: Batch responses come back in request order
+        When I send a batch of GET requests over HTTP/2:
+            | /people/1    |
+            | /starships/9 |
+            | /people/1    |
+            | /starships/9 |
+        Then the batch responses should have "name" values in order:
+            | Luke Skywalker |
+            | Death Star     |
+            | Luke Skywalker |
+            | Death Star     |
+
+    @timing
+    Scenario: Compare HTTP/1.1 and HTTP/2 batch throughput on the local stub
+        When I send a batch of 1000 GET requests to "/people/1" over HTTP/1.1
+        Then all concurrent responses should have status code 200
+        When I send a batch of 1000 GET requests to "/people/1" over HTTP/2
+        Then all concurrent responses should have status code 200
+        And the HTTP/2 batch throughput should be at least 50% of HTTP/1.1
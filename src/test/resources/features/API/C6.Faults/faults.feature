@@ -0,0 +1,53 @@
+Feature: Latency and Fault Injection
+
+    @timing
+    Scenario: Tail latency follows a slow log-normal backend
+        Given the mock server uses the "slow-backend" fault profile for "/people/1"
+        When I generate a load of 50 requests per second against "/people/1" for 3 seconds with a 1 second ramp-up
+        Then the p50 latency should be above 100 ms
+        And the p50 latency should be below 1000 ms
+        And the error rate should be below 1%
+
+    @timing
+    Scenario: Fixed delays only slow down the profiled route
+        Given a fault profile "fixed-300" with:
+            | delay | fixed 300 |
+        And the mock server uses the "fixed-300" fault profile for "/starships/9"
+        When I send a GET request to "/starships/9"
+        Then the response status code should be 200
+        And the response time should be at least 300 ms
+        When I generate a load of 20 requests per second against "/people/1" for 2 seconds with a 0 second ramp-up
+        Then the p99 latency should be below 300 ms
+
+    @timing
+    Scenario: Throttled bandwidth stretches large responses
+        Given a fault profile "1mb-per-second" with:
+            | bandwidth_kbps | 1024 |
+        And the mock server uses the "1mb-per-second" fault profile
+        When I send a GET request to "/people/generated?count=20000"
+        Then the response status code should be 200
+        And the response time should be at least 1000 ms
+
+    @timing
+    Scenario: The JDK engine sends a throttled body at the bandwidth limit
+        Given the mock server runs on the "jdk" engine
+        And a fault profile "1mb-per-second" with:
+            | bandwidth_kbps | 1024 |
+        And the mock server uses the "1mb-per-second" fault profile
+        When I send a GET request to "/people/generated?count=20000"
+        Then the response status code should be 200
+        And the response time should be at least 1000 ms
+
+    Scenario: A share of responses fail with 5xx
+        Given a fault profile "half-broken" with:
+            | error_rate   | 50  |
+            | error_status | 502 |
+        And the mock server uses the "half-broken" fault profile
+        When I send 200 concurrent GET requests to "/people/1"
+        Then between 60 and 140 concurrent responses should have status code 502
+        And between 60 and 140 concurrent responses should have status code 200
+
+    Scenario: Dropped connections surface as client errors
+        Given the mock server uses the "dead" fault profile for "/people/1"
+        When I generate a load of 20 requests per second against "/people/1" for 2 seconds with a 0 second ramp-up
+        Then the error rate should be above 99%
@@ -0,0 +1,40 @@
+Feature: Lightweight Mock Server Engine
+
+    Background:
+        Given the mock server runs on the "jdk" engine
+
+    Scenario: The JDK engine starts quickly
+        Then the mock server should have started within 500 ms
+
+    Scenario: Serve file-defined routes
+        When I send a GET request to "/people/1"
+        Then the response status code should be 200
+        And the response body should match:
+            | name       | Luke Skywalker |
+            | birth_year | 19BBY          |
+
+    Scenario: Serve an empty response
+        When I send a DELETE request to "/people/1"
+        Then the response status code should be 204
+        And the response body should be empty
+
+    Scenario: Serve generated people
+        When I send a GET request to "/people/generated?count=25"
+        Then the response status code should be 200
+        And the response body should contain a count of 25
+        And the response body should have 25 people in results
+
+    Scenario: Fan out GET requests
+        When I send 500 concurrent GET requests to "/people"
+        Then all concurrent responses should have status code 200
+
+    Scenario: Inject faults
+        Given the mock server uses the "dead" fault profile
+        When I generate a load of 20 requests per second against "/people/1" for 2 seconds with a 0 second ramp-up
+        Then the error rate should be above 99%
+
+    @timing
+    Scenario: The JDK engine starts faster than MockServer and keeps up with it
+        When I compare the mock server engines over 500 concurrent GET requests to "/people"
+        Then the "jdk" engine should have started faster than the "mockserver" engine
+        And the "jdk" engine should have served at least 50% of the requests per second of the "mockserver" engine
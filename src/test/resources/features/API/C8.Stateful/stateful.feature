@@ -0,0 +1,81 @@
+Feature: Stateful Mock Backend
+
+    Background:
+        Given the mock server keeps state for 1000000 people
+
+    Scenario: A created person can be read back
+        When I send a POST request to "/people" with payload:
+            | name       | Obi-Wan Kenobi |
+            | gender     | male           |
+            | birth_year | 57BBY          |
+        Then the response status code should be 201
+        And the response body should contain "id" with value "1000001"
+        When I send a GET request to "/people/1000001"
+        Then the response status code should be 200
+        And the response body should match:
+            | name       | Obi-Wan Kenobi |
+            | birth_year | 57BBY          |
+
+    Scenario: An update changes later reads
+        When I send a PUT request to "/people/42" with payload:
+            | name | Luke Skywalker |
+        Then the response status code should be 200
+        When I send a GET request to "/people/42"
+        Then the response body should match:
+            | name   | Luke Skywalker |
+            | gender | female         |
+
+    Scenario: A deleted person is gone
+        When I send a DELETE request to "/people/7"
+        Then the response status code should be 204
+        When I send a GET request to "/people/7"
+        Then the response status code should be 404
+        When I send a DELETE request to "/people/7"
+        Then the response status code should be 404
+        When I send a GET request to "/people?page=1&limit=10"
+        Then the response body should contain a count of 999999
+        And the response body should contain "results[6].id" with value "8"
+
+    Scenario: Page through a large dataset
+        When I send a GET request to "/people?page=5000&limit=100"
+        Then the response status code should be 200
+        And the response body should contain a count of 1000000
+        And the response body should have 100 people in results
+        And the response body should match:
+            | results[0].id  | 499901                                   |
+            | results[99].id | 500000                                   |
+            | next           | /people?page=5001&limit=100&after=500000 |
+            | previous       | /people?page=4999&limit=100              |
+
+    Scenario: Pages after deleted people start at the right person
+        When I send a DELETE request to "/people/3"
+        And I send a DELETE request to "/people/400000"
+        And I send a GET request to "/people?page=50000&limit=10"
+        Then the response body should contain a count of 999998
+        And the response body should contain "results[0].id" with value "499993"
+
+    Scenario: The next link of a filtered page continues after its last person
+        When I send a GET request to "/people?gender=female&limit=5"
+        Then the response body should contain a count of 500000
+        And the response body should contain "next" with value "/people?page=2&limit=5&gender=female&after=10"
+        When I send a GET request to "/people?page=2&limit=5&gender=female&after=10"
+        Then the response body should have 5 people in results
+        And the response body should match:
+            | results[0].id | 12                                            |
+            | results[4].id | 20                                            |
+            | next          | /people?page=3&limit=5&gender=female&after=20 |
+
+    Scenario: The last page has no next page
+        When I send a GET request to "/people?page=100000&limit=10"
+        Then the response body should have 10 people in results
+        And the response body should contain "next" with value "null"
+
+    Scenario: Filter by gender and name
+        When I send a GET request to "/people?gender=female&search=99999"
+        Then the response status code should be 200
+        And the response body should contain a count of 5
+        And the response body should contain "results[0].name" with value "Person 999990"
+
+    Scenario: Concurrent readers on a large dataset
+        When I send 500 concurrent GET requests to "/people?page=2500&limit=200"
+        Then all concurrent responses should have status code 200
@@ -0,0 +1,27 @@
+Feature: Mock Server Request Journal
+
+    Scenario: Count concurrent requests to a route
+        When I send 1000 concurrent GET requests to "/people"
+        Then all concurrent responses should have status code 200
+        And the mock server should have received 1000 GET requests to "/people"
+        And the mock server should have received 0 POST requests to "/people"
+
+    Scenario: Count requests per method
+        When I send a GET request to "/people/1"
+        And I send a PUT request to "/people/1" with payload:
+            | name | Luke Skywalker |
+        And I send a DELETE request to "/people/1"
+        Then the mock server should have received 1 GET request to "/people/1"
+        And the mock server should have received 1 PUT request to "/people/1"
+        And the mock server should have received 1 DELETE request to "/people/1"
+
+    Scenario: Query strings are counted under their path
+        When I send a GET request to "/people/generated?count=10"
+        And I send a GET request to "/people/generated?count=20"
+        Then the mock server should have received 2 GET requests to "/people/generated"
+
+    @timing
+    Scenario: Track latency per route
+        When I generate a load of 50 requests per second against "/people/1" for 3 seconds with a 1 second ramp-up
+        Then the mock server should have received at least 100 GET requests to "/people/1"
+        And the mock server mean latency for GET "/people/1" should be below 50 ms
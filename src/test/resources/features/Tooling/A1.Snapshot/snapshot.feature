@@ -0,0 +1,53 @@
+Feature: Golden Snapshot Boot
+
+    Background:
+        Given a fake Android SDK
+        And the fake emulator takes 1 second to cold boot and 0 seconds to boot from a snapshot
+
+    Scenario: The first setup cold boots and saves the golden snapshot
+        When I set up the emulator
+        Then the emulator should have booted from "cold"
+        And the "golden" snapshot should have been saved
+        And the APK should have been installed 1 time
+
+    Scenario: Later setups boot from the golden snapshot
+        Given I set up the emulator
+        And I stop the emulator
+        When I set up the emulator
+        Then the emulator should have booted from "snapshot"
+        And the APK should have been installed 1 time
+
+    Scenario: A new APK invalidates the snapshot
+        Given I set up the emulator
+        And I stop the emulator
+        And the APK has changed
+        When I set up the emulator
+        Then the emulator should have booted from "cold"
+        And the APK should have been installed 2 times
+
+    Scenario: A new system image invalidates the snapshot
+        Given I set up the emulator
+        And I stop the emulator
+        And the system image has changed
+        When I set up the emulator
+        Then the emulator should have booted from "cold"
+        And the APK should have been installed 2 times
+
+    Scenario: A snapshot boot that never reaches adb falls back to a cold boot
+        Given the emulator boot timeout is 3 seconds
+        And I set up the emulator
+        And I stop the emulator
+        And the fake emulator hangs when booting from a snapshot
+        When I set up the emulator
+        Then the emulator should have booted from "cold"
+        And the APK should have been installed 2 times
+        And only the last fake emulator launched should still be running
+
+    Scenario: Cold boot mode never uses snapshots
+        Given the emulator boot mode is "cold"
+        And I set up the emulator
+        And I stop the emulator
+        When I set up the emulator
+        Then the emulator should have booted from "cold"
+        And no snapshot should have been saved
+        And the APK should have been installed 2 times
@@ -0,0 +1,50 @@
+Feature: Emulator Launch Profiles
+
+    Scenario: The headless profile launches without window, GPU, audio or boot animation
+        Given a fake Android SDK
+        And the emulator boot mode is "cold"
+        And the emulator profile is "headless"
+        And the emulator has 2 cores and 1536 MB of memory
+        When I set up the emulator
+        Then the emulator should have been launched with "-no-window -gpu swiftshader_indirect -no-audio -no-boot-anim -cores 2 -memory 1536"
+        And the host usage of the "headless" profile should have been recorded
+
+    Scenario: The window profile keeps the emulator defaults
+        Given a fake Android SDK
+        And the emulator boot mode is "cold"
+        And the emulator profile is "window"
+        When I set up the emulator
+        Then the emulator should have been launched without "-no-window"
+        And the emulator should have been launched without "-cores"
+        And the host usage of the "window" profile should have been recorded
+
+    Scenario: A snapshot taken with other cores or memory is not booted from
+        Given a fake Android SDK
+        And the emulator profile is "headless"
+        And the emulator has 2 cores and 2048 MB of memory
+        When I set up the emulator
+        And I stop the emulator
+        And the emulator has 4 cores and 2048 MB of memory
+        And I set up the emulator
+        Then the emulator should have booted from "cold"
+        When I stop the emulator
+        And I set up the emulator
+        Then the emulator should have booted from "snapshot"
+
+    Scenario: The system image ABI and SDK root are resolved for the host
+        Given a fake Android SDK
+        And the emulator boot mode is "cold"
+        And the emulator ABI is "x86_64"
+        And the SDK root is only given by ANDROID_SDK_ROOT
+        When I set up the emulator
+        Then the AVD should have been created from "system-images;android-35;google_apis_playstore;x86_64"
+        And the system image should have been synced to "android-sdk/system-images/android-35/google_apis_playstore/x86_64"
+
+    Scenario Outline: Emulator images match the host architecture
+        Then the host ABI of "<arch>" should be "<abi>"
+
+        Examples:
+            | arch    | abi       |
+            | amd64   | x86_64    |
+            | x86_64  | x86_64    |
+            | aarch64 | arm64-v8a |
@@ -0,0 +1,54 @@
+Feature: Appium Session Pool
+
+    Scenario: Scenarios on a device reuse its session after an app reset
+        Given sessions take 200 ms to create and 10 ms to reset
+        When I run 5 scenarios on "emulator-5554"
+        Then 1 session should have been created
+        And 4 scenarios should have reused a session
+        And the session of "emulator-5554" should have been reset 4 times
+        And reusing sessions should have saved at least 600 ms
+
+    Scenario: Parallel workers each hold their own session
+        Given sessions take 100 ms to create and 5 ms to reset
+        When 4 workers each run 5 scenarios on their own device
+        Then 4 sessions should have been created
+        And 16 scenarios should have reused a session
+        And no session should have been used by two threads at once
+
+    Scenario: A crashed session is replaced
+        Given sessions take 50 ms to create and 5 ms to reset
+        When I run 2 scenarios on "emulator-5554"
+        And the session of "emulator-5554" crashes
+        And I run 1 scenario on "emulator-5554"
+        Then 2 sessions should have been created
+        And 1 session should have been recycled
+
+    Scenario: A session that fails to reset the app is replaced
+        Given sessions take 50 ms to create and 5 ms to reset
+        And resetting the app fails
+        When I run 3 scenarios on "emulator-5554"
+        Then 3 sessions should have been created
+        And 0 scenarios should have reused a session
+        And 2 sessions should have been recycled
+
+    Scenario: Sessions are recycled after a number of scenarios
+        Given sessions take 50 ms to create and 5 ms to reset
+        And sessions are recycled after 2 uses
+        When I run 5 scenarios on "emulator-5554"
+        Then 3 sessions should have been created
+        And 2 sessions should have been recycled
+
+    Scenario: Sessions are recycled once they are too old
+        Given sessions take 50 ms to create and 5 ms to reset
+        And sessions are recycled after 300 ms
+        When I run 2 scenarios on "emulator-5554"
+        And I wait 400 ms
+        And I run 1 scenario on "emulator-5554"
+        Then 2 sessions should have been created
+        And 1 session should have been recycled
+
+    Scenario: Closing the pool quits the idle sessions
+        Given sessions take 10 ms to create and 1 ms to reset
+        When 2 workers each run 2 scenarios on their own device
+        And I close the session pool
+        Then every session should have been quit
@@ -0,0 +1,27 @@
+Feature: Emulator Readiness Detection
+
+    Background:
+        Given a fake Android SDK
+        And the emulator boot mode is "cold"
+        And the fake emulator takes 1 second to cold boot and 0 seconds to boot from a snapshot
+
+    Scenario: Boot completion is noticed without fixed delays
+        When I set up the emulator
+        Then the emulator should have become ready within 3000 ms
+        And the APK should have been installed 1 time
+
+    Scenario Outline: Any one boot signal ends the wait
+        Given the fake device only reports the "<fake signal>" boot signal
+        When I set up the emulator
+        Then the boot should have been detected through "<signal>"
+
+        Examples:
+            | fake signal        | signal             |
+            | sys.boot_completed | sys.boot_completed |
+            | dev.bootcomplete   | dev.bootcomplete   |
+            | pm                 | package manager    |
+
+    Scenario: A device that never reports ready times out
+        Given the fake device reports no boot signals
+        And the emulator boot timeout is 2 seconds
+        Then setting up the emulator should fail with "did not report boot completion"
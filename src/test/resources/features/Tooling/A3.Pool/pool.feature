@@ -0,0 +1,42 @@
+Feature: Emulator Device Pool
+
+    Background:
+        Given a fake Android SDK
+        And the fake emulator takes 1 second to cold boot and 0 seconds to boot from a snapshot
+
+    Scenario: The pool boots every emulator on its own port pair
+        Given a device pool of 3 emulators with 1 restart each
+        Then the device pool should have 3 healthy emulators on ports "5554/5555, 5556/5557, 5558/5559"
+        And every emulator should have the APK installed once
+
+    Scenario: A leased emulator is not leased again until it is returned
+        Given a device pool of 2 emulators with 1 restart each
+        When I lease 2 emulators
+        Then the leased emulators should be distinct
+        And leasing another emulator should fail with "No emulator became available"
+        When I return the leased emulators
+        And I lease 2 emulators
+        Then the leased emulators should be distinct
+
+    Scenario: Parallel workers share the pool without overlapping
+        Given a device pool of 3 emulators with 1 restart each
+        When 6 workers each lease an emulator for 500 ms
+        Then no emulator should have been leased by two workers at once
+        And every emulator should have been leased
+        And the workers should have finished within 2500 ms
+
+    Scenario: A crashed emulator is restarted before it is leased again
+        Given a device pool of 1 emulator with 1 restart each
+        When I lease 1 emulator
+        And the leased emulators crash
+        And I return the leased emulators
+        And I lease 1 emulator
+        Then emulator 0 should have been restarted 1 time
+        And the device pool should have 1 healthy emulator on port "5554/5555"
+
+    Scenario: An emulator without restarts left is taken out of the pool
+        Given a device pool of 1 emulator with 0 restarts each
+        When I lease 1 emulator
+        And the leased emulators crash
+        And I return the leased emulators
+        Then leasing another emulator should fail with "All emulators in the device pool have failed"
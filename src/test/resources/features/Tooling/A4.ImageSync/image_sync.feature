@@ -0,0 +1,53 @@
+Feature: Incremental System Image Sync
+
+    Background:
+        Given a system image with 8 files of 256 KB
+
+    Scenario: The first sync copies every file
+        Given image sync copies files
+        When I sync the system image
+        Then 8 files should have been copied
+        And the synced image should match the source
+
+    Scenario: An unchanged image is not transferred again
+        Given image sync copies files
+        And I sync the system image
+        When I sync the system image
+        Then 8 files should have been skipped
+        And 0 files should have been copied
+
+    Scenario: Only modified files are transferred
+        Given image sync copies files
+        And I sync the system image
+        When the image file "data/file3.img" is modified
+        And I sync the system image
+        Then 1 file should have been copied
+        And 7 files should have been skipped
+        And the synced image should match the source
+
+    Scenario: Files removed from the image are removed from the SDK
+        Given image sync copies files
+        And I sync the system image
+        When the image file "file2.img" is removed
+        And I sync the system image
+        Then 1 file should have been deleted
+        And the synced image should not contain "file2.img"
+
+    Scenario: A touched file is skipped when content hashes match
+        Given image sync copies files
+        And image sync hashes file contents
+        And I sync the system image
+        When the image file "file0.img" is touched
+        And I sync the system image
+        Then 8 files should have been skipped
+
+    Scenario: Files are hard-linked on the same filesystem
+        Given image sync hard-links files
+        When I sync the system image
+        Then 8 files should have been linked
+        And the synced image should match the source
+        When the image file "file4.img" is modified
+        And I sync the system image
+        Then 1 file should have been linked
+        And 7 files should have been skipped
+        And the synced image should match the source
@@ -0,0 +1,43 @@
+Feature: APK Install
+
+    Background:
+        Given a fake Android SDK
+        And the fake emulator takes 1 second to cold boot and 0 seconds to boot from a snapshot
+        And the emulator boot mode is "cold"
+
+    Scenario: The APK manifest is read without the Android build tools
+        Given the APK version code is 7
+        Then the APK should be read as "com.example.fake" version code 7 named "1.7"
+
+    Scenario: Installing the same APK again is skipped
+        Given I set up the emulator
+        When I install the APK
+        Then the APK should have been installed 1 time
+        And the last install should have used "--streaming"
+
+    Scenario: A new version code is installed
+        Given I set up the emulator
+        And the APK version code is 2
+        When I install the APK
+        Then the APK should have been installed 2 times
+
+    Scenario: A rebuild with the same version code is installed
+        Given I set up the emulator
+        And the APK has changed
+        When I install the APK
+        Then the APK should have been installed 2 times
+
+    Scenario: The install mode selects the adb install flag
+        Given the APK install mode is "legacy"
+        When I set up the emulator
+        Then the last install should have used "--no-streaming"
+
+    Scenario: The device pool installs a new APK on every emulator concurrently
+        Given a device pool of 3 emulators with 1 restart each
+        And the APK version code is 2
+        And the fake adb takes 1000 ms to install an APK
+        When I install the APK on the device pool
+        Then the pool should have installed the APK on 3 emulators within 2500 ms
+        And every emulator should have the APK installed twice
+        When I install the APK on the device pool
+        Then the pool should have installed the APK on 0 emulators within 1000 ms
@@ -0,0 +1,50 @@
+Feature: Command Runner
+
+    Scenario: Output on both streams is drained concurrently and bounded
+        Given a command runner keeping 1024 bytes of output
+        When I run "head -c 2000000 /dev/zero | tr '\0' e >&2; head -c 2000000 /dev/zero | tr '\0' o; printf END" with a timeout of 10000 ms
+        Then the command should have succeeded within 10000 ms
+        And the stdout should be the last 1024 bytes ending in "oooEND"
+        And the stderr should be the last 1024 bytes ending in "eee"
+
+    Scenario: A command past its timeout is killed with its children
+        Given a command runner keeping 1024 bytes of output
+        When I run "sleep 30 & echo $! > target/command-child.pid; wait" with a timeout of 500 ms
+        Then the command should have timed out within 2000 ms
+        And the process recorded in "target/command-child.pid" should no longer be running
+        And the runner should have recorded 1 "bash" command with 1 timeout
+
+    Scenario: Emulator setup reports the latency of every Android tool command
+        Given a fake Android SDK
+        And the fake emulator takes 1 second to cold boot and 0 seconds to boot from a snapshot
+        And the emulator boot mode is "cold"
+        When I set up the emulator
+        Then the Android tool command latency should include "adb start-server, adb wait-for-device, adb shell getprop, adb shell pm, adb install, avdmanager create"
+
+    Scenario: A hung install fails the setup instead of stalling it
+        Given a fake Android SDK
+        And the fake emulator takes 1 second to cold boot and 0 seconds to boot from a snapshot
+        And the emulator boot mode is "cold"
+        And the fake adb hangs on installs
+        And the APK install timeout is 2 seconds
+        Then setting up the emulator should fail with "Timed out installing APK"
+
+    Scenario: An emulator that never boots is killed with its children
+        Given a fake Android SDK
+        And the emulator boot mode is "cold"
+        And the fake device reports no boot signals
+        And the emulator boot timeout is 2 seconds
+        Then setting up the emulator should fail with "did not report boot completion"
+        And no fake emulator launched should still be running
+
+    Scenario: An emulator still running after emu kill is killed so its port can be reused
+        Given a fake Android SDK
+        And the fake emulator takes 1 second to cold boot and 0 seconds to boot from a snapshot
+        And the emulator boot mode is "cold"
+        And the emulator stop grace period is 1 second
+        And I set up the emulator
+        And the fake emulator ignores emu kill
+        When I stop the emulator
+        Then no fake emulator launched should still be running
+        When I set up the emulator
+        Then only the last fake emulator launched should still be running
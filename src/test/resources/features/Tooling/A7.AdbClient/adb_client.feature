@@ -0,0 +1,67 @@
+Feature: ADB Server Client
+
+    Background:
+        Given a fake Android SDK
+        And the fake adb server is running
+        And the emulator boot mode is "cold"
+        And the fake emulator takes 1 second to cold boot and 0 seconds to boot from a snapshot
+
+    Scenario: Emulator setup talks to the adb server instead of starting adb processes
+        When I set up the emulator
+        Then the emulator should have become ready within 3000 ms
+        And the APK should have been installed 1 time
+        And the adb server should have served "host:track-devices, host:transport:emulator-5554, shell:sh, shell:pm list packages"
+        And no adb process should have been started for "start-server, wait-for-device, get-state, devices, shell"
+
+    Scenario Outline: Any one boot signal ends the wait on the persistent shell
+        Given the fake device only reports the "<fake signal>" boot signal
+        When I set up the emulator
+        Then the boot should have been detected through "<signal>"
+
+        Examples:
+            | fake signal        | signal             |
+            | sys.boot_completed | sys.boot_completed |
+            | dev.bootcomplete   | dev.bootcomplete   |
+            | pm                 | package manager    |
+
+    Scenario: A device that never reports ready times out on the persistent shell
+        Given the fake device reports no boot signals
+        And the emulator boot timeout is 2 seconds
+        Then setting up the emulator should fail with "did not report boot completion"
+
+    Scenario: The adb server pushes device list changes
+        When I set up the emulator
+        And I follow the adb device list
+        Then the adb device list should show "emulator-5554" as "device"
+        And the adb device tracker should list "emulator-5554" within 1000 ms
+        When "emulator-5554" crashes
+        Then the adb device tracker should drop "emulator-5554" within 500 ms
+
+    Scenario: The device list is followed while the server has nothing to push
+        Given the fake emulator takes 1500 ms to come online and 1500 ms to shut down
+        When I follow the adb device list
+        And I set up the emulator
+        Then the adb device tracker should list "emulator-5554" within 1000 ms
+        When I stop the emulator
+        Then the adb device tracker should drop "emulator-5554" within 3000 ms
+        And the adb device tracker should still be open
+
+    Scenario: Stopping the emulator waits on the pushed device list
+        When I set up the emulator
+        And I stop the emulator
+        Then the adb server should have served "host:track-devices"
+        And no adb process should have been started for "devices"
+
+    Scenario: Queries on a persistent shell are faster than adb shell processes
+        When I set up the emulator
+        And I run "getprop sys.boot_completed" 20 times on one adb shell of "emulator-5554"
+        And I run "getprop sys.boot_completed" 20 times with adb shell processes on "emulator-5554"
+        Then every adb shell command should have printed "1"
+        And the persistent adb shell should have been faster than adb shell processes
+
+    Scenario: The process transport still works when asked for
+        Given the adb transport is "process"
+        When I set up the emulator
+        Then the emulator should have become ready within 3000 ms
+        And an adb process should have been started for "wait-for-device"
+        And an adb process should have been started for "shell getprop"
@@ -0,0 +1,56 @@
+Feature: Log Capture
+
+    Scenario: Lines offered concurrently are all written in order
+        Given a log capture rotating at 1048576 bytes with 5 archives and a queue of 100000 lines
+        When 4 threads each offer 20000 lines
+        Then every offered line should have been written in order
+
+    Scenario: A full queue drops lines instead of blocking the producer
+        Given a log capture rotating at 1048576 bytes with 5 archives and a queue of 100 lines
+        When 4 threads each offer 50000 lines
+        Then the lines beyond the queue should have been dropped and counted
+
+    Scenario: Log files are rotated into compressed archives
+        Given a log capture rotating at 65536 bytes with 3 archives and a queue of 100000 lines
+        When 1 thread offers 50000 lines
+        Then the log should have been rotated into 3 compressed archives
+        And the log should end with the last 5000 lines offered
+
+    Scenario: Lines since a mark are read back from memory
+        Given a log capture rotating at 1048576 bytes with 5 archives and a queue of 1000 lines
+        When I offer the lines "before 1, before 2"
+        And I mark the log capture
+        And I offer the lines "after 1, after 2"
+        Then the lines since the mark should be "after 1, after 2"
+
+    Scenario: Emulator output goes to rotating files instead of the console
+        Given a fake Android SDK
+        And the emulator boot mode is "cold"
+        And the fake emulator prints 20000 lines at boot
+        And log files rotate at 65536 bytes keeping 20 archives
+        When I set up the emulator
+        Then the emulator log should hold all 20000 lines in 20 or fewer compressed archives
+
+    Scenario: Logcat is captured with tag and priority filters
+        Given a fake Android SDK
+        And the emulator boot mode is "cold"
+        And the logcat filter is "TestApp:D *:E"
+        When I set up the emulator
+        And the app logs "D" "TestApp" "app debug message"
+        And the app logs "V" "TestApp" "app verbose message"
+        And the app logs "I" "ActivityManager" "system info message"
+        And the app logs "E" "AndroidRuntime" "FATAL EXCEPTION: main"
+        Then the logcat log should contain "FATAL EXCEPTION: main"
+        And the logcat log should contain "app debug message"
+        And the logcat log should not contain "app verbose message"
+        And the logcat log should not contain "system info message"
+
+    Scenario: A scenario's log slice holds only what was logged during it
+        Given a fake Android SDK
+        And the emulator boot mode is "cold"
+        When I set up the emulator
+        And the app logs "I" "TestApp" "from an earlier scenario"
+        Then the logcat log should contain "from an earlier scenario"
+        When a scenario starts on the emulator
+        And the app logs "E" "TestApp" "failure in this scenario"
+        Then the logcat slice of the scenario should contain "failure in this scenario" but not "from an earlier scenario"
@@ -0,0 +1,44 @@
+Feature: Setup Graph
+
+    Scenario: Independent setup steps run concurrently
+        Given a setup step "appium" taking 300 ms
+        And a setup step "image sync" taking 100 ms
+        And a setup step "avd" taking 100 ms after "image sync"
+        And a setup step "boot" taking 100 ms after "appium, avd"
+        When I run the setup
+        Then the setup should have taken less than 550 ms
+        And setup step "avd" should have started before "appium" finished
+        And the critical path should be "appium, boot"
+
+    Scenario: A failed step skips the steps depending on it only
+        Given a setup step "image sync" failing after 50 ms
+        And a setup step "avd" taking 10 ms after "image sync"
+        And a setup step "appium" taking 200 ms
+        Then running the setup should fail with "image sync failed"
+        And setup step "image sync" should have been failed
+        And setup step "avd" should have been skipped
+        And setup step "appium" should have been ok
+
+    Scenario: Steps can only depend on steps added before them
+        Given a setup step "boot" taking 10 ms
+        Then adding a setup step "install" after "avd" should fail with "depends on unknown step avd"
+
+    Scenario: The emulator setup prints its critical path
+        Given a fake Android SDK
+        And the emulator boot mode is "cold"
+        When I set up the emulator
+        Then the setup step "avd fake_avd" should have waited for "image sync"
+        And the setup step "boot emulator-5554" should have waited for "adb server"
+        And the setup critical path should end with "boot emulator-5554, install emulator-5554"
+
+    Scenario: The AVD is created during the image sync once the image is in the SDK
+        Given a fake Android SDK
+        And the emulator boot mode is "cold"
+        When I set up the emulator
+        And I stop the emulator
+        And the AVD has been deleted
+        And the system image has changed
+        And the fake avdmanager takes 300 ms to create an AVD
+        And I set up the emulator
+        Then the setup step "avd fake_avd" should not have waited for "image sync"
+        And the setup critical path should end with "avd fake_avd, boot emulator-5554, install emulator-5554"